@@ -0,0 +1,119 @@
+package org.motechproject.commcare.domain;
+
+import org.motechproject.mds.annotations.Access;
+import org.motechproject.mds.annotations.CrudEvents;
+import org.motechproject.mds.annotations.Entity;
+import org.motechproject.mds.annotations.Field;
+import org.motechproject.mds.event.CrudEventType;
+import org.motechproject.mds.util.SecurityMode;
+
+import javax.jdo.annotations.Index;
+import javax.jdo.annotations.Persistent;
+import javax.jdo.annotations.Unique;
+import java.util.Objects;
+
+/**
+ * Represents a single CommCare user, location or fixture stored in the local mirror. The object itself is stored in
+ * its JSON representation, while its ID and the ID of its parent (the parent location for locations, the fixture type
+ * for fixtures) are stored in separate fields, so that they can be used for lookups. It's part of the MOTECH model.
+ * The index on the parent ID backs the lookup of child locations.
+ */
+@Entity(name = "Commcare Mirror Entry")
+@CrudEvents(CrudEventType.NONE)
+@Access(value = SecurityMode.PERMISSIONS, members = {"manageCommcare"})
+@Unique(name = "CONFIG_TYPE_OBJECT_ID", members = {"configName", "objectType", "objectId"})
+@Index(name = "CONFIG_TYPE_PARENT_ID", members = {"configName", "objectType", "parentId"})
+public class CommcareMirrorEntry {
+
+    @Field(displayName = "Source configuration", required = true)
+    private String configName;
+
+    @Field(displayName = "Object type", required = true)
+    private CommcareMirrorType objectType;
+
+    @Field(displayName = "Object Id", required = true)
+    private String objectId;
+
+    @Field(displayName = "Parent Id")
+    private String parentId;
+
+    @Field(displayName = "Object", type = "text")
+    @Persistent(defaultFetchGroup = "true")
+    private String serializedObject;
+
+    public CommcareMirrorEntry() {
+        this(null, null, null, null, null);
+    }
+
+    public CommcareMirrorEntry(String configName, CommcareMirrorType objectType, String objectId, String parentId,
+                               String serializedObject) {
+        this.configName = configName;
+        this.objectType = objectType;
+        this.objectId = objectId;
+        this.parentId = parentId;
+        this.serializedObject = serializedObject;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    public void setConfigName(String configName) {
+        this.configName = configName;
+    }
+
+    public CommcareMirrorType getObjectType() {
+        return objectType;
+    }
+
+    public void setObjectType(CommcareMirrorType objectType) {
+        this.objectType = objectType;
+    }
+
+    public String getObjectId() {
+        return objectId;
+    }
+
+    public void setObjectId(String objectId) {
+        this.objectId = objectId;
+    }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(String parentId) {
+        this.parentId = parentId;
+    }
+
+    public String getSerializedObject() {
+        return serializedObject;
+    }
+
+    public void setSerializedObject(String serializedObject) {
+        this.serializedObject = serializedObject;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(configName, objectType, objectId, parentId, serializedObject);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final CommcareMirrorEntry other = (CommcareMirrorEntry) obj;
+
+        return Objects.equals(this.configName, other.configName)
+                && Objects.equals(this.objectType, other.objectType)
+                && Objects.equals(this.objectId, other.objectId)
+                && Objects.equals(this.parentId, other.parentId)
+                && Objects.equals(this.serializedObject, other.serializedObject);
+    }
+}
@@ -0,0 +1,10 @@
+package org.motechproject.commcare.domain;
+
+/**
+ * Types of the CommCare objects stored in the local mirror.
+ *
+ * @see CommcareMirrorEntry
+ */
+public enum CommcareMirrorType {
+    USER, LOCATION, FIXTURE
+}
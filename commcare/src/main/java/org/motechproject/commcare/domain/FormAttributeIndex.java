@@ -0,0 +1,74 @@
+package org.motechproject.commcare.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Index of the {@link FormValueElement} tree by the values of a single attribute. Building the index requires
+ * one preorder traversal of the tree, after which lookups by attribute value don't traverse the tree again. The
+ * index is a snapshot - changes made to the tree after the index was built are not reflected by it.
+ */
+public class FormAttributeIndex {
+
+    private final String attribute;
+    private final Map<String, List<FormValueElement>> elementsByValue = new HashMap<>();
+
+    /**
+     * Creates an index of the given {@code root} element and all its descendants by the given {@code attribute}.
+     *
+     * @param root  the root of the indexed tree
+     * @param attribute  the name of the indexed attribute
+     */
+    public FormAttributeIndex(FormValueElement root, String attribute) {
+        this.attribute = attribute;
+        index(root);
+    }
+
+    /**
+     * Returns elements with the indexed attribute set to {@code value}, in the order in which they are encountered
+     * in a preorder traversal of the tree.
+     *
+     * @param value  the value of the attribute
+     * @return the list of matching elements, empty list if none were found
+     */
+    public List<FormValueElement> getElements(String value) {
+        List<FormValueElement> elements = elementsByValue.get(value);
+        return elements == null ? Collections.<FormValueElement>emptyList() : Collections.unmodifiableList(elements);
+    }
+
+    /**
+     * Returns the first element with the indexed attribute set to {@code value}.
+     *
+     * @param value  the value of the attribute
+     * @return the matching element, null if no matching element is found
+     */
+    public FormValueElement getElement(String value) {
+        List<FormValueElement> elements = elementsByValue.get(value);
+        return elements == null ? null : elements.get(0);
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    private void index(FormValueElement element) {
+        String value = element.getAttributes().get(attribute);
+
+        if (value != null) {
+            List<FormValueElement> elements = elementsByValue.get(value);
+            if (elements == null) {
+                elements = new ArrayList<>(1);
+                elementsByValue.put(value, elements);
+            }
+            elements.add(element);
+        }
+
+        for (Entry<String, FormValueElement> entry : element.getSubElements().entries()) {
+            index(entry.getValue());
+        }
+    }
+}
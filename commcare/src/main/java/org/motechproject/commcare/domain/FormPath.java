@@ -0,0 +1,151 @@
+package org.motechproject.commcare.domain;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precompiled lookup path used for searching the {@link FormValueElement} tree. The path string is split into
+ * its segments only once, so the same instance can be reused for any number of lookups without allocating.
+ * Instances are immutable and thread-safe. For the supported path syntax see {@link FormValueElement#search(String)}.
+ */
+public final class FormPath {
+
+    private static final int MAX_CACHED_PATHS = 1024;
+    private static final ConcurrentMap<String, CachedPath> CACHE = new ConcurrentHashMap<>();
+    private static final Queue<CachedPath> EVICTION_QUEUE = new ConcurrentLinkedQueue<>();
+
+    private final String path;
+    private final String[] segments;
+
+    private FormPath(String path) {
+        this.path = path;
+        this.segments = splitPath(path);
+    }
+
+    /**
+     * Compiles the given {@code path}. The recently used compiled paths are cached, so compiling the same path
+     * multiple times will return the same instance, unless the path was evicted from the cache in the meantime.
+     * Looking up a cached path doesn't lock. Once the cache is full, the oldest path which wasn't used since it was
+     * last checked is evicted, the used ones are given a second chance.
+     *
+     * @param path  the lookup path, should start with "//"
+     * @return the compiled path
+     */
+    public static FormPath compile(String path) {
+        CachedPath cached = CACHE.get(path);
+        if (cached != null) {
+            cached.markUsed();
+            return cached.formPath;
+        }
+
+        CachedPath created = new CachedPath(new FormPath(path));
+        cached = CACHE.putIfAbsent(path, created);
+        if (cached != null) {
+            cached.markUsed();
+            return cached.formPath;
+        }
+
+        EVICTION_QUEUE.add(created);
+        evictIfFull();
+        return created.formPath;
+    }
+
+    private static void evictIfFull() {
+        CachedPath candidate;
+        while (CACHE.size() > MAX_CACHED_PATHS && (candidate = EVICTION_QUEUE.poll()) != null) {
+            if (candidate.used) {
+                candidate.used = false;
+                EVICTION_QUEUE.add(candidate);
+            } else {
+                CACHE.remove(candidate.formPath.path, candidate);
+            }
+        }
+    }
+
+    /**
+     * Returns the path from which this object was compiled.
+     *
+     * @return the path string
+     */
+    public String getPath() {
+        return path;
+    }
+
+    int length() {
+        return segments.length;
+    }
+
+    String segment(int index) {
+        return segments[index];
+    }
+
+    boolean isAttribute(int index) {
+        return segments[index].startsWith(FormNode.PREFIX_ATTRIBUTE);
+    }
+
+    boolean isValue(int index) {
+        return segments[index].startsWith(FormNode.PREFIX_VALUE);
+    }
+
+    String attributeName(int index) {
+        return segments[index].replace(FormNode.PREFIX_ATTRIBUTE, "");
+    }
+
+    private static String[] splitPath(String path) {
+        String trimmedPath = path.replaceFirst("^" + FormNode.PREFIX_SEARCH_RELATIVE, "");
+
+        if (StringUtils.isEmpty(trimmedPath)) {
+            return new String[0];
+        }
+
+        String[] split = trimmedPath.split("/");
+        for (int i = 0; i < split.length; i++) {
+            split[i] = split[i].intern();
+        }
+        return split;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        FormPath formPath = (FormPath) o;
+        return Arrays.equals(segments, formPath.segments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(segments);
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    private static final class CachedPath {
+        private final FormPath formPath;
+        private volatile boolean used;
+
+        private CachedPath(FormPath formPath) {
+            this.formPath = formPath;
+        }
+
+        private void markUsed() {
+            // reads only write the flag when it changes, to keep the cache line shared between threads
+            if (!used) {
+                used = true;
+            }
+        }
+    }
+}
@@ -2,15 +2,13 @@ package org.motechproject.commcare.domain;
 
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
-import org.apache.commons.lang.StringUtils;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Vector;
 
 /**
  * Object representation of the forwarded form from CommCareHQ.
@@ -38,8 +36,19 @@ public class FormValueElement implements FormNode {
      * @return First node found at lookup path.
      */
     public FormNode searchFirst(String path) {
-        List<FormNode> results = new ArrayList<>();
-        search(splitPath(path), true, results);
+        return searchFirst(FormPath.compile(path));
+    }
+
+    /**
+     * Returns first node (elements and attributes) found at the given precompiled path. Works the same way as
+     * {@link #searchFirst(String)}, but allows skipping the parsing of the path for repeated lookups.
+     *
+     * @param path the compiled lookup path
+     * @return First node found at lookup path, null if no matching node is found
+     */
+    public FormNode searchFirst(FormPath path) {
+        List<FormNode> results = new ArrayList<>(1);
+        search(path, 0, true, results);
         return results.size() > 0 ? results.get(0) : null;
     }
 
@@ -96,11 +105,34 @@ public class FormValueElement implements FormNode {
      * @return A list containing matching nodes.
      */
     public List<FormNode> search(String path) {
+        return search(FormPath.compile(path));
+    }
+
+    /**
+     * Returns a list of all descendant nodes (elements and attributes) found at the given precompiled path. Works
+     * the same way as {@link #search(String)}, but allows skipping the parsing of the path for repeated lookups.
+     *
+     * @param path the compiled lookup path
+     * @return A list containing matching nodes.
+     */
+    public List<FormNode> search(FormPath path) {
         List<FormNode> results = new ArrayList<>();
-        search(splitPath(path), false, results);
+        search(path, 0, false, results);
         return results;
     }
 
+    /**
+     * Builds an index of this element and all its descendants by the given {@code attribute}. Should be used instead
+     * of {@link #getElementsByAttribute(String, String)} when multiple lookups by the same attribute are made on an
+     * unchanging tree.
+     *
+     * @param attribute  the name of the attribute to index by
+     * @return the index of the elements
+     */
+    public FormAttributeIndex indexByAttribute(String attribute) {
+        return new FormAttributeIndex(this, attribute);
+    }
+
     /**
      * Returns a map of form elements names and related elements.
      *
@@ -231,12 +263,8 @@ public class FormValueElement implements FormNode {
      * @return the matching child element, null if element with the given name does not exist
      */
     public FormValueElement getChildElement(String elementName) {
-        for (Entry<String, FormValueElement> entry : subElements.entries()) {
-            if (entry.getKey().equals(elementName)) {
-                return entry.getValue();
-            }
-        }
-        return null;
+        Collection<FormValueElement> childElements = subElements.get(elementName);
+        return childElements.isEmpty() ? null : childElements.iterator().next();
     }
 
     /**
@@ -349,7 +377,7 @@ public class FormValueElement implements FormNode {
     }
 
     public void setElementName(String elementName) {
-        this.elementName = elementName;
+        this.elementName = elementName == null ? null : elementName.intern();
     }
 
     public Multimap<String, FormValueElement> getSubElements() {
@@ -368,37 +396,22 @@ public class FormValueElement implements FormNode {
         this.attributes = attributes;
     }
 
-    private List<String> splitPath(String path) {
-        List<String> pathToTraverse = new Vector<>();
-        String trimmedPath = path.replaceFirst("^" + PREFIX_SEARCH_RELATIVE, "");
-
-        if (StringUtils.isEmpty(trimmedPath)) {
-            return pathToTraverse;
-        }
-
-        pathToTraverse.addAll(Arrays.asList(trimmedPath.split("/")));
-        return pathToTraverse;
-    }
-
-    private void search(List<String> pathToTraverse, boolean breakOnFirst, List<FormNode> results) {
-        if (pathToTraverse.isEmpty()) {
+    private void search(FormPath path, int depth, boolean breakOnFirst, List<FormNode> results) {
+        if (depth == path.length()) {
             results.add(this);
             return;
         }
 
-        String currentSearchSegment = pathToTraverse.remove(0);
-
-        if (currentSearchSegment.startsWith(PREFIX_ATTRIBUTE)) {
-            results.add(getAttributeAsNode(currentSearchSegment.replace(PREFIX_ATTRIBUTE, "")));
+        if (path.isAttribute(depth)) {
+            results.add(getAttributeAsNode(path.attributeName(depth)));
             return;
         }
-        if (currentSearchSegment.startsWith(PREFIX_VALUE)) {
+        if (path.isValue(depth)) {
             results.add(this);
         }
 
-        List<FormValueElement> childElements = getChildElements(currentSearchSegment);
-        for (FormValueElement childElement: childElements) {
-            childElement.search(new ArrayList<>(pathToTraverse), breakOnFirst, results);
+        for (FormValueElement childElement : subElements.get(path.segment(depth))) {
+            childElement.search(path, depth + 1, breakOnFirst, results);
             if (breakOnFirst && results.size() > 0) {
                 return;
             }
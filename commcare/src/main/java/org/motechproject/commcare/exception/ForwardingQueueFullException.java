@@ -0,0 +1,13 @@
+package org.motechproject.commcare.exception;
+
+/**
+ * Thrown when data forwarded by CommCareHQ can't be accepted, because the backlog of unprocessed data is full.
+ */
+public class ForwardingQueueFullException extends Exception {
+
+    private static final long serialVersionUID = -6201725096377532907L;
+
+    public ForwardingQueueFullException(String message) {
+        super(message);
+    }
+}
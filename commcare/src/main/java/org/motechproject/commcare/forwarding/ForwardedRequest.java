@@ -0,0 +1,78 @@
+package org.motechproject.commcare.forwarding;
+
+import java.util.Objects;
+
+/**
+ * Represents a single piece of data forwarded by CommCareHQ to one of the forwarding endpoints, kept in its raw
+ * form. Instances of this class are stored in the {@link ForwardedRequestLog} until they get processed.
+ */
+public class ForwardedRequest {
+
+    /**
+     * The type of the forwarded data.
+     */
+    public enum Type {
+        FORM, CASE
+    }
+
+    private final Type type;
+    private final String configName;
+    private final String timestamp;
+    private final String body;
+
+    /**
+     * Creates an instance of the {@link ForwardedRequest} class.
+     *
+     * @param type  the type of the forwarded data
+     * @param configName  the name of the configuration for which the data was received
+     * @param timestamp  the value of the "received-on" (forms) or "server-modified-on" (cases) header
+     * @param body  the raw body of the request
+     */
+    public ForwardedRequest(Type type, String configName, String timestamp, String body) {
+        this.type = type;
+        this.configName = configName;
+        this.timestamp = timestamp;
+        this.body = body;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        ForwardedRequest that = (ForwardedRequest) o;
+
+        return Objects.equals(type, that.type) && Objects.equals(configName, that.configName)
+                && Objects.equals(timestamp, that.timestamp) && Objects.equals(body, that.body);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, configName, timestamp, body);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ForwardedRequest{type=%s, configName='%s', timestamp='%s'}", type, configName, timestamp);
+    }
+}
@@ -0,0 +1,424 @@
+package org.motechproject.commcare.forwarding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disk-backed append log of the {@link ForwardedRequest}s. Requests are appended to the end of the log and taken for
+ * processing in the order in which they were appended. The offset of the oldest unprocessed request is persisted
+ * as a checkpoint, so after a restart all requests that weren't processed are replayed. The log is split into segment
+ * files of a limited size, a segment is deleted once the checkpoint has moved past all of its requests, so the size
+ * of the log on disk is bounded by the backlog of unprocessed requests even if it is never fully drained. Requests
+ * that could not be processed can be moved to a separate dead-letter log, from which they can be replayed on demand.
+ */
+public class ForwardedRequestLog implements Closeable {
+
+    /**
+     * The name of the single log file used by previous versions, migrated to the first segment when the log is opened.
+     */
+    public static final String LOG_FILE = "requests.log";
+    public static final String CHECKPOINT_FILE = "requests.checkpoint";
+    public static final String DEAD_LETTER_FILE = "dead-letter.log";
+
+    static final long DEFAULT_SEGMENT_SIZE = 16L * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "requests-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int RECORD_HEADER_LENGTH = 4;
+
+    private final File directory;
+    private final File deadLetterFile;
+    private final RandomAccessFile checkpointFile;
+    private final RandomAccessFile deadLetterLog;
+    private final boolean syncWrites;
+    private final long segmentSize;
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+    private final SortedSet<Long> inFlight = new TreeSet<>();
+
+    private long writePosition;
+    private long readPosition;
+    private long checkpoint;
+
+    /**
+     * Opens the log stored in the given {@code directory}, creating it if it doesn't exist. Incomplete records left
+     * at the end of the log, for example by a crash during the write, are discarded.
+     *
+     * @param directory  the directory in which the log files are stored
+     * @param syncWrites  whether each append should be forced to the storage device before returning
+     * @throws IOException if the log could not be opened
+     */
+    public ForwardedRequestLog(File directory, boolean syncWrites) throws IOException {
+        this(directory, syncWrites, DEFAULT_SEGMENT_SIZE);
+    }
+
+    ForwardedRequestLog(File directory, boolean syncWrites, long segmentSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory.getAbsolutePath());
+        }
+
+        this.directory = directory;
+        this.syncWrites = syncWrites;
+        this.segmentSize = segmentSize;
+        this.deadLetterFile = new File(directory, DEAD_LETTER_FILE);
+        this.checkpointFile = new RandomAccessFile(new File(directory, CHECKPOINT_FILE), "rw");
+        this.deadLetterLog = new RandomAccessFile(deadLetterFile, "rw");
+
+        deadLetterLog.setLength(findValidLength(deadLetterLog));
+        checkpoint = checkpointFile.length() >= 8 ? checkpointFile.readLong() : 0;
+
+        openSegments();
+
+        if (segments.isEmpty()) {
+            // every segment was processed and deleted, the offsets continue from the checkpoint
+            checkpoint = Math.max(checkpoint, 0);
+            writePosition = checkpoint;
+        } else {
+            Segment last = segments.lastEntry().getValue();
+            writePosition = last.getEnd();
+            if (checkpoint < segments.firstKey() || checkpoint > writePosition) {
+                checkpoint = segments.firstKey();
+            }
+        }
+        readPosition = checkpoint;
+
+        deleteProcessedSegments();
+    }
+
+    /**
+     * Appends the given {@code request} to the end of the log.
+     *
+     * @param request  the request to append
+     * @return the offset of the appended request
+     * @throws IOException if the request could not be written
+     */
+    public synchronized long append(ForwardedRequest request) throws IOException {
+        Segment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (segment == null || segment.length >= segmentSize) {
+            segment = createSegment(writePosition);
+        }
+
+        long offset = writePosition;
+
+        int recordLength = writeRecord(segment.file, segment.length, serialize(request));
+        segment.length += recordLength;
+        writePosition += recordLength;
+        notifyAll();
+
+        return offset;
+    }
+
+    /**
+     * Takes the next unprocessed request from the log, waiting up to the given time for one to be appended. The taken
+     * request is considered in-flight until {@link #complete(long)} is called with its offset.
+     *
+     * @param timeout  how long to wait for a request
+     * @param unit  the unit of the {@code timeout}
+     * @return the next entry, null if the timeout elapsed before a request was appended
+     * @throws IOException if the request could not be read
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public synchronized Entry take(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (readPosition >= writePosition) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+
+        Segment segment = segments.floorEntry(readPosition).getValue();
+        if (readPosition >= segment.getEnd()) {
+            // the end of a segment that was cut short by a crash, continue with the next one
+            readPosition = segments.higherKey(readPosition);
+            segment = segments.get(readPosition);
+        }
+
+        long offset = readPosition;
+        byte[] record = readRecord(segment.file, offset - segment.base);
+
+        readPosition += RECORD_HEADER_LENGTH + record.length;
+        inFlight.add(offset);
+
+        return new Entry(offset, deserialize(record));
+    }
+
+    /**
+     * Marks the request with the given {@code offset} as processed. The checkpoint is moved forward to the oldest
+     * request that is still in-flight and the segments which contain only processed requests are deleted.
+     *
+     * @param offset  the offset of the processed request
+     * @throws IOException if the checkpoint could not be updated
+     */
+    public synchronized void complete(long offset) throws IOException {
+        inFlight.remove(offset);
+
+        long newCheckpoint = inFlight.isEmpty() ? readPosition : inFlight.first();
+
+        if (newCheckpoint != checkpoint) {
+            checkpoint = newCheckpoint;
+            checkpointFile.seek(0);
+            checkpointFile.writeLong(checkpoint);
+            if (syncWrites) {
+                checkpointFile.getChannel().force(false);
+            }
+
+            deleteProcessedSegments();
+        }
+    }
+
+    /**
+     * Appends the given {@code request} to the dead-letter log.
+     *
+     * @param request  the request that could not be processed
+     * @throws IOException if the request could not be written
+     */
+    public synchronized void deadLetter(ForwardedRequest request) throws IOException {
+        writeRecord(deadLetterLog, deadLetterLog.length(), serialize(request));
+    }
+
+    /**
+     * Returns all requests stored in the dead-letter log.
+     *
+     * @return the list of dead-lettered requests
+     * @throws IOException if the dead-letter log could not be read
+     */
+    public synchronized List<ForwardedRequest> getDeadLetters() throws IOException {
+        List<ForwardedRequest> requests = new ArrayList<>();
+        long length = deadLetterLog.length();
+        long position = 0;
+
+        while (position < length) {
+            byte[] record = readRecord(deadLetterLog, position);
+            requests.add(deserialize(record));
+            position += RECORD_HEADER_LENGTH + record.length;
+        }
+
+        return requests;
+    }
+
+    /**
+     * Moves all requests from the dead-letter log back to the end of the log, so that they get processed again.
+     *
+     * @return the number of replayed requests
+     * @throws IOException if the requests could not be moved
+     */
+    public synchronized int replayDeadLetters() throws IOException {
+        List<ForwardedRequest> requests = getDeadLetters();
+
+        for (ForwardedRequest request : requests) {
+            append(request);
+        }
+        deadLetterLog.setLength(0);
+
+        return requests.size();
+    }
+
+    /**
+     * Returns the number of bytes taken by requests that were not yet processed.
+     *
+     * @return the size of the backlog in bytes
+     */
+    public synchronized long getBacklog() {
+        return writePosition - checkpoint;
+    }
+
+    public File getDeadLetterFile() {
+        return deadLetterFile;
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            for (Segment segment : segments.values()) {
+                segment.file.close();
+            }
+            deadLetterLog.close();
+        } finally {
+            checkpointFile.close();
+        }
+    }
+
+    private void openSegments() throws IOException {
+        File legacyLog = new File(directory, LOG_FILE);
+        if (legacyLog.isFile() && !legacyLog.renameTo(segmentFile(0))) {
+            throw new IOException("Unable to migrate " + legacyLog.getAbsolutePath());
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list directory " + directory.getAbsolutePath());
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                long base = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length()));
+
+                RandomAccessFile segmentLog = new RandomAccessFile(file, "rw");
+                long length = findValidLength(segmentLog);
+                segmentLog.setLength(length);
+
+                segments.put(base, new Segment(base, file, segmentLog, length));
+            }
+        }
+    }
+
+    private Segment createSegment(long base) throws IOException {
+        File file = segmentFile(base);
+        Segment segment = new Segment(base, file, new RandomAccessFile(file, "rw"), 0);
+        segments.put(base, segment);
+        return segment;
+    }
+
+    private void deleteProcessedSegments() throws IOException {
+        // the last segment is kept for appending until it is full
+        while (segments.size() > 1 && segments.firstEntry().getValue().getEnd() <= checkpoint) {
+            Segment segment = segments.pollFirstEntry().getValue();
+            segment.file.close();
+            if (!segment.path.delete()) {
+                throw new IOException("Unable to delete processed log segment " + segment.path.getAbsolutePath());
+            }
+        }
+    }
+
+    private File segmentFile(long base) {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+    }
+
+    private int writeRecord(RandomAccessFile file, long position, byte[] record) throws IOException {
+        file.seek(position);
+        file.writeInt(record.length);
+        file.write(record);
+
+        if (syncWrites) {
+            file.getChannel().force(false);
+        }
+
+        return RECORD_HEADER_LENGTH + record.length;
+    }
+
+    private byte[] readRecord(RandomAccessFile file, long position) throws IOException {
+        file.seek(position);
+        byte[] record = new byte[file.readInt()];
+        file.readFully(record);
+        return record;
+    }
+
+    private static long findValidLength(RandomAccessFile file) throws IOException {
+        long length = file.length();
+        long position = 0;
+
+        while (position + RECORD_HEADER_LENGTH <= length) {
+            file.seek(position);
+            int recordLength = file.readInt();
+            if (recordLength < 0 || position + RECORD_HEADER_LENGTH + recordLength > length) {
+                break;
+            }
+            position += RECORD_HEADER_LENGTH + recordLength;
+        }
+
+        return position;
+    }
+
+    private static byte[] serialize(ForwardedRequest request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(request.getType().name());
+            out.writeUTF(request.getConfigName());
+            writeNullable(out, request.getTimestamp());
+
+            byte[] body = request.getBody().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(body.length);
+            out.write(body);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static ForwardedRequest deserialize(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            ForwardedRequest.Type type = ForwardedRequest.Type.valueOf(in.readUTF());
+            String configName = in.readUTF();
+            String timestamp = readNullable(in);
+
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+
+            return new ForwardedRequest(type, configName, timestamp, new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static class Segment {
+
+        private final long base;
+        private final File path;
+        private final RandomAccessFile file;
+        private long length;
+
+        Segment(long base, File path, RandomAccessFile file, long length) {
+            this.base = base;
+            this.path = path;
+            this.file = file;
+            this.length = length;
+        }
+
+        long getEnd() {
+            return base + length;
+        }
+    }
+
+    /**
+     * A request taken from the log, together with its offset.
+     */
+    public static class Entry {
+
+        private final long offset;
+        private final ForwardedRequest request;
+
+        public Entry(long offset, ForwardedRequest request) {
+            this.offset = offset;
+            this.request = request;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public ForwardedRequest getRequest() {
+            return request;
+        }
+    }
+}
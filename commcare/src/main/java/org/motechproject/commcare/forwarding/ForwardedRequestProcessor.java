@@ -0,0 +1,159 @@
+package org.motechproject.commcare.forwarding;
+
+import org.motechproject.commcare.config.Config;
+import org.motechproject.commcare.domain.CaseXml;
+import org.motechproject.commcare.domain.FormValueElement;
+import org.motechproject.commcare.events.CaseEvent;
+import org.motechproject.commcare.events.FullFormEvent;
+import org.motechproject.commcare.events.FullFormFailureEvent;
+import org.motechproject.commcare.events.MalformedFormStatusMessageEvent;
+import org.motechproject.commcare.events.constants.EventDataKeys;
+import org.motechproject.commcare.events.constants.EventSubjects;
+import org.motechproject.commcare.exception.CaseParserException;
+import org.motechproject.commcare.exception.ConfigurationNotFoundException;
+import org.motechproject.commcare.exception.FullFormParserException;
+import org.motechproject.commcare.parser.CaseParser;
+import org.motechproject.commcare.parser.FullFormParser;
+import org.motechproject.commcare.service.CommcareConfigService;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventRelay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import static org.motechproject.commcare.events.constants.EventDataKeys.FIELD_VALUES;
+
+/**
+ * Parses the raw data forwarded by CommCareHQ and publishes the resulting events. Used both directly by the
+ * forwarding endpoints and by the workers of the {@link ForwardedRequestQueue}.
+ */
+@Component
+public class ForwardedRequestProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ForwardedRequestProcessor.class);
+
+    private static final String FULL_DATA_EVENT = "full";
+    private static final String PARTIAL_DATA_EVENT = "partial";
+
+    private EventRelay eventRelay;
+    private CommcareConfigService configService;
+
+    @Autowired
+    public ForwardedRequestProcessor(EventRelay eventRelay, CommcareConfigService configService) {
+        this.eventRelay = eventRelay;
+        this.configService = configService;
+    }
+
+    /**
+     * Parses the given {@code request} and publishes the resulting events. Errors other than a malformed body or
+     * a missing configuration, for example a failure to publish the events, are propagated to the caller, so that the
+     * request can be retried.
+     *
+     * @param request  the request to process
+     * @return true if the request was processed, false if its body was malformed or its configuration doesn't exist
+     */
+    public boolean process(ForwardedRequest request) {
+        Config config;
+        try {
+            config = configService.getByName(request.getConfigName());
+        } catch (ConfigurationNotFoundException e) {
+            LOGGER.error("Unable to process {}", request, e);
+            return false;
+        }
+
+        switch (request.getType()) {
+            case FORM:
+                return processForm(request.getBody(), request.getTimestamp(), config);
+            case CASE:
+                return processCase(request.getBody(), request.getTimestamp(), config);
+            default:
+                throw new IllegalArgumentException("Unsupported request type: " + request.getType());
+        }
+    }
+
+    /**
+     * Parses the given full form XML and publishes it as a {@link FullFormEvent}. If the form could not be parsed,
+     * a {@link FullFormFailureEvent} is published instead. Errors while publishing the event are propagated.
+     *
+     * @param body  the form XML
+     * @param receivedOn  the value of the "received-on" header
+     * @param config  the configuration for which the form was received
+     * @return true if the form was processed, false if it was malformed
+     */
+    public boolean processForm(String body, String receivedOn, Config config) {
+        FullFormParser parser = new FullFormParser(body);
+
+        FullFormEvent fullFormEvent;
+        try {
+            FormValueElement formValueElement = parser.parse();
+            fullFormEvent = new FullFormEvent(formValueElement, receivedOn, config.getName());
+        } catch (FullFormParserException | RuntimeException e) {
+            LOGGER.error("Error while receiving form from Commcare", e);
+            handleFormError(e, config);
+            return false;
+        }
+
+        eventRelay.sendEventMessage(fullFormEvent.toMotechEvent());
+        return true;
+    }
+
+    /**
+     * Parses the given case XML and publishes it as a {@link CaseEvent}, using the event strategy of the given
+     * configuration. If the case could not be parsed, a malformed case event is published instead.
+     *
+     * @param caseXml  the case XML
+     * @param serverModifiedOn  the value of the "server-modified-on" header
+     * @param config  the configuration for which the case was received
+     * @return true if the case was processed, false if it was malformed
+     */
+    public boolean processCase(String caseXml, String serverModifiedOn, Config config) {
+        CaseParser<CaseXml> parser = new CaseParser<>(CaseXml.class, caseXml);
+
+        CaseXml caseInstance;
+        try {
+            caseInstance = parser.parseCase();
+        } catch (CaseParserException e) {
+            MotechEvent motechEvent = new MotechEvent(
+                    EventSubjects.MALFORMED_CASE_EXCEPTION);
+            motechEvent.getParameters().put(EventDataKeys.MESSAGE,
+                    "Incoming case xml did not parse correctly");
+            eventRelay.sendEventMessage(motechEvent);
+            return false;
+        }
+
+        if (caseInstance != null) {
+
+            caseInstance.setServerModifiedOn(serverModifiedOn);
+            CaseEvent caseEvent = new CaseEvent(caseInstance.getCaseId());
+            caseEvent.setConfigName(config.getName());
+            caseEvent.setCaseType(caseInstance.getCaseType());
+
+            MotechEvent motechCaseEvent;
+            String caseEventStrategy = config.getEventStrategy();
+
+            if (caseEventStrategy.equals(FULL_DATA_EVENT)) {
+                caseEvent = CaseEvent.fromCaseXml(caseInstance, config.getName());
+                motechCaseEvent = caseEvent.toMotechEventWithData();
+                motechCaseEvent.getParameters().put(FIELD_VALUES, caseEvent.getFieldValues());
+            } else if (caseEventStrategy.equals(PARTIAL_DATA_EVENT)) {
+                motechCaseEvent = caseEvent.toMotechEventWithData();
+            } else {
+                motechCaseEvent = caseEvent.toMotechEventWithoutData();
+            }
+
+            eventRelay.sendEventMessage(motechCaseEvent);
+        }
+
+        return true;
+    }
+
+    private void handleFormError(Exception e, Config config) {
+        FullFormFailureEvent failureEvent = new FullFormFailureEvent(config.getName(), e.getMessage());
+        eventRelay.sendEventMessage(failureEvent.toMotechEvent());
+        // publish a status message in the Admin module
+        String msg = "Error while receiving a form from Commcare: " + e.getMessage();
+        MalformedFormStatusMessageEvent statusMessageEvent = new MalformedFormStatusMessageEvent(msg);
+        eventRelay.sendEventMessage(statusMessageEvent.toMotechEvent());
+    }
+}
@@ -0,0 +1,259 @@
+package org.motechproject.commcare.forwarding;
+
+import org.motechproject.commcare.exception.ForwardingQueueFullException;
+import org.motechproject.server.config.SettingsFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.motechproject.commcare.util.SettingsUtils.getIntProperty;
+import static org.motechproject.commcare.util.SettingsUtils.getLongProperty;
+import static org.motechproject.commcare.util.SettingsUtils.getProperty;
+
+/**
+ * Durable work queue for the data forwarded by CommCareHQ. The forwarding endpoints only append the raw requests to
+ * the {@link ForwardedRequestLog}, which allows acknowledging them immediately. A dispatcher thread takes the requests
+ * from the log and hands them over to a bounded pool of workers, which parse them and publish the events using the
+ * {@link ForwardedRequestProcessor}. Requests with malformed bodies are moved to the dead-letter log, requests that
+ * failed because of other errors are retried with an increasing delay. Requests that were not processed before
+ * shutdown are replayed on the next start. If the backlog of unprocessed requests grows
+ * beyond the configured size, new requests are rejected, so that CommCareHQ retries them later.
+ */
+@Component
+public class ForwardedRequestQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ForwardedRequestQueue.class);
+
+    private static final String ENABLED_KEY = "forwardingQueue.enabled";
+    private static final String DIRECTORY_KEY = "forwardingQueue.directory";
+    private static final String WORKERS_KEY = "forwardingQueue.workers";
+    private static final String MAX_BACKLOG_KEY = "forwardingQueue.maxBacklogBytes";
+    private static final String SYNC_WRITES_KEY = "forwardingQueue.syncWrites";
+
+    private static final int DEFAULT_WORKERS = 4;
+    private static final long DEFAULT_MAX_BACKLOG = 256L * 1024 * 1024;
+    private static final long POLL_TIMEOUT_SECONDS = 1;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000;
+
+    private SettingsFacade settingsFacade;
+    private ForwardedRequestProcessor processor;
+
+    private volatile boolean running;
+    private boolean enabled;
+    private long maxBacklog;
+    private ForwardedRequestLog log;
+    private ThreadPoolExecutor workers;
+    private Thread dispatcher;
+
+    @Autowired
+    public ForwardedRequestQueue(@Qualifier("commcareAPISettings") SettingsFacade settingsFacade,
+                                 ForwardedRequestProcessor processor) {
+        this.settingsFacade = settingsFacade;
+        this.processor = processor;
+    }
+
+    /**
+     * Opens the log and starts processing the requests, beginning with the ones left unprocessed by the previous run.
+     * If the queue is disabled in the settings or the log can't be opened, the forwarding endpoints will process the
+     * requests synchronously.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        enabled = Boolean.parseBoolean(getProperty(settingsFacade, ENABLED_KEY, "false"));
+
+        if (!enabled) {
+            LOGGER.info("CommCare forwarding queue disabled, forwarded data will be processed synchronously");
+            return;
+        }
+
+        File directory = new File(getProperty(settingsFacade, DIRECTORY_KEY, defaultDirectory()));
+        try {
+            log = new ForwardedRequestLog(directory,
+                    Boolean.parseBoolean(getProperty(settingsFacade, SYNC_WRITES_KEY, "true")));
+        } catch (IOException e) {
+            LOGGER.error("Unable to open the CommCare forwarding queue in {}, forwarded data will be processed " +
+                    "synchronously", directory.getAbsolutePath(), e);
+            enabled = false;
+            return;
+        }
+
+        maxBacklog = getLongProperty(settingsFacade, MAX_BACKLOG_KEY, DEFAULT_MAX_BACKLOG);
+        int workerCount = getIntProperty(settingsFacade, WORKERS_KEY, DEFAULT_WORKERS);
+
+        // when all workers are busy, the dispatcher processes the request itself and stops reading from the log
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(workerCount * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        running = true;
+        dispatcher = new Thread(new Dispatcher(), "commcare-forwarding-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        LOGGER.info("CommCare forwarding queue started in {} with {} workers, {} bytes of backlog to replay",
+                directory.getAbsolutePath(), workerCount, log.getBacklog());
+    }
+
+    /**
+     * Stops the dispatcher and waits for the workers to finish the requests they are processing. Requests that were
+     * not processed will be replayed on the next start.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        dispatcher.interrupt();
+
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+            workers.shutdown();
+            if (!workers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("CommCare forwarding queue workers did not finish in time, unfinished requests will be " +
+                        "replayed on the next start");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            log.close();
+        } catch (IOException e) {
+            LOGGER.error("Error while closing the CommCare forwarding queue", e);
+        }
+    }
+
+    /**
+     * Checks whether the forwarded requests should be enqueued. If not, they should be processed synchronously.
+     *
+     * @return true if the queue is running, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled && running;
+    }
+
+    /**
+     * Durably stores the given {@code request} for asynchronous processing.
+     *
+     * @param request  the request to enqueue
+     * @throws ForwardingQueueFullException if the backlog of unprocessed requests is full
+     * @throws IOException if the request could not be stored
+     */
+    public void enqueue(ForwardedRequest request) throws ForwardingQueueFullException, IOException {
+        if (log.getBacklog() >= maxBacklog) {
+            throw new ForwardingQueueFullException(String.format("CommCare forwarding queue backlog exceeded %d " +
+                    "bytes, rejecting %s", maxBacklog, request));
+        }
+
+        log.append(request);
+    }
+
+    /**
+     * Moves the requests from the dead-letter log back to the queue, so that they get processed again.
+     *
+     * @return the number of replayed requests
+     * @throws IOException if the requests could not be moved
+     */
+    public int replayDeadLetters() throws IOException {
+        return log.replayDeadLetters();
+    }
+
+    /**
+     * Returns the number of bytes taken by requests that were not yet processed.
+     *
+     * @return the size of the backlog in bytes
+     */
+    public long getBacklog() {
+        return log == null ? 0 : log.getBacklog();
+    }
+
+    private void process(ForwardedRequestLog.Entry entry) {
+        ForwardedRequest request = entry.getRequest();
+
+        try {
+            Boolean processed = processWithRetries(request);
+            if (processed == null) {
+                LOGGER.warn("Stopped before {} could be processed, it will be replayed on the next start", request);
+                return;
+            }
+
+            if (!processed) {
+                LOGGER.warn("Moving {} to the dead-letter log {}", request, log.getDeadLetterFile().getAbsolutePath());
+                log.deadLetter(request);
+            }
+
+            log.complete(entry.getOffset());
+        } catch (IOException e) {
+            LOGGER.error("Error while updating the CommCare forwarding queue after processing {}", request, e);
+        }
+    }
+
+    // only malformed requests are dead-lettered, other errors are retried until the queue is stopped, so that for
+    // example an outage of the event system holds the workers and the backlog builds up instead of losing requests
+    private Boolean processWithRetries(ForwardedRequest request) {
+        long retryDelay = INITIAL_RETRY_DELAY_MILLIS;
+
+        while (true) {
+            try {
+                return processor.process(request);
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return null;
+                }
+                LOGGER.error("Error while processing {}, retrying in {} ms", request, retryDelay, e);
+            }
+
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+    }
+
+    private static String defaultDirectory() {
+        return new File(System.getProperty("user.home"), ".motech/commcare/forwarding-queue").getAbsolutePath();
+    }
+
+    private class Dispatcher implements Runnable {
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    final ForwardedRequestLog.Entry entry = log.take(POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+                    if (entry != null) {
+                        workers.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                process(entry);
+                            }
+                        });
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Error while reading from the CommCare forwarding queue", e);
+                }
+            }
+        }
+    }
+}
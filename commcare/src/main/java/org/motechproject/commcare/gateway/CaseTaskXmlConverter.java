@@ -3,6 +3,7 @@ package org.motechproject.commcare.gateway;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.io.naming.NoNameCoder;
 import com.thoughtworks.xstream.io.xml.DomDriver;
+import org.apache.commons.lang.StringEscapeUtils;
 import org.joda.time.DateTime;
 import org.motechproject.commcare.domain.CaseTask;
 import org.motechproject.commcare.domain.IndexTask;
@@ -65,6 +66,56 @@ public class CaseTaskXmlConverter {
         return convertToCloseXml(request);
     }
 
+    /**
+     * Serializes the given {@code task} into a single case block XML string, without the form envelope. Blocks
+     * created by this method can be combined into one submission using {@link #convertToCasesXml(List, String, String)}.
+     *
+     * @param task  the task to serialize
+     * @return the XML string of the case block, null if the case was malformed
+     */
+    public String convertToCaseBlock(CaseTask task) {
+        CaseRequest caseRequest = mapToCase(task);
+
+        try {
+            XStream xstream = mapEnvelope();
+            mapCaseFields(xstream, caseRequest);
+            xstream.alias("case", CaseRequest.class);
+
+            return xstream.toXML(caseRequest);
+        } catch (MalformedCaseXmlException e) {
+            sendMalformedCaseEvent(e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Wraps the given case blocks into a single form envelope, so that they can be submitted to CommCareHQ in one
+     * request.
+     *
+     * @param caseBlocks  the case blocks created with {@link #convertToCaseBlock(CaseTask)}
+     * @param xmlns  the namespace of the form, can be null
+     * @param userId  the ID of the user submitting the form
+     * @return the XML string
+     */
+    public String convertToCasesXml(List<String> caseBlocks, String xmlns, String userId) {
+        String now = DateTime.now().toString();
+        MetaElement metaElement = new MetaElement("http://openrosa.org/jr/xforms", UUID.randomUUID().toString(),
+                now, now, userId);
+
+        StringBuilder xml = new StringBuilder("<data");
+        if (xmlns != null) {
+            xml.append(" xmlns=\"").append(StringEscapeUtils.escapeXml(xmlns)).append('"');
+        }
+        xml.append(">\n").append(mapEnvelope().toXML(metaElement)).append('\n');
+
+        for (String caseBlock : caseBlocks) {
+            xml.append(caseBlock).append('\n');
+        }
+
+        return xml.append("</data>").toString();
+    }
+
     private CaseRequest mapToCloseCase(CaseTask task) {
         CaseRequest ccCase = createCase(task);
         CloseElement close = new CloseElement();
@@ -128,51 +179,58 @@ public class CaseTaskXmlConverter {
         try {
 
             XStream xstream = mapEnvelope();
-
-            if (request.getCcCase().getCreateElement() != null) {
-                xstream.registerConverter(new CreateElementConverter());
-                xstream.aliasField("create", CaseRequest.class, "createElement");
-            } else {
-                xstream.omitField(CaseRequest.class, "createElement");
-            }
-
-            if (request.getCcCase().getUpdateElement() != null) {
-                xstream.registerConverter(new UpdateElementConverter());
-                xstream.aliasField("update", CaseRequest.class, "updateElement");
-            } else {
-                xstream.omitField(CaseRequest.class, "updateElement");
-            }
-
-            IndexTask indexElement = request.getCcCase().getIndexElement();
-
-            if (indexElement != null && indexElement.getIndices().size() > 0) {
-                xstream.registerConverter(new IndexElementConverter());
-                xstream.aliasField("index", CaseRequest.class, "indexElement");
-            } else {
-                xstream.omitField(CaseRequest.class, "indexElement");
-            }
-
-            if (request.getCcCase().getCloseElement() != null) {
-                xstream.registerConverter(new CloseElementConverter());
-                xstream.aliasField("close", CaseRequest.class, "closeElement");
-            } else {
-                xstream.omitField(CaseRequest.class, "closeElement");
-            }
-
-            xstream.omitField(CaseRequest.class, "dataXmlns");
+            mapCaseFields(xstream, request.getCcCase());
 
             return xstream.toXML(request);
         } catch (MalformedCaseXmlException e) {
-            MotechEvent motechEvent = new MotechEvent(
-                    EventSubjects.MALFORMED_CASE_EXCEPTION);
-            motechEvent.getParameters().put(EventDataKeys.MESSAGE,
-                    e.getMessage());
-            eventRelay.sendEventMessage(motechEvent);
+            sendMalformedCaseEvent(e);
         }
 
         return null;
     }
 
+    private void mapCaseFields(XStream xstream, CaseRequest caseRequest) {
+        if (caseRequest.getCreateElement() != null) {
+            xstream.registerConverter(new CreateElementConverter());
+            xstream.aliasField("create", CaseRequest.class, "createElement");
+        } else {
+            xstream.omitField(CaseRequest.class, "createElement");
+        }
+
+        if (caseRequest.getUpdateElement() != null) {
+            xstream.registerConverter(new UpdateElementConverter());
+            xstream.aliasField("update", CaseRequest.class, "updateElement");
+        } else {
+            xstream.omitField(CaseRequest.class, "updateElement");
+        }
+
+        IndexTask indexElement = caseRequest.getIndexElement();
+
+        if (indexElement != null && indexElement.getIndices().size() > 0) {
+            xstream.registerConverter(new IndexElementConverter());
+            xstream.aliasField("index", CaseRequest.class, "indexElement");
+        } else {
+            xstream.omitField(CaseRequest.class, "indexElement");
+        }
+
+        if (caseRequest.getCloseElement() != null) {
+            xstream.registerConverter(new CloseElementConverter());
+            xstream.aliasField("close", CaseRequest.class, "closeElement");
+        } else {
+            xstream.omitField(CaseRequest.class, "closeElement");
+        }
+
+        xstream.omitField(CaseRequest.class, "dataXmlns");
+    }
+
+    private void sendMalformedCaseEvent(MalformedCaseXmlException e) {
+        MotechEvent motechEvent = new MotechEvent(
+                EventSubjects.MALFORMED_CASE_EXCEPTION);
+        motechEvent.getParameters().put(EventDataKeys.MESSAGE,
+                e.getMessage());
+        eventRelay.sendEventMessage(motechEvent);
+    }
+
     private XStream mapEnvelope() {
         XStream xstream = new XStream(new DomDriver("UTF-8", new NoNameCoder()));
 
@@ -0,0 +1,74 @@
+package org.motechproject.commcare.response;
+
+import org.motechproject.commcare.domain.CaseTask;
+
+/**
+ * Represents the result of uploading a single case as part of a bulk upload to CommCareHQ.
+ */
+public class CaseUploadResult {
+
+    private final CaseTask caseTask;
+    private final OpenRosaResponse response;
+    private final boolean successful;
+    private final String error;
+
+    /**
+     * Creates an upload result for the given {@code caseTask}.
+     *
+     * @param caseTask  the uploaded case task
+     * @param response  the response from CommCareHQ to the submission containing the case, null if the case was not
+     *                  submitted, for example because its case XML was malformed
+     * @param successful  whether the case was accepted by CommCareHQ
+     */
+    public CaseUploadResult(CaseTask caseTask, OpenRosaResponse response, boolean successful) {
+        this.caseTask = caseTask;
+        this.response = response;
+        this.successful = successful;
+        this.error = null;
+    }
+
+    /**
+     * Creates a failed upload result for the given {@code caseTask}, which couldn't be submitted because of an error,
+     * for example a connection failure.
+     *
+     * @param caseTask  the case task that was not uploaded
+     * @param error  the description of the error
+     */
+    public CaseUploadResult(CaseTask caseTask, String error) {
+        this.caseTask = caseTask;
+        this.response = null;
+        this.successful = false;
+        this.error = error;
+    }
+
+    /**
+     * Returns the uploaded case task. For a case task creating a new case without a case ID, this is a copy of the
+     * given case task with the generated ID set.
+     *
+     * @return the uploaded case task
+     */
+    public CaseTask getCaseTask() {
+        return caseTask;
+    }
+
+    public String getCaseId() {
+        return caseTask.getCaseId();
+    }
+
+    public OpenRosaResponse getResponse() {
+        return response;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * Returns the description of the error which prevented submitting the case.
+     *
+     * @return the error, null if the case was submitted or not submitted because its case XML was malformed
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,25 @@
+package org.motechproject.commcare.service;
+
+/**
+ * Keeps the applications stored in the MOTECH database in sync with the application structure on CommCareHQ. Instead
+ * of dropping and recreating all stored applications, only the applications that have changed are updated.
+ */
+public interface CommcareApplicationSyncService {
+
+    /**
+     * Fetches the application structure of the given configuration from CommCareHQ and compares it with the stored
+     * applications. New applications are created, removed applications are deleted and changed applications are
+     * updated. Unchanged applications are not touched.
+     *
+     * @param configName  the name of the configuration
+     * @return true if the modules of any application changed, meaning that the tasks channel must be updated
+     */
+    boolean synchronizeApplications(String configName);
+
+    /**
+     * Deletes all stored applications of the given configuration.
+     *
+     * @param configName  the name of the configuration
+     */
+    void deleteApplications(String configName);
+}
@@ -3,6 +3,7 @@ package org.motechproject.commcare.service;
 import org.motechproject.commcare.domain.CaseInfo;
 import org.motechproject.commcare.domain.CaseTask;
 import org.motechproject.commcare.domain.CasesInfo;
+import org.motechproject.commcare.response.CaseUploadResult;
 import org.motechproject.commcare.response.OpenRosaResponse;
 
 import java.util.List;
@@ -186,4 +187,21 @@ public interface CommcareCaseService {
      * Same as {@link #uploadCase(CaseTask, String) uploadCase} but uses default Commcare configuration.
      */
     OpenRosaResponse uploadCase(CaseTask caseTask);
+
+    /**
+     * Uploads multiple cases to CommCareHQ. The case blocks are packed into as few OpenRosa submissions as the
+     * configured size limits allow and the submissions are sent in parallel, with a limited concurrency. If a
+     * submission is rejected, each case it contained is retried as a separate submission. The given case tasks are not
+     * modified, the ID generated for a case task creating a new case without a case ID is returned in its result.
+     *
+     * @param caseTasks  the list of objects representing the case information and case actions
+     * @param configName  the name of the configuration used for connecting to CommcareHQ, null means default configuration
+     * @return the upload results, in the same order as the given case tasks
+     */
+    List<CaseUploadResult> uploadCases(List<CaseTask> caseTasks, String configName);
+
+    /**
+     * Same as {@link #uploadCases(List, String) uploadCases} but uses default Commcare configuration.
+     */
+    List<CaseUploadResult> uploadCases(List<CaseTask> caseTasks);
 }
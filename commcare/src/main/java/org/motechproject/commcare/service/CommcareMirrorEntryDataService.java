@@ -0,0 +1,61 @@
+package org.motechproject.commcare.service;
+
+import org.motechproject.commcare.domain.CommcareMirrorEntry;
+import org.motechproject.commcare.domain.CommcareMirrorType;
+import org.motechproject.mds.annotations.Lookup;
+import org.motechproject.mds.annotations.LookupField;
+import org.motechproject.mds.service.MotechDataService;
+
+import java.util.List;
+
+/**
+ * Data service for the {@link CommcareMirrorEntry} class. Provides methods for managing instances of said class.
+ */
+public interface CommcareMirrorEntryDataService extends MotechDataService<CommcareMirrorEntry> {
+
+    /**
+     * Returns the mirrored object of the given type and ID.
+     *
+     * @param configName  the name of the source configuration
+     * @param objectType  the type of the object
+     * @param objectId  the ID of the object
+     * @return the matching entry, null if it does not exist
+     */
+    @Lookup(name = "By Object Id")
+    CommcareMirrorEntry byObjectId(@LookupField(name = "configName") String configName,
+                                   @LookupField(name = "objectType") CommcareMirrorType objectType,
+                                   @LookupField(name = "objectId") String objectId);
+
+    /**
+     * Returns all mirrored objects of the given type and with the given parent.
+     *
+     * @param configName  the name of the source configuration
+     * @param objectType  the type of the objects
+     * @param parentId  the ID of the parent
+     * @return the list of matching entries
+     */
+    @Lookup(name = "By Parent Id")
+    List<CommcareMirrorEntry> byParentId(@LookupField(name = "configName") String configName,
+                                         @LookupField(name = "objectType") CommcareMirrorType objectType,
+                                         @LookupField(name = "parentId") String parentId);
+
+    /**
+     * Returns all mirrored objects of the given type.
+     *
+     * @param configName  the name of the source configuration
+     * @param objectType  the type of the objects
+     * @return the list of matching entries
+     */
+    @Lookup(name = "By Object Type")
+    List<CommcareMirrorEntry> byObjectType(@LookupField(name = "configName") String configName,
+                                           @LookupField(name = "objectType") CommcareMirrorType objectType);
+
+    /**
+     * Returns all mirrored objects of the given configuration.
+     *
+     * @param configName  the name of the source configuration
+     * @return the list of matching entries
+     */
+    @Lookup(name = "By Source configuration")
+    List<CommcareMirrorEntry> bySourceConfiguration(@LookupField(name = "configName") String configName);
+}
@@ -0,0 +1,107 @@
+package org.motechproject.commcare.service;
+
+import org.motechproject.commcare.domain.CommcareFixture;
+import org.motechproject.commcare.domain.CommcareLocation;
+import org.motechproject.commcare.domain.CommcareUser;
+
+import java.util.List;
+
+/**
+ * Local mirror of the CommCare users, locations and fixtures. The mirror is refreshed in the background by fetching
+ * all pages of the data from CommCareHQ, so that lookups can be served from the MOTECH database instead of making
+ * remote calls. All lookup methods return null (or an empty list) if the object is not mirrored.
+ */
+public interface CommcareMirrorService {
+
+    /**
+     * Checks whether the mirror is enabled and the data of the given configuration has been mirrored at least once.
+     *
+     * @param configName  the name of the configuration, null means the default configuration
+     * @return true if the lookups for the given configuration can be served from the mirror
+     */
+    boolean isMirrored(String configName);
+
+    /**
+     * Fetches all users, locations and fixtures of the given configuration from CommCareHQ and updates the mirror.
+     * Only the objects that have changed are written. If any page could not be fetched, the objects of that type are
+     * left untouched.
+     *
+     * @param configName  the name of the configuration, null means the default configuration
+     * @return true if all types of objects were refreshed
+     */
+    boolean refresh(String configName);
+
+    /**
+     * Refreshes the mirror of all configurations.
+     */
+    void refreshAll();
+
+    /**
+     * Removes all mirrored objects of the given configuration.
+     *
+     * @param configName  the name of the configuration
+     */
+    void delete(String configName);
+
+    /**
+     * Returns the mirrored user with the given ID.
+     *
+     * @param id  the ID of the user
+     * @param configName  the name of the configuration, null means the default configuration
+     * @return the user, null if it is not mirrored
+     */
+    CommcareUser getUser(String id, String configName);
+
+    /**
+     * Returns all mirrored users.
+     *
+     * @param configName  the name of the configuration, null means the default configuration
+     * @return the list of users
+     */
+    List<CommcareUser> getUsers(String configName);
+
+    /**
+     * Returns the mirrored location with the given ID.
+     *
+     * @param id  the ID of the location
+     * @param configName  the name of the configuration, null means the default configuration
+     * @return the location, null if it is not mirrored
+     */
+    CommcareLocation getLocation(String id, String configName);
+
+    /**
+     * Returns the mirrored locations whose parent is the location with the given ID.
+     *
+     * @param parentId  the ID of the parent location, null for the top level locations
+     * @param configName  the name of the configuration, null means the default configuration
+     * @return the list of child locations
+     */
+    List<CommcareLocation> getChildLocations(String parentId, String configName);
+
+    /**
+     * Walks the location hierarchy from the location with the given ID up to the top level location.
+     *
+     * @param id  the ID of the location
+     * @param configName  the name of the configuration, null means the default configuration
+     * @return the location followed by its ancestors, empty list if the location is not mirrored
+     */
+    List<CommcareLocation> getLocationAncestry(String id, String configName);
+
+    /**
+     * Returns the mirrored fixture item with the given ID.
+     *
+     * @param id  the ID of the fixture item
+     * @param configName  the name of the configuration, null means the default configuration
+     * @return the fixture item, null if it is not mirrored
+     */
+    CommcareFixture getFixture(String id, String configName);
+
+    /**
+     * Returns the mirrored fixture items of the given type.
+     *
+     * @param fixtureType  the fixture type
+     * @param configName  the name of the configuration, null means the default configuration
+     * @return the list of fixture items
+     */
+    List<CommcareFixture> getFixtures(String fixtureType, String configName);
+}
@@ -9,7 +9,8 @@ import java.util.Set;
 /**
  * The <code>CommcareSchemaService</code> is responsible for retrieving
  * CommCare schemas from MOTECH database. The important point is that implementers
- * should NOT query CommCareHQ for data, but rather use current, local copy of the data.
+ * should NOT query CommCareHQ for data, but rather use current, local copy of the data. The schemas read from the
+ * database may be cached, so the cache must be invalidated whenever the stored applications change.
  */
 public interface CommcareSchemaService {
 
@@ -35,4 +36,16 @@ public interface CommcareSchemaService {
      * Same as {@link #getAllCaseTypes(String) getAllCaseTypes} but uses default CommcareHQ configuration.
      */
     Map<String, Set<String>> getAllCaseTypes();
+
+    /**
+     * Drops the cached schemas of the given configuration, so that they are read from the database on the next access.
+     *
+     * @param configName  the name of the configuration
+     */
+    void invalidate(String configName);
+
+    /**
+     * Drops the cached schemas of all configurations.
+     */
+    void invalidateAll();
 }
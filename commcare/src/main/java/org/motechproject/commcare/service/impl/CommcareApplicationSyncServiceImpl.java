@@ -0,0 +1,100 @@
+package org.motechproject.commcare.service.impl;
+
+import org.motechproject.commcare.domain.CommcareApplicationJson;
+import org.motechproject.commcare.service.CommcareAppStructureService;
+import org.motechproject.commcare.service.CommcareApplicationDataService;
+import org.motechproject.commcare.service.CommcareApplicationSyncService;
+import org.motechproject.commcare.service.CommcareSchemaService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+@Service
+public class CommcareApplicationSyncServiceImpl implements CommcareApplicationSyncService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommcareApplicationSyncServiceImpl.class);
+
+    private CommcareAppStructureService appStructureService;
+
+    private CommcareApplicationDataService commcareApplicationDataService;
+
+    private CommcareSchemaService schemaService;
+
+    @Autowired
+    public CommcareApplicationSyncServiceImpl(CommcareAppStructureService appStructureService,
+                                              CommcareApplicationDataService commcareApplicationDataService,
+                                              CommcareSchemaService schemaService) {
+        this.appStructureService = appStructureService;
+        this.commcareApplicationDataService = commcareApplicationDataService;
+        this.schemaService = schemaService;
+    }
+
+    @Override
+    @Transactional
+    public boolean synchronizeApplications(String configName) {
+        List<CommcareApplicationJson> serverApps = appStructureService.getAllApplications(configName);
+        Map<String, CommcareApplicationJson> storedApps = new LinkedHashMap<>();
+
+        for (CommcareApplicationJson storedApp : commcareApplicationDataService.bySourceConfiguration(configName)) {
+            if (storedApps.containsKey(storedApp.getCommcareAppId())) {
+                commcareApplicationDataService.delete(storedApp);
+            } else {
+                storedApps.put(storedApp.getCommcareAppId(), storedApp);
+            }
+        }
+
+        int created = 0;
+        int updated = 0;
+        boolean modulesChanged = false;
+
+        for (CommcareApplicationJson serverApp : serverApps) {
+            serverApp.setConfigName(configName);
+            CommcareApplicationJson storedApp = storedApps.remove(serverApp.getCommcareAppId());
+
+            if (storedApp == null) {
+                commcareApplicationDataService.create(serverApp);
+                created++;
+                modulesChanged = true;
+            } else if (!storedApp.equals(serverApp)) {
+                modulesChanged |= !Objects.equals(storedApp.getSerializedModules(), serverApp.getSerializedModules());
+
+                storedApp.setApplicationName(serverApp.getApplicationName());
+                storedApp.setResourceUri(serverApp.getResourceUri());
+                storedApp.setModules(serverApp.getModules());
+                commcareApplicationDataService.update(storedApp);
+                updated++;
+            }
+        }
+
+        for (CommcareApplicationJson removedApp : storedApps.values()) {
+            commcareApplicationDataService.delete(removedApp);
+            modulesChanged = true;
+        }
+
+        LOGGER.info("Synchronized applications of configuration {}: {} created, {} updated, {} deleted", configName,
+                created, updated, storedApps.size());
+
+        if (modulesChanged) {
+            schemaService.invalidate(configName);
+        }
+
+        return modulesChanged;
+    }
+
+    @Override
+    @Transactional
+    public void deleteApplications(String configName) {
+        for (CommcareApplicationJson application : commcareApplicationDataService.bySourceConfiguration(configName)) {
+            commcareApplicationDataService.delete(application);
+        }
+
+        schemaService.invalidate(configName);
+    }
+}
@@ -1,7 +1,9 @@
 package org.motechproject.commcare.service.impl;
 
 import com.google.gson.reflect.TypeToken;
+import org.apache.commons.httpclient.HttpStatus;
 import org.motechproject.commcare.client.CommCareAPIHttpClient;
+import org.motechproject.commcare.config.AccountConfig;
 import org.motechproject.commcare.config.Config;
 import org.motechproject.commcare.domain.CaseInfo;
 import org.motechproject.commcare.domain.CaseJson;
@@ -13,26 +15,54 @@ import org.motechproject.commcare.domain.CommcareMetadataJson;
 import org.motechproject.commcare.exception.OpenRosaParserException;
 import org.motechproject.commcare.gateway.CaseTaskXmlConverter;
 import org.motechproject.commcare.request.json.CaseRequest;
+import org.motechproject.commcare.response.CaseUploadResult;
 import org.motechproject.commcare.response.OpenRosaResponse;
 import org.motechproject.commcare.service.CommcareCaseService;
 import org.motechproject.commcare.service.CommcareConfigService;
 import org.motechproject.commons.api.json.MotechJsonReader;
+import org.motechproject.server.config.SettingsFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.motechproject.commcare.util.SettingsUtils.getIntProperty;
 
 @Service
 public class CommcareCaseServiceImpl implements CommcareCaseService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CommcareCaseServiceImpl.class);
 
+    private static final String CASE_UPLOAD_MAX_CASES_KEY = "caseUpload.maxCasesPerSubmission";
+    private static final String CASE_UPLOAD_MAX_LENGTH_KEY = "caseUpload.maxSubmissionLength";
+    private static final String CASE_UPLOAD_CONCURRENCY_KEY = "caseUpload.concurrency";
+
+    private static final int DEFAULT_MAX_CASES_PER_SUBMISSION = 100;
+    private static final int DEFAULT_MAX_SUBMISSION_LENGTH = 1024 * 1024;
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    private static final String SUBMIT_ERROR_NATURE = "submit_error";
+    private static final String PROCESSING_FAILURE_NATURE = "processing_failure";
+
     private CaseTaskXmlConverter converter;
 
     private MotechJsonReader motechJsonReader;
@@ -41,15 +71,53 @@ public class CommcareCaseServiceImpl implements CommcareCaseService {
 
     private CommcareConfigService configService;
 
+    private SettingsFacade settingsFacade;
+
+    private volatile ExecutorService uploadExecutor;
+
     @Autowired
     public CommcareCaseServiceImpl(CaseTaskXmlConverter converter, CommCareAPIHttpClient commcareHttpClient,
-                                   CommcareConfigService configService) {
+                                   CommcareConfigService configService,
+                                   @Qualifier("commcareAPISettings") SettingsFacade settingsFacade) {
         this.converter = converter;
         this.commcareHttpClient = commcareHttpClient;
         this.configService = configService;
+        this.settingsFacade = settingsFacade;
         this.motechJsonReader = new MotechJsonReader();
     }
 
+    /**
+     * Starts the pool of threads used for sending the submissions of bulk case uploads.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (uploadExecutor == null) {
+            int concurrency = getIntProperty(settingsFacade, CASE_UPLOAD_CONCURRENCY_KEY, DEFAULT_CONCURRENCY);
+            uploadExecutor = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "commcare-case-upload-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops the pool of threads used for bulk case uploads. Until the service is started again, the submissions
+     * are sent one by one from the calling thread.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdownNow();
+            uploadExecutor = null;
+        }
+    }
+
     @Override
     public CaseInfo getCaseByCaseId(String caseId, String configName) {
         String response = commcareHttpClient.singleCaseRequest(configService.getByName(configName).getAccountConfig(), caseId);
@@ -176,6 +244,25 @@ public class CommcareCaseServiceImpl implements CommcareCaseService {
         return response;
     }
 
+    @Override
+    public List<CaseUploadResult> uploadCases(List<CaseTask> caseTasks, String configName) {
+        AccountConfig accountConfig = configService.getByName(configName).getAccountConfig();
+        CaseUploadResult[] results = new CaseUploadResult[caseTasks.size()];
+
+        List<CaseSubmission> submissions = prepareSubmissions(caseTasks, results);
+
+        if (!submissions.isEmpty()) {
+            sendSubmissions(accountConfig, submissions, results);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    @Override
+    public List<CaseUploadResult> uploadCases(List<CaseTask> caseTasks) {
+        return uploadCases(caseTasks, null);
+    }
+
     @Override
     public CaseInfo getCaseByCaseId(String caseId) {
         return getCaseByCaseId(caseId, null);
@@ -229,6 +316,161 @@ public class CommcareCaseServiceImpl implements CommcareCaseService {
         return uploadCase(caseTask, null);
     }
 
+    private List<CaseSubmission> prepareSubmissions(List<CaseTask> caseTasks, CaseUploadResult[] results) {
+        int maxCases = getIntProperty(settingsFacade, CASE_UPLOAD_MAX_CASES_KEY, DEFAULT_MAX_CASES_PER_SUBMISSION);
+        int maxLength = getIntProperty(settingsFacade, CASE_UPLOAD_MAX_LENGTH_KEY, DEFAULT_MAX_SUBMISSION_LENGTH);
+
+        List<CaseSubmission> submissions = new ArrayList<>();
+        // cases are grouped by form namespace and user, since those are stored on the submission level
+        Map<String, CaseSubmission> openSubmissions = new LinkedHashMap<>();
+
+        for (int i = 0; i < caseTasks.size(); i++) {
+            CaseTask caseTask = caseTasks.get(i);
+
+            if (caseTask.getCreateTask() != null && caseTask.getCaseId() == null) {
+                // the generated ID is returned in the result, the case task of the caller is left unchanged
+                caseTask = withCaseId(caseTask, UUID.randomUUID().toString());
+            }
+
+            String caseBlock = converter.convertToCaseBlock(caseTask);
+            if (caseBlock == null) {
+                results[i] = new CaseUploadResult(caseTask, null, false);
+                continue;
+            }
+
+            String key = caseTask.getXmlns() + "|" + caseTask.getUserId();
+            CaseSubmission submission = openSubmissions.get(key);
+
+            if (submission != null && (submission.size() >= maxCases || submission.length + caseBlock.length() > maxLength)) {
+                submission = null;
+            }
+            if (submission == null) {
+                submission = new CaseSubmission(caseTask.getXmlns(), caseTask.getUserId());
+                submissions.add(submission);
+                openSubmissions.put(key, submission);
+            }
+
+            submission.add(i, caseTask, caseBlock);
+        }
+
+        return submissions;
+    }
+
+    private CaseTask withCaseId(CaseTask caseTask, String caseId) {
+        CaseTask copy = new CaseTask();
+        copy.setCreateTask(caseTask.getCreateTask());
+        copy.setUpdateTask(caseTask.getUpdateTask());
+        copy.setIndexTask(caseTask.getIndexTask());
+        copy.setCloseTask(caseTask.getCloseTask());
+        copy.setCaseId(caseId);
+        copy.setUserId(caseTask.getUserId());
+        copy.setDateModified(caseTask.getDateModified());
+        copy.setXmlns(caseTask.getXmlns());
+        return copy;
+    }
+
+    private void sendSubmissions(final AccountConfig accountConfig, List<CaseSubmission> submissions,
+                                 final CaseUploadResult[] results) {
+        ExecutorService executor = uploadExecutor;
+
+        if (executor == null || submissions.size() == 1) {
+            for (CaseSubmission submission : submissions) {
+                sendSubmission(accountConfig, submission, results);
+            }
+            return;
+        }
+
+        List<Callable<Void>> calls = new ArrayList<>(submissions.size());
+        for (final CaseSubmission submission : submissions) {
+            calls.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    sendSubmission(accountConfig, submission, results);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> future : executor.invokeAll(calls)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while uploading cases to CommCareHQ", e);
+        } catch (ExecutionException e) {
+            // sendSubmission records its own failures, the cases without a result are marked as failed below
+            LOGGER.error("Error while uploading cases to CommCareHQ", e.getCause());
+        }
+
+        for (CaseSubmission submission : submissions) {
+            for (int i = 0; i < submission.size(); i++) {
+                if (results[submission.indexes.get(i)] == null) {
+                    results[submission.indexes.get(i)] = new CaseUploadResult(submission.caseTasks.get(i),
+                            "The case was not submitted");
+                }
+            }
+        }
+    }
+
+    private void sendSubmission(AccountConfig accountConfig, CaseSubmission submission, CaseUploadResult[] results) {
+        OpenRosaResponse response;
+        try {
+            response = submit(accountConfig, submission.caseBlocks, submission.xmlns, submission.userId);
+        } catch (RuntimeException e) {
+            LOGGER.error("Error while submitting {} cases to the Commcare server", submission.size(), e);
+            for (int i = 0; i < submission.size(); i++) {
+                results[submission.indexes.get(i)] = new CaseUploadResult(submission.caseTasks.get(i), e.toString());
+            }
+            return;
+        }
+
+        if (isSuccessful(response) || submission.size() == 1) {
+            for (int i = 0; i < submission.size(); i++) {
+                results[submission.indexes.get(i)] = new CaseUploadResult(submission.caseTasks.get(i), response,
+                        isSuccessful(response));
+            }
+            return;
+        }
+
+        LOGGER.warn("Submission of {} cases was rejected by the Commcare server, retrying each case separately",
+                submission.size());
+
+        for (int i = 0; i < submission.size(); i++) {
+            CaseTask caseTask = submission.caseTasks.get(i);
+            try {
+                OpenRosaResponse caseResponse = submit(accountConfig, submission.caseBlocks.subList(i, i + 1),
+                        submission.xmlns, submission.userId);
+                results[submission.indexes.get(i)] = new CaseUploadResult(caseTask, caseResponse,
+                        isSuccessful(caseResponse));
+            } catch (RuntimeException e) {
+                LOGGER.error("Error while submitting case {} to the Commcare server", caseTask.getCaseId(), e);
+                results[submission.indexes.get(i)] = new CaseUploadResult(caseTask, e.toString());
+            }
+        }
+    }
+
+    private OpenRosaResponse submit(AccountConfig accountConfig, List<String> caseBlocks, String xmlns, String userId) {
+        String fullXml = "<?xml version='1.0'?>\n" + converter.convertToCasesXml(caseBlocks, xmlns, userId);
+
+        LOGGER.debug("Sending {} cases to the Commcare server", caseBlocks.size());
+        try {
+            OpenRosaResponse response = commcareHttpClient.submissionRequest(accountConfig, fullXml);
+            LOGGER.debug("Received the following response from the Commcare server. Status: {}, Message: {}", response.getStatus(), response.getMessageText());
+            return response;
+        } catch (OpenRosaParserException e) {
+            LOGGER.error("Failed to parse response from the CommCare server.", e);
+            return null;
+        }
+    }
+
+    private boolean isSuccessful(OpenRosaResponse response) {
+        return response != null && response.getStatus() >= HttpStatus.SC_OK
+                && response.getStatus() < HttpStatus.SC_MULTIPLE_CHOICES
+                && !SUBMIT_ERROR_NATURE.equals(response.getMessageNature())
+                && !PROCESSING_FAILURE_NATURE.equals(response.getMessageNature());
+    }
+
     private CaseRequest prepareCaseRequest(Integer pageSize, Integer pageNumber) {
         CaseRequest request = new CaseRequest();
         request.setLimit(pageSize);
@@ -320,4 +562,34 @@ public class CommcareCaseServiceImpl implements CommcareCaseService {
 
         return metadataInfo;
     }
+
+    /**
+     * Case blocks that will be sent to CommCareHQ in a single submission, together with the indexes of their case
+     * tasks on the uploaded list.
+     */
+    private static class CaseSubmission {
+
+        private final String xmlns;
+        private final String userId;
+        private final List<Integer> indexes = new ArrayList<>();
+        private final List<CaseTask> caseTasks = new ArrayList<>();
+        private final List<String> caseBlocks = new ArrayList<>();
+        private int length;
+
+        CaseSubmission(String xmlns, String userId) {
+            this.xmlns = xmlns;
+            this.userId = userId;
+        }
+
+        void add(int index, CaseTask caseTask, String caseBlock) {
+            indexes.add(index);
+            caseTasks.add(caseTask);
+            caseBlocks.add(caseBlock);
+            length += caseBlock.length();
+        }
+
+        int size() {
+            return caseBlocks.size();
+        }
+    }
 }
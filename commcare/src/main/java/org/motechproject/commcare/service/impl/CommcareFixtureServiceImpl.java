@@ -7,6 +7,7 @@ import org.motechproject.commcare.domain.CommcareFixture;
 import org.motechproject.commcare.domain.CommcareFixturesJson;
 import org.motechproject.commcare.service.CommcareConfigService;
 import org.motechproject.commcare.service.CommcareFixtureService;
+import org.motechproject.commcare.service.CommcareMirrorService;
 import org.motechproject.commons.api.json.MotechJsonReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,12 +24,15 @@ public class CommcareFixtureServiceImpl implements CommcareFixtureService {
 
     private CommCareAPIHttpClient commcareHttpClient;
     private CommcareConfigService configService;
+    private CommcareMirrorService mirrorService;
     private MotechJsonReader motechJsonReader;
 
     @Autowired
-    public CommcareFixtureServiceImpl(CommCareAPIHttpClient commcareHttpClient, CommcareConfigService configService) {
+    public CommcareFixtureServiceImpl(CommCareAPIHttpClient commcareHttpClient, CommcareConfigService configService,
+                                      CommcareMirrorService mirrorService) {
         this.commcareHttpClient = commcareHttpClient;
         this.configService = configService;
+        this.mirrorService = mirrorService;
         this.motechJsonReader = new MotechJsonReader();
     }
 
@@ -45,6 +49,13 @@ public class CommcareFixtureServiceImpl implements CommcareFixtureService {
 
     @Override
     public CommcareFixture getCommcareFixtureById(String id, String configName) {
+        if (mirrorService.isMirrored(configName)) {
+            CommcareFixture mirroredFixture = mirrorService.getFixture(id, configName);
+            if (mirroredFixture != null) {
+                return mirroredFixture;
+            }
+        }
+
         String returnJson = commcareHttpClient.fixtureRequest(configService.getByName(configName).getAccountConfig(), id);
 
         Type commcareFixtureType = new TypeToken<CommcareFixture>() { } .getType();
@@ -7,6 +7,7 @@ import org.motechproject.commcare.domain.CommcareLocation;
 import org.motechproject.commcare.domain.CommcareLocationsJson;
 import org.motechproject.commcare.service.CommcareConfigService;
 import org.motechproject.commcare.service.CommcareLocationService;
+import org.motechproject.commcare.service.CommcareMirrorService;
 import org.motechproject.commons.api.json.MotechJsonReader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -23,15 +24,26 @@ public class CommcareLocationServiceImpl implements CommcareLocationService {
 
     private CommcareConfigService configService;
 
+    private CommcareMirrorService mirrorService;
+
     @Autowired
-    public CommcareLocationServiceImpl(CommCareAPIHttpClient commcareHttpClient, CommcareConfigService configService) {
+    public CommcareLocationServiceImpl(CommCareAPIHttpClient commcareHttpClient, CommcareConfigService configService,
+                                       CommcareMirrorService mirrorService) {
         this.commcareHttpClient = commcareHttpClient;
         this.configService = configService;
+        this.mirrorService = mirrorService;
         this.motechJsonReader = new MotechJsonReader();
     }
 
     @Override
     public CommcareLocation getCommcareLocationById(String id, String configName) {
+        if (mirrorService.isMirrored(configName)) {
+            CommcareLocation mirroredLocation = mirrorService.getLocation(id, configName);
+            if (mirroredLocation != null) {
+                return mirroredLocation;
+            }
+        }
+
         String response = commcareHttpClient.locationRequest(getAccountConfig(configName), id);
         Type commcareLocationType = new TypeToken<CommcareLocation>() {
         } .getType();
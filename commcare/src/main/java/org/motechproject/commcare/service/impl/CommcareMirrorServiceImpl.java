@@ -0,0 +1,578 @@
+package org.motechproject.commcare.service.impl;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.commcare.client.CommCareAPIHttpClient;
+import org.motechproject.commcare.config.AccountConfig;
+import org.motechproject.commcare.config.Config;
+import org.motechproject.commcare.domain.CommcareFixture;
+import org.motechproject.commcare.domain.CommcareFixturesJson;
+import org.motechproject.commcare.domain.CommcareLocation;
+import org.motechproject.commcare.domain.CommcareLocationsJson;
+import org.motechproject.commcare.domain.CommcareMirrorEntry;
+import org.motechproject.commcare.domain.CommcareMirrorType;
+import org.motechproject.commcare.domain.CommcareUser;
+import org.motechproject.commcare.domain.CommcareUsersJson;
+import org.motechproject.commcare.service.CommcareConfigService;
+import org.motechproject.commcare.service.CommcareMirrorEntryDataService;
+import org.motechproject.commcare.service.CommcareMirrorService;
+import org.motechproject.commons.api.json.MotechJsonReader;
+import org.motechproject.server.config.SettingsFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.motechproject.commcare.util.SettingsUtils.getIntProperty;
+
+/**
+ * Implementation of the {@link CommcareMirrorService}. The first page of each type of objects is fetched to learn the
+ * total number of objects, the remaining pages are then fetched concurrently by a bounded number of threads. The
+ * fetched objects are compared with the stored ones, so that only new, changed and removed objects are written to the
+ * database, the changes of each type of objects in a single transaction. When enabled in the settings, the mirror of
+ * all configurations is refreshed on a fixed schedule.
+ */
+@Service
+public class CommcareMirrorServiceImpl implements CommcareMirrorService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommcareMirrorServiceImpl.class);
+
+    private static final String MIRROR_ENABLED_KEY = "mirror.enabled";
+    private static final String MIRROR_PAGE_SIZE_KEY = "mirror.pageSize";
+    private static final String MIRROR_CONCURRENCY_KEY = "mirror.concurrency";
+    private static final String MIRROR_REFRESH_INTERVAL_KEY = "mirror.refreshIntervalMinutes";
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int DEFAULT_REFRESH_INTERVAL = 60;
+    private static final int INITIAL_DELAY_MINUTES = 1;
+    private static final int MAX_ANCESTRY_DEPTH = 64;
+
+    private static final String TOTAL_COUNT = "total_count";
+
+    private CommCareAPIHttpClient commcareHttpClient;
+
+    private CommcareConfigService configService;
+
+    private CommcareMirrorEntryDataService mirrorEntryDataService;
+
+    private SettingsFacade settingsFacade;
+
+    private MotechJsonReader motechJsonReader;
+
+    private Gson gson;
+
+    private final Set<String> mirroredConfigs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile ExecutorService fetchExecutor;
+
+    @Autowired
+    public CommcareMirrorServiceImpl(CommCareAPIHttpClient commcareHttpClient, CommcareConfigService configService,
+                                     CommcareMirrorEntryDataService mirrorEntryDataService,
+                                     @Qualifier("commcareAPISettings") SettingsFacade settingsFacade) {
+        this.commcareHttpClient = commcareHttpClient;
+        this.configService = configService;
+        this.mirrorEntryDataService = mirrorEntryDataService;
+        this.settingsFacade = settingsFacade;
+        this.motechJsonReader = new MotechJsonReader();
+        this.gson = new Gson();
+    }
+
+    /**
+     * Starts the threads fetching the pages of objects and schedules the periodic refresh of the mirror, if it is
+     * enabled in the settings.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (fetchExecutor == null) {
+            int concurrency = getIntProperty(settingsFacade, MIRROR_CONCURRENCY_KEY, DEFAULT_CONCURRENCY);
+            fetchExecutor = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "commcare-mirror-fetch-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        if (!isEnabled()) {
+            LOGGER.info("CommCare mirror disabled, users, locations and fixtures will be fetched from CommCareHQ");
+            return;
+        }
+
+        int interval = getIntProperty(settingsFacade, MIRROR_REFRESH_INTERVAL_KEY, DEFAULT_REFRESH_INTERVAL);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "commcare-mirror-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refreshAll();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Error while refreshing the CommCare mirror", e);
+                }
+            }
+        }, INITIAL_DELAY_MINUTES, interval, TimeUnit.MINUTES);
+
+        LOGGER.info("CommCare mirror will be refreshed every {} minutes", interval);
+    }
+
+    /**
+     * Stops the periodic refresh of the mirror and the threads fetching the pages of objects.
+     */
+    @PreDestroy
+    public void stop() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+
+        // not holding the lock, a refresh in progress is interrupted instead of being waited for
+        ExecutorService executor = fetchExecutor;
+        if (executor != null) {
+            fetchExecutor = null;
+            for (Runnable pending : executor.shutdownNow()) {
+                // cancelled, so that a refresh waiting for the pages which will never be fetched doesn't hang
+                if (pending instanceof Future) {
+                    ((Future<?>) pending).cancel(false);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isMirrored(String configName) {
+        String resolvedConfigName = resolveConfigName(configName);
+        return resolvedConfigName != null && isEnabled() && mirroredConfigs.contains(resolvedConfigName);
+    }
+
+    @Override
+    public synchronized boolean refresh(String configName) {
+        Config config = configService.getByName(configName);
+        AccountConfig accountConfig = config.getAccountConfig();
+
+        boolean refreshed = true;
+        for (MirroredType<?> type : mirroredTypes()) {
+            refreshed &= refresh(config.getName(), accountConfig, type);
+        }
+
+        if (refreshed) {
+            mirroredConfigs.add(config.getName());
+        }
+
+        return refreshed;
+    }
+
+    @Override
+    public void refreshAll() {
+        for (Config config : configService.getConfigs().getConfigs()) {
+            refresh(config.getName());
+        }
+    }
+
+    @Override
+    public synchronized void delete(final String configName) {
+        mirroredConfigs.remove(configName);
+
+        mirrorEntryDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                for (CommcareMirrorEntry entry : mirrorEntryDataService.bySourceConfiguration(configName)) {
+                    mirrorEntryDataService.delete(entry);
+                }
+            }
+        });
+    }
+
+    @Override
+    public CommcareUser getUser(String id, String configName) {
+        return deserialize(mirrorEntryDataService.byObjectId(resolveConfigName(configName), CommcareMirrorType.USER,
+                id), CommcareUser.class);
+    }
+
+    @Override
+    public List<CommcareUser> getUsers(String configName) {
+        return deserialize(mirrorEntryDataService.byObjectType(resolveConfigName(configName), CommcareMirrorType.USER),
+                CommcareUser.class);
+    }
+
+    @Override
+    public CommcareLocation getLocation(String id, String configName) {
+        return deserialize(mirrorEntryDataService.byObjectId(resolveConfigName(configName), CommcareMirrorType.LOCATION,
+                id), CommcareLocation.class);
+    }
+
+    @Override
+    public List<CommcareLocation> getChildLocations(String parentId, String configName) {
+        return deserialize(mirrorEntryDataService.byParentId(resolveConfigName(configName), CommcareMirrorType.LOCATION,
+                parentId), CommcareLocation.class);
+    }
+
+    @Override
+    public List<CommcareLocation> getLocationAncestry(String id, String configName) {
+        String resolvedConfigName = resolveConfigName(configName);
+        List<CommcareLocation> ancestry = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+
+        String currentId = id;
+        while (currentId != null && visited.add(currentId) && ancestry.size() < MAX_ANCESTRY_DEPTH) {
+            CommcareMirrorEntry entry = mirrorEntryDataService.byObjectId(resolvedConfigName,
+                    CommcareMirrorType.LOCATION, currentId);
+            if (entry == null) {
+                break;
+            }
+
+            ancestry.add(deserialize(entry, CommcareLocation.class));
+            currentId = entry.getParentId();
+        }
+
+        return ancestry;
+    }
+
+    @Override
+    public CommcareFixture getFixture(String id, String configName) {
+        return deserialize(mirrorEntryDataService.byObjectId(resolveConfigName(configName), CommcareMirrorType.FIXTURE,
+                id), CommcareFixture.class);
+    }
+
+    @Override
+    public List<CommcareFixture> getFixtures(String fixtureType, String configName) {
+        return deserialize(mirrorEntryDataService.byParentId(resolveConfigName(configName), CommcareMirrorType.FIXTURE,
+                fixtureType), CommcareFixture.class);
+    }
+
+    private <T> boolean refresh(final String configName, AccountConfig accountConfig, final MirroredType<T> type) {
+        final List<T> objects = fetchAll(accountConfig, type);
+
+        if (objects == null) {
+            LOGGER.warn("Unable to fetch all {} objects of configuration {} from CommCareHQ, "
+                    + "the mirror was not updated", type.getType(), configName);
+            return false;
+        }
+
+        mirrorEntryDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                updateEntries(configName, type, objects);
+            }
+        });
+
+        return true;
+    }
+
+    private <T> void updateEntries(String configName, MirroredType<T> type, List<T> objects) {
+        Map<String, CommcareMirrorEntry> storedEntries = new LinkedHashMap<>();
+        for (CommcareMirrorEntry entry : mirrorEntryDataService.byObjectType(configName, type.getType())) {
+            storedEntries.put(entry.getObjectId(), entry);
+        }
+
+        Set<String> fetchedIds = new HashSet<>();
+        int created = 0;
+        int updated = 0;
+
+        for (T object : objects) {
+            String id = type.getId(object);
+            // offset based paging may return the same object twice if the data changes while it's being fetched
+            if (StringUtils.isEmpty(id) || !fetchedIds.add(id)) {
+                continue;
+            }
+
+            CommcareMirrorEntry entry = new CommcareMirrorEntry(configName, type.getType(), id,
+                    type.getParentId(object), gson.toJson(object));
+            CommcareMirrorEntry storedEntry = storedEntries.remove(id);
+
+            if (storedEntry == null) {
+                mirrorEntryDataService.create(entry);
+                created++;
+            } else if (!storedEntry.equals(entry)) {
+                storedEntry.setParentId(entry.getParentId());
+                storedEntry.setSerializedObject(entry.getSerializedObject());
+                mirrorEntryDataService.update(storedEntry);
+                updated++;
+            }
+        }
+
+        for (CommcareMirrorEntry removedEntry : storedEntries.values()) {
+            mirrorEntryDataService.delete(removedEntry);
+        }
+
+        LOGGER.info("Refreshed {} mirror of configuration {}: {} fetched, {} created, {} updated, {} deleted",
+                type.getType(), configName, fetchedIds.size(), created, updated, storedEntries.size());
+    }
+
+    private <T> List<T> fetchAll(final AccountConfig accountConfig, final MirroredType<T> type) {
+        final int pageSize = getIntProperty(settingsFacade, MIRROR_PAGE_SIZE_KEY, DEFAULT_PAGE_SIZE);
+
+        Page<T> firstPage = fetchPage(accountConfig, type, pageSize, 1);
+        if (firstPage == null) {
+            return null;
+        }
+
+        List<T> objects = new ArrayList<>(Math.max(firstPage.totalCount, firstPage.objects.size()));
+        objects.addAll(firstPage.objects);
+
+        int pageCount = (firstPage.totalCount + pageSize - 1) / pageSize;
+        if (pageCount <= 1) {
+            return objects;
+        }
+
+        ExecutorService executor = fetchExecutor;
+
+        if (executor == null) {
+            for (int page = 2; page <= pageCount; page++) {
+                Page<T> nextPage = fetchPage(accountConfig, type, pageSize, page);
+                if (nextPage == null) {
+                    return null;
+                }
+                objects.addAll(nextPage.objects);
+            }
+            return objects;
+        }
+
+        List<Callable<Page<T>>> calls = new ArrayList<>(pageCount - 1);
+        for (int page = 2; page <= pageCount; page++) {
+            final int pageNumber = page;
+            calls.add(new Callable<Page<T>>() {
+                @Override
+                public Page<T> call() {
+                    return fetchPage(accountConfig, type, pageSize, pageNumber);
+                }
+            });
+        }
+
+        try {
+            for (Future<Page<T>> future : executor.invokeAll(calls)) {
+                Page<T> page = future.get();
+                if (page == null) {
+                    return null;
+                }
+                objects.addAll(page.objects);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            LOGGER.warn("Error while fetching {} objects from CommCareHQ", type.getType(), e.getCause());
+            return null;
+        } catch (RejectedExecutionException | CancellationException e) {
+            // the mirror service is being stopped
+            return null;
+        }
+
+        return objects;
+    }
+
+    private <T> Page<T> fetchPage(AccountConfig accountConfig, MirroredType<T> type, int pageSize, int pageNumber) {
+        String response = type.request(accountConfig, pageSize, pageNumber);
+
+        if (StringUtils.isBlank(response)) {
+            return null;
+        }
+
+        try {
+            return type.parse(response);
+        } catch (JsonParseException e) {
+            LOGGER.warn("Unable to parse page {} of {} objects from CommCareHQ", pageNumber, type.getType(), e);
+            return null;
+        }
+    }
+
+    private <T> T deserialize(CommcareMirrorEntry entry, Class<T> clazz) {
+        return entry == null ? null : gson.fromJson(entry.getSerializedObject(), clazz);
+    }
+
+    private <T> List<T> deserialize(List<CommcareMirrorEntry> entries, Class<T> clazz) {
+        List<T> objects = new ArrayList<>(entries.size());
+        for (CommcareMirrorEntry entry : entries) {
+            objects.add(deserialize(entry, clazz));
+        }
+        return objects;
+    }
+
+    private String resolveConfigName(String configName) {
+        if (configName != null) {
+            return configName;
+        }
+
+        Config defaultConfig = configService.getDefault();
+        return defaultConfig == null ? null : defaultConfig.getName();
+    }
+
+    private boolean isEnabled() {
+        return Boolean.parseBoolean(settingsFacade.getProperty(MIRROR_ENABLED_KEY));
+    }
+
+    private List<MirroredType<?>> mirroredTypes() {
+        List<MirroredType<?>> types = new ArrayList<>();
+
+        types.add(new MirroredType<CommcareUser>(CommcareMirrorType.USER) {
+            @Override
+            String request(AccountConfig accountConfig, int pageSize, int pageNumber) {
+                return commcareHttpClient.usersRequest(accountConfig, pageSize, pageNumber);
+            }
+
+            @Override
+            Page<CommcareUser> parse(String json) {
+                Type pageType = new TypeToken<CommcareUsersJson>() { } .getType();
+                CommcareUsersJson users = (CommcareUsersJson) motechJsonReader.readFromString(json, pageType);
+                return new Page<>(users.getObjects(), totalCount(users.getMeta()));
+            }
+
+            @Override
+            String getId(CommcareUser user) {
+                return user.getId();
+            }
+
+            @Override
+            String getParentId(CommcareUser user) {
+                return null;
+            }
+        });
+
+        types.add(new MirroredType<CommcareLocation>(CommcareMirrorType.LOCATION) {
+            @Override
+            String request(AccountConfig accountConfig, int pageSize, int pageNumber) {
+                return commcareHttpClient.locationsRequest(accountConfig, pageSize, pageNumber);
+            }
+
+            @Override
+            Page<CommcareLocation> parse(String json) {
+                Type pageType = new TypeToken<CommcareLocationsJson>() { } .getType();
+                CommcareLocationsJson locations = (CommcareLocationsJson) motechJsonReader.readFromString(json,
+                        pageType);
+                int totalCount = locations.getMeta() == null ? 0 : locations.getMeta().getTotalCount();
+                return new Page<>(locations.getObjects(), totalCount);
+            }
+
+            @Override
+            String getId(CommcareLocation location) {
+                return String.valueOf(location.getId());
+            }
+
+            @Override
+            String getParentId(CommcareLocation location) {
+                return lastPathSegment(location.getParent());
+            }
+        });
+
+        types.add(new MirroredType<CommcareFixture>(CommcareMirrorType.FIXTURE) {
+            @Override
+            String request(AccountConfig accountConfig, int pageSize, int pageNumber) {
+                return commcareHttpClient.fixturesRequest(accountConfig, pageSize, pageNumber);
+            }
+
+            @Override
+            Page<CommcareFixture> parse(String json) {
+                Type pageType = new TypeToken<CommcareFixturesJson>() { } .getType();
+                CommcareFixturesJson fixtures = (CommcareFixturesJson) motechJsonReader.readFromString(json, pageType);
+                return new Page<>(fixtures.getObjects(), totalCount(fixtures.getMeta()));
+            }
+
+            @Override
+            String getId(CommcareFixture fixture) {
+                return fixture.getId();
+            }
+
+            @Override
+            String getParentId(CommcareFixture fixture) {
+                return fixture.getFixtureType();
+            }
+        });
+
+        return types;
+    }
+
+    private static int totalCount(Map<String, String> meta) {
+        String totalCount = meta == null ? null : meta.get(TOTAL_COUNT);
+        boolean numeric = StringUtils.isNumeric(totalCount) && StringUtils.isNotEmpty(totalCount);
+        return numeric ? Integer.parseInt(totalCount) : 0;
+    }
+
+    /**
+     * The parent of a location is given as the resource URI of the parent location, which ends with its ID.
+     */
+    private static String lastPathSegment(String resourceUri) {
+        String trimmed = StringUtils.removeEnd(resourceUri, "/");
+        return StringUtils.isBlank(trimmed) ? null : StringUtils.substringAfterLast("/" + trimmed, "/");
+    }
+
+    /**
+     * Describes how a single type of objects is fetched from CommCareHQ and stored in the mirror.
+     */
+    private abstract static class MirroredType<T> {
+
+        private final CommcareMirrorType type;
+
+        MirroredType(CommcareMirrorType type) {
+            this.type = type;
+        }
+
+        CommcareMirrorType getType() {
+            return type;
+        }
+
+        abstract String request(AccountConfig accountConfig, int pageSize, int pageNumber);
+
+        abstract Page<T> parse(String json);
+
+        abstract String getId(T object);
+
+        abstract String getParentId(T object);
+    }
+
+    /**
+     * A single page of objects and the total number of objects reported by CommCareHQ.
+     */
+    private static class Page<T> {
+
+        private final List<T> objects;
+        private final int totalCount;
+
+        Page(List<T> objects, int totalCount) {
+            this.objects = objects == null ? Collections.<T>emptyList() : objects;
+            this.totalCount = totalCount;
+        }
+    }
+}
@@ -1,59 +1,59 @@
 package org.motechproject.commcare.service.impl;
 
+import org.motechproject.commcare.config.Config;
 import org.motechproject.commcare.domain.CommcareApplicationJson;
 import org.motechproject.commcare.domain.CommcareModuleJson;
 import org.motechproject.commcare.domain.FormSchemaJson;
+import org.motechproject.commcare.exception.ConfigurationNotFoundException;
 import org.motechproject.commcare.service.CommcareApplicationDataService;
+import org.motechproject.commcare.service.CommcareConfigService;
 import org.motechproject.commcare.service.CommcareSchemaService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of the {@link org.motechproject.commcare.service.CommcareSchemaService}
- * Retrieves form and case schemas from MOTECH database.
+ * Retrieves form and case schemas from MOTECH database. The schemas of each configuration are read and deserialized
+ * once and cached until they are invalidated, so building the tasks channel doesn't read them over and over again.
+ * The cache is keyed by the name of the configuration, with the default configuration resolved to its name, so it can
+ * be invalidated using either.
  */
 @Service
 public class CommcareSchemaServiceImpl implements CommcareSchemaService {
 
+    private static final String NO_CONFIG_KEY = "";
+
     private CommcareApplicationDataService commcareApplicationDataService;
 
+    private CommcareConfigService configService;
+
+    private final ConcurrentMap<String, CachedSchema> schemaCache = new ConcurrentHashMap<>();
+
+    // incremented on every invalidation, so that a schema loaded before an invalidation is not put back in the cache
+    private final AtomicLong invalidations = new AtomicLong();
+
     @Override
     @Transactional
     public List<FormSchemaJson> getAllFormSchemas(String configName) {
-        List<FormSchemaJson> allFormSchemas = new ArrayList<>();
-
-        for (CommcareApplicationJson app : commcareApplicationDataService.bySourceConfiguration(configName)) {
-            for (CommcareModuleJson module : app.getModules()) {
-                allFormSchemas.addAll(module.getFormSchemas());
-            }
-        }
-
-        return allFormSchemas;
+        return getSchema(configName).formSchemas;
     }
 
     @Override
     @Transactional
     public Map<String, Set<String>> getAllCaseTypes(String configName) {
-        Map<String, Set<String>> allCaseTypes = new HashMap<>();
-
-        for (CommcareApplicationJson app : commcareApplicationDataService.bySourceConfiguration(configName)) {
-            for (CommcareModuleJson module : app.getModules()) {
-                String caseType = module.getCaseType();
-                if (!allCaseTypes.containsKey(caseType)) {
-                    allCaseTypes.put(caseType, new HashSet<>(module.getCaseProperties()));
-                }
-            }
-        }
-
-        return allCaseTypes;
+        return getSchema(configName).caseTypes;
     }
 
     @Override
@@ -68,8 +68,95 @@ public class CommcareSchemaServiceImpl implements CommcareSchemaService {
         return getAllCaseTypes(null);
     }
 
+    @Override
+    public void invalidate(String configName) {
+        invalidations.incrementAndGet();
+        schemaCache.remove(cacheKey(resolveConfigName(configName)));
+    }
+
+    @Override
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        schemaCache.clear();
+    }
+
     @Autowired
     public void setCommcareApplicationDataService(CommcareApplicationDataService commcareApplicationDataService) {
         this.commcareApplicationDataService = commcareApplicationDataService;
     }
+
+    @Autowired
+    public void setConfigService(CommcareConfigService configService) {
+        this.configService = configService;
+    }
+
+    private CachedSchema getSchema(String configName) {
+        String resolvedConfigName = resolveConfigName(configName);
+        String key = cacheKey(resolvedConfigName);
+        CachedSchema schema = schemaCache.get(key);
+
+        if (schema == null) {
+            long invalidationsBeforeLoad = invalidations.get();
+            schema = loadSchema(resolvedConfigName);
+
+            CachedSchema cached = schemaCache.putIfAbsent(key, schema);
+            if (cached != null) {
+                schema = cached;
+            } else if (invalidations.get() != invalidationsBeforeLoad) {
+                // invalidated while loading, the loaded schema may be stale
+                schemaCache.remove(key, schema);
+            }
+        }
+
+        return schema;
+    }
+
+    private CachedSchema loadSchema(String configName) {
+        List<FormSchemaJson> allFormSchemas = new ArrayList<>();
+        Map<String, Set<String>> allCaseTypes = new HashMap<>();
+
+        for (CommcareApplicationJson app : commcareApplicationDataService.bySourceConfiguration(configName)) {
+            for (CommcareModuleJson module : app.getModules()) {
+                allFormSchemas.addAll(module.getFormSchemas());
+
+                String caseType = module.getCaseType();
+                if (!allCaseTypes.containsKey(caseType)) {
+                    allCaseTypes.put(caseType, Collections.unmodifiableSet(new HashSet<>(module.getCaseProperties())));
+                }
+            }
+        }
+
+        return new CachedSchema(Collections.unmodifiableList(allFormSchemas), Collections.unmodifiableMap(allCaseTypes));
+    }
+
+    private String resolveConfigName(String configName) {
+        if (configName != null) {
+            return configName;
+        }
+
+        try {
+            Config defaultConfig = configService.getDefault();
+            return defaultConfig == null ? null : defaultConfig.getName();
+        } catch (ConfigurationNotFoundException e) {
+            return null;
+        }
+    }
+
+    private String cacheKey(String resolvedConfigName) {
+        return resolvedConfigName == null ? NO_CONFIG_KEY : resolvedConfigName;
+    }
+
+    /**
+     * Form schemas and case types of a single configuration.
+     */
+    private static class CachedSchema {
+
+        private final List<FormSchemaJson> formSchemas;
+        private final Map<String, Set<String>> caseTypes;
+
+        CachedSchema(List<FormSchemaJson> formSchemas, Map<String, Set<String>> caseTypes) {
+            this.formSchemas = formSchemas;
+            this.caseTypes = caseTypes;
+        }
+    }
 }
@@ -5,6 +5,7 @@ import org.motechproject.commcare.client.CommCareAPIHttpClient;
 import org.motechproject.commcare.domain.CommcareUser;
 import org.motechproject.commcare.domain.CommcareUsersJson;
 import org.motechproject.commcare.service.CommcareConfigService;
+import org.motechproject.commcare.service.CommcareMirrorService;
 import org.motechproject.commcare.service.CommcareUserService;
 import org.motechproject.commons.api.json.MotechJsonReader;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,10 +23,14 @@ public class CommcareUserServiceImpl implements CommcareUserService {
 
     private CommcareConfigService configService;
 
+    private CommcareMirrorService mirrorService;
+
     @Autowired
-    public CommcareUserServiceImpl(CommCareAPIHttpClient commcareHttpClient, CommcareConfigService configService) {
+    public CommcareUserServiceImpl(CommCareAPIHttpClient commcareHttpClient, CommcareConfigService configService,
+                                   CommcareMirrorService mirrorService) {
         this.commcareHttpClient = commcareHttpClient;
         this.configService = configService;
+        this.mirrorService = mirrorService;
         this.motechJsonReader = new MotechJsonReader();
     }
 
@@ -41,6 +46,13 @@ public class CommcareUserServiceImpl implements CommcareUserService {
 
     @Override
     public CommcareUser getCommcareUserById(String id, String configName) {
+        if (mirrorService.isMirrored(configName)) {
+            CommcareUser mirroredUser = mirrorService.getUser(id, configName);
+            if (mirroredUser != null) {
+                return mirroredUser;
+            }
+        }
+
         String response = commcareHttpClient.userRequest(configService.getByName(configName).getAccountConfig(), id);
         Type commcareUserType = new TypeToken<CommcareUser>() {
         } .getType();
@@ -1,16 +1,12 @@
 package org.motechproject.commcare.web;
 
 import org.motechproject.commcare.config.Config;
-import org.motechproject.commcare.domain.CaseXml;
-import org.motechproject.commcare.events.CaseEvent;
-import org.motechproject.commcare.events.constants.EventDataKeys;
-import org.motechproject.commcare.events.constants.EventSubjects;
-import org.motechproject.commcare.exception.CaseParserException;
 import org.motechproject.commcare.exception.EndpointNotSupported;
-import org.motechproject.commcare.parser.CaseParser;
+import org.motechproject.commcare.exception.ForwardingQueueFullException;
+import org.motechproject.commcare.forwarding.ForwardedRequest;
+import org.motechproject.commcare.forwarding.ForwardedRequestProcessor;
+import org.motechproject.commcare.forwarding.ForwardedRequestQueue;
 import org.motechproject.commcare.service.CommcareConfigService;
-import org.motechproject.event.MotechEvent;
-import org.motechproject.event.listener.EventRelay;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,36 +19,37 @@ import javax.servlet.http.HttpServletRequest;
 import java.io.BufferedReader;
 import java.io.IOException;
 
-import static org.motechproject.commcare.events.constants.EventDataKeys.FIELD_VALUES;
-
 /**
  * Controller that handles the incoming case feed from CommCareHQ. It is capable of handling multiple configurations by
- * parameterizing the endpoint URL.
+ * parameterizing the endpoint URL. If the {@link ForwardedRequestQueue} is enabled, the cases are only stored in it and
+ * processed asynchronously.
  */
 @Controller
 @RequestMapping("/cases")
 public class CasesController extends CommcareController {
     private static final Logger LOGGER = LoggerFactory.getLogger(CasesController.class);
 
-    private static final String FULL_DATA_EVENT = "full";
-    private static final String PARTIAL_DATA_EVENT = "partial";
-
-    private EventRelay eventRelay;
     private CommcareConfigService configService;
+    private ForwardedRequestProcessor processor;
+    private ForwardedRequestQueue queue;
 
     @Autowired
-    public CasesController(final EventRelay eventRelay, final CommcareConfigService configService) {
-        this.eventRelay = eventRelay;
+    public CasesController(final CommcareConfigService configService, final ForwardedRequestProcessor processor,
+                           final ForwardedRequestQueue queue) {
         this.configService = configService;
+        this.processor = processor;
+        this.queue = queue;
     }
 
     @RequestMapping
-    public ModelAndView receiveCaseForDefaultConfig(HttpServletRequest request) throws EndpointNotSupported {
+    public ModelAndView receiveCaseForDefaultConfig(HttpServletRequest request)
+            throws EndpointNotSupported, ForwardingQueueFullException, IOException {
         return doReceiveCase(request, configService.getDefault());
     }
 
     @RequestMapping("/{configName}")
-    public ModelAndView receiveCase(HttpServletRequest request, @PathVariable String configName) throws EndpointNotSupported {
+    public ModelAndView receiveCase(HttpServletRequest request, @PathVariable String configName)
+            throws EndpointNotSupported, ForwardingQueueFullException, IOException {
         return doReceiveCase(request, configService.getByName(configName));
     }
 
@@ -72,7 +69,8 @@ public class CasesController extends CommcareController {
         return forwardedRequest.toString();
     }
 
-    private ModelAndView doReceiveCase(HttpServletRequest request, Config config) throws EndpointNotSupported {
+    private ModelAndView doReceiveCase(HttpServletRequest request, Config config)
+            throws EndpointNotSupported, ForwardingQueueFullException, IOException {
 
         String caseXml = "";
 
@@ -87,40 +85,12 @@ public class CasesController extends CommcareController {
             throw new EndpointNotSupported(String.format("Configuration \"%s\" doesn't support endpoint for cases!", config.getName()));
         }
 
-        CaseParser<CaseXml> parser = new CaseParser<>(CaseXml.class, caseXml);
-
-        CaseXml caseInstance = null;
-        try {
-            caseInstance = parser.parseCase();
-        } catch (CaseParserException e) {
-            MotechEvent motechEvent = new MotechEvent(
-                    EventSubjects.MALFORMED_CASE_EXCEPTION);
-            motechEvent.getParameters().put(EventDataKeys.MESSAGE,
-                    "Incoming case xml did not parse correctly");
-            eventRelay.sendEventMessage(motechEvent);
-        }
-
-        if (caseInstance != null) {
-
-            caseInstance.setServerModifiedOn(request.getHeader("server-modified-on"));
-            CaseEvent caseEvent = new CaseEvent(caseInstance.getCaseId());
-            caseEvent.setConfigName(config.getName());
-            caseEvent.setCaseType(caseInstance.getCaseType());
-
-            MotechEvent motechCaseEvent;
-            String caseEventStrategy = config.getEventStrategy();
-
-            if (caseEventStrategy.equals(FULL_DATA_EVENT)) {
-                caseEvent = CaseEvent.fromCaseXml(caseInstance, config.getName());
-                motechCaseEvent = caseEvent.toMotechEventWithData();
-                motechCaseEvent.getParameters().put(FIELD_VALUES, caseEvent.getFieldValues());
-            } else if (caseEventStrategy.equals(PARTIAL_DATA_EVENT)) {
-                motechCaseEvent = caseEvent.toMotechEventWithData();
-            } else {
-                motechCaseEvent = caseEvent.toMotechEventWithoutData();
-            }
+        String serverModifiedOn = request.getHeader("server-modified-on");
 
-            eventRelay.sendEventMessage(motechCaseEvent);
+        if (queue.isEnabled()) {
+            queue.enqueue(new ForwardedRequest(ForwardedRequest.Type.CASE, config.getName(), serverModifiedOn, caseXml));
+        } else {
+            processor.processCase(caseXml, serverModifiedOn, config);
         }
 
         return null;
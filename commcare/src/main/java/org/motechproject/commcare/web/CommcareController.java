@@ -4,6 +4,7 @@ import org.motechproject.commcare.exception.CommcareAuthenticationException;
 import org.motechproject.commcare.exception.CommcareConnectionFailureException;
 import org.motechproject.commcare.exception.ConfigurationNotFoundException;
 import org.motechproject.commcare.exception.EndpointNotSupported;
+import org.motechproject.commcare.exception.ForwardingQueueFullException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -33,6 +34,13 @@ public abstract class CommcareController {
         return handleException(e);
     }
 
+    @ExceptionHandler(ForwardingQueueFullException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ResponseBody
+    public String handleServiceUnavailable(Exception e) {
+        return handleException(e);
+    }
+
     @ExceptionHandler(CommcareAuthenticationException.class)
     @ResponseStatus(value = HttpStatus.UNAUTHORIZED)
     @ResponseBody
@@ -1,15 +1,12 @@
 package org.motechproject.commcare.web;
 
 import org.motechproject.commcare.config.Config;
-import org.motechproject.commcare.domain.FormValueElement;
-import org.motechproject.commcare.events.FullFormEvent;
-import org.motechproject.commcare.events.FullFormFailureEvent;
-import org.motechproject.commcare.events.MalformedFormStatusMessageEvent;
 import org.motechproject.commcare.exception.EndpointNotSupported;
-import org.motechproject.commcare.exception.FullFormParserException;
-import org.motechproject.commcare.parser.FullFormParser;
+import org.motechproject.commcare.exception.ForwardingQueueFullException;
+import org.motechproject.commcare.forwarding.ForwardedRequest;
+import org.motechproject.commcare.forwarding.ForwardedRequestProcessor;
+import org.motechproject.commcare.forwarding.ForwardedRequestQueue;
 import org.motechproject.commcare.service.CommcareConfigService;
-import org.motechproject.event.listener.EventRelay;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,10 +17,12 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 
 /**
  * Controller that handles the incoming full form feed from CommCareHQ. The path to this endpoint has to be configured
  * on the CommCareHQ side. It is capable of handling multiple configurations by parameterizing the endpoint URL.
+ * If the {@link ForwardedRequestQueue} is enabled, the forms are only stored in it and processed asynchronously.
  */
 @Controller
 @RequestMapping("/forms")
@@ -32,27 +31,33 @@ public class FullFormController extends CommcareController {
     private static final Logger LOGGER = LoggerFactory.getLogger(FullFormController.class);
 
     private CommcareConfigService configService;
-    private EventRelay eventRelay;
+    private ForwardedRequestProcessor processor;
+    private ForwardedRequestQueue queue;
 
     @Autowired
-    public FullFormController(EventRelay eventRelay, CommcareConfigService configService) {
-        this.eventRelay = eventRelay;
+    public FullFormController(CommcareConfigService configService, ForwardedRequestProcessor processor,
+                              ForwardedRequestQueue queue) {
         this.configService = configService;
+        this.processor = processor;
+        this.queue = queue;
     }
 
     @RequestMapping
     @ResponseStatus(HttpStatus.OK)
-    public void receiveFormForDefaultConfig(@RequestBody String body, HttpServletRequest request) throws EndpointNotSupported {
+    public void receiveFormForDefaultConfig(@RequestBody String body, HttpServletRequest request)
+            throws EndpointNotSupported, ForwardingQueueFullException, IOException {
         doReceiveForm(body, request, configService.getDefault());
     }
 
     @RequestMapping(value = "/{configName}")
     @ResponseStatus(HttpStatus.OK)
-    public void receiveForm(@RequestBody String body, HttpServletRequest request) throws EndpointNotSupported {
+    public void receiveForm(@RequestBody String body, HttpServletRequest request)
+            throws EndpointNotSupported, ForwardingQueueFullException, IOException {
         doReceiveForm(body, request, configService.getByName(getConfigName(request)));
     }
 
-    private void doReceiveForm(String body, HttpServletRequest request, Config config) throws EndpointNotSupported {
+    private void doReceiveForm(String body, HttpServletRequest request, Config config)
+            throws EndpointNotSupported, ForwardingQueueFullException, IOException {
 
         LOGGER.trace("Received request for mapping /forms: {}", body);
 
@@ -60,30 +65,15 @@ public class FullFormController extends CommcareController {
             throw new EndpointNotSupported(String.format("Configuration \"%s\" doesn't support endpoint for forms!", config.getName()));
         }
 
-        FullFormParser parser = new FullFormParser(body);
+        String receivedOn = request.getHeader("received-on");
 
-        try {
-            FormValueElement formValueElement = parser.parse();
-
-            FullFormEvent fullFormEvent = new FullFormEvent(formValueElement, request.getHeader("received-on"),
-                    config.getName());
-
-            eventRelay.sendEventMessage(fullFormEvent.toMotechEvent());
-        } catch (FullFormParserException | RuntimeException e) {
-            LOGGER.error("Error while receiving form from Commcare", e);
-            handleError(e, config);
+        if (queue.isEnabled()) {
+            queue.enqueue(new ForwardedRequest(ForwardedRequest.Type.FORM, config.getName(), receivedOn, body));
+        } else {
+            processor.processForm(body, receivedOn, config);
         }
     }
 
-    private void handleError(Exception e, Config config) {
-        FullFormFailureEvent failureEvent = new FullFormFailureEvent(config.getName(), e.getMessage());
-        eventRelay.sendEventMessage(failureEvent.toMotechEvent());
-        // publish a status message in the Admin module
-        String msg = "Error while receiving a form from Commcare: " + e.getMessage();
-        MalformedFormStatusMessageEvent statusMessageEvent = new MalformedFormStatusMessageEvent(msg);
-        eventRelay.sendEventMessage(statusMessageEvent.toMotechEvent());
-    }
-
     private String getConfigName(HttpServletRequest request) {
         String pathInfo = request.getPathInfo();
         return pathInfo.substring(pathInfo.lastIndexOf('/') + 1);
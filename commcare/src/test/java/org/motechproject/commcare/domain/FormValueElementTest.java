@@ -6,7 +6,9 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class FormValueElementTest {
@@ -362,6 +364,77 @@ public class FormValueElementTest {
         assertEquals("value1", foundAttributes.get(0).getValue());
     }
 
+    @Test
+    public void shouldSearchUsingCompiledPath() {
+        FormValueElementBuilder childElementBuilder = new FormValueElementBuilder("firstLevelChild")
+                .withSubElement(new FormValueElementBuilder("secondLevelChild1").withValue("Value1").build())
+                .withSubElement(new FormValueElementBuilder("secondLevelChild").withValue("Value2").withAttribute("Attribute1", "Value4").build())
+                .withSubElement(new FormValueElementBuilder("secondLevelChild").withValue("Value3").build());
+        FormValueElementBuilder rootElementBuilder = new FormValueElementBuilder("rootElement");
+        rootElementBuilder.withSubElement(childElementBuilder.build());
+        FormValueElement rootElement = rootElementBuilder.build();
+
+        FormPath path = FormPath.compile("//firstLevelChild/secondLevelChild");
+        assertSame(path, FormPath.compile("//firstLevelChild/secondLevelChild"));
+
+        List<FormNode> searchedElements = rootElement.search(path);
+        assertEquals(2, searchedElements.size());
+        assertEquals("Value2", searchedElements.get(0).getValue());
+        assertEquals("Value3", searchedElements.get(1).getValue());
+        assertEquals("Value2", rootElement.searchFirst(path).getValue());
+
+        assertEquals("Value4", rootElement.searchFirst(FormPath.compile("//firstLevelChild/secondLevelChild/@Attribute1")).getValue());
+        assertNull(rootElement.searchFirst(FormPath.compile("//firstLevelChild/doesnotexist")));
+    }
+
+    @Test
+    public void shouldKeepRecentlyUsedCompiledPaths() {
+        FormPath path = FormPath.compile("//recentlyUsed/child");
+
+        for (int i = 0; i < 5000; i++) {
+            FormPath.compile("//other" + i + "/child");
+            assertSame(path, FormPath.compile("//recentlyUsed/child"));
+        }
+    }
+
+    @Test
+    public void shouldEvictCompiledPathsWhichAreNotUsed() {
+        FormPath path = FormPath.compile("//notUsed/child");
+
+        for (int i = 0; i < 5000; i++) {
+            FormPath.compile("//another" + i + "/child");
+        }
+
+        assertNotSame(path, FormPath.compile("//notUsed/child"));
+        assertEquals(path, FormPath.compile("//notUsed/child"));
+    }
+
+    @Test
+    public void shouldFindElementsUsingAttributeIndex() {
+        FormValueElementBuilder childElementBuilder1 = new FormValueElementBuilder("firstLevelChild1").withAttribute("attr1", "value1");
+        childElementBuilder1.withSubElement(new FormValueElementBuilder("secondLevelChild1").withAttribute("attr1", "value1").build());
+        childElementBuilder1.withSubElement(new FormValueElementBuilder("secondLevelChild2").withAttribute("attr1", "someothervalue").build());
+
+        FormValueElementBuilder childElementBuilder2 = new FormValueElementBuilder("firstLevelChild2");
+        childElementBuilder2.withSubElement(new FormValueElementBuilder("secondLevelChild3").withAttribute("attr1", "value1").build());
+
+        FormValueElementBuilder rootElementBuilder = new FormValueElementBuilder("rootElement").withAttribute("attr1", "value1");
+        rootElementBuilder.withSubElement(childElementBuilder1.build()).withSubElement(childElementBuilder2.build());
+
+        FormValueElement rootElement = rootElementBuilder.build();
+        FormAttributeIndex index = rootElement.indexByAttribute("attr1");
+
+        assertTrue(index.getElements("doesnotexist").isEmpty());
+        assertNull(index.getElement("doesnotexist"));
+
+        List<FormValueElement> elementsByAttribute = index.getElements("value1");
+        assertEquals(rootElement.getElementsByAttribute("attr1", "value1"), elementsByAttribute);
+        assertEquals(4, elementsByAttribute.size());
+        assertEquals("rootElement", elementsByAttribute.get(0).getElementName());
+        assertEquals("secondLevelChild3", elementsByAttribute.get(3).getElementName());
+        assertEquals("secondLevelChild2", index.getElement("someothervalue").getElementName());
+    }
+
     private class FormValueElementBuilder {
 
         private FormValueElement formValueElement;
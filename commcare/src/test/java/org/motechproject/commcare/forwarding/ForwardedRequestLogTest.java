@@ -0,0 +1,183 @@
+package org.motechproject.commcare.forwarding;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ForwardedRequestLogTest {
+
+    private static final ForwardedRequest FORM = new ForwardedRequest(ForwardedRequest.Type.FORM, "config",
+            "2012-07-21T15:22:34.046462Z", "<data>form</data>");
+    private static final ForwardedRequest CASE = new ForwardedRequest(ForwardedRequest.Type.CASE, "config",
+            null, "<case>case</case>");
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("commcare-forwarding").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void shouldTakeRequestsInOrder() throws Exception {
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, false)) {
+            log.append(FORM);
+            log.append(CASE);
+
+            ForwardedRequestLog.Entry first = log.take(0, TimeUnit.SECONDS);
+            ForwardedRequestLog.Entry second = log.take(0, TimeUnit.SECONDS);
+
+            assertEquals(FORM, first.getRequest());
+            assertEquals(CASE, second.getRequest());
+            assertNull(log.take(0, TimeUnit.SECONDS));
+
+            log.complete(second.getOffset());
+            assertTrue(log.getBacklog() > 0);
+
+            log.complete(first.getOffset());
+            assertEquals(0, log.getBacklog());
+        }
+    }
+
+    @Test
+    public void shouldDeleteProcessedSegmentsWhileNeverDrained() throws Exception {
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, false, 100)) {
+            log.append(FORM);
+
+            for (int i = 0; i < 50; i++) {
+                log.append(i % 2 == 0 ? FORM : CASE);
+                ForwardedRequestLog.Entry entry = log.take(0, TimeUnit.SECONDS);
+                log.complete(entry.getOffset());
+
+                assertTrue(log.getBacklog() > 0);
+                assertTrue(log.getSegmentCount() <= 2);
+            }
+
+            assertTrue(segmentFiles().length <= 2);
+        }
+    }
+
+    @Test
+    public void shouldReplayUnprocessedRequestsFromDeletedAndRemainingSegments() throws Exception {
+        long lastOffset;
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, true, 100)) {
+            for (int i = 0; i < 10; i++) {
+                log.append(FORM);
+            }
+            lastOffset = log.append(CASE);
+
+            for (int i = 0; i < 10; i++) {
+                log.complete(log.take(0, TimeUnit.SECONDS).getOffset());
+            }
+        }
+
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, true, 100)) {
+            ForwardedRequestLog.Entry entry = log.take(0, TimeUnit.SECONDS);
+            assertEquals(CASE, entry.getRequest());
+            assertEquals(lastOffset, entry.getOffset());
+            assertNull(log.take(0, TimeUnit.SECONDS));
+
+            log.complete(entry.getOffset());
+            long offset = log.append(FORM);
+            assertTrue(offset > lastOffset);
+        }
+    }
+
+    @Test
+    public void shouldMigrateLegacyLogFile() throws Exception {
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, false)) {
+            log.append(FORM);
+            log.append(CASE);
+        }
+        File[] segments = segmentFiles();
+        assertEquals(1, segments.length);
+        assertTrue(segments[0].renameTo(new File(directory, ForwardedRequestLog.LOG_FILE)));
+
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, false)) {
+            assertEquals(FORM, log.take(0, TimeUnit.SECONDS).getRequest());
+            assertEquals(CASE, log.take(0, TimeUnit.SECONDS).getRequest());
+        }
+        assertFalse(new File(directory, ForwardedRequestLog.LOG_FILE).exists());
+    }
+
+    @Test
+    public void shouldReplayUnprocessedRequestsAfterReopening() throws Exception {
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, true)) {
+            log.append(FORM);
+            log.append(CASE);
+
+            ForwardedRequestLog.Entry first = log.take(0, TimeUnit.SECONDS);
+            log.take(0, TimeUnit.SECONDS);
+            log.complete(first.getOffset());
+        }
+
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, true)) {
+            assertEquals(CASE, log.take(0, TimeUnit.SECONDS).getRequest());
+            assertNull(log.take(0, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void shouldDiscardIncompleteRecord() throws Exception {
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, false)) {
+            log.append(FORM);
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles()[0], "rw")) {
+            file.seek(file.length());
+            file.writeInt(100);
+            file.write(new byte[10]);
+        }
+
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, false)) {
+            assertEquals(FORM, log.take(0, TimeUnit.SECONDS).getRequest());
+            assertNull(log.take(0, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void shouldReplayDeadLetters() throws Exception {
+        try (ForwardedRequestLog log = new ForwardedRequestLog(directory, false)) {
+            log.append(FORM);
+
+            ForwardedRequestLog.Entry entry = log.take(0, TimeUnit.SECONDS);
+            log.deadLetter(entry.getRequest());
+            log.complete(entry.getOffset());
+
+            assertEquals(Arrays.asList(FORM), log.getDeadLetters());
+            assertNull(log.take(0, TimeUnit.SECONDS));
+
+            assertEquals(1, log.replayDeadLetters());
+            assertTrue(log.getDeadLetters().isEmpty());
+            assertEquals(FORM, log.take(0, TimeUnit.SECONDS).getRequest());
+        }
+    }
+
+    private File[] segmentFiles() {
+        return directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("requests-");
+            }
+        });
+    }
+}
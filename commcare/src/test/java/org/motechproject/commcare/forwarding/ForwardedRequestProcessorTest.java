@@ -0,0 +1,77 @@
+package org.motechproject.commcare.forwarding;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.commcare.config.Config;
+import org.motechproject.commcare.exception.ConfigurationNotFoundException;
+import org.motechproject.commcare.service.CommcareConfigService;
+import org.motechproject.commcare.util.ConfigsUtils;
+import org.motechproject.commcare.util.ResponseXML;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventRelay;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ForwardedRequestProcessorTest {
+
+    @Mock
+    private EventRelay eventRelay;
+
+    @Mock
+    private CommcareConfigService configService;
+
+    private ForwardedRequestProcessor processor;
+    private Config config;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        processor = new ForwardedRequestProcessor(eventRelay, configService);
+
+        config = ConfigsUtils.prepareConfigOne();
+        when(configService.getByName(config.getName())).thenReturn(config);
+    }
+
+    @Test
+    public void shouldProcessForm() {
+        assertTrue(processor.process(form(ResponseXML.getFormXML())));
+        verify(eventRelay).sendEventMessage(any(MotechEvent.class));
+    }
+
+    @Test
+    public void shouldReportMalformedForm() {
+        assertFalse(processor.process(form("")));
+        verify(eventRelay, times(2)).sendEventMessage(any(MotechEvent.class));
+    }
+
+    @Test
+    public void shouldReportMissingConfiguration() {
+        when(configService.getByName("missing")).thenThrow(new ConfigurationNotFoundException("missing"));
+
+        assertFalse(processor.process(new ForwardedRequest(ForwardedRequest.Type.FORM, "missing", null,
+                ResponseXML.getFormXML())));
+        verify(eventRelay, never()).sendEventMessage(any(MotechEvent.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldPropagatePublishingErrors() {
+        doThrow(new IllegalStateException("event system unavailable")).when(eventRelay)
+                .sendEventMessage(any(MotechEvent.class));
+
+        processor.process(form(ResponseXML.getFormXML()));
+    }
+
+    private ForwardedRequest form(String body) {
+        return new ForwardedRequest(ForwardedRequest.Type.FORM, config.getName(), "2012-07-21T15:22:34.046462Z", body);
+    }
+}
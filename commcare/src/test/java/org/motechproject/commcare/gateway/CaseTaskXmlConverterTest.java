@@ -162,6 +162,32 @@ public class CaseTaskXmlConverterTest {
         Assert.assertTrue(xml.contains("<owner_id>OWNER_ID</owner_id>"));
     }
 
+    @Test
+    public void testMultipleCasesXml() {
+        List<String> caseBlocks = new ArrayList<>();
+
+        for (String caseId : new String[] {"CASE_ID1", "CASE_ID2"}) {
+            CaseTask task = new CaseTask();
+
+            task.setCaseId(caseId);
+            task.setUserId("USER_ID");
+            task.setXmlns("XMLNS");
+            task.setDateModified("DATE_MODIFIED");
+            task.setCloseTask(new CloseTask(true));
+
+            caseBlocks.add(caseConverter.convertToCaseBlock(task));
+        }
+
+        String xml = caseConverter.convertToCasesXml(caseBlocks, "XMLNS", "USER_ID");
+
+        Assert.assertTrue(xml.startsWith("<data xmlns=\"XMLNS\">"));
+        Assert.assertTrue(xml.contains("<userID>USER_ID</userID>"));
+        Assert.assertTrue(xml.contains("case_id=\"CASE_ID1\""));
+        Assert.assertTrue(xml.contains("case_id=\"CASE_ID2\""));
+        Assert.assertEquals(2, xml.split("<close").length - 1);
+        Assert.assertTrue(xml.endsWith("</data>"));
+    }
+
     @Test
     public void testUpdateCaseXml() throws FileNotFoundException,
             CaseParserException {
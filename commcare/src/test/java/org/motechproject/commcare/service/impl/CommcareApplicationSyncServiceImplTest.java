@@ -0,0 +1,124 @@
+package org.motechproject.commcare.service.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.commcare.domain.CommcareApplicationJson;
+import org.motechproject.commcare.domain.CommcareModuleJson;
+import org.motechproject.commcare.service.CommcareAppStructureService;
+import org.motechproject.commcare.service.CommcareApplicationDataService;
+import org.motechproject.commcare.service.CommcareSchemaService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CommcareApplicationSyncServiceImplTest {
+
+    private static final String CONFIG_NAME = "config";
+
+    @Mock
+    private CommcareAppStructureService appStructureService;
+
+    @Mock
+    private CommcareApplicationDataService commcareApplicationDataService;
+
+    @Mock
+    private CommcareSchemaService schemaService;
+
+    private CommcareApplicationSyncServiceImpl applicationSyncService;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        applicationSyncService = new CommcareApplicationSyncServiceImpl(appStructureService,
+                commcareApplicationDataService, schemaService);
+    }
+
+    @Test
+    public void shouldNotTouchUnchangedApplications() {
+        when(appStructureService.getAllApplications(CONFIG_NAME)).thenReturn(asList(application("app1", "name", "case1")));
+        when(commcareApplicationDataService.bySourceConfiguration(CONFIG_NAME))
+                .thenReturn(asList(application("app1", "name", "case1")));
+
+        assertFalse(applicationSyncService.synchronizeApplications(CONFIG_NAME));
+
+        verify(commcareApplicationDataService, never()).create(any(CommcareApplicationJson.class));
+        verify(commcareApplicationDataService, never()).update(any(CommcareApplicationJson.class));
+        verify(commcareApplicationDataService, never()).delete(any(CommcareApplicationJson.class));
+        verify(schemaService, never()).invalidate(CONFIG_NAME);
+    }
+
+    @Test
+    public void shouldUpdateRenamedApplicationWithoutSchemaChange() {
+        CommcareApplicationJson storedApp = application("app1", "name", "case1");
+
+        when(appStructureService.getAllApplications(CONFIG_NAME)).thenReturn(asList(application("app1", "new name", "case1")));
+        when(commcareApplicationDataService.bySourceConfiguration(CONFIG_NAME)).thenReturn(asList(storedApp));
+
+        assertFalse(applicationSyncService.synchronizeApplications(CONFIG_NAME));
+
+        verify(commcareApplicationDataService).update(storedApp);
+        assertEquals("new name", storedApp.getApplicationName());
+        verify(schemaService, never()).invalidate(CONFIG_NAME);
+    }
+
+    @Test
+    public void shouldCreateUpdateAndDeleteChangedApplications() {
+        CommcareApplicationJson changedApp = application("app1", "name", "case1");
+        CommcareApplicationJson removedApp = application("app2", "name", "case2");
+        CommcareApplicationJson newApp = application("app3", "name", "case3");
+
+        when(appStructureService.getAllApplications(CONFIG_NAME))
+                .thenReturn(asList(application("app1", "name", "changedCase"), newApp));
+        when(commcareApplicationDataService.bySourceConfiguration(CONFIG_NAME))
+                .thenReturn(asList(changedApp, removedApp));
+
+        assertTrue(applicationSyncService.synchronizeApplications(CONFIG_NAME));
+
+        verify(commcareApplicationDataService).create(newApp);
+        verify(commcareApplicationDataService).update(changedApp);
+        verify(commcareApplicationDataService).delete(removedApp);
+        verify(schemaService).invalidate(CONFIG_NAME);
+
+        assertEquals(CONFIG_NAME, newApp.getConfigName());
+        assertEquals("changedCase", changedApp.getModules().get(0).getCaseType());
+    }
+
+    @Test
+    public void shouldDeleteApplicationsOfConfiguration() {
+        CommcareApplicationJson app = application("app1", "name", "case1");
+        when(commcareApplicationDataService.bySourceConfiguration(CONFIG_NAME)).thenReturn(asList(app));
+
+        applicationSyncService.deleteApplications(CONFIG_NAME);
+
+        verify(commcareApplicationDataService).delete(app);
+        verify(schemaService).invalidate(CONFIG_NAME);
+    }
+
+    private CommcareApplicationJson application(String appId, String name, String caseType) {
+        CommcareModuleJson module = new CommcareModuleJson();
+        module.setCaseType(caseType);
+        module.setCaseProperties(Collections.singletonList("property"));
+        module.setFormSchemas(Collections.emptyList());
+
+        CommcareApplicationJson application = new CommcareApplicationJson(appId, name, "uri/" + appId,
+                Collections.singletonList(module));
+        application.setConfigName(CONFIG_NAME);
+        return application;
+    }
+
+    private List<CommcareApplicationJson> asList(CommcareApplicationJson... applications) {
+        return new ArrayList<>(Arrays.asList(applications));
+    }
+}
@@ -1,6 +1,7 @@
 package org.motechproject.commcare.service.impl;
 
 import org.apache.commons.io.FileUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -8,10 +9,15 @@ import org.motechproject.commcare.client.CommCareAPIHttpClient;
 import org.motechproject.commcare.config.AccountConfig;
 import org.motechproject.commcare.config.Config;
 import org.motechproject.commcare.domain.CaseInfo;
+import org.motechproject.commcare.domain.CaseTask;
+import org.motechproject.commcare.domain.CreateTask;
 import org.motechproject.commcare.gateway.CaseTaskXmlConverter;
 import org.motechproject.commcare.request.json.CaseRequest;
+import org.motechproject.commcare.response.CaseUploadResult;
+import org.motechproject.commcare.response.OpenRosaResponse;
 import org.motechproject.commcare.service.CommcareConfigService;
 import org.motechproject.commcare.util.ConfigsUtils;
+import org.motechproject.server.config.SettingsFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,8 +30,15 @@ import static ch.lambdaj.Lambda.extract;
 import static ch.lambdaj.Lambda.on;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -44,6 +57,9 @@ public class CommcareCaseServiceImplTest {
     @Mock
     private CommcareConfigService configService;
 
+    @Mock
+    private SettingsFacade settingsFacade;
+
     private Config config;
 
     @Before
@@ -54,7 +70,13 @@ public class CommcareCaseServiceImplTest {
 
         when(configService.getByName(null)).thenReturn(config);
 
-        caseService = new CommcareCaseServiceImpl(converter, commcareHttpClient, configService);
+        caseService = new CommcareCaseServiceImpl(converter, commcareHttpClient, configService, settingsFacade);
+        caseService.start();
+    }
+
+    @After
+    public void tearDown() {
+        caseService.stop();
     }
 
     @Test
@@ -107,6 +129,118 @@ public class CommcareCaseServiceImplTest {
                 "2012-04-10T14:31:44.950000Z"), extract(cases, on(CaseInfo.class).getServerDateModified()));
     }
 
+    @Test
+    public void shouldUploadCasesInOneSubmission() throws Exception {
+        CaseTask first = caseTask("case1");
+        CaseTask second = caseTask("case2");
+
+        when(converter.convertToCaseBlock(first)).thenReturn("<case>1</case>");
+        when(converter.convertToCaseBlock(second)).thenReturn("<case>2</case>");
+        when(converter.convertToCasesXml(asList("<case>1</case>", "<case>2</case>"), "xmlns", "user"))
+                .thenReturn("<data>12</data>");
+        OpenRosaResponse response = openRosaResponse(201, "submit_success");
+        when(commcareHttpClient.submissionRequest(config.getAccountConfig(), "<?xml version='1.0'?>\n<data>12</data>"))
+                .thenReturn(response);
+
+        List<CaseUploadResult> results = caseService.uploadCases(asList(first, second));
+
+        assertEquals(2, results.size());
+        assertEquals("case1", results.get(0).getCaseId());
+        assertEquals("case2", results.get(1).getCaseId());
+        assertTrue(results.get(0).isSuccessful());
+        assertTrue(results.get(1).isSuccessful());
+        assertSame(response, results.get(1).getResponse());
+        verify(commcareHttpClient, times(1)).submissionRequest(any(AccountConfig.class), anyString());
+    }
+
+    @Test
+    public void shouldRetryCasesSeparatelyWhenSubmissionIsRejected() throws Exception {
+        CaseTask first = caseTask("case1");
+        CaseTask second = caseTask("case2");
+        CaseTask malformed = caseTask("case3");
+
+        when(converter.convertToCaseBlock(first)).thenReturn("<case>1</case>");
+        when(converter.convertToCaseBlock(second)).thenReturn("<case>2</case>");
+        when(converter.convertToCasesXml(asList("<case>1</case>", "<case>2</case>"), "xmlns", "user"))
+                .thenReturn("<data>12</data>");
+        when(converter.convertToCasesXml(asList("<case>1</case>"), "xmlns", "user")).thenReturn("<data>1</data>");
+        when(converter.convertToCasesXml(asList("<case>2</case>"), "xmlns", "user")).thenReturn("<data>2</data>");
+
+        when(commcareHttpClient.submissionRequest(config.getAccountConfig(), "<?xml version='1.0'?>\n<data>12</data>"))
+                .thenReturn(openRosaResponse(201, "submit_error"));
+        when(commcareHttpClient.submissionRequest(config.getAccountConfig(), "<?xml version='1.0'?>\n<data>1</data>"))
+                .thenReturn(openRosaResponse(201, "submit_success"));
+        when(commcareHttpClient.submissionRequest(config.getAccountConfig(), "<?xml version='1.0'?>\n<data>2</data>"))
+                .thenReturn(openRosaResponse(500, "submit_error"));
+
+        List<CaseUploadResult> results = caseService.uploadCases(asList(first, malformed, second));
+
+        assertTrue(results.get(0).isSuccessful());
+        assertFalse(results.get(1).isSuccessful());
+        assertNull(results.get(1).getResponse());
+        assertFalse(results.get(2).isSuccessful());
+        assertEquals(500, results.get(2).getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldRecordFailedSubmissionAndContinueWithOtherSubmissions() throws Exception {
+        CaseTask first = caseTask("case1");
+        CaseTask second = caseTask("case2");
+        second.setUserId("otherUser");
+
+        when(converter.convertToCaseBlock(first)).thenReturn("<case>1</case>");
+        when(converter.convertToCaseBlock(second)).thenReturn("<case>2</case>");
+        when(converter.convertToCasesXml(asList("<case>1</case>"), "xmlns", "user")).thenReturn("<data>1</data>");
+        when(converter.convertToCasesXml(asList("<case>2</case>"), "xmlns", "otherUser")).thenReturn("<data>2</data>");
+
+        when(commcareHttpClient.submissionRequest(config.getAccountConfig(), "<?xml version='1.0'?>\n<data>1</data>"))
+                .thenThrow(new IllegalStateException("Connection refused"));
+        when(commcareHttpClient.submissionRequest(config.getAccountConfig(), "<?xml version='1.0'?>\n<data>2</data>"))
+                .thenReturn(openRosaResponse(201, "submit_success"));
+
+        List<CaseUploadResult> results = caseService.uploadCases(asList(first, second));
+
+        assertEquals(2, results.size());
+        assertFalse(results.get(0).isSuccessful());
+        assertNull(results.get(0).getResponse());
+        assertTrue(results.get(0).getError().contains("Connection refused"));
+        assertTrue(results.get(1).isSuccessful());
+        assertNull(results.get(1).getError());
+    }
+
+    @Test
+    public void shouldReturnGeneratedCaseIdWithoutModifyingCaseTask() throws Exception {
+        CaseTask caseTask = caseTask(null);
+        caseTask.setCreateTask(new CreateTask());
+
+        when(converter.convertToCaseBlock(any(CaseTask.class))).thenReturn("<case>1</case>");
+        when(converter.convertToCasesXml(asList("<case>1</case>"), "xmlns", "user")).thenReturn("<data>1</data>");
+        when(commcareHttpClient.submissionRequest(config.getAccountConfig(), "<?xml version='1.0'?>\n<data>1</data>"))
+                .thenReturn(openRosaResponse(201, "submit_success"));
+
+        List<CaseUploadResult> results = caseService.uploadCases(asList(caseTask));
+
+        assertTrue(results.get(0).isSuccessful());
+        assertNotNull(results.get(0).getCaseId());
+        assertSame(caseTask.getCreateTask(), results.get(0).getCaseTask().getCreateTask());
+        assertNull(caseTask.getCaseId());
+    }
+
+    private CaseTask caseTask(String caseId) {
+        CaseTask caseTask = new CaseTask();
+        caseTask.setCaseId(caseId);
+        caseTask.setUserId("user");
+        caseTask.setXmlns("xmlns");
+        return caseTask;
+    }
+
+    private OpenRosaResponse openRosaResponse(int status, String nature) {
+        OpenRosaResponse response = new OpenRosaResponse();
+        response.setStatus(status);
+        response.setMessageNature(nature);
+        return response;
+    }
+
     private String casesResponse() {
         try {
             URL url = this.getClass().getClassLoader().getResource("json/service/cases.json");
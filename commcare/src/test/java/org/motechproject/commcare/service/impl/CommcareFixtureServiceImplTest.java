@@ -7,6 +7,7 @@ import org.motechproject.commcare.client.CommCareAPIHttpClient;
 import org.motechproject.commcare.config.Config;
 import org.motechproject.commcare.domain.CommcareFixture;
 import org.motechproject.commcare.service.CommcareConfigService;
+import org.motechproject.commcare.service.CommcareMirrorService;
 import org.motechproject.commcare.util.ConfigsUtils;
 
 import java.util.List;
@@ -27,6 +28,9 @@ public class CommcareFixtureServiceImplTest {
     @Mock
     private CommcareConfigService configService;
 
+    @Mock
+    private CommcareMirrorService mirrorService;
+
     private Config config;
 
     @Before
@@ -37,7 +41,7 @@ public class CommcareFixtureServiceImplTest {
 
         when(configService.getByName(config.getName())).thenReturn(config);
 
-        fixtureService = new CommcareFixtureServiceImpl(commcareHttpClient, configService);
+        fixtureService = new CommcareFixtureServiceImpl(commcareHttpClient, configService, mirrorService);
     }
 
     @Test
@@ -7,6 +7,7 @@ import org.motechproject.commcare.client.CommCareAPIHttpClient;
 import org.motechproject.commcare.config.Config;
 import org.motechproject.commcare.domain.CommcareLocation;
 import org.motechproject.commcare.service.CommcareConfigService;
+import org.motechproject.commcare.service.CommcareMirrorService;
 import org.motechproject.commcare.util.ConfigsUtils;
 
 import java.util.Arrays;
@@ -32,6 +33,9 @@ public class CommcareLocationServiceImplTest {
     @Mock
     private CommcareConfigService configService;
 
+    @Mock
+    private CommcareMirrorService mirrorService;
+
     private Config config;
 
     @Before
@@ -44,7 +48,7 @@ public class CommcareLocationServiceImplTest {
         when(commcareHttpClient.locationsRequest(config.getAccountConfig(), pageSize, pageNumber)).thenReturn(locationsResponse());
         when(commcareHttpClient.locationRequest(config.getAccountConfig(), "37825")).thenReturn(singleLocationResponse());
 
-        locationService = new CommcareLocationServiceImpl(commcareHttpClient, configService);
+        locationService = new CommcareLocationServiceImpl(commcareHttpClient, configService, mirrorService);
     }
 
     @Test
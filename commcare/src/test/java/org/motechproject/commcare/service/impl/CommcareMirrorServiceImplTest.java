@@ -0,0 +1,219 @@
+package org.motechproject.commcare.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.commcare.client.CommCareAPIHttpClient;
+import org.motechproject.commcare.config.AccountConfig;
+import org.motechproject.commcare.config.Config;
+import org.motechproject.commcare.domain.CommcareLocation;
+import org.motechproject.commcare.domain.CommcareMirrorEntry;
+import org.motechproject.commcare.domain.CommcareMirrorType;
+import org.motechproject.commcare.service.CommcareConfigService;
+import org.motechproject.commcare.service.CommcareMirrorEntryDataService;
+import org.motechproject.commcare.util.ConfigsUtils;
+import org.motechproject.server.config.SettingsFacade;
+import org.springframework.transaction.support.TransactionCallback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CommcareMirrorServiceImplTest {
+
+    @Mock
+    private CommCareAPIHttpClient commcareHttpClient;
+
+    @Mock
+    private CommcareConfigService configService;
+
+    @Mock
+    private CommcareMirrorEntryDataService mirrorEntryDataService;
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private CommcareMirrorServiceImpl mirrorService;
+
+    private Config config;
+
+    private AccountConfig accountConfig;
+
+    private int transactions;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        config = ConfigsUtils.prepareConfigOne();
+        accountConfig = config.getAccountConfig();
+
+        when(configService.getByName(config.getName())).thenReturn(config);
+        when(settingsFacade.getProperty("mirror.enabled")).thenReturn("true");
+        when(settingsFacade.getProperty("mirror.pageSize")).thenReturn("2");
+        when(settingsFacade.getProperty("mirror.concurrency")).thenReturn("2");
+
+        when(commcareHttpClient.usersRequest(accountConfig, 2, 1)).thenReturn(usersPage(3, "user1", "user2"));
+        when(commcareHttpClient.usersRequest(accountConfig, 2, 2)).thenReturn(usersPage(3, "user3"));
+        when(commcareHttpClient.locationsRequest(accountConfig, 2, 1)).thenReturn(locationsPage());
+        when(commcareHttpClient.fixturesRequest(accountConfig, 2, 1)).thenReturn(fixturesPage());
+
+        when(mirrorEntryDataService.byObjectType(any(String.class), any(CommcareMirrorType.class)))
+                .thenReturn(new ArrayList<CommcareMirrorEntry>());
+
+        when(mirrorEntryDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                transactions++;
+                return ((TransactionCallback) invocation.getArguments()[0]).doInTransaction(null);
+            }
+        });
+
+        mirrorService = new CommcareMirrorServiceImpl(commcareHttpClient, configService, mirrorEntryDataService,
+                settingsFacade);
+        mirrorService.start();
+    }
+
+    @After
+    public void tearDown() {
+        mirrorService.stop();
+    }
+
+    @Test
+    public void shouldMirrorAllPages() {
+        assertFalse(mirrorService.isMirrored(config.getName()));
+
+        assertTrue(mirrorService.refresh(config.getName()));
+
+        ArgumentCaptor<CommcareMirrorEntry> captor = ArgumentCaptor.forClass(CommcareMirrorEntry.class);
+        verify(mirrorEntryDataService, times(6)).create(captor.capture());
+
+        Set<String> userIds = new HashSet<>();
+        for (CommcareMirrorEntry entry : captor.getAllValues()) {
+            assertEquals(config.getName(), entry.getConfigName());
+
+            if (entry.getObjectType() == CommcareMirrorType.USER) {
+                userIds.add(entry.getObjectId());
+            } else if (entry.getObjectType() == CommcareMirrorType.LOCATION && "2".equals(entry.getObjectId())) {
+                assertEquals("1", entry.getParentId());
+            } else if (entry.getObjectType() == CommcareMirrorType.FIXTURE) {
+                assertEquals("fixture1", entry.getObjectId());
+                assertEquals("district", entry.getParentId());
+            }
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList("user1", "user2", "user3")), userIds);
+        assertTrue(mirrorService.isMirrored(config.getName()));
+    }
+
+    @Test
+    public void shouldOnlyWriteChangedEntries() {
+        mirrorService.refresh(config.getName());
+
+        ArgumentCaptor<CommcareMirrorEntry> captor = ArgumentCaptor.forClass(CommcareMirrorEntry.class);
+        verify(mirrorEntryDataService, times(6)).create(captor.capture());
+
+        List<CommcareMirrorEntry> storedUsers = new ArrayList<>();
+        for (CommcareMirrorEntry entry : captor.getAllValues()) {
+            if (entry.getObjectType() == CommcareMirrorType.USER && !"user3".equals(entry.getObjectId())) {
+                storedUsers.add(entry);
+            }
+        }
+        CommcareMirrorEntry removedUser = new CommcareMirrorEntry(config.getName(), CommcareMirrorType.USER, "user4",
+                null, "{\"id\": \"user4\"}");
+        storedUsers.add(removedUser);
+
+        when(mirrorEntryDataService.byObjectType(config.getName(), CommcareMirrorType.USER)).thenReturn(storedUsers);
+
+        assertTrue(mirrorService.refresh(config.getName()));
+
+        verify(mirrorEntryDataService, never()).update(any(CommcareMirrorEntry.class));
+        verify(mirrorEntryDataService).delete(removedUser);
+        // user3 and the locations and fixtures, which are not stored by the mocked data service, are created again
+        verify(mirrorEntryDataService, times(6 + 4)).create(any(CommcareMirrorEntry.class));
+    }
+
+    @Test
+    public void shouldNotUpdateMirrorWhenPageCannotBeFetched() {
+        when(commcareHttpClient.usersRequest(accountConfig, 2, 2)).thenReturn(null);
+
+        assertFalse(mirrorService.refresh(config.getName()));
+
+        verify(mirrorEntryDataService, never()).byObjectType(config.getName(), CommcareMirrorType.USER);
+        assertFalse(mirrorService.isMirrored(config.getName()));
+    }
+
+    @Test
+    public void shouldUpdateEachTypeInTransaction() {
+        assertTrue(mirrorService.refresh(config.getName()));
+        assertEquals(CommcareMirrorType.values().length, transactions);
+
+        CommcareMirrorEntry entry = new CommcareMirrorEntry(config.getName(), CommcareMirrorType.USER, "user1", null,
+                "{\"id\": \"user1\"}");
+        when(mirrorEntryDataService.bySourceConfiguration(config.getName())).thenReturn(Arrays.asList(entry));
+
+        mirrorService.delete(config.getName());
+
+        assertEquals(CommcareMirrorType.values().length + 1, transactions);
+        verify(mirrorEntryDataService).delete(entry);
+        assertFalse(mirrorService.isMirrored(config.getName()));
+    }
+
+    @Test
+    public void shouldWalkLocationAncestry() {
+        mirrorService.refresh(config.getName());
+
+        ArgumentCaptor<CommcareMirrorEntry> captor = ArgumentCaptor.forClass(CommcareMirrorEntry.class);
+        verify(mirrorEntryDataService, times(6)).create(captor.capture());
+
+        for (CommcareMirrorEntry entry : captor.getAllValues()) {
+            when(mirrorEntryDataService.byObjectId(config.getName(), entry.getObjectType(), entry.getObjectId()))
+                    .thenReturn(entry);
+        }
+
+        List<CommcareLocation> ancestry = mirrorService.getLocationAncestry("2", config.getName());
+
+        assertEquals(2, ancestry.size());
+        assertEquals("Kenscoff", ancestry.get(0).getName());
+        assertEquals("Ouest", ancestry.get(1).getName());
+    }
+
+    private String usersPage(int totalCount, String... ids) {
+        StringBuilder json = new StringBuilder("{\"meta\": {\"limit\": 2, \"total_count\": " + totalCount + "}, \"objects\": [");
+        for (int i = 0; i < ids.length; i++) {
+            json.append(i > 0 ? ", " : "").append("{\"id\": \"").append(ids[i]).append("\", \"username\": \"")
+                    .append(ids[i]).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private String locationsPage() {
+        return "{\"meta\": {\"limit\": 2, \"offset\": 0, \"total_count\": 2}, \"objects\": [" +
+                "{\"id\": 1, \"location_id\": \"abc\", \"name\": \"Ouest\", \"parent\": null, " +
+                "\"resource_uri\": \"https://www.commcarehq.org/a/demo/api/v0.5/location/1/\"}, " +
+                "{\"id\": 2, \"location_id\": \"def\", \"name\": \"Kenscoff\", " +
+                "\"parent\": \"https://www.commcarehq.org/a/demo/api/v0.5/location/1/\", " +
+                "\"resource_uri\": \"https://www.commcarehq.org/a/demo/api/v0.5/location/2/\"}]}";
+    }
+
+    private String fixturesPage() {
+        return "{\"meta\": {\"limit\": 2, \"total_count\": 1}, \"objects\": [" +
+                "{\"id\": \"fixture1\", \"fixture_type\": \"district\", \"fields\": {\"name\": \"North\"}}]}";
+    }
+}
@@ -0,0 +1,100 @@
+package org.motechproject.commcare.service.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.commcare.config.Config;
+import org.motechproject.commcare.domain.CommcareApplicationJson;
+import org.motechproject.commcare.domain.CommcareModuleJson;
+import org.motechproject.commcare.domain.FormSchemaJson;
+import org.motechproject.commcare.service.CommcareApplicationDataService;
+import org.motechproject.commcare.service.CommcareConfigService;
+import org.motechproject.commcare.util.ConfigsUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CommcareSchemaServiceImplTest {
+
+    @Mock
+    private CommcareApplicationDataService applicationDataService;
+
+    @Mock
+    private CommcareConfigService configService;
+
+    private CommcareSchemaServiceImpl schemaService;
+    private Config config;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        config = ConfigsUtils.prepareConfigOne();
+        when(configService.getDefault()).thenReturn(config);
+
+        schemaService = new CommcareSchemaServiceImpl();
+        schemaService.setCommcareApplicationDataService(applicationDataService);
+        schemaService.setConfigService(configService);
+    }
+
+    @Test
+    public void shouldCacheSchemasOfDefaultConfigurationUnderItsName() {
+        when(applicationDataService.bySourceConfiguration(config.getName())).thenReturn(asList(application("form1")));
+
+        List<FormSchemaJson> schemas = schemaService.getAllFormSchemas();
+        assertEquals(1, schemas.size());
+        assertSame(schemas, schemaService.getAllFormSchemas(config.getName()));
+        verify(applicationDataService, times(1)).bySourceConfiguration(config.getName());
+
+        schemaService.invalidate(config.getName());
+        when(applicationDataService.bySourceConfiguration(config.getName()))
+                .thenReturn(asList(application("form1"), application("form2")));
+
+        assertEquals(2, schemaService.getAllFormSchemas().size());
+        assertEquals(2, schemaService.getAllCaseTypes().size());
+        verify(applicationDataService, times(2)).bySourceConfiguration(config.getName());
+    }
+
+    @Test
+    public void shouldNotCacheSchemaInvalidatedWhileLoading() {
+        when(applicationDataService.bySourceConfiguration(config.getName())).thenAnswer(
+                new Answer<List<CommcareApplicationJson>>() {
+                    @Override
+                    public List<CommcareApplicationJson> answer(InvocationOnMock invocation) {
+                        // the applications are synchronized while the stale schema is being loaded
+                        schemaService.invalidate(config.getName());
+                        return asList(application("stale"));
+                    }
+                });
+
+        assertEquals("stale", schemaService.getAllFormSchemas(config.getName()).get(0).getFormName());
+
+        when(applicationDataService.bySourceConfiguration(config.getName())).thenReturn(asList(application("fresh")));
+
+        assertEquals("fresh", schemaService.getAllFormSchemas(config.getName()).get(0).getFormName());
+        assertTrue(schemaService.getAllCaseTypes(config.getName()).containsKey("fresh"));
+    }
+
+    private CommcareApplicationJson application(String name) {
+        FormSchemaJson formSchema = new FormSchemaJson();
+        formSchema.setFormNames(Collections.singletonMap("en", name));
+
+        CommcareModuleJson module = new CommcareModuleJson();
+        module.setCaseType(name);
+        module.setCaseProperties(asList("property"));
+        module.setFormSchemas(asList(formSchema));
+
+        return new CommcareApplicationJson(name, name, null, asList(module));
+    }
+}
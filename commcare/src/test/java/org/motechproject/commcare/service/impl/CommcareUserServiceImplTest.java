@@ -7,6 +7,7 @@ import org.motechproject.commcare.client.CommCareAPIHttpClient;
 import org.motechproject.commcare.config.Config;
 import org.motechproject.commcare.domain.CommcareUser;
 import org.motechproject.commcare.service.CommcareConfigService;
+import org.motechproject.commcare.service.CommcareMirrorService;
 import org.motechproject.commcare.util.ConfigsUtils;
 
 import java.util.List;
@@ -33,6 +34,9 @@ public class CommcareUserServiceImplTest {
     @Mock
     private CommcareConfigService configService;
 
+    @Mock
+    private CommcareMirrorService mirrorService;
+
     private Config config;
 
     @Before
@@ -43,7 +47,7 @@ public class CommcareUserServiceImplTest {
 
         when(configService.getByName(config.getName())).thenReturn(config);
 
-        userService = new CommcareUserServiceImpl(commcareHttpClient, configService);
+        userService = new CommcareUserServiceImpl(commcareHttpClient, configService, mirrorService);
     }
 
     @Test
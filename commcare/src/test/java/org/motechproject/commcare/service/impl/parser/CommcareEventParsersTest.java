@@ -6,7 +6,8 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.motechproject.commcare.config.Config;
 import org.motechproject.commcare.events.constants.EventSubjects;
-import org.motechproject.commcare.exception.EndpointNotSupported;
+import org.motechproject.commcare.forwarding.ForwardedRequestProcessor;
+import org.motechproject.commcare.forwarding.ForwardedRequestQueue;
 import org.motechproject.commcare.service.CommcareConfigService;
 import org.motechproject.commcare.service.impl.CommcareCaseEventParser;
 import org.motechproject.commcare.service.impl.CommcareFormsEventParser;
@@ -38,6 +39,9 @@ public class CommcareEventParsersTest {
     @Mock
     private CommcareConfigService configService;
 
+    @Mock
+    private ForwardedRequestQueue queue;
+
     private FullFormController formsController;
     private CasesController casesController;
     private MockHttpServletRequest request;
@@ -52,7 +56,7 @@ public class CommcareEventParsersTest {
     private Config config;
 
     @Before
-    public void setUp() throws EndpointNotSupported {
+    public void setUp() throws Exception {
         // Initialize parsers
         formsEventParser = new CommcareFormsEventParser();
         caseEventParser = new CommcareCaseEventParser();
@@ -64,8 +68,9 @@ public class CommcareEventParsersTest {
         when(configService.getByName(config.getName())).thenReturn(config);
 
         // Mock hitting forms and cases endpoint
-        formsController = new FullFormController(eventRelay, configService);
-        casesController = new CasesController(eventRelay, configService);
+        ForwardedRequestProcessor processor = new ForwardedRequestProcessor(eventRelay, configService);
+        formsController = new FullFormController(configService, processor, queue);
+        casesController = new CasesController(configService, processor, queue);
         request = new MockHttpServletRequest();
         request.addHeader("received-on", "2012-07-21T15:22:34.046462Z");
         request.setPathInfo("/forms/"+ config.getName());
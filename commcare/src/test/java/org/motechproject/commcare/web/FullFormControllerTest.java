@@ -7,7 +7,9 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.motechproject.commcare.config.Config;
 import org.motechproject.commcare.events.constants.EventDataKeys;
-import org.motechproject.commcare.exception.EndpointNotSupported;
+import org.motechproject.commcare.forwarding.ForwardedRequest;
+import org.motechproject.commcare.forwarding.ForwardedRequestProcessor;
+import org.motechproject.commcare.forwarding.ForwardedRequestQueue;
 import org.motechproject.commcare.service.CommcareConfigService;
 import org.motechproject.commcare.service.impl.CommcareFormsEventParser;
 import org.motechproject.commcare.util.ConfigsUtils;
@@ -23,6 +25,8 @@ import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -46,6 +50,9 @@ public class FullFormControllerTest {
     @Mock
     private CommcareConfigService configService;
 
+    @Mock
+    private ForwardedRequestQueue queue;
+
     private FullFormController controller;
     private MockHttpServletRequest request;
     private Config config;
@@ -54,7 +61,7 @@ public class FullFormControllerTest {
     public void setUp() throws Exception {
         initMocks(this);
 
-        controller = new FullFormController(eventRelay, configService);
+        controller = new FullFormController(configService, new ForwardedRequestProcessor(eventRelay, configService), queue);
 
         config = ConfigsUtils.prepareConfigOne();
         when(configService.getByName(config.getName())).thenReturn(config);
@@ -65,7 +72,7 @@ public class FullFormControllerTest {
     }
 
     @Test
-    public void testIncomingFormsFailure() throws EndpointNotSupported {
+    public void testIncomingFormsFailure() throws Exception {
         ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
 
         controller.receiveForm("", request);
@@ -73,7 +80,18 @@ public class FullFormControllerTest {
     }
 
     @Test
-    public void testIncomingDeviceReport() throws EndpointNotSupported {
+    public void shouldEnqueueFormWhenQueueIsEnabled() throws Exception {
+        when(queue.isEnabled()).thenReturn(true);
+
+        controller.receiveForm(ResponseXML.getFormXML(), request);
+
+        verify(queue).enqueue(new ForwardedRequest(ForwardedRequest.Type.FORM, config.getName(),
+                "2012-07-21T15:22:34.046462Z", ResponseXML.getFormXML()));
+        verify(eventRelay, never()).sendEventMessage(any(MotechEvent.class));
+    }
+
+    @Test
+    public void testIncomingDeviceReport() throws Exception {
         ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
 
         controller.receiveForm(ResponseXML.getDeviceReportXML(), request);
@@ -103,7 +121,7 @@ public class FullFormControllerTest {
     }
 
     @Test
-    public void testIncomingFormsSuccess() throws EndpointNotSupported {
+    public void testIncomingFormsSuccess() throws Exception {
         ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
 
         controller.receiveForm(ResponseXML.getFormXML(), request);
@@ -8,15 +8,48 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 @Component
 public class CSDHttpClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CSDHttpClient.class);
 
+    /**
+     * Downloads the XML from the given URL. Prefer {@link #getXml(String, Path)} for large registries, since this
+     * method holds the whole response in memory.
+     *
+     * @param url the URL of the XML
+     * @return the XML, null if it couldn't be downloaded
+     */
     public String getXml(String url) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        return download(url, out) ? new String(out.toByteArray(), StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Downloads the XML from the given URL into a file, without holding the whole response in memory.
+     *
+     * @param url the URL of the XML
+     * @param target the file to write the XML to, replaced if it exists
+     * @return true if the XML was downloaded, false otherwise
+     */
+    public boolean getXml(String url, Path target) {
+        try (OutputStream out = Files.newOutputStream(target)) {
+            return download(url, out);
+        } catch (IOException e) {
+            LOGGER.error("IOException while writing the response to {}: ", target, e);
+            return false;
+        }
+    }
+
+    private boolean download(String url, OutputStream out) {
 
         HttpClient client = new HttpClient();
 
@@ -25,11 +58,11 @@ public class CSDHttpClient {
         try {
             client.executeMethod(method);
 
-            InputStream responseBodyAsStream = method.getResponseBodyAsStream();
-            String responseBody = IOUtils.toString(responseBodyAsStream);
-            IOUtils.closeQuietly(responseBodyAsStream);
+            try (InputStream responseBodyAsStream = method.getResponseBodyAsStream()) {
+                IOUtils.copy(responseBodyAsStream, out);
+            }
 
-            return responseBody;
+            return true;
 
         } catch (HttpException e) {
             LOGGER.error("HttpException while sending request: ", e);
@@ -39,6 +72,6 @@ public class CSDHttpClient {
             method.releaseConnection();
         }
 
-        return null;
+        return false;
     }
 }
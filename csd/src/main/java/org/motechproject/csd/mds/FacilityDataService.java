@@ -1,12 +1,24 @@
 package org.motechproject.csd.mds;
 
+import org.joda.time.DateTime;
 import org.motechproject.csd.domain.Facility;
 import org.motechproject.mds.annotations.Lookup;
 import org.motechproject.mds.annotations.LookupField;
 import org.motechproject.mds.service.MotechDataService;
 
+import java.util.List;
+import java.util.Set;
+
+import static org.motechproject.mds.util.Constants.Operators.GT;
+
 public interface FacilityDataService extends MotechDataService<Facility> {
 
     @Lookup
     Facility findByEntityID(@LookupField(name = "entityID") String entityID);
+
+    @Lookup
+    List<Facility> findByEntityIDs(@LookupField(name = "entityID") Set<String> entityIDs);
+
+    @Lookup
+    List<Facility> findByModificationDateAfter(@LookupField(name = "modificationDate", customOperator = GT) DateTime modificationDate);
 }
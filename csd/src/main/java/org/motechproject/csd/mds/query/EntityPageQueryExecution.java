@@ -0,0 +1,45 @@
+package org.motechproject.csd.mds.query;
+
+import org.motechproject.mds.query.QueryExecution;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+
+import javax.jdo.Query;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The <code>EntityPageQueryExecution</code> class prepares a custom MDS query returning the entities with an id
+ * greater than the given one, ordered by id. Continuing after the last id of the previous page, instead of using an
+ * offset, lets the database seek directly to the page, so that the last pages are not slower than the first ones.
+ *
+ * @param <T> the type of the entities
+ */
+public class EntityPageQueryExecution<T> implements QueryExecution<List<T>> {
+
+    private final Long afterId;
+    private final int limit;
+
+    /**
+     * @param afterId the id after which to continue, null to start from the first entity
+     * @param limit the maximum number of entities to return
+     */
+    public EntityPageQueryExecution(Long afterId, int limit) {
+        this.afterId = afterId;
+        this.limit = limit;
+    }
+
+    @Override
+    public List<T> execute(Query query, InstanceSecurityRestriction restriction) {
+        query.setOrdering("id ascending");
+        query.setRange(0, limit);
+
+        if (afterId == null) {
+            return new ArrayList<>((Collection<T>) query.execute());
+        }
+
+        query.setFilter("id > afterId");
+        query.declareParameters("java.lang.Long afterId");
+        return new ArrayList<>((Collection<T>) query.execute(afterId));
+    }
+}
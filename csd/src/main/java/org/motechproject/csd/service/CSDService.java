@@ -3,6 +3,8 @@ package org.motechproject.csd.service;
 import org.joda.time.DateTime;
 import org.motechproject.csd.domain.CSD;
 
+import java.io.OutputStream;
+
 public interface CSDService {
 
     CSD getCSD();
@@ -15,6 +17,8 @@ public interface CSDService {
 
     String getXmlContent();
 
+    void writeXml(OutputStream out);
+
     void fetchAndUpdate(String xmlUrl);
 
     void fetchAndUpdateUsingREST(String xmlUrl);
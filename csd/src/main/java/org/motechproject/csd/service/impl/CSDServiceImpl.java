@@ -12,6 +12,10 @@ import org.motechproject.csd.domain.FacilityDirectory;
 import org.motechproject.csd.domain.OrganizationDirectory;
 import org.motechproject.csd.domain.ProviderDirectory;
 import org.motechproject.csd.domain.ServiceDirectory;
+import org.motechproject.csd.mds.FacilityDataService;
+import org.motechproject.csd.mds.OrganizationDataService;
+import org.motechproject.csd.mds.ProviderDataService;
+import org.motechproject.csd.mds.ServiceDataService;
 import org.motechproject.csd.service.CSDService;
 import org.motechproject.csd.service.ConfigService;
 import org.motechproject.csd.service.FacilityService;
@@ -19,17 +23,26 @@ import org.motechproject.csd.service.OrganizationService;
 import org.motechproject.csd.service.ProviderService;
 import org.motechproject.csd.service.ServiceService;
 import org.motechproject.csd.util.MarshallUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.xml.sax.SAXException;
 
 import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashSet;
 
 @Service("csdService")
 public class CSDServiceImpl implements CSDService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(CSDServiceImpl.class);
+
     @Autowired
     private FacilityService facilityService;
 
@@ -42,6 +55,18 @@ public class CSDServiceImpl implements CSDService {
     @Autowired
     private ServiceService serviceService;
 
+    @Autowired
+    private FacilityDataService facilityDataService;
+
+    @Autowired
+    private ProviderDataService providerDataService;
+
+    @Autowired
+    private OrganizationDataService organizationDataService;
+
+    @Autowired
+    private ServiceDataService serviceDataService;
+
     @Autowired
     private ConfigService configService;
 
@@ -73,7 +98,6 @@ public class CSDServiceImpl implements CSDService {
     }
 
     @Override
-    @Transactional
     public void update(CSD csd) {
         if (csd != null) {
             if (csd.getFacilityDirectory() != null && csd.getFacilityDirectory().getFacilities() != null) {
@@ -117,7 +141,18 @@ public class CSDServiceImpl implements CSDService {
     }
 
     @Override
-    @Transactional
+    public void writeXml(OutputStream out) {
+        try {
+            new CSDXmlExporter(organizationDataService, serviceDataService, facilityDataService, providerDataService)
+                    .write(out);
+        } catch (JAXBException e) {
+            throw new IllegalStateException("Invalid CSD structure", e);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Unable to write the CSD XML", e);
+        }
+    }
+
+    @Override
     public void fetchAndUpdate(String xmlUrl) {
         Config config = configService.getConfig(xmlUrl);
         CommunicationProtocol communicationProtocol = config.getCommunicationProtocol();
@@ -138,11 +173,22 @@ public class CSDServiceImpl implements CSDService {
 
     @Override
     public void fetchAndUpdateUsingREST(String xmlUrl) {
-        String xml = csdHttpClient.getXml(xmlUrl);
-        if (xml == null) {
-            throw new IllegalArgumentException("Couldn't load XML from url: " + xmlUrl);
+        Path file = null;
+        try {
+            file = Files.createTempFile("csd-", ".xml");
+            if (!csdHttpClient.getXml(xmlUrl, file)) {
+                throw new IllegalArgumentException("Couldn't load XML from url: " + xmlUrl);
+            }
+            new CSDXmlImporter(facilityService, providerService, organizationService, serviceService).importXml(file);
+        } catch (SAXException e) {
+            throw new IllegalArgumentException("Invalid schema", e);
+        } catch (JAXBException | XMLStreamException e) {
+            throw new IllegalArgumentException("Invalid XML structure", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't store XML from url: " + xmlUrl, e);
+        } finally {
+            deleteQuietly(file);
         }
-        saveFromXml(xml);
     }
 
     @Override
@@ -163,4 +209,14 @@ public class CSDServiceImpl implements CSDService {
 
         update(csd);
     }
+
+    private void deleteQuietly(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to delete the temporary file {}", file, e);
+            }
+        }
+    }
 }
@@ -0,0 +1,122 @@
+package org.motechproject.csd.service.impl;
+
+import org.motechproject.csd.domain.AbstractID;
+import org.motechproject.csd.domain.CSD;
+import org.motechproject.csd.domain.Facility;
+import org.motechproject.csd.domain.Organization;
+import org.motechproject.csd.domain.Provider;
+import org.motechproject.csd.domain.Service;
+import org.motechproject.csd.mds.query.EntityPageQueryExecution;
+import org.motechproject.csd.util.MarshallUtils;
+import org.motechproject.mds.service.MotechDataService;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes the stored CSD registry as XML straight to an output stream. The directories are written one page of
+ * entities at a time, each page retrieved by id after the last one of the previous page and marshalled in its own
+ * transaction, so the registry is never loaded into memory as a whole. The entities are not validated against the
+ * CSD schema, they were validated when imported.
+ */
+class CSDXmlExporter {
+
+    /**
+     * The number of entities retrieved and marshalled at once.
+     */
+    static final int PAGE_SIZE = 200;
+
+    private static final String NAMESPACE = "urn:ihe:iti:csd:2013";
+
+    private final MotechDataService<Organization> organizationDataService;
+    private final MotechDataService<Service> serviceDataService;
+    private final MotechDataService<Facility> facilityDataService;
+    private final MotechDataService<Provider> providerDataService;
+
+    CSDXmlExporter(MotechDataService<Organization> organizationDataService,
+                   MotechDataService<Service> serviceDataService,
+                   MotechDataService<Facility> facilityDataService,
+                   MotechDataService<Provider> providerDataService) {
+        this.organizationDataService = organizationDataService;
+        this.serviceDataService = serviceDataService;
+        this.facilityDataService = facilityDataService;
+        this.providerDataService = providerDataService;
+    }
+
+    /**
+     * Writes the registry to the given stream, encoded in UTF-8. The stream is flushed after every page, but not
+     * closed.
+     *
+     * @param out the stream to write to
+     * @throws JAXBException if an entity couldn't be marshalled
+     * @throws XMLStreamException if the XML couldn't be written
+     */
+    void write(OutputStream out) throws JAXBException, XMLStreamException {
+        Marshaller marshaller = MarshallUtils.getContext(CSD.class).createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+
+        XMLStreamWriter writer = XMLOutputFactory.newInstance()
+                .createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+        try {
+            writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+            writer.setDefaultNamespace(NAMESPACE);
+            writer.writeStartElement(NAMESPACE, "CSD");
+            writer.writeDefaultNamespace(NAMESPACE);
+
+            writeDirectory(writer, marshaller, "organizationDirectory", "organization",
+                    Organization.class, organizationDataService);
+            writeDirectory(writer, marshaller, "serviceDirectory", "service", Service.class, serviceDataService);
+            writeDirectory(writer, marshaller, "facilityDirectory", "facility", Facility.class, facilityDataService);
+            writeDirectory(writer, marshaller, "providerDirectory", "provider", Provider.class, providerDataService);
+
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private <T extends AbstractID> void writeDirectory(final XMLStreamWriter writer, final Marshaller marshaller,
+                                                      String directoryName, String entityName,
+                                                      final Class<T> entityClass,
+                                                      final MotechDataService<T> dataService)
+            throws XMLStreamException {
+        final QName entityQName = new QName(NAMESPACE, entityName);
+
+        writer.writeStartElement(NAMESPACE, directoryName);
+
+        Long lastId = null;
+        do {
+            final Long afterId = lastId;
+            lastId = dataService.doInTransaction(new TransactionCallback<Long>() {
+                @Override
+                public Long doInTransaction(TransactionStatus status) {
+                    List<T> entities = dataService.executeQuery(new EntityPageQueryExecution<T>(afterId, PAGE_SIZE));
+                    try {
+                        for (T entity : entities) {
+                            marshaller.marshal(new JAXBElement<>(entityQName, entityClass, entity), writer);
+                        }
+                        writer.flush();
+                    } catch (JAXBException | XMLStreamException e) {
+                        throw new IllegalStateException("Unable to write the " + entityQName.getLocalPart()
+                                + " entities", e);
+                    }
+                    return entities.size() < PAGE_SIZE ? null : entities.get(entities.size() - 1).getId();
+                }
+            });
+        } while (lastId != null);
+
+        writer.writeEndElement();
+    }
+}
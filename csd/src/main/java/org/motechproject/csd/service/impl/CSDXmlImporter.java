@@ -0,0 +1,158 @@
+package org.motechproject.csd.service.impl;
+
+import org.motechproject.csd.constants.CSDConstants;
+import org.motechproject.csd.domain.CSD;
+import org.motechproject.csd.domain.Facility;
+import org.motechproject.csd.domain.Organization;
+import org.motechproject.csd.domain.Provider;
+import org.motechproject.csd.domain.Service;
+import org.motechproject.csd.service.FacilityService;
+import org.motechproject.csd.service.OrganizationService;
+import org.motechproject.csd.service.ProviderService;
+import org.motechproject.csd.service.ServiceService;
+import org.motechproject.csd.util.MarshallUtils;
+import org.xml.sax.SAXException;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Imports a CSD registry from an XML file without loading it into memory as a whole. The file is first validated
+ * against the CSD schema in a streaming pass, so that nothing is saved from an invalid file. The entries of the
+ * directories are then unmarshalled one at a time and saved in batches of {@link EntityUpdates#CHUNK_SIZE}.
+ */
+class CSDXmlImporter {
+
+    private final FacilityService facilityService;
+    private final ProviderService providerService;
+    private final OrganizationService organizationService;
+    private final ServiceService serviceService;
+
+    CSDXmlImporter(FacilityService facilityService, ProviderService providerService,
+                   OrganizationService organizationService, ServiceService serviceService) {
+        this.facilityService = facilityService;
+        this.providerService = providerService;
+        this.organizationService = organizationService;
+        this.serviceService = serviceService;
+    }
+
+    /**
+     * Validates the given file and saves the entities it contains.
+     *
+     * @param file the CSD XML file
+     * @throws IOException if the file couldn't be read
+     * @throws SAXException if the file doesn't conform to the CSD schema
+     * @throws JAXBException if an entry couldn't be unmarshalled
+     * @throws XMLStreamException if the file couldn't be parsed
+     */
+    void importXml(Path file) throws IOException, SAXException, JAXBException, XMLStreamException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MarshallUtils.getSchema(CSDConstants.CSD_SCHEMA).newValidator().validate(new StreamSource(in));
+        }
+
+        try (InputStream in = Files.newInputStream(file)) {
+            read(in);
+        }
+    }
+
+    private void read(InputStream in) throws JAXBException, XMLStreamException {
+        Map<String, EntityBatch<?>> batches = new HashMap<>();
+        batches.put("organization", new EntityBatch<Organization>(Organization.class) {
+            @Override
+            void save(Set<Organization> organizations) {
+                organizationService.update(organizations);
+            }
+        });
+        batches.put("service", new EntityBatch<Service>(Service.class) {
+            @Override
+            void save(Set<Service> services) {
+                serviceService.update(services);
+            }
+        });
+        batches.put("facility", new EntityBatch<Facility>(Facility.class) {
+            @Override
+            void save(Set<Facility> facilities) {
+                facilityService.update(facilities);
+            }
+        });
+        batches.put("provider", new EntityBatch<Provider>(Provider.class) {
+            @Override
+            void save(Set<Provider> providers) {
+                providerService.update(providers);
+            }
+        });
+
+        Unmarshaller unmarshaller = MarshallUtils.getContext(CSD.class).createUnmarshaller();
+        XMLStreamReader reader = createInputFactory().createXMLStreamReader(in);
+
+        try {
+            // the entries are the children of the directories, which are the children of the CSD element
+            int depth = 0;
+            while (reader.hasNext()) {
+                if (reader.isStartElement()) {
+                    EntityBatch<?> batch = depth == 2 ? batches.get(reader.getLocalName()) : null;
+                    if (batch != null) {
+                        // leaves the reader at the event following the end of the entry
+                        batch.add(unmarshaller, reader);
+                        continue;
+                    }
+                    depth++;
+                } else if (reader.isEndElement()) {
+                    depth--;
+                }
+                reader.next();
+            }
+        } finally {
+            reader.close();
+        }
+
+        for (EntityBatch<?> batch : batches.values()) {
+            batch.flush();
+        }
+    }
+
+    private XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private abstract static class EntityBatch<T> {
+
+        private final Class<T> entityClass;
+        private Set<T> entities = new HashSet<>();
+
+        EntityBatch(Class<T> entityClass) {
+            this.entityClass = entityClass;
+        }
+
+        abstract void save(Set<T> batch);
+
+        void add(Unmarshaller unmarshaller, XMLStreamReader reader) throws JAXBException {
+            entities.add(unmarshaller.unmarshal(reader, entityClass).getValue());
+            if (entities.size() >= EntityUpdates.CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!entities.isEmpty()) {
+                save(entities);
+                entities = new HashSet<>();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.motechproject.csd.service.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.joda.time.DateTime;
+import org.motechproject.csd.domain.BaseMainEntity;
+import org.motechproject.csd.domain.Facility;
+import org.motechproject.csd.domain.Organization;
+import org.motechproject.csd.domain.Provider;
+import org.motechproject.csd.domain.Record;
+import org.motechproject.csd.domain.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helpers used for updating the stored CSD entities in place. Instead of deleting an entity and creating it again,
+ * which rewrites all of its nested rows, only the entities which changed are updated and only the nested collections
+ * which differ are replaced.
+ */
+final class EntityUpdates {
+
+    /**
+     * The number of entities updated in a single transaction.
+     */
+    static final int CHUNK_SIZE = 200;
+
+    /**
+     * Checks whether the incoming facility is the same as the stored one. The fields are compared the same way
+     * the merge compares them, so that a stored facility with empty collections is not updated when the incoming
+     * one has none.
+     *
+     * @param stored the stored facility
+     * @param incoming the incoming facility
+     * @return true if there is nothing to update
+     */
+    static boolean isUnchanged(Facility stored, Facility incoming) {
+        return isRecordUnchanged(stored, incoming)
+                && !differ(stored.getPrimaryName(), incoming.getPrimaryName())
+                && !differ(stored.getGeocode(), incoming.getGeocode())
+                && !differ(stored.getFacilityOrganizations(), incoming.getFacilityOrganizations())
+                && !differ(stored.getOperatingHours(), incoming.getOperatingHours())
+                && !differ(stored.getOtherIDs(), incoming.getOtherIDs())
+                && !differ(stored.getOtherNames(), incoming.getOtherNames())
+                && !differ(stored.getAddresses(), incoming.getAddresses())
+                && !differ(stored.getContacts(), incoming.getContacts())
+                && !differ(stored.getLanguages(), incoming.getLanguages())
+                && !differ(stored.getContactPoints(), incoming.getContactPoints())
+                && !differ(stored.getCodedTypes(), incoming.getCodedTypes())
+                && !differ(stored.getExtensions(), incoming.getExtensions());
+    }
+
+    /**
+     * Checks whether the incoming organization is the same as the stored one, comparing the fields like
+     * {@link #isUnchanged(Facility, Facility)} does.
+     *
+     * @param stored the stored organization
+     * @param incoming the incoming organization
+     * @return true if there is nothing to update
+     */
+    static boolean isUnchanged(Organization stored, Organization incoming) {
+        return isRecordUnchanged(stored, incoming)
+                && !differ(stored.getPrimaryName(), incoming.getPrimaryName())
+                && !differ(stored.getParentOrganization(), incoming.getParentOrganization())
+                && !differ(stored.getOtherIDs(), incoming.getOtherIDs())
+                && !differ(stored.getOtherNames(), incoming.getOtherNames())
+                && !differ(stored.getAddresses(), incoming.getAddresses())
+                && !differ(stored.getContacts(), incoming.getContacts())
+                && !differ(stored.getCredentials(), incoming.getCredentials())
+                && !differ(stored.getLanguages(), incoming.getLanguages())
+                && !differ(stored.getSpecializations(), incoming.getSpecializations())
+                && !differ(stored.getContactPoints(), incoming.getContactPoints())
+                && !differ(stored.getCodedTypes(), incoming.getCodedTypes())
+                && !differ(stored.getExtensions(), incoming.getExtensions());
+    }
+
+    /**
+     * Checks whether the incoming provider is the same as the stored one, comparing the fields like
+     * {@link #isUnchanged(Facility, Facility)} does.
+     *
+     * @param stored the stored provider
+     * @param incoming the incoming provider
+     * @return true if there is nothing to update
+     */
+    static boolean isUnchanged(Provider stored, Provider incoming) {
+        return isRecordUnchanged(stored, incoming)
+                && !differ(stored.getOtherIDs(), incoming.getOtherIDs())
+                && !differ(stored.getDemographic(), incoming.getDemographic())
+                && !differ(stored.getLanguages(), incoming.getLanguages())
+                && !differ(stored.getProviderOrganizations(), incoming.getProviderOrganizations())
+                && !differ(stored.getProviderFacilities(), incoming.getProviderFacilities())
+                && !differ(stored.getCredentials(), incoming.getCredentials())
+                && !differ(stored.getSpecialties(), incoming.getSpecialties())
+                && !differ(stored.getCodedTypes(), incoming.getCodedTypes())
+                && !differ(stored.getExtensions(), incoming.getExtensions());
+    }
+
+    /**
+     * Checks whether the incoming service is the same as the stored one, comparing the fields like
+     * {@link #isUnchanged(Facility, Facility)} does.
+     *
+     * @param stored the stored service
+     * @param incoming the incoming service
+     * @return true if there is nothing to update
+     */
+    static boolean isUnchanged(Service stored, Service incoming) {
+        return isRecordUnchanged(stored, incoming)
+                && !differ(stored.getCodedType(), incoming.getCodedType())
+                && !differ(stored.getExtensions(), incoming.getExtensions());
+    }
+
+    /**
+     * Checks whether the incoming value of a field differs from the stored one. Null and empty collections are
+     * considered equal.
+     *
+     * @param stored the stored value
+     * @param incoming the incoming value
+     * @return true if the field must be updated
+     */
+    static boolean differ(Object stored, Object incoming) {
+        if (isEmpty(stored) && isEmpty(incoming)) {
+            return false;
+        }
+        return stored == null ? incoming != null : !stored.equals(incoming);
+    }
+
+    static Set<String> entityIDs(Collection<? extends BaseMainEntity> entities) {
+        Set<String> entityIDs = new HashSet<>();
+        for (BaseMainEntity entity : entities) {
+            entityIDs.add(entity.getEntityID());
+        }
+        return entityIDs;
+    }
+
+    static <T extends BaseMainEntity> Map<String, T> byEntityID(Collection<T> entities) {
+        Map<String, T> byEntityID = new HashMap<>();
+        for (T entity : entities) {
+            byEntityID.put(entity.getEntityID(), entity);
+        }
+        return byEntityID;
+    }
+
+    static <T> List<List<T>> partition(Collection<T> entities) {
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        for (T entity : entities) {
+            chunk.add(entity);
+            if (chunk.size() == CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Checks whether the record of the incoming entity allows skipping the update. It does if the record was not
+     * updated after the stored entity was last modified and if its status and source directory are equal to the stored
+     * ones.
+     */
+    private static boolean isRecordUnchanged(BaseMainEntity stored, BaseMainEntity incoming) {
+        Record record = incoming.getRecord();
+        DateTime modificationDate = stored.getModificationDate();
+
+        if (record == null || record.getUpdated() == null || modificationDate == null
+                || record.getUpdated().isAfter(modificationDate)) {
+            return false;
+        }
+
+        return StringUtils.equals(stored.getStatus(), record.getStatus())
+                && StringUtils.equals(stored.getSourceDirectory(), record.getSourceDirectory());
+    }
+
+    private static boolean isEmpty(Object value) {
+        return value == null || (value instanceof Collection && ((Collection) value).isEmpty());
+    }
+
+    private EntityUpdates() {
+    }
+}
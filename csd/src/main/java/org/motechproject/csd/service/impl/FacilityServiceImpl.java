@@ -6,12 +6,21 @@ import org.motechproject.csd.mds.FacilityDataService;
 import org.motechproject.csd.service.FacilityService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import static org.motechproject.csd.service.impl.EntityUpdates.byEntityID;
+import static org.motechproject.csd.service.impl.EntityUpdates.differ;
+import static org.motechproject.csd.service.impl.EntityUpdates.entityIDs;
+import static org.motechproject.csd.service.impl.EntityUpdates.isUnchanged;
+import static org.motechproject.csd.service.impl.EntityUpdates.partition;
+
 @Service("facilityService")
 public class FacilityServiceImpl implements FacilityService {
 
@@ -39,8 +48,7 @@ public class FacilityServiceImpl implements FacilityService {
     @Override
     @Transactional
     public void update(Facility facility) {
-        delete(facility.getEntityID());
-        facilityDataService.create(facility);
+        upsert(getFacilityByEntityID(facility.getEntityID()), facility);
     }
 
     @Override
@@ -53,24 +61,74 @@ public class FacilityServiceImpl implements FacilityService {
     }
 
     @Override
-    @Transactional
     public void update(Set<Facility> facilities) {
-        for (Facility facility : facilities) {
-            update(facility);
+        for (final List<Facility> chunk : partition(facilities)) {
+            facilityDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    Map<String, Facility> stored = byEntityID(facilityDataService.findByEntityIDs(entityIDs(chunk)));
+                    for (Facility facility : chunk) {
+                        stored.put(facility.getEntityID(), upsert(stored.get(facility.getEntityID()), facility));
+                    }
+                }
+            });
         }
     }
 
     @Override
     @Transactional
     public Set<Facility> getModifiedAfter(DateTime date) {
-        List<Facility> allFacilities = allFacilities();
-        Set<Facility> modifiedFacilities = new HashSet<>();
+        return new HashSet<>(facilityDataService.findByModificationDateAfter(date));
+    }
+
+    private Facility upsert(Facility stored, Facility facility) {
+        if (stored == null) {
+            return facilityDataService.create(facility);
+        }
+        if (isUnchanged(stored, facility)) {
+            return stored;
+        }
+
+        merge(stored, facility);
+        return facilityDataService.update(stored);
+    }
 
-        for (Facility facility : allFacilities) {
-            if (facility.getRecord().getUpdated().isAfter(date)) {
-                modifiedFacilities.add(facility);
-            }
+    private void merge(Facility stored, Facility facility) {
+        stored.setRecord(facility.getRecord());
+        stored.setPrimaryName(facility.getPrimaryName());
+
+        if (differ(stored.getGeocode(), facility.getGeocode())) {
+            stored.setGeocode(facility.getGeocode());
+        }
+        if (differ(stored.getFacilityOrganizations(), facility.getFacilityOrganizations())) {
+            stored.setFacilityOrganizations(facility.getFacilityOrganizations());
+        }
+        if (differ(stored.getOperatingHours(), facility.getOperatingHours())) {
+            stored.setOperatingHours(facility.getOperatingHours());
+        }
+        if (differ(stored.getOtherIDs(), facility.getOtherIDs())) {
+            stored.setOtherIDs(facility.getOtherIDs());
+        }
+        if (differ(stored.getOtherNames(), facility.getOtherNames())) {
+            stored.setOtherNames(facility.getOtherNames());
+        }
+        if (differ(stored.getAddresses(), facility.getAddresses())) {
+            stored.setAddresses(facility.getAddresses());
+        }
+        if (differ(stored.getContacts(), facility.getContacts())) {
+            stored.setContacts(facility.getContacts());
+        }
+        if (differ(stored.getLanguages(), facility.getLanguages())) {
+            stored.setLanguages(facility.getLanguages());
+        }
+        if (differ(stored.getContactPoints(), facility.getContactPoints())) {
+            stored.setContactPoints(facility.getContactPoints());
+        }
+        if (differ(stored.getCodedTypes(), facility.getCodedTypes())) {
+            stored.setCodedTypes(facility.getCodedTypes());
+        }
+        if (differ(stored.getExtensions(), facility.getExtensions())) {
+            stored.setExtensions(facility.getExtensions());
         }
-        return modifiedFacilities;
     }
 }
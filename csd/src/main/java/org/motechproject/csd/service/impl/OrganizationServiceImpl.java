@@ -6,12 +6,21 @@ import org.motechproject.csd.mds.OrganizationDataService;
 import org.motechproject.csd.service.OrganizationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import static org.motechproject.csd.service.impl.EntityUpdates.byEntityID;
+import static org.motechproject.csd.service.impl.EntityUpdates.differ;
+import static org.motechproject.csd.service.impl.EntityUpdates.entityIDs;
+import static org.motechproject.csd.service.impl.EntityUpdates.isUnchanged;
+import static org.motechproject.csd.service.impl.EntityUpdates.partition;
+
 @Service("organizationService")
 public class OrganizationServiceImpl implements OrganizationService {
 
@@ -39,8 +48,7 @@ public class OrganizationServiceImpl implements OrganizationService {
     @Override
     @Transactional
     public void update(Organization organization) {
-        delete(organization.getEntityID());
-        organizationDataService.create(organization);
+        upsert(getOrganizationByEntityID(organization.getEntityID()), organization);
     }
 
     @Override
@@ -53,24 +61,74 @@ public class OrganizationServiceImpl implements OrganizationService {
     }
 
     @Override
-    @Transactional
     public void update(Set<Organization> organizations) {
-        for (Organization organization : organizations) {
-            update(organization);
+        for (final List<Organization> chunk : partition(organizations)) {
+            organizationDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    Map<String, Organization> stored = byEntityID(organizationDataService.findByEntityIDs(entityIDs(chunk)));
+                    for (Organization organization : chunk) {
+                        stored.put(organization.getEntityID(), upsert(stored.get(organization.getEntityID()), organization));
+                    }
+                }
+            });
         }
     }
 
     @Override
     @Transactional
     public Set<Organization> getModifiedAfter(DateTime date) {
-        List<Organization> allOrganizations = allOrganizations();
-        Set<Organization> modifiedOrganizations = new HashSet<>();
+        return new HashSet<>(organizationDataService.findByModificationDateAfter(date));
+    }
+
+    private Organization upsert(Organization stored, Organization organization) {
+        if (stored == null) {
+            return organizationDataService.create(organization);
+        }
+        if (isUnchanged(stored, organization)) {
+            return stored;
+        }
+
+        merge(stored, organization);
+        return organizationDataService.update(stored);
+    }
 
-        for (Organization organization : allOrganizations) {
-            if (organization.getRecord().getUpdated().isAfter(date)) {
-                modifiedOrganizations.add(organization);
-            }
+    private void merge(Organization stored, Organization organization) {
+        stored.setRecord(organization.getRecord());
+        stored.setPrimaryName(organization.getPrimaryName());
+
+        if (differ(stored.getParentOrganization(), organization.getParentOrganization())) {
+            stored.setParentOrganization(organization.getParentOrganization());
+        }
+        if (differ(stored.getOtherIDs(), organization.getOtherIDs())) {
+            stored.setOtherIDs(organization.getOtherIDs());
+        }
+        if (differ(stored.getOtherNames(), organization.getOtherNames())) {
+            stored.setOtherNames(organization.getOtherNames());
+        }
+        if (differ(stored.getAddresses(), organization.getAddresses())) {
+            stored.setAddresses(organization.getAddresses());
+        }
+        if (differ(stored.getContacts(), organization.getContacts())) {
+            stored.setContacts(organization.getContacts());
+        }
+        if (differ(stored.getCredentials(), organization.getCredentials())) {
+            stored.setCredentials(organization.getCredentials());
+        }
+        if (differ(stored.getLanguages(), organization.getLanguages())) {
+            stored.setLanguages(organization.getLanguages());
+        }
+        if (differ(stored.getSpecializations(), organization.getSpecializations())) {
+            stored.setSpecializations(organization.getSpecializations());
+        }
+        if (differ(stored.getContactPoints(), organization.getContactPoints())) {
+            stored.setContactPoints(organization.getContactPoints());
+        }
+        if (differ(stored.getCodedTypes(), organization.getCodedTypes())) {
+            stored.setCodedTypes(organization.getCodedTypes());
+        }
+        if (differ(stored.getExtensions(), organization.getExtensions())) {
+            stored.setExtensions(organization.getExtensions());
         }
-        return modifiedOrganizations;
     }
 }
@@ -6,12 +6,21 @@ import org.motechproject.csd.mds.ProviderDataService;
 import org.motechproject.csd.service.ProviderService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import static org.motechproject.csd.service.impl.EntityUpdates.byEntityID;
+import static org.motechproject.csd.service.impl.EntityUpdates.differ;
+import static org.motechproject.csd.service.impl.EntityUpdates.entityIDs;
+import static org.motechproject.csd.service.impl.EntityUpdates.isUnchanged;
+import static org.motechproject.csd.service.impl.EntityUpdates.partition;
+
 @Service("providerService")
 public class ProviderServiceImpl implements ProviderService {
 
@@ -39,8 +48,7 @@ public class ProviderServiceImpl implements ProviderService {
     @Override
     @Transactional
     public void update(Provider provider) {
-        delete(provider.getEntityID());
-        providerDataService.create(provider);
+        upsert(getProviderByEntityID(provider.getEntityID()), provider);
     }
 
     @Override
@@ -53,24 +61,67 @@ public class ProviderServiceImpl implements ProviderService {
     }
 
     @Override
-    @Transactional
     public void update(Set<Provider> providers) {
-        for (Provider provider : providers) {
-            update(provider);
+        for (final List<Provider> chunk : partition(providers)) {
+            providerDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    Map<String, Provider> stored = byEntityID(providerDataService.findByEntityIDs(entityIDs(chunk)));
+                    for (Provider provider : chunk) {
+                        stored.put(provider.getEntityID(), upsert(stored.get(provider.getEntityID()), provider));
+                    }
+                }
+            });
         }
     }
 
     @Override
     @Transactional
     public Set<Provider> getModifiedAfter(DateTime date) {
-        List<Provider> allProviders = allProviders();
-        Set<Provider> modifiedProviders = new HashSet<>();
+        return new HashSet<>(providerDataService.findByModificationDateAfter(date));
+    }
+
+    private Provider upsert(Provider stored, Provider provider) {
+        if (stored == null) {
+            return providerDataService.create(provider);
+        }
+        if (isUnchanged(stored, provider)) {
+            return stored;
+        }
+
+        merge(stored, provider);
+        return providerDataService.update(stored);
+    }
+
+    private void merge(Provider stored, Provider provider) {
+        stored.setRecord(provider.getRecord());
 
-        for (Provider provider : allProviders) {
-            if (provider.getRecord().getUpdated().isAfter(date)) {
-                modifiedProviders.add(provider);
-            }
+        if (differ(stored.getOtherIDs(), provider.getOtherIDs())) {
+            stored.setOtherIDs(provider.getOtherIDs());
+        }
+        if (differ(stored.getDemographic(), provider.getDemographic())) {
+            stored.setDemographic(provider.getDemographic());
+        }
+        if (differ(stored.getLanguages(), provider.getLanguages())) {
+            stored.setLanguages(provider.getLanguages());
+        }
+        if (differ(stored.getProviderOrganizations(), provider.getProviderOrganizations())) {
+            stored.setProviderOrganizations(provider.getProviderOrganizations());
+        }
+        if (differ(stored.getProviderFacilities(), provider.getProviderFacilities())) {
+            stored.setProviderFacilities(provider.getProviderFacilities());
+        }
+        if (differ(stored.getCredentials(), provider.getCredentials())) {
+            stored.setCredentials(provider.getCredentials());
+        }
+        if (differ(stored.getSpecialties(), provider.getSpecialties())) {
+            stored.setSpecialties(provider.getSpecialties());
+        }
+        if (differ(stored.getCodedTypes(), provider.getCodedTypes())) {
+            stored.setCodedTypes(provider.getCodedTypes());
+        }
+        if (differ(stored.getExtensions(), provider.getExtensions())) {
+            stored.setExtensions(provider.getExtensions());
         }
-        return modifiedProviders;
     }
 }
@@ -5,12 +5,21 @@ import org.motechproject.csd.domain.Service;
 import org.motechproject.csd.mds.ServiceDataService;
 import org.motechproject.csd.service.ServiceService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import static org.motechproject.csd.service.impl.EntityUpdates.byEntityID;
+import static org.motechproject.csd.service.impl.EntityUpdates.differ;
+import static org.motechproject.csd.service.impl.EntityUpdates.entityIDs;
+import static org.motechproject.csd.service.impl.EntityUpdates.isUnchanged;
+import static org.motechproject.csd.service.impl.EntityUpdates.partition;
+
 @org.springframework.stereotype.Service("serviceService")
 public class ServiceServiceImpl implements ServiceService {
 
@@ -38,8 +47,7 @@ public class ServiceServiceImpl implements ServiceService {
     @Override
     @Transactional
     public void update(Service service) {
-        delete(service.getEntityID());
-        serviceDataService.create(service);
+        upsert(getServiceByEntityID(service.getEntityID()), service);
     }
 
     @Override
@@ -52,24 +60,46 @@ public class ServiceServiceImpl implements ServiceService {
     }
 
     @Override
-    @Transactional
     public void update(Set<Service> services) {
-        for (Service service : services) {
-            update(service);
+        for (final List<Service> chunk : partition(services)) {
+            serviceDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    Map<String, Service> stored = byEntityID(serviceDataService.findByEntityIDs(entityIDs(chunk)));
+                    for (Service service : chunk) {
+                        stored.put(service.getEntityID(), upsert(stored.get(service.getEntityID()), service));
+                    }
+                }
+            });
         }
     }
 
     @Override
     @Transactional
     public Set<Service> getModifiedAfter(DateTime date) {
-        List<Service> allServices = allServices();
-        Set<Service> modifiedServices = new HashSet<>();
+        return new HashSet<>(serviceDataService.findByModificationDateAfter(date));
+    }
+
+    private Service upsert(Service stored, Service service) {
+        if (stored == null) {
+            return serviceDataService.create(service);
+        }
+        if (isUnchanged(stored, service)) {
+            return stored;
+        }
+
+        merge(stored, service);
+        return serviceDataService.update(stored);
+    }
 
-        for (Service service : allServices) {
-            if (service.getRecord().getUpdated().isAfter(date)) {
-                modifiedServices.add(service);
-            }
+    private void merge(Service stored, Service service) {
+        stored.setRecord(service.getRecord());
+
+        if (differ(stored.getCodedType(), service.getCodedType())) {
+            stored.setCodedType(service.getCodedType());
+        }
+        if (differ(stored.getExtensions(), service.getExtensions())) {
+            stored.setExtensions(service.getExtensions());
         }
-        return modifiedServices;
     }
 }
@@ -12,24 +12,32 @@ import javax.xml.validation.SchemaFactory;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.URL;
-
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Marshalling and unmarshalling of the CSD structures. Creating a JAXB context and compiling a schema are expensive,
+ * so both are cached. Contexts and compiled schemas are thread-safe, marshallers and unmarshallers are not, so these
+ * are created for every call.
+ */
 public final class MarshallUtils {
 
+    private static final ConcurrentMap<List<Class>, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
     private MarshallUtils() {
     }
 
     public static String marshall(Object obj, URL schemaURL, Class... classesToBeBound) throws JAXBException, SAXException {
 
-        JAXBContext context = JAXBContext.newInstance(classesToBeBound);
-
-        Marshaller marshaller = context.createMarshaller();
+        Marshaller marshaller = getContext(classesToBeBound).createMarshaller();
 
         marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
 
         if (schemaURL != null) {
-            SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = sf.newSchema(schemaURL);
-            marshaller.setSchema(schema);
+            marshaller.setSchema(getSchema(schemaURL));
         }
 
         StringWriter writer = new StringWriter();
@@ -40,18 +48,60 @@ public final class MarshallUtils {
 
     public static Object unmarshall(String xml, URL schemaURL, Class... classesToBeBound) throws JAXBException, SAXException {
 
-        JAXBContext context = JAXBContext.newInstance(classesToBeBound);
-
-        Unmarshaller unmarshaller = context.createUnmarshaller();
+        Unmarshaller unmarshaller = getContext(classesToBeBound).createUnmarshaller();
 
         if (schemaURL != null) {
-            SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = sf.newSchema(schemaURL);
-            unmarshaller.setSchema(schema);
+            unmarshaller.setSchema(getSchema(schemaURL));
         }
 
         StringReader reader = new StringReader(xml);
 
         return unmarshaller.unmarshal(reader);
     }
+
+    /**
+     * Returns the JAXB context for the given classes, creating it on first use.
+     *
+     * @param classesToBeBound the classes bound by the context
+     * @return the cached context
+     * @throws JAXBException if the context couldn't be created
+     */
+    public static JAXBContext getContext(Class... classesToBeBound) throws JAXBException {
+        List<Class> key = Arrays.asList(classesToBeBound);
+        JAXBContext context = CONTEXTS.get(key);
+
+        if (context == null) {
+            context = JAXBContext.newInstance(classesToBeBound);
+            JAXBContext existing = CONTEXTS.putIfAbsent(key, context);
+            if (existing != null) {
+                context = existing;
+            }
+        }
+
+        return context;
+    }
+
+    /**
+     * Returns the schema loaded from the given URL, compiling it on first use.
+     *
+     * @param schemaURL the URL of the schema
+     * @return the cached schema
+     * @throws SAXException if the schema couldn't be compiled
+     */
+    public static Schema getSchema(URL schemaURL) throws SAXException {
+        // URL.equals resolves host names, so the external form is used as the key
+        String key = schemaURL.toExternalForm();
+        Schema schema = SCHEMAS.get(key);
+
+        if (schema == null) {
+            SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schema = sf.newSchema(schemaURL);
+            Schema existing = SCHEMAS.putIfAbsent(key, schema);
+            if (existing != null) {
+                schema = existing;
+            }
+        }
+
+        return schema;
+    }
 }
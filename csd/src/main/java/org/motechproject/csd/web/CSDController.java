@@ -7,6 +7,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -17,8 +18,10 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.xml.sax.SAXParseException;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.xml.bind.UnmarshalException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import static org.motechproject.csd.constants.CSDConstants.HAS_MANAGE_CSD_PERMISSION;
 
@@ -42,9 +45,10 @@ public class CSDController {
     }
 
     @RequestMapping(value = "/csd-getXml", method = RequestMethod.GET)
-    @ResponseBody
-    public String getXml() {
-        return csdService.getXmlContent();
+    public void getXml(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_XML_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        csdService.writeXml(response.getOutputStream());
     }
 
     @ExceptionHandler(Exception.class)
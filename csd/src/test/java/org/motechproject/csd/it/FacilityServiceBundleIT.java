@@ -7,6 +7,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.motechproject.csd.domain.CSD;
 import org.motechproject.csd.domain.Facility;
+import org.motechproject.csd.mds.FacilityDataService;
 import org.motechproject.csd.service.CSDService;
 import org.motechproject.csd.service.FacilityService;
 import org.motechproject.csd.db.InitialData;
@@ -19,6 +20,7 @@ import org.ops4j.pax.exam.spi.reactors.PerSuite;
 
 import javax.inject.Inject;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -40,6 +42,9 @@ public class FacilityServiceBundleIT extends BasePaxIT {
     @Inject
     private FacilityService facilityService;
 
+    @Inject
+    private FacilityDataService facilityDataService;
+
     @Before
     public void cleanBefore() {
         getLogger().info("Clean database before test");
@@ -115,4 +120,20 @@ public class FacilityServiceBundleIT extends BasePaxIT {
 
         assertEquals(lastUpdated.iterator().next(), facility);
     }
+
+    @Test
+    public void shouldFindOnlyEntitiesModifiedStrictlyAfterGivenDate() {
+        DateTime dateUpdated = new DateTime(2020, 1, 1, 1, 1);
+
+        Facility before = InitialData.createFacility(dateUpdated.minusSeconds(1), "updatedBefore");
+        Facility at = InitialData.createFacility(dateUpdated, "updatedAt");
+        Facility after = InitialData.createFacility(dateUpdated.plusSeconds(1), "updatedAfter");
+        facilityService.update(new HashSet<>(Arrays.asList(before, at, after)));
+
+        List<Facility> modified = facilityDataService.findByModificationDateAfter(dateUpdated);
+
+        assertEquals(1, modified.size());
+        assertEquals("updatedAfter", modified.get(0).getEntityID());
+        assertTrue(facilityDataService.findByModificationDateAfter(dateUpdated.plusSeconds(1)).isEmpty());
+    }
 }
@@ -0,0 +1,56 @@
+package org.motechproject.csd.mds.query;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+
+import javax.jdo.Query;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class EntityPageQueryExecutionTest {
+
+    @Mock
+    private Query query;
+
+    @Mock
+    private InstanceSecurityRestriction restriction;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+    }
+
+    @Test
+    public void shouldStartFromFirstEntity() {
+        when(query.execute()).thenReturn(Arrays.asList("first", "second"));
+
+        List<String> page = new EntityPageQueryExecution<String>(null, 2).execute(query, restriction);
+
+        verify(query).setOrdering("id ascending");
+        verify(query).setRange(0, 2);
+        verify(query, never()).setFilter(anyString());
+        assertEquals(Arrays.asList("first", "second"), page);
+    }
+
+    @Test
+    public void shouldContinueAfterLastIdOfPreviousPage() {
+        when(query.execute(200L)).thenReturn(Arrays.asList("third"));
+
+        List<String> page = new EntityPageQueryExecution<String>(200L, 2).execute(query, restriction);
+
+        verify(query).setFilter("id > afterId");
+        verify(query).declareParameters("java.lang.Long afterId");
+        verify(query).setOrdering("id ascending");
+        verify(query).setRange(0, 2);
+        assertEquals(Arrays.asList("third"), page);
+    }
+}
@@ -0,0 +1,114 @@
+package org.motechproject.csd.service.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.csd.constants.CSDConstants;
+import org.motechproject.csd.db.InitialData;
+import org.motechproject.csd.domain.CSD;
+import org.motechproject.csd.mds.FacilityDataService;
+import org.motechproject.csd.mds.OrganizationDataService;
+import org.motechproject.csd.mds.ProviderDataService;
+import org.motechproject.csd.mds.ServiceDataService;
+import org.motechproject.csd.mds.query.EntityPageQueryExecution;
+import org.motechproject.csd.service.FacilityService;
+import org.motechproject.csd.service.OrganizationService;
+import org.motechproject.csd.service.ProviderService;
+import org.motechproject.csd.service.ServiceService;
+import org.motechproject.csd.util.MarshallUtils;
+import org.springframework.transaction.support.TransactionCallback;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CSDServiceImplTest {
+
+    @Mock
+    private FacilityService facilityService;
+
+    @Mock
+    private ProviderService providerService;
+
+    @Mock
+    private OrganizationService organizationService;
+
+    @Mock
+    private ServiceService serviceService;
+
+    @Mock
+    private FacilityDataService facilityDataService;
+
+    @Mock
+    private ProviderDataService providerDataService;
+
+    @Mock
+    private OrganizationDataService organizationDataService;
+
+    @Mock
+    private ServiceDataService serviceDataService;
+
+    @InjectMocks
+    private CSDServiceImpl csdService = new CSDServiceImpl();
+
+    private CSD csd;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        csd = InitialData.getInitialData();
+
+        when(facilityService.allFacilities())
+                .thenReturn(new ArrayList<>(csd.getFacilityDirectory().getFacilities()));
+        when(providerService.allProviders())
+                .thenReturn(new ArrayList<>(csd.getProviderDirectory().getProviders()));
+        when(organizationService.allOrganizations())
+                .thenReturn(new ArrayList<>(csd.getOrganizationDirectory().getOrganizations()));
+        when(serviceService.allServices())
+                .thenReturn(new ArrayList<>(csd.getServiceDirectory().getServices()));
+
+        when(facilityDataService.executeQuery(any(EntityPageQueryExecution.class)))
+                .thenReturn(new ArrayList<>(csd.getFacilityDirectory().getFacilities()));
+        when(providerDataService.executeQuery(any(EntityPageQueryExecution.class)))
+                .thenReturn(new ArrayList<>(csd.getProviderDirectory().getProviders()));
+        when(organizationDataService.executeQuery(any(EntityPageQueryExecution.class)))
+                .thenReturn(new ArrayList<>(csd.getOrganizationDirectory().getOrganizations()));
+        when(serviceDataService.executeQuery(any(EntityPageQueryExecution.class)))
+                .thenReturn(new ArrayList<>(csd.getServiceDirectory().getServices()));
+
+        when(facilityDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new InTransaction());
+        when(providerDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new InTransaction());
+        when(organizationDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new InTransaction());
+        when(serviceDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new InTransaction());
+    }
+
+    @Test
+    public void shouldStreamSameCSDAsXmlContent() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        csdService.writeXml(out);
+
+        CSD streamed = (CSD) MarshallUtils.unmarshall(new String(out.toByteArray(), StandardCharsets.UTF_8),
+                CSDConstants.CSD_SCHEMA, CSD.class);
+        CSD marshalled = (CSD) MarshallUtils.unmarshall(csdService.getXmlContent(), CSDConstants.CSD_SCHEMA,
+                CSD.class);
+
+        assertEquals(marshalled, streamed);
+        assertEquals(csd, streamed);
+    }
+
+    private static class InTransaction implements Answer<Object> {
+        @Override
+        public Object answer(InvocationOnMock invocation) {
+            return ((TransactionCallback) invocation.getArguments()[0]).doInTransaction(null);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.motechproject.csd.service.impl;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.motechproject.csd.db.InitialData;
+import org.motechproject.csd.domain.CSD;
+import org.motechproject.csd.domain.Service;
+import org.motechproject.csd.service.FacilityService;
+import org.motechproject.csd.service.OrganizationService;
+import org.motechproject.csd.service.ProviderService;
+import org.motechproject.csd.service.ServiceService;
+import org.xml.sax.SAXException;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anySet;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CSDXmlImporterTest {
+
+    private static final String SERVICE = "        <service entityID=\"serviceEntityID\">\n"
+            + "            <codedType code=\"service\" codingScheme=\"c\"></codedType>\n"
+            + "            <extension type=\"serviceExtension\" urn=\"urn\"/>\n"
+            + "            <record created=\"2015-03-05T11:16:00.000+01:00\" status=\"s\" updated=\"2015-03-05T11:16:00.000+01:00\"/>\n"
+            + "        </service>\n";
+
+    @Mock
+    private FacilityService facilityService;
+
+    @Mock
+    private ProviderService providerService;
+
+    @Mock
+    private OrganizationService organizationService;
+
+    @Mock
+    private ServiceService serviceService;
+
+    private CSDXmlImporter importer;
+
+    private Path file;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        importer = new CSDXmlImporter(facilityService, providerService, organizationService, serviceService);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void shouldImportEntitiesOfEachDirectory() throws Exception {
+        importer.importXml(Paths.get(getClass().getResource("/initialXml.xml").toURI()));
+
+        CSD csd = InitialData.getInitialData();
+
+        ArgumentCaptor<Set> organizations = ArgumentCaptor.forClass(Set.class);
+        ArgumentCaptor<Set> services = ArgumentCaptor.forClass(Set.class);
+        ArgumentCaptor<Set> facilities = ArgumentCaptor.forClass(Set.class);
+        ArgumentCaptor<Set> providers = ArgumentCaptor.forClass(Set.class);
+        verify(organizationService).update(organizations.capture());
+        verify(serviceService).update(services.capture());
+        verify(facilityService).update(facilities.capture());
+        verify(providerService).update(providers.capture());
+
+        assertEquals(csd.getOrganizationDirectory().getOrganizations(), organizations.getValue());
+        assertEquals(csd.getServiceDirectory().getServices(), services.getValue());
+        assertEquals(csd.getFacilityDirectory().getFacilities(), facilities.getValue());
+        assertEquals(csd.getProviderDirectory().getProviders(), providers.getValue());
+    }
+
+    @Test
+    public void shouldSaveEntitiesInBatches() throws Exception {
+        StringBuilder services = new StringBuilder();
+        for (int i = 0; i <= EntityUpdates.CHUNK_SIZE; i++) {
+            services.append(SERVICE.replace("serviceEntityID", "service" + i));
+        }
+        file = writeInitialXml(initialXml().replace(SERVICE, services.toString()));
+
+        importer.importXml(file);
+
+        ArgumentCaptor<Set> batches = ArgumentCaptor.forClass(Set.class);
+        verify(serviceService, times(2)).update(batches.capture());
+
+        List<Set> saved = batches.getAllValues();
+        assertEquals(EntityUpdates.CHUNK_SIZE, saved.get(0).size());
+        assertEquals(1, saved.get(1).size());
+        assertEquals("service" + EntityUpdates.CHUNK_SIZE, ((Service) saved.get(1).iterator().next()).getEntityID());
+    }
+
+    @Test
+    public void shouldNotSaveAnythingFromInvalidFile() throws Exception {
+        file = writeInitialXml(initialXml().replace("<codedType code=\"service\" codingScheme=\"c\"></codedType>",
+                "<unknown/>"));
+
+        try {
+            importer.importXml(file);
+            fail("Expected the file to be rejected");
+        } catch (SAXException e) {
+            verify(organizationService, never()).update(anySet());
+            verify(serviceService, never()).update(anySet());
+            verify(facilityService, never()).update(anySet());
+            verify(providerService, never()).update(anySet());
+        }
+    }
+
+    private String initialXml() throws Exception {
+        try (InputStream in = getClass().getResourceAsStream("/initialXml.xml")) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8.name()).replace("\r\n", "\n");
+        }
+    }
+
+    private Path writeInitialXml(String xml) throws Exception {
+        Path path = Files.createTempFile("csd-", ".xml");
+        Files.write(path, xml.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+}
@@ -0,0 +1,89 @@
+package org.motechproject.csd.service.impl;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.motechproject.csd.domain.Facility;
+import org.motechproject.csd.domain.OtherName;
+import org.motechproject.csd.domain.Record;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EntityUpdatesTest {
+
+    private static final DateTime UPDATED = new DateTime(2015, 1, 1, 10, 0);
+
+    @Test
+    public void shouldTreatEqualEntityAsUnchanged() {
+        Facility stored = facility("name", UPDATED);
+        Facility incoming = facility("name", UPDATED);
+
+        assertTrue(EntityUpdates.isUnchanged(stored, incoming));
+    }
+
+    @Test
+    public void shouldDetectChangesInContentAndRecord() {
+        Facility stored = facility("name", UPDATED);
+
+        assertFalse(EntityUpdates.isUnchanged(stored, facility("other name", UPDATED)));
+        assertFalse(EntityUpdates.isUnchanged(stored, facility("name", UPDATED.plusMinutes(1))));
+
+        Facility inactive = facility("name", UPDATED);
+        inactive.setRecord(new Record(UPDATED, UPDATED, "Inactive", "source"));
+        assertFalse(EntityUpdates.isUnchanged(stored, inactive));
+    }
+
+    @Test
+    public void shouldTreatStoredEmptyCollectionsAsUnchangedWhenIncomingOnesAreNull() {
+        Facility stored = facility("name", UPDATED);
+        Facility incoming = facility("name", UPDATED);
+        incoming.setOtherIDs(null);
+        incoming.setOtherNames(null);
+        incoming.setAddresses(null);
+        incoming.setContacts(null);
+        incoming.setLanguages(null);
+        incoming.setContactPoints(null);
+        incoming.setCodedTypes(null);
+        incoming.setOperatingHours(null);
+        incoming.setFacilityOrganizations(null);
+        incoming.setExtensions(null);
+
+        assertTrue(EntityUpdates.isUnchanged(stored, incoming));
+
+        incoming.setOtherNames(new HashSet<>(Arrays.asList(new OtherName("a", "en"))));
+        assertFalse(EntityUpdates.isUnchanged(stored, incoming));
+    }
+
+    @Test
+    public void shouldTreatNullAndEmptyCollectionsAsEqual() {
+        assertFalse(EntityUpdates.differ(null, Collections.emptySet()));
+        assertFalse(EntityUpdates.differ(new HashSet<>(Arrays.asList(new OtherName("a", "en"))),
+                new HashSet<>(Arrays.asList(new OtherName("a", "en")))));
+        assertTrue(EntityUpdates.differ(null, new HashSet<>(Arrays.asList(new OtherName("a", "en")))));
+    }
+
+    @Test
+    public void shouldPartitionIntoChunks() {
+        List<Integer> values = Collections.nCopies(EntityUpdates.CHUNK_SIZE * 2 + 1, 1);
+
+        List<List<Integer>> chunks = EntityUpdates.partition(values);
+
+        assertEquals(3, chunks.size());
+        assertEquals(EntityUpdates.CHUNK_SIZE, chunks.get(0).size());
+        assertEquals(1, chunks.get(2).size());
+    }
+
+    private Facility facility(String primaryName, DateTime updated) {
+        Facility facility = new Facility();
+        facility.setEntityID("facility");
+        facility.setPrimaryName(primaryName);
+        facility.setRecord(new Record(UPDATED, updated, "Active", "source"));
+        return facility;
+    }
+}
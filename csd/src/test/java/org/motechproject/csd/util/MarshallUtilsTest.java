@@ -10,6 +10,7 @@ import org.motechproject.csd.domain.CSD;
 import java.io.InputStream;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
 
 public class MarshallUtilsTest {
 
@@ -36,4 +37,10 @@ public class MarshallUtilsTest {
         CSD generatedCSD = (CSD) MarshallUtils.unmarshall(xml, CSDConstants.CSD_SCHEMA, CSD.class);
         assertEquals(csd, generatedCSD);
     }
+
+    @Test
+    public void shouldCacheContextsAndSchemas() throws Exception {
+        assertSame(MarshallUtils.getContext(CSD.class), MarshallUtils.getContext(CSD.class));
+        assertSame(MarshallUtils.getSchema(CSDConstants.CSD_SCHEMA), MarshallUtils.getSchema(CSDConstants.CSD_SCHEMA));
+    }
 }
@@ -13,7 +13,9 @@ import org.motechproject.dhis2.rest.domain.EnrollmentDto;
 import org.motechproject.dhis2.rest.domain.TrackedEntityInstanceDto;
 import org.motechproject.dhis2.rest.service.DhisWebService;
 import org.motechproject.dhis2.service.DataElementService;
+import org.motechproject.dhis2.service.DataValueAggregator;
 import org.motechproject.dhis2.service.TrackedEntityInstanceMappingService;
+import org.motechproject.dhis2.service.TrackerImportBatcher;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.annotations.MotechListener;
 import org.motechproject.scheduler.service.MotechSchedulerService;
@@ -46,13 +48,21 @@ public class EventHandler {
     @Autowired
     private DataElementService dataElementService;
 
+    @Autowired
+    private DataValueAggregator dataValueAggregator;
+
+    @Autowired
+    private TrackerImportBatcher trackerImportBatcher;
+
     public EventHandler() {
 
     }
 
     /**
      * Parses the MotechEvent and creates a {@link org.motechproject.dhis2.rest.domain.TrackedEntityInstanceDto}
-     * which is then sent to the DHIS2 server via {@link org.motechproject.dhis2.rest.service.DhisWebService}
+     * which is then sent to the DHIS2 server via {@link org.motechproject.dhis2.rest.service.DhisWebService}. If the
+     * {@link org.motechproject.dhis2.service.TrackerImportBatcher} is enabled, the instance is buffered and sent
+     * along with other instances in a single request.
      *
      * @param event MotechEvent pertaining to tracked entity instance creation.
      */
@@ -63,6 +73,11 @@ public class EventHandler {
         String externalUUID = (String) params.remove(EventParams.EXTERNAL_ID);
         TrackedEntityInstanceDto trackedEntityInstance = createTrackedEntityInstanceFromParams(params);
 
+        if (trackerImportBatcher.isEnabled()) {
+            trackerImportBatcher.addTrackedEntityInstance(externalUUID, trackedEntityInstance);
+            return;
+        }
+
         LOGGER.debug("Sending request to create entity to the DHIS Web Service");
         DhisStatusResponse response = dhisWebService.createTrackedEntityInstance(trackedEntityInstance);
 
@@ -74,28 +89,54 @@ public class EventHandler {
 
     /**
      * Parses the MotechEvent and creates a {@link org.motechproject.dhis2.rest.domain.EnrollmentDto}
-     * which is then sent to the DHIS2 server via {@link org.motechproject.dhis2.rest.service.DhisWebService}
+     * which is then sent to the DHIS2 server via {@link org.motechproject.dhis2.rest.service.DhisWebService}. If the
+     * {@link org.motechproject.dhis2.service.TrackerImportBatcher} is enabled, the enrollment is buffered and sent
+     * along with other enrollments in a single request.
      *
      * @param event MotechEvent pertaining to enrolling a tracked entity instance in a program.
      */
     @MotechListener(subjects = {EventSubjects.ENROLL_IN_PROGRAM})
     public void handleEnrollment (MotechEvent event) {
         Map<String, Object> params = prepareDhisAttributesMap(event.getParameters());
+        String externalId = (String) params.remove(EventParams.EXTERNAL_ID);
         EnrollmentDto enrollment = createEnrollmentFromParams(params);
+
+        if (trackerImportBatcher.isEnabled()) {
+            trackerImportBatcher.addEnrollment(externalId, enrollment);
+            return;
+        }
+
+        enrollment.setTrackedEntityInstance(trackedEntityInstanceMappingService.mapFromExternalId(externalId));
         dhisWebService.createEnrollment(enrollment);
     }
 
 
     /**
      * Parses the MotechEvent and creates a {@link org.motechproject.dhis2.rest.domain.DhisEventDto}
-     * which is then sent to the DHIS2 server via {@link org.motechproject.dhis2.rest.service.DhisWebService}
+     * which is then sent to the DHIS2 server via {@link org.motechproject.dhis2.rest.service.DhisWebService}. If the
+     * {@link org.motechproject.dhis2.service.TrackerImportBatcher} is enabled, the event is buffered and sent
+     * along with other events in a single request.
      *
      * @param event MotechEvent pertaining to a DHIS2 program stage event.
      */
     @MotechListener(subjects = {EventSubjects.UPDATE_PROGRAM_STAGE})
     public void handleStageUpdate (MotechEvent event) {
         Map<String, Object> params = prepareDhisAttributesMap(event.getParameters());
+
+        String registationString = (String) params.remove(EventParams.REGISTRATION);
+        boolean registration = registationString.contains("true");
+        String externalId = registration ? (String) params.remove(EventParams.EXTERNAL_ID) : null;
+
         DhisEventDto dhisEventDto = createDhisEventFromParams(params);
+
+        if (trackerImportBatcher.isEnabled()) {
+            trackerImportBatcher.addEvent(externalId, dhisEventDto);
+            return;
+        }
+
+        if (registration) {
+            dhisEventDto.setTrackedEntityInstance(trackedEntityInstanceMappingService.mapFromExternalId(externalId));
+        }
         dhisWebService.createEvent(dhisEventDto);
     }
 
@@ -123,7 +164,9 @@ public class EventHandler {
 
     /**
      * Parses the event and creates a {@link org.motechproject.dhis2.rest.domain.DataValueDto} which
-     * is then sent to the DHIS2 server via {@link org.motechproject.dhis2.rest.service.DhisWebService}
+     * is then sent to the DHIS2 server via {@link org.motechproject.dhis2.rest.service.DhisWebService}. If the
+     * {@link org.motechproject.dhis2.service.DataValueAggregator} is enabled, the value is buffered and sent
+     * along with other values in a single data value set.
      *
      * @param event
      */
@@ -154,6 +197,11 @@ public class EventHandler {
         dataValueDto.setCategoryOptionCombo(categoryOptionCombo);
         dataValueDto.setComment(comment);
 
+        if (dataValueAggregator.isEnabled()) {
+            dataValueAggregator.add(dataValueDto, (String) params.get(EventParams.DATA_SET), dataElement.getName());
+            return;
+        }
+
         DataValueSetDto dataValueSetDto = new DataValueSetDto();
         List<DataValueDto> dataValueDtos = new ArrayList<>();
         dataValueDtos.add(dataValueDto);
@@ -232,9 +280,6 @@ public class EventHandler {
 
     private EnrollmentDto createEnrollmentFromParams (Map<String, Object> params) {
         String program = (String) params.remove(EventParams.PROGRAM);
-
-        String externalId = (String) params.remove(EventParams.EXTERNAL_ID);
-        String trackedEntityInstanceId = trackedEntityInstanceMappingService.mapFromExternalId(externalId);
         String orgUnit = (String) params.remove(EventParams.LOCATION);
 
         String date = (String) params.remove(EventParams.DATE);
@@ -252,7 +297,6 @@ public class EventHandler {
         EnrollmentDto enrollment = new EnrollmentDto();
         enrollment.setProgram(program);
         enrollment.setOrgUnit(orgUnit);
-        enrollment.setTrackedEntityInstance(trackedEntityInstanceId);
         enrollment.setDateOfEnrollment(date);
         enrollment.setAttributes(attributes);
 
@@ -262,15 +306,6 @@ public class EventHandler {
     private DhisEventDto createDhisEventFromParams (Map<String, Object> params) {
         DhisEventDto dhisEventDto = new DhisEventDto();
 
-        String registationString = (String) params.remove(EventParams.REGISTRATION);
-        boolean registration = registationString.contains("true");
-
-        if (registration) {
-            String externalTrackedEntityInstanceId = (String) params.remove(EventParams.EXTERNAL_ID);
-            String trackedEntityInstanceId = trackedEntityInstanceMappingService.mapFromExternalId(externalTrackedEntityInstanceId);
-            dhisEventDto.setTrackedEntityInstance(trackedEntityInstanceId);
-        }
-
         String orgUnitId = (String) params.remove(EventParams.LOCATION);
         String program = (String) params.remove(EventParams.PROGRAM);
         String date = (String) params.remove(EventParams.DATE);
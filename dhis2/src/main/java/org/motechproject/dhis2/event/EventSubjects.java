@@ -11,6 +11,10 @@ public final class EventSubjects {
     public static final String CREATE_AND_ENROLL = "create_and_enroll";
     public static final String SEND_DATA_VALUE = "send_data_value";
     public static final String SEND_DATA_VALUE_SET = "send_data_value_set";
+    public static final String DATA_VALUE_REJECTED = "data_value_rejected";
+    public static final String TRACKED_ENTITY_INSTANCE_REJECTED = "tracked_entity_instance_rejected";
+    public static final String ENROLLMENT_REJECTED = "enrollment_rejected";
+    public static final String EVENT_REJECTED = "event_rejected";
 
     public static final String DHIS_SETTINGS_UPDATED = "dhis_settings_updated";
 
@@ -0,0 +1,36 @@
+package org.motechproject.dhis2.repository.query;
+
+import org.motechproject.dhis2.domain.TrackedEntityInstanceMapping;
+import org.motechproject.mds.query.QueryExecution;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+
+import javax.jdo.Query;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The <code>ExternalNamesQueryExecution</code> class prepares a custom MDS query that returns the
+ * {@link org.motechproject.dhis2.domain.TrackedEntityInstanceMapping}s for a set of external names in a single
+ * round trip to the database.
+ */
+public class ExternalNamesQueryExecution implements QueryExecution<List<TrackedEntityInstanceMapping>> {
+
+    private static final String FILTER = "externalNames.contains(externalName)";
+    private static final String PARAMETERS = "java.util.Collection externalNames";
+
+    /**
+     * The external names to look for.
+     */
+    private Collection<String> externalNames;
+
+    public ExternalNamesQueryExecution(Collection<String> externalNames) {
+        this.externalNames = externalNames;
+    }
+
+    @Override
+    public List<TrackedEntityInstanceMapping> execute(Query query, InstanceSecurityRestriction restriction) {
+        query.setFilter(FILTER);
+        query.declareParameters(PARAMETERS);
+        return (List<TrackedEntityInstanceMapping>) query.execute(externalNames);
+    }
+}
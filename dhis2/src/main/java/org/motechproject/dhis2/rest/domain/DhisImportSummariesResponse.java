@@ -0,0 +1,66 @@
+package org.motechproject.dhis2.rest.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A class to model DHIS2 responses that result from bulk imports of tracked entity instances, enrollments or events.
+ * The import summaries are listed in the order of the objects in the request. Newer DHIS2 versions wrap the summaries
+ * in a response object.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DhisImportSummariesResponse {
+
+    private DhisStatus status;
+    private List<ImportSummaryDto> importSummaries;
+    private DhisImportSummariesResponse response;
+
+    public DhisStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(DhisStatus status) {
+        this.status = status;
+    }
+
+    public List<ImportSummaryDto> getImportSummaries() {
+        if (importSummaries == null && response == null) {
+            return null;
+        } else {
+            return importSummaries != null ? importSummaries : response.getImportSummaries();
+        }
+    }
+
+    public void setImportSummaries(List<ImportSummaryDto> importSummaries) {
+        this.importSummaries = importSummaries;
+    }
+
+    public DhisImportSummariesResponse getResponse() {
+        return response;
+    }
+
+    public void setResponse(DhisImportSummariesResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(status, importSummaries, response);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final DhisImportSummariesResponse other = (DhisImportSummariesResponse) obj;
+        return Objects.equals(this.status, other.status)
+                && Objects.equals(this.importSummaries, other.importSummaries)
+                && Objects.equals(this.response, other.response);
+    }
+}
@@ -3,5 +3,6 @@ package org.motechproject.dhis2.rest.domain;
 public enum DhisStatus {
     OK,
     SUCCESS,
+    WARNING,
     ERROR
 }
@@ -0,0 +1,50 @@
+package org.motechproject.dhis2.rest.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.Objects;
+
+/**
+ * A class to model a conflict reported by DHIS2 when importing data values. The object is the identifier of the
+ * offending element, for example the ID of a data element or an organisation unit, and the value describes the
+ * conflict.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImportConflictDto {
+    private String object;
+    private String value;
+
+    public String getObject() {
+        return object;
+    }
+
+    public void setObject(String object) {
+        this.object = object;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(object, value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final ImportConflictDto other = (ImportConflictDto) obj;
+        return Objects.equals(this.object, other.object)
+                && Objects.equals(this.value, other.value);
+    }
+}
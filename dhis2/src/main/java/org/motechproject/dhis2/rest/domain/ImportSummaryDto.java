@@ -0,0 +1,80 @@
+package org.motechproject.dhis2.rest.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A class to model the result of importing a single tracked entity instance, enrollment or event as part of a bulk
+ * import. The reference is the identifier DHIS2 assigned to the imported object.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImportSummaryDto {
+    private DhisStatus status;
+    private String description;
+    private String reference;
+    private ImportCountDto importCount;
+    private List<ImportConflictDto> conflicts;
+
+    public DhisStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(DhisStatus status) {
+        this.status = status;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public void setReference(String reference) {
+        this.reference = reference;
+    }
+
+    public ImportCountDto getImportCount() {
+        return importCount;
+    }
+
+    public void setImportCount(ImportCountDto importCount) {
+        this.importCount = importCount;
+    }
+
+    public List<ImportConflictDto> getConflicts() {
+        return conflicts;
+    }
+
+    public void setConflicts(List<ImportConflictDto> conflicts) {
+        this.conflicts = conflicts;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(status, description, reference, importCount, conflicts);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final ImportSummaryDto other = (ImportSummaryDto) obj;
+        return Objects.equals(this.status, other.status)
+                && Objects.equals(this.description, other.description)
+                && Objects.equals(this.reference, other.reference)
+                && Objects.equals(this.importCount, other.importCount)
+                && Objects.equals(this.conflicts, other.conflicts);
+    }
+}
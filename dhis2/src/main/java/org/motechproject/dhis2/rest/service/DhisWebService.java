@@ -4,6 +4,7 @@ import org.motechproject.dhis2.rest.domain.DataElementDto;
 import org.motechproject.dhis2.rest.domain.DataValueSetDto;
 import org.motechproject.dhis2.rest.domain.DhisDataValueStatusResponse;
 import org.motechproject.dhis2.rest.domain.DhisEventDto;
+import org.motechproject.dhis2.rest.domain.DhisImportSummariesResponse;
 import org.motechproject.dhis2.rest.domain.DhisServerInfo;
 import org.motechproject.dhis2.rest.domain.DhisStatusResponse;
 import org.motechproject.dhis2.rest.domain.EnrollmentDto;
@@ -16,6 +17,7 @@ import org.motechproject.dhis2.rest.domain.TrackedEntityDto;
 import org.motechproject.dhis2.rest.domain.TrackedEntityInstanceDto;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * Handles HTTP requests and responses to and from DHIS2.
@@ -28,6 +30,26 @@ public interface DhisWebService {
      */
     List<DataElementDto> getDataElements();
 
+    /**
+     * Gets a list of the Data Elements from DHIS2 that were updated after the given date.
+     * @param lastUpdated the DHIS2 server date after which the data elements were updated, null to get all of them
+     * @return a list of {@link org.motechproject.dhis2.rest.domain.DataElementDto}
+     */
+    List<DataElementDto> getDataElements(String lastUpdated);
+
+    /**
+     * Passes the Data Elements updated after the given date to the callback, one page at a time.
+     * @param lastUpdated the DHIS2 server date after which the data elements were updated, null to get all of them
+     * @param callback the callback receiving the pages of {@link org.motechproject.dhis2.rest.domain.DataElementDto}
+     */
+    void getDataElements(String lastUpdated, ResourceCallback<DataElementDto> callback);
+
+    /**
+     * Gets the identifiers of all the Data Elements in DHIS2.
+     * @return the set of data element identifiers
+     */
+    Set<String> getDataElementIds();
+
     /**
      * Gets the Data Element specified in the URL
      * @param href
@@ -41,6 +63,26 @@ public interface DhisWebService {
      */
     List<OrganisationUnitDto> getOrganisationUnits();
 
+    /**
+     * Gets a list of the Organisation Units from DHIS2 that were updated after the given date.
+     * @param lastUpdated the DHIS2 server date after which the organisation units were updated, null to get all of them
+     * @return a list of {@link org.motechproject.dhis2.rest.domain.OrganisationUnitDto}
+     */
+    List<OrganisationUnitDto> getOrganisationUnits(String lastUpdated);
+
+    /**
+     * Passes the Organisation Units updated after the given date to the callback, one page at a time.
+     * @param lastUpdated the DHIS2 server date after which the organisation units were updated, null to get all of them
+     * @param callback the callback receiving the pages of {@link org.motechproject.dhis2.rest.domain.OrganisationUnitDto}
+     */
+    void getOrganisationUnits(String lastUpdated, ResourceCallback<OrganisationUnitDto> callback);
+
+    /**
+     * Gets the identifiers of all the Organisation Units in DHIS2.
+     * @return the set of organisation unit identifiers
+     */
+    Set<String> getOrganisationUnitIds();
+
     /**
      * Gets the Organisation Unit specified in the URL
      * @param href
@@ -54,6 +96,19 @@ public interface DhisWebService {
      */
     List<ProgramDto> getPrograms();
 
+    /**
+     * Gets a list of the programs from DHIS2 that were updated after the given date.
+     * @param lastUpdated the DHIS2 server date after which the programs were updated, null to get all of them
+     * @return a list of {@link org.motechproject.dhis2.rest.domain.ProgramDto}
+     */
+    List<ProgramDto> getPrograms(String lastUpdated);
+
+    /**
+     * Gets the identifiers of all the programs in DHIS2.
+     * @return the set of program identifiers
+     */
+    Set<String> getProgramIds();
+
     /**
      * Gets the program specified in the URL
      * @param href
@@ -67,6 +122,13 @@ public interface DhisWebService {
      */
     List<ProgramStageDto> getProgramStages();
 
+    /**
+     * Gets a list of the program Stages from DHIS2 that were updated after the given date.
+     * @param lastUpdated the DHIS2 server date after which the program stages were updated, null to get all of them
+     * @return a list of {@link org.motechproject.dhis2.rest.domain.ProgramStageDto}
+     */
+    List<ProgramStageDto> getProgramStages(String lastUpdated);
+
     /**
      * Gets the program stage specified in the URL
      * @param href
@@ -80,6 +142,19 @@ public interface DhisWebService {
      */
     List<TrackedEntityAttributeDto> getTrackedEntityAttributes();
 
+    /**
+     * Gets a list of the tracked entity attributes from DHIS2 that were updated after the given date.
+     * @param lastUpdated the DHIS2 server date after which the attributes were updated, null to get all of them
+     * @return a list of {@link org.motechproject.dhis2.rest.domain.TrackedEntityAttributeDto}
+     */
+    List<TrackedEntityAttributeDto> getTrackedEntityAttributes(String lastUpdated);
+
+    /**
+     * Gets the identifiers of all the tracked entity attributes in DHIS2.
+     * @return the set of tracked entity attribute identifiers
+     */
+    Set<String> getTrackedEntityAttributeIds();
+
     /**
      * Gets the tracked entity attribute specified in the URL
      * @param href
@@ -93,6 +168,19 @@ public interface DhisWebService {
      */
     List<TrackedEntityDto> getTrackedEntities();
 
+    /**
+     * Gets a list of the tracked entity types from DHIS2 that were updated after the given date.
+     * @param lastUpdated the DHIS2 server date after which the tracked entities were updated, null to get all of them
+     * @return a list of {@link org.motechproject.dhis2.rest.domain.TrackedEntityDto}
+     */
+    List<TrackedEntityDto> getTrackedEntities(String lastUpdated);
+
+    /**
+     * Gets the identifiers of all the tracked entity types in DHIS2.
+     * @return the set of tracked entity identifiers
+     */
+    Set<String> getTrackedEntityIds();
+
     /**
      * Gets the tracked entity specified in the URL.
      * @param href
@@ -121,6 +209,30 @@ public interface DhisWebService {
      */
     DhisStatusResponse createTrackedEntityInstance(TrackedEntityInstanceDto trackedEntity);
 
+    /**
+     * Attempts to create the tracked entity instances in DHIS2 via a single HTTP post request.
+     * @param trackedEntities the tracked entity instances to create
+     * @return a {@link org.motechproject.dhis2.rest.domain.DhisImportSummariesResponse} with the result of importing
+     * each instance, in the order of the given list
+     */
+    DhisImportSummariesResponse createTrackedEntityInstances(List<TrackedEntityInstanceDto> trackedEntities);
+
+    /**
+     * Attempts to create the enrollments in DHIS2 via a single HTTP post request.
+     * @param enrollments the enrollments to create
+     * @return a {@link org.motechproject.dhis2.rest.domain.DhisImportSummariesResponse} with the result of importing
+     * each enrollment, in the order of the given list
+     */
+    DhisImportSummariesResponse createEnrollments(List<EnrollmentDto> enrollments);
+
+    /**
+     * Attempts to create the DHIS2 events in DHIS2 via a single HTTP post request.
+     * @param events the events to create
+     * @return a {@link org.motechproject.dhis2.rest.domain.DhisImportSummariesResponse} with the result of importing
+     * each event, in the order of the given list
+     */
+    DhisImportSummariesResponse createEvents(List<DhisEventDto> events);
+
     /**
      * Attempts to send a data value set to DHIS2 via an HTTP post request.
      *
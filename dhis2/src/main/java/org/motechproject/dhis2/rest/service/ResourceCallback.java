@@ -0,0 +1,19 @@
+package org.motechproject.dhis2.rest.service;
+
+import java.util.List;
+
+/**
+ * Receives resources retrieved from DHIS2 one page at a time, so that large collections can be processed as they
+ * arrive instead of being held in memory. Pages are passed in order, always from the thread that requested the
+ * resources.
+ *
+ * @param <T> the type of the resources
+ */
+public interface ResourceCallback<T> {
+
+    /**
+     * Handles a single page of resources.
+     * @param resources the resources on the page
+     */
+    void handle(List<T> resources);
+}
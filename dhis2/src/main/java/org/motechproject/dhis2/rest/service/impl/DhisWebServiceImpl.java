@@ -2,6 +2,7 @@ package org.motechproject.dhis2.rest.service.impl;
 
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
@@ -17,6 +18,7 @@ import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.osgi.services.HttpClientBuilderFactory;
+import org.apache.http.util.EntityUtils;
 import org.motechproject.admin.service.StatusMessageService;
 import org.motechproject.dhis2.event.EventSubjects;
 import org.motechproject.dhis2.rest.domain.BaseDto;
@@ -24,6 +26,7 @@ import org.motechproject.dhis2.rest.domain.DataElementDto;
 import org.motechproject.dhis2.rest.domain.DataValueSetDto;
 import org.motechproject.dhis2.rest.domain.DhisDataValueStatusResponse;
 import org.motechproject.dhis2.rest.domain.DhisEventDto;
+import org.motechproject.dhis2.rest.domain.DhisImportSummariesResponse;
 import org.motechproject.dhis2.rest.domain.DhisServerInfo;
 import org.motechproject.dhis2.rest.domain.DhisStatusResponse;
 import org.motechproject.dhis2.rest.domain.EnrollmentDto;
@@ -37,10 +40,12 @@ import org.motechproject.dhis2.rest.domain.TrackedEntityDto;
 import org.motechproject.dhis2.rest.domain.TrackedEntityInstanceDto;
 import org.motechproject.dhis2.rest.service.DhisWebException;
 import org.motechproject.dhis2.rest.service.DhisWebService;
+import org.motechproject.dhis2.rest.service.ResourceCallback;
 import org.motechproject.dhis2.service.Settings;
 import org.motechproject.dhis2.service.SettingsService;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.annotations.MotechListener;
+import org.motechproject.server.config.SettingsFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -49,14 +54,36 @@ import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import static org.motechproject.dhis2.util.SettingsUtils.getIntProperty;
 
 /**
- * Implementation of {@link org.motechproject.dhis2.rest.service.DhisWebService}
+ * Implementation of {@link org.motechproject.dhis2.rest.service.DhisWebService}. A single object mapper, along with
+ * readers cached per type, is shared by all requests. Paged collections are requested concurrently once the first
+ * page tells how many pages there are. The number of concurrent page requests and the connection limits of the HTTP
+ * client are read from the module settings when the service is created.
  */
 @Service("dhisWebService")
 public class DhisWebServiceImpl implements DhisWebService {
@@ -76,23 +103,69 @@ public class DhisWebServiceImpl implements DhisWebService {
     private static final String PROGRAM_STAGES = "programStages";
     private static final String TRACKED_ENTITIES = "trackedEntities";
     private static final String TRACKED_ENITTY_ATTRIBUTES = "trackedEntityAttributes";
+    private static final String TRACKED_ENTITY_INSTANCES = "trackedEntityInstances";
+    private static final String ENROLLMENTS = "enrollments";
+    private static final String EVENTS = "events";
+
+    private static final String LAST_UPDATED_FILTER = "lastUpdated:gt:";
+    private static final String IDS_ONLY_QUERY = "?fields=id&paging=false";
+
+    private static final String PAGE_REQUEST_CONCURRENCY_KEY = "http.pageRequestConcurrency";
+    private static final String MAX_CONNECTIONS_PER_ROUTE_KEY = "http.maxConnectionsPerRoute";
+    private static final String MAX_CONNECTIONS_KEY = "http.maxConnections";
+
+    private static final int DEFAULT_PAGE_REQUEST_CONCURRENCY = 4;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    private static final int DEFAULT_MAX_CONNECTIONS = 40;
 
     private SettingsService settingsService;
     private StatusMessageService statusMessageService;
     private HttpClient client;
 
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, ObjectReader> pageReaders = new ConcurrentHashMap<>();
+    private final ExecutorService pageExecutor;
+    private final int maxPagesInFlight;
+
     private ServerVersion serverVersion = new ServerVersion(ServerVersion.UNKNOWN);
 
     public static final List<Integer> ACCEPTABLE_DHIS_RESPONSE_STATUSES = Arrays.asList(HttpStatus.SC_OK,
             HttpStatus.SC_ACCEPTED, HttpStatus.SC_CREATED);
 
+    /*Bulk imports with rejected objects are answered with a conflict, the body still holds the import summaries*/
+    public static final List<Integer> ACCEPTABLE_IMPORT_RESPONSE_STATUSES = Arrays.asList(HttpStatus.SC_OK,
+            HttpStatus.SC_ACCEPTED, HttpStatus.SC_CREATED, HttpStatus.SC_CONFLICT);
+
     @Autowired
     public DhisWebServiceImpl(@Qualifier("dhisSettingsService") SettingsService settingsService,
                               StatusMessageService statusMessageService,
-                              HttpClientBuilderFactory httpClientBuilderFactory) {
+                              HttpClientBuilderFactory httpClientBuilderFactory,
+                              @Qualifier("dhisSettings") SettingsFacade settingsFacade) {
         this.settingsService = settingsService;
         this.statusMessageService = statusMessageService;
-        this.client = httpClientBuilderFactory.newBuilder().build();
+        this.client = httpClientBuilderFactory.newBuilder()
+                .setMaxConnPerRoute(getIntProperty(settingsFacade, MAX_CONNECTIONS_PER_ROUTE_KEY,
+                        DEFAULT_MAX_CONNECTIONS_PER_ROUTE))
+                .setMaxConnTotal(getIntProperty(settingsFacade, MAX_CONNECTIONS_KEY, DEFAULT_MAX_CONNECTIONS))
+                .build();
+
+        int pageRequestConcurrency = getIntProperty(settingsFacade, PAGE_REQUEST_CONCURRENCY_KEY,
+                DEFAULT_PAGE_REQUEST_CONCURRENCY);
+        this.maxPagesInFlight = 2 * pageRequestConcurrency;
+        this.pageExecutor = Executors.newFixedThreadPool(pageRequestConcurrency, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dhis2-page-request");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pageExecutor.shutdownNow();
     }
 
     @PostConstruct
@@ -117,7 +190,22 @@ public class DhisWebServiceImpl implements DhisWebService {
 
     @Override
     public List<DataElementDto> getDataElements() {
-        return getResources(DATA_ELEMENTS, DataElementDto.class);
+        return getDataElements(null);
+    }
+
+    @Override
+    public List<DataElementDto> getDataElements(String lastUpdated) {
+        return getResources(DATA_ELEMENTS, DataElementDto.class, lastUpdated);
+    }
+
+    @Override
+    public void getDataElements(String lastUpdated, ResourceCallback<DataElementDto> callback) {
+        getResources(DATA_ELEMENTS, DataElementDto.class, lastUpdated, callback);
+    }
+
+    @Override
+    public Set<String> getDataElementIds() {
+        return getResourceIds(DATA_ELEMENTS, DataElementDto.class);
     }
 
     @Override
@@ -127,7 +215,22 @@ public class DhisWebServiceImpl implements DhisWebService {
 
     @Override
     public List<OrganisationUnitDto> getOrganisationUnits() {
-        return getResources(ORG_UNITS, OrganisationUnitDto.class);
+        return getOrganisationUnits(null);
+    }
+
+    @Override
+    public List<OrganisationUnitDto> getOrganisationUnits(String lastUpdated) {
+        return getResources(ORG_UNITS, OrganisationUnitDto.class, lastUpdated);
+    }
+
+    @Override
+    public void getOrganisationUnits(String lastUpdated, ResourceCallback<OrganisationUnitDto> callback) {
+        getResources(ORG_UNITS, OrganisationUnitDto.class, lastUpdated, callback);
+    }
+
+    @Override
+    public Set<String> getOrganisationUnitIds() {
+        return getResourceIds(ORG_UNITS, OrganisationUnitDto.class);
     }
 
     @Override
@@ -137,7 +240,17 @@ public class DhisWebServiceImpl implements DhisWebService {
 
     @Override
     public List<ProgramDto> getPrograms() {
-        return getResources(PROGRAMS, ProgramDto.class);
+        return getPrograms(null);
+    }
+
+    @Override
+    public List<ProgramDto> getPrograms(String lastUpdated) {
+        return getResources(PROGRAMS, ProgramDto.class, lastUpdated);
+    }
+
+    @Override
+    public Set<String> getProgramIds() {
+        return getResourceIds(PROGRAMS, ProgramDto.class);
     }
 
     @Override
@@ -147,7 +260,12 @@ public class DhisWebServiceImpl implements DhisWebService {
 
     @Override
     public List<ProgramStageDto> getProgramStages() {
-        return getResources(PROGRAM_STAGES, ProgramStageDto.class);
+        return getProgramStages(null);
+    }
+
+    @Override
+    public List<ProgramStageDto> getProgramStages(String lastUpdated) {
+        return getResources(PROGRAM_STAGES, ProgramStageDto.class, lastUpdated);
     }
 
     @Override
@@ -157,7 +275,17 @@ public class DhisWebServiceImpl implements DhisWebService {
 
     @Override
     public List<TrackedEntityDto> getTrackedEntities() {
-        return getResources(TRACKED_ENTITIES, TrackedEntityDto.class);
+        return getTrackedEntities(null);
+    }
+
+    @Override
+    public List<TrackedEntityDto> getTrackedEntities(String lastUpdated) {
+        return getResources(TRACKED_ENTITIES, TrackedEntityDto.class, lastUpdated);
+    }
+
+    @Override
+    public Set<String> getTrackedEntityIds() {
+        return getResourceIds(TRACKED_ENTITIES, TrackedEntityDto.class);
     }
 
     @Override
@@ -167,7 +295,17 @@ public class DhisWebServiceImpl implements DhisWebService {
 
     @Override
     public List<TrackedEntityAttributeDto> getTrackedEntityAttributes() {
-        return getResources(TRACKED_ENITTY_ATTRIBUTES, TrackedEntityAttributeDto.class);
+        return getTrackedEntityAttributes(null);
+    }
+
+    @Override
+    public List<TrackedEntityAttributeDto> getTrackedEntityAttributes(String lastUpdated) {
+        return getResources(TRACKED_ENITTY_ATTRIBUTES, TrackedEntityAttributeDto.class, lastUpdated);
+    }
+
+    @Override
+    public Set<String> getTrackedEntityAttributeIds() {
+        return getResourceIds(TRACKED_ENITTY_ATTRIBUTES, TrackedEntityAttributeDto.class);
     }
 
     @Override
@@ -177,14 +315,7 @@ public class DhisWebServiceImpl implements DhisWebService {
 
     @Override
     public DhisStatusResponse createEnrollment(EnrollmentDto enrollment) {
-        String json;
-        if (serverVersion.isSameOrBefore(ServerVersion.V2_18)) {
-            json = parseToJson(enrollment.convertTo218());
-        } else if (serverVersion.isSameOrAfter(ServerVersion.V2_19) && serverVersion.isBefore(ServerVersion.V2_21)) {
-            json = parseToJson(enrollment.convertTo219());
-        } else {
-            json = parseToJson(enrollment.convertTo221());
-        }
+        String json = parseToJson(convertEnrollment(enrollment));
         Settings settings = settingsService.getSettings();
 
         return createEntity(settings, settings.getServerURI() + API_ENDPOINT + ENROLLMENTS_PATH, json);
@@ -206,6 +337,35 @@ public class DhisWebServiceImpl implements DhisWebService {
         return createEntity(settings, settings.getServerURI() + API_ENDPOINT + TRACKED_ENTITY_INSTANCES_PATH, json);
     }
 
+    @Override
+    public DhisImportSummariesResponse createTrackedEntityInstances(List<TrackedEntityInstanceDto> trackedEntities) {
+        String json = parseToJson(Collections.singletonMap(TRACKED_ENTITY_INSTANCES, trackedEntities));
+        Settings settings = settingsService.getSettings();
+
+        return importEntities(settings, settings.getServerURI() + API_ENDPOINT + TRACKED_ENTITY_INSTANCES_PATH, json);
+    }
+
+    @Override
+    public DhisImportSummariesResponse createEnrollments(List<EnrollmentDto> enrollments) {
+        List<Object> converted = new ArrayList<>(enrollments.size());
+        for (EnrollmentDto enrollment : enrollments) {
+            converted.add(convertEnrollment(enrollment));
+        }
+
+        String json = parseToJson(Collections.singletonMap(ENROLLMENTS, converted));
+        Settings settings = settingsService.getSettings();
+
+        return importEntities(settings, settings.getServerURI() + API_ENDPOINT + ENROLLMENTS_PATH, json);
+    }
+
+    @Override
+    public DhisImportSummariesResponse createEvents(List<DhisEventDto> events) {
+        String json = parseToJson(Collections.singletonMap(EVENTS, events));
+        Settings settings = settingsService.getSettings();
+
+        return importEntities(settings, settings.getServerURI() + API_ENDPOINT + EVENTS_PATH, json);
+    }
+
     @Override
     public DhisDataValueStatusResponse sendDataValueSet(DataValueSetDto dataValueSetDto) {
         String json = parseToJson(dataValueSetDto);
@@ -223,7 +383,7 @@ public class DhisWebServiceImpl implements DhisWebService {
         HttpResponse response = getResponseForRequest(request);
 
         try (InputStream content = getContentForResponse(response)) {
-            return new ObjectMapper().readValue(content, DhisServerInfo.class);
+            return getReader(DhisServerInfo.class).readValue(content);
         } catch (IOException e) {
             String msg = String.format("Error parsing resource at uri: %s, exception: %s", url, e.toString());
             statusMessageService.warn(msg, MODULE_NAME);
@@ -248,7 +408,7 @@ public class DhisWebServiceImpl implements DhisWebService {
         LOGGER.debug(String.format("Received response for request: %s, response: %s", request.toString(), response.toString()));
 
         try (InputStream content = getContentForResponse(response)) {
-            return new ObjectMapper().readValue(content, clazz);
+            return getReader(clazz).readValue(content);
         } catch (IOException e) {
             String msg = String.format("Error parsing resource at uri: %s, exception: %s", uri, e.toString());
             statusMessageService.warn(msg, MODULE_NAME);
@@ -256,10 +416,59 @@ public class DhisWebServiceImpl implements DhisWebService {
         }
     }
 
-    /*Gets a list of dtos*/
-    private <T extends BaseDto> List<T> getResources(String resourceName, Class<T> clazz) {
+    /*Gets a list of dtos, optionally only the ones updated after the given DHIS2 server date*/
+    private <T extends BaseDto> List<T> getResources(String resourceName, Class<T> clazz, String lastUpdated) {
+        final List<T> resources = new ArrayList<>();
+
+        getResources(resourceName, clazz, lastUpdated, new ResourceCallback<T>() {
+            @Override
+            public void handle(List<T> page) {
+                resources.addAll(page);
+            }
+        });
+
+        return resources;
+    }
+
+    /*
+     * Passes the dtos to the callback one page at a time. The first page tells how many pages there are, the remaining
+     * pages are then requested concurrently, with a bounded number of pages in flight, and handed to the callback in order.
+     */
+    private <T extends BaseDto> void getResources(String resourceName, Class<T> clazz, String lastUpdated,
+                                                  ResourceCallback<T> callback) {
         Settings settings = settingsService.getSettings();
-        HttpUriRequest request = generateHttpRequest(settings, getURIForResource(settings.getServerURI(), resourceName));
+        String uri = getURIForResource(settings.getServerURI(), resourceName);
+        if (lastUpdated != null) {
+            uri += "?filter=" + encode(LAST_UPDATED_FILTER + lastUpdated);
+        }
+
+        PagedResourceDto<T> firstPage = getPage(settings, uri, resourceName, clazz);
+        handlePage(firstPage, callback);
+
+        int pageCount = firstPage.getPager() == null ? 1 : firstPage.getPager().getPageCount();
+        int nextPage = 2;
+        Deque<Future<PagedResourceDto<T>>> pending = new ArrayDeque<>();
+
+        try {
+            while (nextPage <= pageCount || !pending.isEmpty()) {
+                while (nextPage <= pageCount && pending.size() < maxPagesInFlight) {
+                    pending.add(pageExecutor.submit(new PageRequest<>(settings, getURIForPage(uri, nextPage),
+                            resourceName, clazz)));
+                    nextPage++;
+                }
+                handlePage(waitForPage(pending.poll(), resourceName), callback);
+            }
+        } finally {
+            for (Future<PagedResourceDto<T>> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /*Gets a single page of dtos*/
+    private <T extends BaseDto> PagedResourceDto<T> getPage(Settings settings, String uri, String resourceName,
+                                                            Class<T> clazz) {
+        HttpUriRequest request = generateHttpRequest(settings, uri);
 
         LOGGER.debug(String.format("Initiating request for resource: %s, request: %s", resourceName, request.toString()));
 
@@ -267,32 +476,60 @@ public class DhisWebServiceImpl implements DhisWebService {
 
         LOGGER.debug(String.format("Received response for request: %s, response: %s", request.toString(), response.toString()));
 
-        List<T> resources = new ArrayList<>();
-
         try (InputStream content = getContentForResponse(response)) {
-            ObjectMapper mapper = new ObjectMapper();
+            return getPageReader(clazz).readValue(content);
+        } catch (IOException e) {
+            String msg = String.format("Error parsing %s resources, exception: %s", resourceName, e.toString());
+            statusMessageService.warn(msg, MODULE_NAME);
+            throw new DhisWebException(msg, e);
+        }
+    }
 
-            JavaType type = mapper.getTypeFactory().constructParametricType(PagedResourceDto.class, clazz);
-            PagedResourceDto pagedResource = mapper.reader(type).readValue(content);
+    private <T extends BaseDto> void handlePage(PagedResourceDto<T> page, ResourceCallback<T> callback) {
+        if (page.getResources() != null) {
+            callback.handle(page.getResources());
+        }
+    }
+
+    private <T extends BaseDto> PagedResourceDto<T> waitForPage(Future<PagedResourceDto<T>> future, String resourceName) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DhisWebException(String.format("Interrupted while retrieving %s resources", resourceName), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DhisWebException) {
+                throw (DhisWebException) e.getCause();
+            }
+            throw new DhisWebException(String.format("Error retrieving %s resources", resourceName), e.getCause());
+        }
+    }
 
-            resources.addAll(pagedResource.getResources());
+    /*Gets the identifiers of all resources of the given type, in a single unpaged request*/
+    private <T extends BaseDto> Set<String> getResourceIds(String resourceName, Class<T> clazz) {
+        Settings settings = settingsService.getSettings();
+        HttpUriRequest request = generateHttpRequest(settings,
+                getURIForResource(settings.getServerURI(), resourceName) + IDS_ONLY_QUERY);
 
-            while (pagedResource.getPager().getNextPage() != null) {
-                request = generateHttpRequest(settings, pagedResource.getPager().getNextPage());
-                response = getResponseForRequest(request);
+        LOGGER.debug(String.format("Initiating request for %s identifiers, request: %s", resourceName, request.toString()));
+
+        HttpResponse response = getResponseForRequest(request);
 
-                try (InputStream nextPageContent = getContentForResponse(response)) {
-                    pagedResource = mapper.reader(type).readValue(nextPageContent);
-                    resources.addAll(pagedResource.getResources());
+        try (InputStream content = getContentForResponse(response)) {
+            PagedResourceDto<T> resource = getPageReader(clazz).readValue(content);
+
+            Set<String> ids = new HashSet<>();
+            if (resource.getResources() != null) {
+                for (T dto : resource.getResources()) {
+                    ids.add(dto.getId());
                 }
             }
+            return ids;
         } catch (IOException e) {
-            String msg = String.format("Error parsing %s resources, exception: %s", resourceName, e.toString());
+            String msg = String.format("Error parsing %s identifiers, exception: %s", resourceName, e.toString());
             statusMessageService.warn(msg, MODULE_NAME);
             throw new DhisWebException(msg, e);
         }
-
-        return resources;
     }
 
     /*Attempts to create the an entity in the DHIS2 system. Returns the response from DHIS2*/
@@ -308,7 +545,7 @@ public class DhisWebServiceImpl implements DhisWebService {
         DhisStatusResponse status;
 
         try (InputStream content = getContentForResponse(response)) {
-            status = new ObjectMapper().readValue(content, DhisStatusResponse.class);
+            status = getReader(DhisStatusResponse.class).readValue(content);
         } catch (IOException e) {
             String msg = String.format("Error parsing response from uri: %s, exception: %s", uri, e.toString());
             statusMessageService.warn(msg, MODULE_NAME);
@@ -318,10 +555,40 @@ public class DhisWebServiceImpl implements DhisWebService {
         return status;
     }
 
+    /*Attempts to import a list of entities in the DHIS2 system. Returns the import summaries from DHIS2*/
+    private DhisImportSummariesResponse importEntities(Settings settings, String uri, String json) {
+        HttpUriRequest request = generatePostRequest(settings, uri, json);
+
+        LOGGER.debug("Initiating bulk import request: {}", request);
+
+        HttpResponse response = getResponseForRequest(request, ACCEPTABLE_IMPORT_RESPONSE_STATUSES);
+
+        LOGGER.debug("Received response to bulk import request: {}", response);
+
+        try (InputStream content = getContentForResponse(response)) {
+            return getReader(DhisImportSummariesResponse.class).readValue(content);
+        } catch (IOException e) {
+            String msg = String.format("Error parsing response from uri: %s, exception: %s", uri, e.toString());
+            statusMessageService.warn(msg, MODULE_NAME);
+            throw new DhisWebException(msg, e);
+        }
+    }
+
+    /*Converts the enrollment to the format expected by the DHIS2 server version*/
+    private Object convertEnrollment(EnrollmentDto enrollment) {
+        if (serverVersion.isSameOrBefore(ServerVersion.V2_18)) {
+            return enrollment.convertTo218();
+        } else if (serverVersion.isSameOrAfter(ServerVersion.V2_19) && serverVersion.isBefore(ServerVersion.V2_21)) {
+            return enrollment.convertTo219();
+        } else {
+            return enrollment.convertTo221();
+        }
+    }
+
     /*Converts the object to json*/
     private String parseToJson(Object object) {
         try {
-            return new ObjectMapper().writeValueAsString(object);
+            return mapper.writeValueAsString(object);
         } catch (IOException e) {
             String msg = String.format("Error parsing object: %s to json, exception: %s", object.toString(), e.toString());
             statusMessageService.warn(msg, MODULE_NAME);
@@ -354,6 +621,11 @@ public class DhisWebServiceImpl implements DhisWebService {
 
     /*Attempts an HTTP request. Returns the response*/
     private HttpResponse getResponseForRequest(HttpUriRequest request) {
+        return getResponseForRequest(request, ACCEPTABLE_DHIS_RESPONSE_STATUSES);
+    }
+
+    /*Attempts an HTTP request. Returns the response if its status is one of the acceptable ones*/
+    private HttpResponse getResponseForRequest(HttpUriRequest request, List<Integer> acceptableStatuses) {
         HttpResponse response;
 
         try {
@@ -366,7 +638,10 @@ public class DhisWebServiceImpl implements DhisWebService {
 
         StatusLine statusLine = response.getStatusLine();
 
-        if (!ACCEPTABLE_DHIS_RESPONSE_STATUSES.contains(statusLine.getStatusCode())) {
+        if (!acceptableStatuses.contains(statusLine.getStatusCode())) {
+            // releases the connection back to the pool
+            EntityUtils.consumeQuietly(response.getEntity());
+
             String msg = String.format("Error making DHIS request: %s", statusLine.toString());
             statusMessageService.warn(msg, MODULE_NAME);
             throw new DhisWebException(msg);
@@ -386,6 +661,41 @@ public class DhisWebServiceImpl implements DhisWebService {
         }
     }
 
+    /*Returns the cached reader for the given type*/
+    private ObjectReader getReader(Class<?> clazz) {
+        ObjectReader reader = readers.get(clazz);
+        if (reader == null) {
+            reader = mapper.reader(clazz);
+            readers.putIfAbsent(clazz, reader);
+        }
+        return reader;
+    }
+
+    /*Returns the cached reader for pages of the given type*/
+    private ObjectReader getPageReader(Class<? extends BaseDto> clazz) {
+        ObjectReader reader = pageReaders.get(clazz);
+        if (reader == null) {
+            JavaType type = mapper.getTypeFactory().constructParametricType(PagedResourceDto.class, clazz);
+            reader = mapper.reader(type);
+            pageReaders.putIfAbsent(clazz, reader);
+        }
+        return reader;
+    }
+
+    /*Encodes a query parameter value*/
+    private String encode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*Builds the URL for a particular page of a resource*/
+    private String getURIForPage(String resourceURI, int page) {
+        return resourceURI + (resourceURI.contains("?") ? "&" : "?") + "page=" + page;
+    }
+
     /*Builds the URL for a particular resource*/
     private String getURIForResource(String baseURI, String resourceName) {
         return String.format(baseURI + "/api/%s", resourceName);
@@ -414,11 +724,31 @@ public class DhisWebServiceImpl implements DhisWebService {
         LOGGER.debug(String.format("Received response to create resource: %s, request: %s", json, response));
 
         try (InputStream content = getContentForResponse(response)) {
-            return new ObjectMapper().readValue(content, DhisDataValueStatusResponse.class);
+            return getReader(DhisDataValueStatusResponse.class).readValue(content);
         } catch (IOException e) {
             String msg = String.format("Error parsing response from uri: %s, exception: %s", uri, e.toString());
             statusMessageService.warn(msg, MODULE_NAME);
             throw new DhisWebException(msg, e);
         }
     }
+
+    /*Requests a single page of dtos on the page executor*/
+    private class PageRequest<T extends BaseDto> implements Callable<PagedResourceDto<T>> {
+        private final Settings settings;
+        private final String uri;
+        private final String resourceName;
+        private final Class<T> clazz;
+
+        PageRequest(Settings settings, String uri, String resourceName, Class<T> clazz) {
+            this.settings = settings;
+            this.uri = uri;
+            this.resourceName = resourceName;
+            this.clazz = clazz;
+        }
+
+        @Override
+        public PagedResourceDto<T> call() {
+            return getPage(settings, uri, resourceName, clazz);
+        }
+    }
 }
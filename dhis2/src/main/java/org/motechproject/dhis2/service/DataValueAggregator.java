@@ -0,0 +1,42 @@
+package org.motechproject.dhis2.service;
+
+import org.motechproject.dhis2.rest.domain.DataValueDto;
+
+/**
+ * Buffers single data values and sends them to the DHIS2 server in large data value sets. Pending data values are
+ * grouped by organisation unit, period and data set, and are flushed once a group reaches the configured size or the
+ * flush interval elapses. Values that DHIS2 rejects are reported with a
+ * {@link org.motechproject.dhis2.event.EventSubjects#DATA_VALUE_REJECTED} event.
+ */
+public interface DataValueAggregator {
+
+    /**
+     * Checks whether data values should be buffered. If not, they should be sent to DHIS2 straight away.
+     *
+     * @return true if the aggregator is enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Adds the data value to the buffer. The value is written to the spill log before this method returns, so it
+     * will be sent even if the server crashes before the next flush. A value added after the aggregator was stopped
+     * is sent straight away.
+     *
+     * @param dataValue the data value to send
+     * @param dataSet the ID of the data set the value belongs to, may be null
+     * @param dataElementName the name of the data element, used when reporting rejected values
+     */
+    void add(DataValueDto dataValue, String dataSet, String dataElementName);
+
+    /**
+     * Sends all pending data values to DHIS2.
+     */
+    void flush();
+
+    /**
+     * Returns the number of data values waiting to be sent.
+     *
+     * @return the number of pending data values
+     */
+    int getPendingCount();
+}
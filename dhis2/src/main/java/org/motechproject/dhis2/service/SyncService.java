@@ -6,9 +6,9 @@ package org.motechproject.dhis2.service;
 public interface SyncService {
 
     /**
-     * Queries the DHIS2 server to get the current schema and then persists that
-     * information in MDS. If the process fails, all of the records pertaining to the DHIS2 schema
-     * are deleted.
+     * Queries the DHIS2 server for the schema changes made since the last successful sync and then persists
+     * them in MDS. The first sync, or the first one after the server URI changes, retrieves the whole schema.
+     * If the process fails, the records pertaining to the DHIS2 schema are left unchanged.
      * @return true if successful; false otherwise
      */
     boolean sync();
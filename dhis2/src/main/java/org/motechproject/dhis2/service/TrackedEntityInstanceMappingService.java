@@ -2,6 +2,9 @@ package org.motechproject.dhis2.service;
 
 import org.motechproject.dhis2.domain.TrackedEntityInstanceMapping;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Manages CRUD operations for a {@link TrackedEntityInstanceMapping}
  */
@@ -9,4 +12,23 @@ public interface TrackedEntityInstanceMappingService extends GenericCrudService<
     TrackedEntityInstanceMapping findByExternalId(String externalId);
     TrackedEntityInstanceMapping create(String externalId, String dhisId);
     String mapFromExternalId(String externalId);
+
+    /**
+     * Maps the external IDs to DHIS2 IDs. Cached mappings are used where possible, the rest are looked up with a
+     * single query.
+     *
+     * @param externalIds the external IDs to map
+     * @return the DHIS2 IDs keyed by external ID, external IDs that have no mapping are left out
+     */
+    Map<String, String> mapFromExternalIds(Collection<String> externalIds);
+
+    /**
+     * Creates mappings for all the given IDs in a single transaction. If the transaction fails, the mappings are
+     * created one by one, so that only the failing ones are lost.
+     *
+     * @param dhisIdsByExternalId the DHIS2 IDs keyed by external ID
+     * @return the error messages keyed by the external IDs whose mappings could not be created, empty if all were
+     * created
+     */
+    Map<String, String> createAll(Map<String, String> dhisIdsByExternalId);
 }
@@ -0,0 +1,61 @@
+package org.motechproject.dhis2.service;
+
+import org.motechproject.dhis2.rest.domain.DhisEventDto;
+import org.motechproject.dhis2.rest.domain.EnrollmentDto;
+import org.motechproject.dhis2.rest.domain.TrackedEntityInstanceDto;
+
+/**
+ * Buffers tracked entity instances, enrollments and program stage events and sends them to the DHIS2 server in bulk
+ * imports. On each flush the tracked entity instances are sent first, so that enrollments and events queued for them
+ * can be mapped to the identifiers DHIS2 assigned. Objects that DHIS2 rejects are reported with a
+ * {@link org.motechproject.dhis2.event.EventSubjects#TRACKED_ENTITY_INSTANCE_REJECTED},
+ * {@link org.motechproject.dhis2.event.EventSubjects#ENROLLMENT_REJECTED} or
+ * {@link org.motechproject.dhis2.event.EventSubjects#EVENT_REJECTED} event.
+ */
+public interface TrackerImportBatcher {
+
+    /**
+     * Checks whether tracker objects should be buffered. If not, they should be sent to DHIS2 straight away.
+     *
+     * @return true if the batcher is enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Adds the tracked entity instance to the buffer. Once DHIS2 creates it, it will be mapped to the external ID.
+     *
+     * @param externalId the external ID of the instance
+     * @param trackedEntityInstance the tracked entity instance to create
+     */
+    void addTrackedEntityInstance(String externalId, TrackedEntityInstanceDto trackedEntityInstance);
+
+    /**
+     * Adds the enrollment to the buffer. The tracked entity instance is resolved from the external ID when the
+     * enrollment is sent.
+     *
+     * @param externalId the external ID of the enrolled instance
+     * @param enrollment the enrollment to create
+     */
+    void addEnrollment(String externalId, EnrollmentDto enrollment);
+
+    /**
+     * Adds the program stage event to the buffer. The tracked entity instance is resolved from the external ID when
+     * the event is sent.
+     *
+     * @param externalId the external ID of the instance, null for events without registration
+     * @param event the event to create
+     */
+    void addEvent(String externalId, DhisEventDto event);
+
+    /**
+     * Sends all pending tracker objects to DHIS2.
+     */
+    void flush();
+
+    /**
+     * Returns the number of tracker objects waiting to be sent.
+     *
+     * @return the number of pending objects
+     */
+    int getPendingCount();
+}
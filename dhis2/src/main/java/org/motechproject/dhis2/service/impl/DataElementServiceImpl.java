@@ -8,15 +8,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Implementation of {@link org.motechproject.dhis2.service.DataElementService}
+ * Implementation of {@link org.motechproject.dhis2.service.DataElementService}. Data elements looked up by name are
+ * cached, since every data value sent to DHIS2 requires such a lookup. The cache is cleared whenever data elements
+ * are modified.
  */
 @Service("dataElementService")
 public class DataElementServiceImpl implements DataElementService {
     @Autowired
     private DataElementDataService dataElementDataService;
 
+    private final ConcurrentMap<String, DataElement> dataElementsByName = new ConcurrentHashMap<>();
+
     @Override
     public List<DataElement> findAll() {
         return dataElementDataService.retrieveAll();
@@ -32,26 +38,43 @@ public class DataElementServiceImpl implements DataElementService {
         DataElement dataElement = new DataElement();
         dataElement.setUuid(details.getId());
         dataElement.setName(details.getName());
+        dataElementsByName.clear();
         return dataElementDataService.create(dataElement);
     }
 
     @Override
     public void update(DataElement dataElement) {
+        dataElementsByName.clear();
         dataElementDataService.update(dataElement);
     }
 
     @Override
     public void delete(DataElement dataElement) {
+        dataElementsByName.clear();
         dataElementDataService.delete(dataElement);
     }
 
     @Override
     public void deleteAll() {
+        dataElementsByName.clear();
         dataElementDataService.deleteAll();
     }
 
     @Override
     public DataElement findByName(String name) {
-        return dataElementDataService.findByName(name);
+        if (name == null) {
+            return dataElementDataService.findByName(null);
+        }
+
+        DataElement dataElement = dataElementsByName.get(name);
+
+        if (dataElement == null) {
+            dataElement = dataElementDataService.findByName(name);
+            if (dataElement != null) {
+                dataElementsByName.put(name, dataElement);
+            }
+        }
+
+        return dataElement;
     }
 }
@@ -0,0 +1,437 @@
+package org.motechproject.dhis2.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.dhis2.event.EventParams;
+import org.motechproject.dhis2.event.EventSubjects;
+import org.motechproject.dhis2.rest.domain.DataValueDto;
+import org.motechproject.dhis2.rest.domain.DataValueSetDto;
+import org.motechproject.dhis2.rest.domain.DhisDataValueStatusResponse;
+import org.motechproject.dhis2.rest.domain.DhisStatus;
+import org.motechproject.dhis2.rest.domain.ImportConflictDto;
+import org.motechproject.dhis2.rest.service.DhisWebException;
+import org.motechproject.dhis2.rest.service.DhisWebService;
+import org.motechproject.dhis2.service.DataValueAggregator;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventRelay;
+import org.motechproject.server.config.SettingsFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.motechproject.dhis2.util.SettingsUtils.getIntProperty;
+import static org.motechproject.dhis2.util.SettingsUtils.getProperty;
+
+/**
+ * Implementation of {@link org.motechproject.dhis2.service.DataValueAggregator}. A single flusher thread sends the
+ * buffered values, so that the event handlers never wait for DHIS2. Values that can't be sent because of a
+ * connection or server error are kept in the buffer and retried on the next flush, until they run out of attempts.
+ * DHIS2 identifies the element a conflict concerns only by its ID, so when a batch is partially rejected only the
+ * values referring to the IDs in conflict are sent again. If these are all the values of the batch, it's split in halves
+ * instead, until the values in conflict are sent on their own and can be rejected.
+ */
+@Service("dataValueAggregator")
+public class DataValueAggregatorImpl implements DataValueAggregator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataValueAggregatorImpl.class);
+
+    private static final String ENABLED_KEY = "dataValues.aggregation.enabled";
+    private static final String MAX_BATCH_SIZE_KEY = "dataValues.aggregation.maxBatchSize";
+    private static final String FLUSH_INTERVAL_KEY = "dataValues.aggregation.flushIntervalSeconds";
+    private static final String MAX_ATTEMPTS_KEY = "dataValues.aggregation.maxAttempts";
+    private static final String SPILL_DIRECTORY_KEY = "dataValues.aggregation.spillDirectory";
+    private static final String SYNC_WRITES_KEY = "dataValues.aggregation.syncWrites";
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    private static final int DEFAULT_FLUSH_INTERVAL = 30;
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private DhisWebService dhisWebService;
+    private EventRelay eventRelay;
+    private SettingsFacade settingsFacade;
+
+    private final Map<String, List<PendingDataValue>> buffer = new LinkedHashMap<>();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private volatile boolean enabled;
+    private boolean stopped;
+    private int maxBatchSize;
+    private int maxAttempts;
+    private int pendingCount;
+    private DataValueSpillLog spillLog;
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public DataValueAggregatorImpl(DhisWebService dhisWebService, EventRelay eventRelay,
+                                   @Qualifier("dhisSettings") SettingsFacade settingsFacade) {
+        this.dhisWebService = dhisWebService;
+        this.eventRelay = eventRelay;
+        this.settingsFacade = settingsFacade;
+    }
+
+    /**
+     * Opens the spill log, loads the values left in it by the previous run and starts the flusher thread. If the
+     * aggregator is disabled in the settings or the spill log can't be opened, data values are sent one by one.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        enabled = Boolean.parseBoolean(getProperty(settingsFacade, ENABLED_KEY, "false"));
+
+        if (!enabled) {
+            LOGGER.info("DHIS2 data value aggregation disabled, data values will be sent one by one");
+            return;
+        }
+
+        maxBatchSize = getIntProperty(settingsFacade, MAX_BATCH_SIZE_KEY, DEFAULT_MAX_BATCH_SIZE);
+        maxAttempts = getIntProperty(settingsFacade, MAX_ATTEMPTS_KEY, DEFAULT_MAX_ATTEMPTS);
+        int flushInterval = getIntProperty(settingsFacade, FLUSH_INTERVAL_KEY, DEFAULT_FLUSH_INTERVAL);
+
+        File directory = new File(getProperty(settingsFacade, SPILL_DIRECTORY_KEY, defaultDirectory()));
+        try {
+            boolean syncWrites = Boolean.parseBoolean(getProperty(settingsFacade, SYNC_WRITES_KEY, "true"));
+            spillLog = new DataValueSpillLog(directory, syncWrites, new ObjectMapper());
+            for (PendingDataValue value : spillLog.readAll()) {
+                bufferValue(value);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to open the DHIS2 data value spill log in {}, data values will be sent one by one",
+                    directory.getAbsolutePath(), e);
+            enabled = false;
+            return;
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dhis2-data-value-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new FlushTask(), flushInterval, flushInterval, TimeUnit.SECONDS);
+
+        LOGGER.info("DHIS2 data value aggregation started in {}, {} data values to replay",
+                directory.getAbsolutePath(), pendingCount);
+    }
+
+    /**
+     * Stops the flusher thread and makes a last attempt to send the pending values. Values that could not be sent
+     * stay in the spill log and will be sent after the next start.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (!enabled) {
+            return;
+        }
+
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                flusher.shutdownNow();
+            }
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to flush the pending DHIS2 data values, they will be sent after the next start", e);
+        }
+
+        synchronized (buffer) {
+            stopped = true;
+            try {
+                spillLog.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error while closing the DHIS2 data value spill log", e);
+            }
+        }
+        enabled = false;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void add(DataValueDto dataValue, String dataSet, String dataElementName) {
+        PendingDataValue value = new PendingDataValue(dataValue, dataSet, dataElementName);
+        boolean batchFull;
+
+        synchronized (buffer) {
+            if (!stopped) {
+                try {
+                    spillLog.append(value);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to write the data value to the DHIS2 spill log", e);
+                }
+                batchFull = bufferValue(value) >= maxBatchSize;
+            } else {
+                batchFull = false;
+                value = null;
+            }
+        }
+
+        if (value == null) {
+            // added after the aggregator was stopped, the value is sent straight away, as if it was disabled
+            List<PendingDataValue> single = Collections.singletonList(new PendingDataValue(dataValue, dataSet,
+                    dataElementName));
+            mapResults(single, dhisWebService.sendDataValueSet(toDataValueSet(single)));
+            return;
+        }
+
+        if (batchFull && flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(new FlushTask());
+            } catch (RejectedExecutionException e) {
+                // stopping, the value is in the spill log and will be sent after the next start
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        synchronized (flushLock) {
+            flushScheduled.set(false);
+
+            List<List<PendingDataValue>> groups;
+            synchronized (buffer) {
+                groups = new ArrayList<>(buffer.values());
+                buffer.clear();
+                pendingCount = 0;
+            }
+
+            List<PendingDataValue> retries = new ArrayList<>();
+            for (List<PendingDataValue> group : groups) {
+                for (int from = 0; from < group.size(); from += maxBatchSize) {
+                    List<PendingDataValue> batch = group.subList(from, Math.min(from + maxBatchSize, group.size()));
+                    try {
+                        retries.addAll(send(batch));
+                    } catch (RuntimeException e) {
+                        // the values are already drained from the buffer, they would be lost with the exception
+                        LOGGER.error("Error while sending {} data values to DHIS2", batch.size(), e);
+                        retries.addAll(retryOrReject(batch, e.getMessage()));
+                    }
+                }
+            }
+
+            synchronized (buffer) {
+                List<PendingDataValue> pending = new ArrayList<>(retries);
+                for (List<PendingDataValue> group : buffer.values()) {
+                    pending.addAll(group);
+                }
+                for (PendingDataValue retry : retries) {
+                    bufferValue(retry);
+                }
+
+                try {
+                    spillLog.rewrite(pending);
+                } catch (IOException e) {
+                    // the log still contains all pending values, some of which were already sent
+                    LOGGER.warn("Unable to compact the DHIS2 data value spill log", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getPendingCount() {
+        synchronized (buffer) {
+            return pendingCount;
+        }
+    }
+
+    /*Sends one batch of values from a single group, returns the values that should be retried*/
+    private List<PendingDataValue> send(List<PendingDataValue> batch) {
+        DhisDataValueStatusResponse response;
+        try {
+            response = dhisWebService.sendDataValueSet(toDataValueSet(batch));
+        } catch (DhisWebException e) {
+            LOGGER.warn("Unable to send {} data values to DHIS2: {}", batch.size(), e.getMessage());
+            return retryOrReject(batch, e.getMessage());
+        }
+
+        if (batch.size() > 1 && hasConflicts(response)) {
+            // a conflict names a single element, which may be shared by many values, only the values referring to
+            // it are sent again, the ones DHIS2 accepted among them are updated with the same value
+            List<PendingDataValue> conflicting = valuesInConflict(batch, response.getConflicts());
+            if (!conflicting.isEmpty() && conflicting.size() < batch.size()) {
+                LOGGER.debug("DHIS2 reported conflicts for a batch of {} data values, sending {} of them again",
+                        batch.size(), conflicting.size());
+                return send(conflicting);
+            }
+
+            LOGGER.debug("DHIS2 reported conflicts for a batch of {} data values, sending it again in halves",
+                    batch.size());
+            int half = batch.size() / 2;
+            List<PendingDataValue> retries = new ArrayList<>(send(batch.subList(0, half)));
+            retries.addAll(send(batch.subList(half, batch.size())));
+            return retries;
+        }
+
+        mapResults(batch, response);
+        return new ArrayList<>();
+    }
+
+    private DataValueSetDto toDataValueSet(List<PendingDataValue> batch) {
+        PendingDataValue first = batch.get(0);
+
+        List<DataValueDto> dataValues = new ArrayList<>(batch.size());
+        for (PendingDataValue value : batch) {
+            dataValues.add(value.getDataValue());
+        }
+
+        DataValueSetDto dataValueSet = new DataValueSetDto();
+        dataValueSet.setDataSet(first.getDataSet());
+        dataValueSet.setOrgUnit(first.getDataValue().getOrgUnit());
+        dataValueSet.setPeriod(first.getDataValue().getPeriod());
+        dataValueSet.setDataValues(dataValues);
+
+        return dataValueSet;
+    }
+
+    private List<PendingDataValue> valuesInConflict(List<PendingDataValue> batch, List<ImportConflictDto> conflicts) {
+        Set<String> objects = new HashSet<>();
+        for (ImportConflictDto conflict : conflicts) {
+            objects.add(conflict.getObject());
+        }
+
+        List<PendingDataValue> conflicting = new ArrayList<>();
+        for (PendingDataValue value : batch) {
+            DataValueDto dataValue = value.getDataValue();
+            if (objects.contains(dataValue.getDataElement()) || objects.contains(dataValue.getOrgUnit())
+                    || objects.contains(dataValue.getPeriod())
+                    || objects.contains(dataValue.getCategoryOptionCombo())) {
+                conflicting.add(value);
+            }
+        }
+
+        return conflicting;
+    }
+
+    private boolean hasConflicts(DhisDataValueStatusResponse response) {
+        return response != null && response.getStatus() != DhisStatus.ERROR && response.getConflicts() != null
+                && !response.getConflicts().isEmpty();
+    }
+
+    private List<PendingDataValue> retryOrReject(List<PendingDataValue> batch, String message) {
+        List<PendingDataValue> retries = new ArrayList<>();
+
+        for (PendingDataValue value : batch) {
+            value.setAttempts(value.getAttempts() + 1);
+            if (value.getAttempts() < maxAttempts) {
+                retries.add(value);
+            } else {
+                reject(value, message);
+            }
+        }
+
+        return retries;
+    }
+
+    /*Rejects the values of a batch refused by DHIS2, a batch with conflicts is always a single value*/
+    private void mapResults(List<PendingDataValue> batch, DhisDataValueStatusResponse response) {
+        if (response == null) {
+            return;
+        }
+
+        if (response.getStatus() == DhisStatus.ERROR) {
+            for (PendingDataValue value : batch) {
+                reject(value, response.getDescription());
+            }
+            return;
+        }
+
+        int rejected = 0;
+        if (hasConflicts(response)) {
+            List<String> conflicts = new ArrayList<>();
+            for (ImportConflictDto conflict : response.getConflicts()) {
+                conflicts.add(conflict.getValue());
+            }
+
+            for (PendingDataValue value : batch) {
+                reject(value, StringUtils.join(conflicts, "; "));
+                rejected++;
+            }
+        }
+
+        if (response.getDataValueCount() != null) {
+            LOGGER.debug("Sent {} data values to DHIS2: {} imported, {} updated, {} ignored, {} rejected",
+                    batch.size(), response.getDataValueCount().getImported(), response.getDataValueCount().getUpdated(),
+                    response.getDataValueCount().getIgnored(), rejected);
+
+            if (response.getDataValueCount().getIgnored() > rejected) {
+                LOGGER.warn("DHIS2 ignored {} data values, but reported conflicts for only {} of them",
+                        response.getDataValueCount().getIgnored(), rejected);
+            }
+        }
+    }
+
+    private void reject(PendingDataValue value, String message) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(EventParams.DATA_ELEMENT, value.getDataElementName());
+        params.put(EventParams.LOCATION, value.getDataValue().getOrgUnit());
+        params.put(EventParams.PERIOD, value.getDataValue().getPeriod());
+        params.put(EventParams.VALUE, value.getDataValue().getValue());
+        params.put(EventParams.DATA_SET, value.getDataSet());
+        params.put(EventParams.CATEGORY_OPTION_COMBO, value.getDataValue().getCategoryOptionCombo());
+        params.put(EventParams.ERROR_MESSAGE, message);
+
+        eventRelay.sendEventMessage(new MotechEvent(EventSubjects.DATA_VALUE_REJECTED, params));
+    }
+
+    private int bufferValue(PendingDataValue value) {
+        String key = value.groupKey();
+        List<PendingDataValue> group = buffer.get(key);
+
+        if (group == null) {
+            group = new ArrayList<>();
+            buffer.put(key, group);
+        }
+
+        group.add(value);
+        pendingCount++;
+
+        return group.size();
+    }
+
+    private String defaultDirectory() {
+        return System.getProperty("user.home") + File.separator + ".motech" + File.separator + "dhis2" +
+                File.separator + "data-value-spill";
+    }
+
+    private class FlushTask implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                LOGGER.error("Error while sending buffered data values to DHIS2", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.motechproject.dhis2.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Append-only log of the data values buffered by the {@link DataValueAggregatorImpl}, one JSON document per line.
+ * Every buffered value is appended to the log, and once values are sent the log is rewritten with the values that
+ * are still pending. After a crash the values in the log are loaded back into the buffer. A value that was being sent
+ * at the time of the crash will be sent again, which is harmless since DHIS2 overwrites the existing value.
+ * This class is not thread-safe, callers must synchronize access to it.
+ */
+class DataValueSpillLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataValueSpillLog.class);
+
+    private static final String LOG_FILE = "pending-data-values.log";
+    private static final String TEMP_FILE = "pending-data-values.tmp";
+
+    private final File logFile;
+    private final File tempFile;
+    private final boolean syncWrites;
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+
+    private FileOutputStream out;
+    private Writer outWriter;
+
+    DataValueSpillLog(File directory, boolean syncWrites, ObjectMapper mapper) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory.getAbsolutePath());
+        }
+
+        this.logFile = new File(directory, LOG_FILE);
+        this.tempFile = new File(directory, TEMP_FILE);
+        this.syncWrites = syncWrites;
+        this.writer = mapper.writerWithType(PendingDataValue.class);
+        this.reader = mapper.reader(PendingDataValue.class);
+
+        openForAppend();
+    }
+
+    /**
+     * Reads all values stored in the log. Lines that can't be parsed, for example a line that was only partially
+     * written before a crash, are skipped.
+     *
+     * @return the values stored in the log
+     * @throws IOException if the log can't be read
+     */
+    List<PendingDataValue> readAll() throws IOException {
+        List<PendingDataValue> values = new ArrayList<>();
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(logFile),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                try {
+                    values.add(reader.<PendingDataValue>readValue(line));
+                } catch (IOException e) {
+                    LOGGER.warn("Skipping malformed entry in the DHIS2 data value spill log: {}", line);
+                }
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Appends the value to the log.
+     *
+     * @param value the value to append
+     * @throws IOException if the value can't be written
+     */
+    void append(PendingDataValue value) throws IOException {
+        outWriter.write(writer.writeValueAsString(value));
+        outWriter.write('\n');
+        outWriter.flush();
+
+        if (syncWrites) {
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Replaces the contents of the log with the given values.
+     *
+     * @param values the values that are still pending
+     * @throws IOException if the log can't be rewritten
+     */
+    void rewrite(Collection<PendingDataValue> values) throws IOException {
+        try (FileOutputStream tempOut = new FileOutputStream(tempFile);
+             Writer tempWriter = new BufferedWriter(new OutputStreamWriter(tempOut, StandardCharsets.UTF_8))) {
+            for (PendingDataValue value : values) {
+                tempWriter.write(writer.writeValueAsString(value));
+                tempWriter.write('\n');
+            }
+            tempWriter.flush();
+            tempOut.getFD().sync();
+        }
+
+        close();
+
+        if (!tempFile.renameTo(logFile)) {
+            // some platforms can't rename over an existing file
+            if (!logFile.delete() || !tempFile.renameTo(logFile)) {
+                openForAppend();
+                throw new IOException("Unable to replace " + logFile.getAbsolutePath());
+            }
+        }
+
+        openForAppend();
+    }
+
+    void close() throws IOException {
+        if (outWriter != null) {
+            outWriter.close();
+            outWriter = null;
+            out = null;
+        }
+    }
+
+    private void openForAppend() throws IOException {
+        out = new FileOutputStream(logFile, true);
+        outWriter = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,60 @@
+package org.motechproject.dhis2.service.impl;
+
+import org.motechproject.dhis2.rest.domain.DataValueDto;
+
+/**
+ * A data value waiting in the {@link DataValueAggregatorImpl} buffer, along with the information needed to group it
+ * and to report it if it gets rejected.
+ */
+public class PendingDataValue {
+
+    private DataValueDto dataValue;
+    private String dataSet;
+    private String dataElementName;
+    private int attempts;
+
+    public PendingDataValue() {
+    }
+
+    public PendingDataValue(DataValueDto dataValue, String dataSet, String dataElementName) {
+        this.dataValue = dataValue;
+        this.dataSet = dataSet;
+        this.dataElementName = dataElementName;
+    }
+
+    public DataValueDto getDataValue() {
+        return dataValue;
+    }
+
+    public void setDataValue(DataValueDto dataValue) {
+        this.dataValue = dataValue;
+    }
+
+    public String getDataSet() {
+        return dataSet;
+    }
+
+    public void setDataSet(String dataSet) {
+        this.dataSet = dataSet;
+    }
+
+    public String getDataElementName() {
+        return dataElementName;
+    }
+
+    public void setDataElementName(String dataElementName) {
+        this.dataElementName = dataElementName;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    String groupKey() {
+        return dataValue.getOrgUnit() + '|' + dataValue.getPeriod() + '|' + dataSet;
+    }
+}
@@ -1,11 +1,17 @@
 package org.motechproject.dhis2.service.impl;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.motechproject.dhis2.domain.DataElement;
+import org.motechproject.dhis2.domain.OrgUnit;
 import org.motechproject.dhis2.domain.Program;
 import org.motechproject.dhis2.domain.Stage;
 import org.motechproject.dhis2.domain.TrackedEntity;
 import org.motechproject.dhis2.domain.TrackedEntityAttribute;
 import org.motechproject.dhis2.rest.domain.DataElementDto;
+import org.motechproject.dhis2.rest.domain.DhisServerInfo;
 import org.motechproject.dhis2.rest.domain.OrganisationUnitDto;
 import org.motechproject.dhis2.rest.domain.ProgramDto;
 import org.motechproject.dhis2.rest.domain.ProgramStageDataElementDto;
@@ -13,29 +19,67 @@ import org.motechproject.dhis2.rest.domain.ProgramStageDto;
 import org.motechproject.dhis2.rest.domain.ProgramTrackedEntityAttributeDto;
 import org.motechproject.dhis2.rest.domain.TrackedEntityAttributeDto;
 import org.motechproject.dhis2.rest.domain.TrackedEntityDto;
+import org.motechproject.dhis2.rest.service.DhisWebException;
 import org.motechproject.dhis2.service.DataElementService;
 import org.motechproject.dhis2.rest.service.DhisWebService;
+import org.motechproject.dhis2.rest.service.ResourceCallback;
 import org.motechproject.dhis2.service.OrgUnitService;
 import org.motechproject.dhis2.service.ProgramService;
+import org.motechproject.dhis2.service.SettingsService;
 import org.motechproject.dhis2.service.StageService;
 import org.motechproject.dhis2.service.SyncService;
 import org.motechproject.dhis2.service.TrackedEntityAttributeService;
 import org.motechproject.dhis2.service.TrackedEntityService;
+import org.motechproject.server.config.SettingsFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import static org.motechproject.dhis2.util.SettingsUtils.getIntProperty;
+
 /**
- * Implementation of {@link org.motechproject.dhis2.service.SyncService}
+ * Implementation of {@link org.motechproject.dhis2.service.SyncService}. The synchronization is differential: only the
+ * resources updated in DHIS2 since the last successful sync are requested, and the identifiers of all resources are
+ * used to find the ones that were removed. The requests are made concurrently and the changes are applied once
+ * everything has been retrieved, in chunks of records each committed in its own transaction, so that a large schema
+ * doesn't hold a single long transaction. The sync state is only saved after all changes were applied, a sync failing
+ * halfway is completed by the next one, which requests the same changes again.
  */
 @Service("syncService")
 public class SyncServiceImpl implements SyncService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SyncServiceImpl.class);
+
+    private static final String SYNC_STATE_FILE_NAME = "dhis2-sync-state.json";
+    private static final String CONCURRENCY_KEY = "sync.concurrency";
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int CHUNK_SIZE = 200;
+
     @Autowired
     private DhisWebService dhisWebService;
 
@@ -57,20 +101,45 @@ public class SyncServiceImpl implements SyncService {
     @Autowired
     private OrgUnitService orgUnitService;
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(SyncServiceImpl.class);
+    @Autowired
+    @Qualifier("dhisSettingsService")
+    private SettingsService settingsService;
+
+    @Autowired
+    @Qualifier("dhisSettings")
+    private SettingsFacade settingsFacade;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     @Override
-    @Transactional
-    public boolean sync() {
+    public synchronized boolean sync() {
         LOGGER.debug("Starting Sync");
+        int concurrency = getIntProperty(settingsFacade, CONCURRENCY_KEY, DEFAULT_CONCURRENCY);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dhis2-sync");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
         try {
             long startTime = System.nanoTime();
-            dropExistingData();
-            addDataElements();
-            addAttributes();
-            addTrackedEntities();
-            addPrograms();
-            addOrgUnits();
+
+            String serverURI = settingsService.getSettings().getServerURI();
+            SyncState state = loadSyncState();
+            String lastUpdated = StringUtils.equals(serverURI, state.getServerURI()) ? state.getLastUpdated() : null;
+
+            // taken before the requests are made, so that nothing updated in the meantime is missed by the next sync
+            DhisServerInfo serverInfo = dhisWebService.getDhisServerInfo();
+
+            RemoteSchema schema = fetchSchema(executor, lastUpdated);
+
+            applySchema(schema);
+
+            saveSyncState(new SyncState(serverURI, serverInfo.getServerDate()));
 
             long endTime = System.nanoTime();
 
@@ -81,162 +150,576 @@ public class SyncServiceImpl implements SyncService {
         } catch (RuntimeException e) {
             LOGGER.error("Problem with DHIS2 application Schema. Sync unsuccessful.", e);
             return false;
+        } finally {
+            executor.shutdownNow();
         }
     }
 
     /*
-     * Request data elements from DHIS and persist in MDS. The partial data element objects returned by the top-level api
-     * endpoint suffice for current needs.
+     * Requests the resources updated since the given date, together with the identifiers of all resources. Since we need
+     * data from full program and program stage objects, the updated programs and stages are then requested through
+     * their links. The program stages of updated programs are requested as well, since new stages are only visible
+     * through their program.
      */
-    private void addDataElements() {
-        List<DataElementDto> dataElementDtos = dhisWebService.getDataElements();
+    private RemoteSchema fetchSchema(ExecutorService executor, final String lastUpdated) {
+        Future<List<DataElementDto>> dataElements = executor.submit(new Callable<List<DataElementDto>>() {
+            @Override
+            public List<DataElementDto> call() {
+                return dhisWebService.getDataElements(lastUpdated);
+            }
+        });
+        Future<Set<String>> dataElementIds = executor.submit(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() {
+                return dhisWebService.getDataElementIds();
+            }
+        });
+        Future<List<TrackedEntityAttributeDto>> attributes = executor.submit(new Callable<List<TrackedEntityAttributeDto>>() {
+            @Override
+            public List<TrackedEntityAttributeDto> call() {
+                return dhisWebService.getTrackedEntityAttributes(lastUpdated);
+            }
+        });
+        Future<Set<String>> attributeIds = executor.submit(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() {
+                return dhisWebService.getTrackedEntityAttributeIds();
+            }
+        });
+        Future<List<TrackedEntityDto>> trackedEntities = executor.submit(new Callable<List<TrackedEntityDto>>() {
+            @Override
+            public List<TrackedEntityDto> call() {
+                return dhisWebService.getTrackedEntities(lastUpdated);
+            }
+        });
+        Future<Set<String>> trackedEntityIds = executor.submit(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() {
+                return dhisWebService.getTrackedEntityIds();
+            }
+        });
+        Future<Map<String, String>> orgUnits = executor.submit(new Callable<Map<String, String>>() {
+            @Override
+            public Map<String, String> call() {
+                // there can be a lot of organisation units, only their names are kept as the pages arrive
+                final Map<String, String> orgUnitNames = new HashMap<>();
+                dhisWebService.getOrganisationUnits(lastUpdated, new ResourceCallback<OrganisationUnitDto>() {
+                    @Override
+                    public void handle(List<OrganisationUnitDto> resources) {
+                        for (OrganisationUnitDto orgUnitDto : resources) {
+                            orgUnitNames.put(orgUnitDto.getId(), orgUnitDto.getName());
+                        }
+                    }
+                });
+                return orgUnitNames;
+            }
+        });
+        Future<Set<String>> orgUnitIds = executor.submit(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() {
+                return dhisWebService.getOrganisationUnitIds();
+            }
+        });
+        Future<List<ProgramDto>> programs = executor.submit(new Callable<List<ProgramDto>>() {
+            @Override
+            public List<ProgramDto> call() {
+                return dhisWebService.getPrograms(lastUpdated);
+            }
+        });
+        Future<Set<String>> programIds = executor.submit(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() {
+                return dhisWebService.getProgramIds();
+            }
+        });
+        Future<List<ProgramStageDto>> stages = executor.submit(new Callable<List<ProgramStageDto>>() {
+            @Override
+            public List<ProgramStageDto> call() {
+                return dhisWebService.getProgramStages(lastUpdated);
+            }
+        });
+
+        List<Callable<ProgramDto>> programRequests = new ArrayList<>();
+        for (final ProgramDto partialDto : get(programs)) {
+            programRequests.add(new Callable<ProgramDto>() {
+                @Override
+                public ProgramDto call() {
+                    return dhisWebService.getProgramByHref(partialDto.getHref());
+                }
+            });
+        }
+        List<ProgramDto> fullPrograms = invokeAll(executor, programRequests);
+
+        Map<String, String> stageHrefs = new LinkedHashMap<>();
+        for (ProgramDto program : fullPrograms) {
+            if (program.getProgramStages() != null) {
+                for (ProgramStageDto partialDto : program.getProgramStages()) {
+                    stageHrefs.put(partialDto.getId(), partialDto.getHref());
+                }
+            }
+        }
+        for (ProgramStageDto partialDto : get(stages)) {
+            stageHrefs.put(partialDto.getId(), partialDto.getHref());
+        }
+
+        List<Callable<ProgramStageDto>> stageRequests = new ArrayList<>();
+        for (final String href : stageHrefs.values()) {
+            stageRequests.add(new Callable<ProgramStageDto>() {
+                @Override
+                public ProgramStageDto call() {
+                    return dhisWebService.getProgramStageByHref(href);
+                }
+            });
+        }
 
-        for (DataElementDto dataElementDto : dataElementDtos) {
-            dataElementService.createFromDetails(dataElementDto);
+        RemoteSchema schema = new RemoteSchema();
+        schema.dataElements = get(dataElements);
+        schema.dataElementIds = new HashSet<>(get(dataElementIds));
+        schema.attributes = get(attributes);
+        schema.attributeIds = new HashSet<>(get(attributeIds));
+        schema.trackedEntities = get(trackedEntities);
+        schema.trackedEntityIds = new HashSet<>(get(trackedEntityIds));
+        schema.orgUnits = get(orgUnits);
+        schema.orgUnitIds = get(orgUnitIds);
+        schema.programs = fullPrograms;
+        schema.programIds = get(programIds);
+
+        for (ProgramStageDto fullDto : invokeAll(executor, stageRequests)) {
+            schema.stages.put(fullDto.getId(), fullDto);
         }
+
+        LOGGER.debug("Retrieved {} data elements, {} attributes, {} tracked entities, {} organisation units, " +
+                "{} programs and {} program stages updated since {}", schema.dataElements.size(),
+                schema.attributes.size(), schema.trackedEntities.size(), schema.orgUnits.size(),
+                schema.programs.size(), schema.stages.size(), lastUpdated);
+
+        return schema;
     }
 
     /*
-     * Request tracked entity attributes from DHIS and persist in MDS. The partial tracked entity attribute objects returned by
-     * the top-level api endpoint suffice for current needs.
+     * Applies the retrieved changes. Existing records are loaded once and looked up by identifier, and only the records
+     * that actually changed are written. Records removed from DHIS2 are deleted last, once nothing refers to them.
      */
-    private void addAttributes()  {
-        List<TrackedEntityAttributeDto> trackedEntityAttributeDtos = dhisWebService.getTrackedEntityAttributes();
-        for (TrackedEntityAttributeDto trackedEntityAttributeDto : trackedEntityAttributeDtos) {
-            trackedEntityAttributeService.createFromDetails(trackedEntityAttributeDto);
+    private void applySchema(RemoteSchema schema) {
+        Map<String, DataElement> dataElements = syncDataElements(schema.dataElements);
+        Map<String, TrackedEntityAttribute> attributes = syncAttributes(schema.attributes);
+        Map<String, TrackedEntity> trackedEntities = syncTrackedEntities(schema.trackedEntities);
+        Map<String, OrgUnit> orgUnits = syncOrgUnits(schema.orgUnits);
+
+        syncPrograms(schema, dataElements, attributes, trackedEntities);
+
+        List<DataElement> removedDataElements = new ArrayList<>();
+        for (DataElement dataElement : dataElements.values()) {
+            if (!schema.dataElementIds.contains(dataElement.getUuid())) {
+                removedDataElements.add(dataElement);
+            }
         }
+        inChunks(removedDataElements, new RecordCallback<DataElement>() {
+            @Override
+            public void apply(DataElement dataElement) {
+                dataElementService.delete(dataElement);
+            }
+        });
+
+        List<TrackedEntityAttribute> removedAttributes = new ArrayList<>();
+        for (TrackedEntityAttribute attribute : attributes.values()) {
+            if (!schema.attributeIds.contains(attribute.getUuid())) {
+                removedAttributes.add(attribute);
+            }
+        }
+        inChunks(removedAttributes, new RecordCallback<TrackedEntityAttribute>() {
+            @Override
+            public void apply(TrackedEntityAttribute attribute) {
+                trackedEntityAttributeService.delete(attribute);
+            }
+        });
+
+        List<TrackedEntity> removedTrackedEntities = new ArrayList<>();
+        for (TrackedEntity trackedEntity : trackedEntities.values()) {
+            if (!schema.trackedEntityIds.contains(trackedEntity.getUuid())) {
+                removedTrackedEntities.add(trackedEntity);
+            }
+        }
+        inChunks(removedTrackedEntities, new RecordCallback<TrackedEntity>() {
+            @Override
+            public void apply(TrackedEntity trackedEntity) {
+                trackedEntityService.delete(trackedEntity);
+            }
+        });
+
+        List<OrgUnit> removedOrgUnits = new ArrayList<>();
+        for (OrgUnit orgUnit : orgUnits.values()) {
+            if (!schema.orgUnitIds.contains(orgUnit.getUuid())) {
+                removedOrgUnits.add(orgUnit);
+            }
+        }
+        inChunks(removedOrgUnits, new RecordCallback<OrgUnit>() {
+            @Override
+            public void apply(OrgUnit orgUnit) {
+                orgUnitService.delete(orgUnit);
+            }
+        });
     }
 
-    /*
-     * Request tracked entities from DHIS and persist in MDS. The partial tracked entity objects returned by the top-level
-     * api endpoint suffice for current needs.
-     */
-    private void addTrackedEntities() {
-        List<TrackedEntityDto> trackedEntityDtos = dhisWebService.getTrackedEntities();
-        for (TrackedEntityDto trackedEntityDto : trackedEntityDtos) {
-            trackedEntityService.createFromDetails(trackedEntityDto);
+    private Map<String, DataElement> syncDataElements(List<DataElementDto> dataElementDtos) {
+        final Map<String, DataElement> dataElements = new HashMap<>();
+        for (DataElement dataElement : dataElementService.findAll()) {
+            dataElements.put(dataElement.getUuid(), dataElement);
         }
+
+        inChunks(dataElementDtos, new RecordCallback<DataElementDto>() {
+            @Override
+            public void apply(DataElementDto dataElementDto) {
+                DataElement dataElement = dataElements.get(dataElementDto.getId());
+                if (dataElement == null) {
+                    dataElements.put(dataElementDto.getId(), dataElementService.createFromDetails(dataElementDto));
+                } else if (!StringUtils.equals(dataElement.getName(), dataElementDto.getName())) {
+                    dataElement.setName(dataElementDto.getName());
+                    dataElementService.update(dataElement);
+                }
+            }
+        });
+
+        return dataElements;
+    }
+
+    private Map<String, TrackedEntityAttribute> syncAttributes(List<TrackedEntityAttributeDto> attributeDtos) {
+        final Map<String, TrackedEntityAttribute> attributes = new HashMap<>();
+        for (TrackedEntityAttribute attribute : trackedEntityAttributeService.findAll()) {
+            attributes.put(attribute.getUuid(), attribute);
+        }
+
+        inChunks(attributeDtos, new RecordCallback<TrackedEntityAttributeDto>() {
+            @Override
+            public void apply(TrackedEntityAttributeDto attributeDto) {
+                TrackedEntityAttribute attribute = attributes.get(attributeDto.getId());
+                if (attribute == null) {
+                    attributes.put(attributeDto.getId(), trackedEntityAttributeService.createFromDetails(attributeDto));
+                } else if (!StringUtils.equals(attribute.getName(), attributeDto.getName())) {
+                    attribute.setName(attributeDto.getName());
+                    trackedEntityAttributeService.update(attribute);
+                }
+            }
+        });
+
+        return attributes;
+    }
+
+    private Map<String, TrackedEntity> syncTrackedEntities(List<TrackedEntityDto> trackedEntityDtos) {
+        final Map<String, TrackedEntity> trackedEntities = new HashMap<>();
+        for (TrackedEntity trackedEntity : trackedEntityService.findAll()) {
+            trackedEntities.put(trackedEntity.getUuid(), trackedEntity);
+        }
+
+        inChunks(trackedEntityDtos, new RecordCallback<TrackedEntityDto>() {
+            @Override
+            public void apply(TrackedEntityDto trackedEntityDto) {
+                TrackedEntity trackedEntity = trackedEntities.get(trackedEntityDto.getId());
+                if (trackedEntity == null) {
+                    trackedEntities.put(trackedEntityDto.getId(),
+                            trackedEntityService.createFromDetails(trackedEntityDto));
+                } else if (!StringUtils.equals(trackedEntity.getName(), trackedEntityDto.getName())) {
+                    trackedEntity.setName(trackedEntityDto.getName());
+                    trackedEntityService.update(trackedEntity);
+                }
+            }
+        });
+
+        return trackedEntities;
+    }
+
+    private Map<String, OrgUnit> syncOrgUnits(Map<String, String> orgUnitNames) {
+        final Map<String, OrgUnit> orgUnits = new HashMap<>();
+        for (OrgUnit orgUnit : orgUnitService.findAll()) {
+            orgUnits.put(orgUnit.getUuid(), orgUnit);
+        }
+
+        inChunks(orgUnitNames.entrySet(), new RecordCallback<Map.Entry<String, String>>() {
+            @Override
+            public void apply(Map.Entry<String, String> orgUnitName) {
+                OrgUnit orgUnit = orgUnits.get(orgUnitName.getKey());
+                if (orgUnit == null) {
+                    OrganisationUnitDto orgUnitDto = new OrganisationUnitDto();
+                    orgUnitDto.setId(orgUnitName.getKey());
+                    orgUnitDto.setName(orgUnitName.getValue());
+                    orgUnits.put(orgUnitName.getKey(), orgUnitService.createFromDetails(orgUnitDto));
+                } else if (!StringUtils.equals(orgUnit.getName(), orgUnitName.getValue())) {
+                    orgUnit.setName(orgUnitName.getValue());
+                    orgUnitService.update(orgUnit);
+                }
+            }
+        });
+
+        return orgUnits;
     }
 
     /*
-     * Request programs from DHIS and persist in MDS. Since we need data from full program objects, we load the partial
-     * objects from the top-level endpoints and then iterate through the links for the complete objects.
+     * Creates or updates the updated programs along with their sub-objects (tracked entity, program stages, program
+     * tracked entity attributes), updates the stages that changed on their own and deletes the removed programs, whose
+     * stages are deleted with them.
      */
-    private void addPrograms() {
-        List<ProgramDto> partialDtos = dhisWebService.getPrograms();
+    private void syncPrograms(final RemoteSchema schema, final Map<String, DataElement> dataElements,
+                              final Map<String, TrackedEntityAttribute> attributes,
+                              final Map<String, TrackedEntity> trackedEntities) {
+        final Map<String, Program> programs = new HashMap<>();
+        for (Program program : programService.findAll()) {
+            programs.put(program.getUuid(), program);
+        }
 
-        for (ProgramDto partialDto : partialDtos) {
-            ProgramDto fullDto = dhisWebService.getProgramByHref(partialDto.getHref());
-            Program program = programService.createFromDetails(fullDto);
+        final Map<String, Stage> stages = new HashMap<>();
+        for (Stage stage : stageService.findAll()) {
+            stages.put(stage.getUuid(), stage);
+        }
 
-            /**
-             * Request and add the program's sub-objects (tracked entity, program stages, program tracked entity's attributes).
-             */
-            if (fullDto.getTrackedEntity() != null) {
-                program.setTrackedEntity(getProgramTrackedEntityFromDto(fullDto.getTrackedEntity()));
+        final Set<String> syncedStageIds = new HashSet<>();
+
+        inChunks(schema.programs, new RecordCallback<ProgramDto>() {
+            @Override
+            public void apply(ProgramDto programDto) {
+                Program program = programs.get(programDto.getId());
+                if (program == null) {
+                    program = programService.createFromDetails(programDto);
+                    programs.put(programDto.getId(), program);
+                } else {
+                    program.setName(programDto.getName());
+                    program.setRegistration(programDto.getRegistration());
+                    program.setSingleEvent(programDto.getSingleEvent());
+                    program.setProgramType(programDto.getProgramType());
+                }
+
+                program.setTrackedEntity(programDto.getTrackedEntity() == null ? null :
+                        getProgramTrackedEntity(programDto.getTrackedEntity(), trackedEntities, schema));
+
+                Set<String> previousStageIds = new HashSet<>();
+                if (program.getStages() != null) {
+                    for (Stage stage : program.getStages()) {
+                        previousStageIds.add(stage.getUuid());
+                    }
+                }
+
+                List<Stage> programStages = new ArrayList<>();
+                if (programDto.getProgramStages() != null) {
+                    for (ProgramStageDto partialStageDto : programDto.getProgramStages()) {
+                        ProgramStageDto stageDto = schema.stages.get(partialStageDto.getId());
+                        programStages.add(syncStage(stageDto, program, stages, dataElements, schema));
+                        syncedStageIds.add(stageDto.getId());
+                        previousStageIds.remove(stageDto.getId());
+                    }
+                }
+                program.setStages(programStages);
+
+                program.setAttributes(programDto.getProgramTrackedEntityAttributes() == null ? null :
+                        getProgramAttributes(programDto.getProgramTrackedEntityAttributes(), attributes, schema));
+
+                programService.update(program);
+
+                for (String removedStageId : previousStageIds) {
+                    Stage removedStage = stages.remove(removedStageId);
+                    if (removedStage != null) {
+                        stageService.delete(removedStage);
+                    }
+                }
             }
+        });
 
-            if (fullDto.getProgramStages() != null) {
-                program.setStages(getStagesFromDtos(fullDto.getProgramStages(), program.getUuid(), program.hasRegistration()));
+        List<ProgramStageDto> changedStages = new ArrayList<>();
+        for (ProgramStageDto stageDto : schema.stages.values()) {
+            if (!syncedStageIds.contains(stageDto.getId()) && stages.containsKey(stageDto.getId())) {
+                changedStages.add(stageDto);
+            }
+        }
+        inChunks(changedStages, new RecordCallback<ProgramStageDto>() {
+            @Override
+            public void apply(ProgramStageDto stageDto) {
+                Stage stage = stages.get(stageDto.getId());
+                stage.setName(stageDto.getName());
+                stage.setDataElements(getStageDataElements(stageDto.getProgramStageDataElements(), dataElements,
+                        schema));
+                stageService.update(stage);
             }
+        });
 
-            if (fullDto.getProgramTrackedEntityAttributes() != null) {
-                program.setAttributes(getTrackedEntityAttributesFromDtos(fullDto.getProgramTrackedEntityAttributes()));
+        List<Program> removedPrograms = new ArrayList<>();
+        for (Program program : programs.values()) {
+            if (!schema.programIds.contains(program.getUuid())) {
+                removedPrograms.add(program);
+            }
+        }
+        inChunks(removedPrograms, new RecordCallback<Program>() {
+            @Override
+            public void apply(Program program) {
+                programService.delete(program);
             }
+        });
+    }
 
-            programService.update(program);
+    private Stage syncStage(ProgramStageDto stageDto, Program program, Map<String, Stage> stages,
+                            Map<String, DataElement> dataElements, RemoteSchema schema) {
+        Stage stage = stages.get(stageDto.getId());
+        if (stage == null) {
+            stage = stageService.createFromDetails(stageDto, program.getUuid(), program.hasRegistration());
+            stages.put(stageDto.getId(), stage);
+        } else {
+            stage.setName(stageDto.getName());
+            stage.setProgram(program.getUuid());
+            stage.setRegistration(program.hasRegistration());
         }
+
+        stage.setDataElements(getStageDataElements(stageDto.getProgramStageDataElements(), dataElements, schema));
+        stageService.update(stage);
+
+        return stage;
     }
 
     /*
-     * Helper to load the program's tracked entity from MDS, if we've already persisted it, or make a request to DHIS and persist,
-     * if we haven't.
+     * Helper to get the program's tracked entity. All tracked entities have been synchronized at this point, the
+     * partial object is only persisted if DHIS2 returned a program referring to an unknown tracked entity. Referenced
+     * objects are never deleted by the same sync.
      */
-    private TrackedEntity getProgramTrackedEntityFromDto(TrackedEntityDto partialDto) {
-        TrackedEntity trackedEntity = trackedEntityService.findById(partialDto.getId());
+    private TrackedEntity getProgramTrackedEntity(TrackedEntityDto partialDto, Map<String, TrackedEntity> trackedEntities,
+                                                  RemoteSchema schema) {
+        TrackedEntity trackedEntity = trackedEntities.get(partialDto.getId());
         if (trackedEntity == null) {
-            TrackedEntityDto fullDto = dhisWebService.getTrackedEntityByHref(partialDto.getHref());
-            trackedEntity = trackedEntityService.createFromDetails(fullDto);
+            trackedEntity = trackedEntityService.createFromDetails(partialDto);
+            trackedEntities.put(partialDto.getId(), trackedEntity);
         }
+        schema.trackedEntityIds.add(partialDto.getId());
         return trackedEntity;
     }
 
-
     /*
-     * Helper to load the program's program stages from MDS, if we've already persisted them, or make a request to DHIS, persist,
-     * if we haven't.
+     * Helper to get the program stage's data elements, persisting the ones we don't know about yet.
      */
-    private List<Stage> getStagesFromDtos(List<ProgramStageDto> partialStageDtos, String programId, boolean hasRegistration) {
-        List<Stage> stages = new ArrayList<Stage>();
-
-        for (ProgramStageDto partialStageDto : partialStageDtos) {
-            Stage stage = stageService.findById(partialStageDto.getId());
-
-            if (stage == null) {
-                ProgramStageDto fullDto = dhisWebService.getProgramStageByHref(partialStageDto.getHref());
-                stage = stageService.createFromDetails(fullDto, programId, hasRegistration);
-                stage.setDataElements(getStageDataElementsFromDtos(fullDto.getProgramStageDataElements()));
+    private List<DataElement> getStageDataElements(List<ProgramStageDataElementDto> programStageDataElementDtos,
+                                                   Map<String, DataElement> dataElements, RemoteSchema schema) {
+        List<DataElement> stageDataElements = new ArrayList<>();
+
+        if (programStageDataElementDtos != null) {
+            for (ProgramStageDataElementDto programStageDataElementDto : programStageDataElementDtos) {
+                DataElementDto dataElementDto = programStageDataElementDto.getDataElement();
+                DataElement dataElement = dataElements.get(dataElementDto.getId());
+                if (dataElement == null) {
+                    dataElement = dataElementService.createFromDetails(dataElementDto);
+                    dataElements.put(dataElementDto.getId(), dataElement);
+                }
+                schema.dataElementIds.add(dataElementDto.getId());
+                stageDataElements.add(dataElement);
             }
-            stages.add(stage);
         }
 
-        return stages;
+        return stageDataElements;
     }
 
     /*
-     * Helper to load the program stage's data elements from MDS, if we've already persisted them, or make a request to DHIS,
-     * persist, if we haven't.
+     * Helper to get the program's tracked entity attributes, persisting the ones we don't know about yet.
      */
-    private List<DataElement> getStageDataElementsFromDtos(List<ProgramStageDataElementDto> programStageDataElementDtos) {
-        List<DataElement> dataElements = new ArrayList<DataElement>();
+    private List<TrackedEntityAttribute> getProgramAttributes(List<ProgramTrackedEntityAttributeDto> programTrackedEntityAttributeDtos,
+                                                              Map<String, TrackedEntityAttribute> attributes,
+                                                              RemoteSchema schema) {
+        List<TrackedEntityAttribute> programAttributes = new ArrayList<>();
 
-        for (ProgramStageDataElementDto programStageDataElementDto : programStageDataElementDtos) {
-            DataElementDto dataElementDto = programStageDataElementDto.getDataElement();
-            DataElement dataElement = dataElementService.findById(dataElementDto.getId());
-            if (dataElement == null) {
-                dataElement = dataElementService.createFromDetails(dataElementDto);
+        for (ProgramTrackedEntityAttributeDto programTrackedEntityAttributeDto : programTrackedEntityAttributeDtos) {
+            TrackedEntityAttributeDto attributeDto = programTrackedEntityAttributeDto.getTrackedEntityAttribute();
+            TrackedEntityAttribute attribute = attributes.get(attributeDto.getId());
+            if (attribute == null) {
+                attribute = trackedEntityAttributeService.createFromDetails(attributeDto);
+                attributes.put(attributeDto.getId(), attribute);
             }
-            dataElements.add(dataElement);
+            schema.attributeIds.add(attributeDto.getId());
+            programAttributes.add(attribute);
+        }
+
+        return programAttributes;
+    }
+
+    private SyncState loadSyncState() {
+        try (InputStream is = settingsFacade.getRawConfig(SYNC_STATE_FILE_NAME)) {
+            SyncState state = is == null ? null : new Gson().fromJson(IOUtils.toString(is), SyncState.class);
+            return state == null ? new SyncState() : state;
+        } catch (IOException | JsonParseException e) {
+            LOGGER.warn("Unable to read the DHIS2 sync state, all resources will be synchronized", e);
+            return new SyncState();
         }
-        return dataElements;
     }
 
+    private void saveSyncState(SyncState state) {
+        String json = new Gson().toJson(state);
+        settingsFacade.saveRawConfig(SYNC_STATE_FILE_NAME,
+                new ByteArrayResource(json.getBytes(StandardCharsets.UTF_8)));
+    }
 
     /*
-     * Helper to laod the program's program tracked entity attributes from MDS, if we've already persisted them, or make a
-     * request to DHIS and persist, if we haven't.
+     * Applies the callback to the given records in chunks, each chunk in its own transaction. The records are copied
+     * first, since the callbacks may add records to the collection they come from.
      */
-    private List<TrackedEntityAttribute> getTrackedEntityAttributesFromDtos(List<ProgramTrackedEntityAttributeDto> programTrackedEntityAttributeDtos) {
-        List<TrackedEntityAttribute> trackedEntityAttributes = new ArrayList<TrackedEntityAttribute>();
+    private <T> void inChunks(Collection<T> records, final RecordCallback<T> callback) {
+        List<T> copy = new ArrayList<>(records);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        for (int from = 0; from < copy.size(); from += CHUNK_SIZE) {
+            final List<T> chunk = copy.subList(from, Math.min(from + CHUNK_SIZE, copy.size()));
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (T record : chunk) {
+                        callback.apply(record);
+                    }
+                }
+            });
+        }
+    }
 
-        for (ProgramTrackedEntityAttributeDto programTrackedEntityAttributeDto : programTrackedEntityAttributeDtos) {
-            TrackedEntityAttributeDto trackedEntityAttributeDto = programTrackedEntityAttributeDto.getTrackedEntityAttribute();
-            TrackedEntityAttribute trackedEntityAttribute = trackedEntityAttributeService.findById(trackedEntityAttributeDto.getId());
-            if (trackedEntityAttribute == null) {
-                trackedEntityAttribute = trackedEntityAttributeService.createFromDetails(trackedEntityAttributeDto);
+    private <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DhisWebException("Interrupted while synchronizing with DHIS2", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            trackedEntityAttributes.add(trackedEntityAttribute);
+            throw new DhisWebException("Error while synchronizing with DHIS2", e.getCause());
         }
-        return trackedEntityAttributes;
+    }
+
+    private <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) {
+        List<Future<T>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DhisWebException("Interrupted while synchronizing with DHIS2", e);
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            results.add(get(future));
+        }
+        return results;
     }
 
     /*
-     * Request organisation units from DHIS and persist in MDS. The partial organisation unit objects returned by the top-level
-     * api endpoint suffice for current needs.
+     * Applies the changes retrieved from DHIS2 to a single record.
      */
-    private void addOrgUnits() {
-        List<OrganisationUnitDto> orgUnitDtos = dhisWebService.getOrganisationUnits();
-        for (OrganisationUnitDto orgUnitDto : orgUnitDtos) {
-            orgUnitService.createFromDetails(orgUnitDto);
-        }
+    private interface RecordCallback<T> {
+        void apply(T record);
     }
 
-    private void dropExistingData() {
-        programService.deleteAll();
-        trackedEntityAttributeService.deleteAll();
-        trackedEntityService.deleteAll();
-        orgUnitService.deleteAll();
-        dataElementService.deleteAll();
-        stageService.deleteAll();
+    /*
+     * The resources retrieved from DHIS2 during a single sync.
+     */
+    private static class RemoteSchema {
+        private List<DataElementDto> dataElements;
+        private Set<String> dataElementIds;
+        private List<TrackedEntityAttributeDto> attributes;
+        private Set<String> attributeIds;
+        private List<TrackedEntityDto> trackedEntities;
+        private Set<String> trackedEntityIds;
+        private Map<String, String> orgUnits;
+        private Set<String> orgUnitIds;
+        private List<ProgramDto> programs;
+        private Set<String> programIds;
+        private Map<String, ProgramStageDto> stages = new HashMap<>();
     }
 }
@@ -0,0 +1,34 @@
+package org.motechproject.dhis2.service.impl;
+
+/**
+ * The state of the last successful synchronization with DHIS2, stored in the module's raw configuration. The last
+ * updated date comes from the DHIS2 server clock, so it can be used directly in the lastUpdated filters sent to the
+ * same server.
+ */
+class SyncState {
+    private String serverURI;
+    private String lastUpdated;
+
+    SyncState() { }
+
+    SyncState(String serverURI, String lastUpdated) {
+        this.serverURI = serverURI;
+        this.lastUpdated = lastUpdated;
+    }
+
+    public String getServerURI() {
+        return serverURI;
+    }
+
+    public void setServerURI(String serverURI) {
+        this.serverURI = serverURI;
+    }
+
+    public String getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(String lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+}
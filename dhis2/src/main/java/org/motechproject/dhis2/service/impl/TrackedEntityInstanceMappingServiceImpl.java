@@ -3,20 +3,38 @@ package org.motechproject.dhis2.service.impl;
 import org.motechproject.admin.service.StatusMessageService;
 import org.motechproject.dhis2.domain.TrackedEntityInstanceMapping;
 import org.motechproject.dhis2.repository.TrackedEntityInstanceMappingDataService;
+import org.motechproject.dhis2.repository.query.ExternalNamesQueryExecution;
 import org.motechproject.dhis2.service.TrackedEntityInstanceMappingService;
 import org.motechproject.dhis2.service.TrackedEntityInstanceMappingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
- * Implementation of {@link TrackedEntityInstanceMappingService}
+ * Implementation of {@link TrackedEntityInstanceMappingService}. Recently used mappings are kept in a bounded cache,
+ * so that resolving the same external IDs for enrollments and events doesn't query the database each time.
  */
 @Service("trackedEntityInstanceMapperService")
 public class TrackedEntityInstanceMappingServiceImpl implements TrackedEntityInstanceMappingService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrackedEntityInstanceMappingServiceImpl.class);
+
     private static final String MODULE_NAME = "dhis2";
+    private static final int CACHE_SIZE = 10000;
+    private static final int MAX_IDS_PER_QUERY = 500;
 
     @Autowired
     private StatusMessageService statusMessageService;
@@ -24,16 +42,70 @@ public class TrackedEntityInstanceMappingServiceImpl implements TrackedEntityIns
     @Autowired
     private TrackedEntityInstanceMappingDataService trackedEntityInstanceMappingDataService;
 
+    private final Map<String, String> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
     @Override
     public TrackedEntityInstanceMapping create(String externalId, String dhisId) {
         TrackedEntityInstanceMapping mapper = new TrackedEntityInstanceMapping();
         mapper.setExternalName(externalId);
         mapper.setDhis2Uuid(dhisId);
-        return trackedEntityInstanceMappingDataService.create(mapper);
+        TrackedEntityInstanceMapping created = trackedEntityInstanceMappingDataService.create(mapper);
+        cache.put(externalId, dhisId);
+        return created;
+    }
+
+    @Override
+    public Map<String, String> createAll(final Map<String, String> dhisIdsByExternalId) {
+        Map<String, String> failures = new HashMap<>();
+
+        if (dhisIdsByExternalId.isEmpty()) {
+            return failures;
+        }
+
+        try {
+            trackedEntityInstanceMappingDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (Map.Entry<String, String> entry : dhisIdsByExternalId.entrySet()) {
+                        trackedEntityInstanceMappingDataService.create(
+                                new TrackedEntityInstanceMapping(entry.getKey(), entry.getValue()));
+                    }
+                }
+            });
+            cache.putAll(dhisIdsByExternalId);
+            return failures;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to create {} tracked entity instance mappings at once, creating them one by one",
+                    dhisIdsByExternalId.size(), e);
+        }
+
+        for (Map.Entry<String, String> entry : dhisIdsByExternalId.entrySet()) {
+            try {
+                create(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                String msg = String.format("Failed to create mapping for externalId: %s, dhisId: %s",
+                        entry.getKey(), entry.getValue());
+                statusMessageService.warn(msg, MODULE_NAME);
+                failures.put(entry.getKey(), e.getMessage());
+            }
+        }
+
+        return failures;
     }
 
     @Override
     public String mapFromExternalId(String externalId) {
+        String dhisId = cache.get(externalId);
+        if (dhisId != null) {
+            return dhisId;
+        }
+
         TrackedEntityInstanceMapping mapper = trackedEntityInstanceMappingDataService.findByExternalName(externalId);
 
         if (mapper == null) {
@@ -42,17 +114,50 @@ public class TrackedEntityInstanceMappingServiceImpl implements TrackedEntityIns
             throw new TrackedEntityInstanceMappingException("Failed to map for externalId: " + externalId);
         }
 
+        cache.put(externalId, mapper.getDhis2Uuid());
         return mapper.getDhis2Uuid();
     }
 
+    @Override
+    public Map<String, String> mapFromExternalIds(Collection<String> externalIds) {
+        Map<String, String> mappings = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+
+        for (String externalId : new LinkedHashSet<>(externalIds)) {
+            String dhisId = cache.get(externalId);
+            if (dhisId != null) {
+                mappings.put(externalId, dhisId);
+            } else if (externalId != null) {
+                missing.add(externalId);
+            }
+        }
+
+        for (int from = 0; from < missing.size(); from += MAX_IDS_PER_QUERY) {
+            Set<String> batch = new LinkedHashSet<>(missing.subList(from, Math.min(from + MAX_IDS_PER_QUERY,
+                    missing.size())));
+            List<TrackedEntityInstanceMapping> found = trackedEntityInstanceMappingDataService.executeQuery(
+                    new ExternalNamesQueryExecution(batch));
+
+            for (TrackedEntityInstanceMapping mapper : found) {
+                mappings.put(mapper.getExternalName(), mapper.getDhis2Uuid());
+                cache.put(mapper.getExternalName(), mapper.getDhis2Uuid());
+            }
+        }
+
+        return mappings;
+    }
+
     @Override
     public void update(TrackedEntityInstanceMapping mapper) {
         trackedEntityInstanceMappingDataService.update(mapper);
+        // the external name might have changed, so the old entry can't be found by it
+        cache.clear();
     }
 
     @Override
     public void delete(TrackedEntityInstanceMapping mapper) {
         trackedEntityInstanceMappingDataService.delete(mapper);
+        cache.remove(mapper.getExternalName());
     }
 
     @Override
@@ -68,5 +173,6 @@ public class TrackedEntityInstanceMappingServiceImpl implements TrackedEntityIns
     @Override
     public void deleteAll() {
         trackedEntityInstanceMappingDataService.deleteAll();
+        cache.clear();
     }
 }
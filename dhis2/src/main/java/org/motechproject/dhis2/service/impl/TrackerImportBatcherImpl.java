@@ -0,0 +1,469 @@
+package org.motechproject.dhis2.service.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.dhis2.event.EventParams;
+import org.motechproject.dhis2.event.EventSubjects;
+import org.motechproject.dhis2.rest.domain.DhisEventDto;
+import org.motechproject.dhis2.rest.domain.DhisImportSummariesResponse;
+import org.motechproject.dhis2.rest.domain.DhisStatus;
+import org.motechproject.dhis2.rest.domain.EnrollmentDto;
+import org.motechproject.dhis2.rest.domain.ImportConflictDto;
+import org.motechproject.dhis2.rest.domain.ImportSummaryDto;
+import org.motechproject.dhis2.rest.domain.TrackedEntityInstanceDto;
+import org.motechproject.dhis2.rest.service.DhisWebException;
+import org.motechproject.dhis2.rest.service.DhisWebService;
+import org.motechproject.dhis2.service.TrackedEntityInstanceMappingService;
+import org.motechproject.dhis2.service.TrackerImportBatcher;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventRelay;
+import org.motechproject.server.config.SettingsFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.motechproject.dhis2.util.SettingsUtils.getIntProperty;
+import static org.motechproject.dhis2.util.SettingsUtils.getProperty;
+
+/**
+ * Implementation of {@link org.motechproject.dhis2.service.TrackerImportBatcher}. A single flusher thread sends the
+ * buffered objects, so that the event handlers never wait for DHIS2. Unlike data values, tracker objects are not
+ * retried after a connection or server error, since DHIS2 might have created some of them already and sending them
+ * again would create duplicates. Such objects are reported as rejected instead. Enrollments and events of a tracked
+ * entity instance which is still waiting in the buffer are kept until the flush that creates it. The buffer is held
+ * in memory only, the pending objects are sent when the batcher is stopped, but are lost if the server crashes.
+ */
+@Service("trackerImportBatcher")
+public class TrackerImportBatcherImpl implements TrackerImportBatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrackerImportBatcherImpl.class);
+
+    private static final String ENABLED_KEY = "tracker.batching.enabled";
+    private static final String MAX_BATCH_SIZE_KEY = "tracker.batching.maxBatchSize";
+    private static final String FLUSH_INTERVAL_KEY = "tracker.batching.flushIntervalSeconds";
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 200;
+    private static final int DEFAULT_FLUSH_INTERVAL = 10;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private DhisWebService dhisWebService;
+    private TrackedEntityInstanceMappingService trackedEntityInstanceMappingService;
+    private EventRelay eventRelay;
+    private SettingsFacade settingsFacade;
+
+    private final List<PendingItem<TrackedEntityInstanceDto>> instances = new ArrayList<>();
+    private final List<PendingItem<EnrollmentDto>> enrollments = new ArrayList<>();
+    private final List<PendingItem<DhisEventDto>> events = new ArrayList<>();
+    private final Object buffer = new Object();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private boolean enabled;
+    private int maxBatchSize;
+    private ScheduledExecutorService flusher;
+
+    private final TrackerSender<TrackedEntityInstanceDto> instanceSender = new TrackerSender<TrackedEntityInstanceDto>(
+            EventSubjects.TRACKED_ENTITY_INSTANCE_REJECTED) {
+        @Override
+        DhisImportSummariesResponse post(List<TrackedEntityInstanceDto> dtos) {
+            return dhisWebService.createTrackedEntityInstances(dtos);
+        }
+
+        @Override
+        void setTrackedEntityInstance(TrackedEntityInstanceDto dto, String trackedEntityInstance) {
+            dto.setTrackedEntityInstance(trackedEntityInstance);
+        }
+
+        @Override
+        void describe(TrackedEntityInstanceDto dto, Map<String, Object> params) {
+            params.put(EventParams.ENTITY_TYPE, dto.getTrackedEntity());
+            params.put(EventParams.LOCATION, dto.getOrgUnit());
+        }
+    };
+
+    private final TrackerSender<EnrollmentDto> enrollmentSender = new TrackerSender<EnrollmentDto>(
+            EventSubjects.ENROLLMENT_REJECTED) {
+        @Override
+        DhisImportSummariesResponse post(List<EnrollmentDto> dtos) {
+            return dhisWebService.createEnrollments(dtos);
+        }
+
+        @Override
+        void setTrackedEntityInstance(EnrollmentDto dto, String trackedEntityInstance) {
+            dto.setTrackedEntityInstance(trackedEntityInstance);
+        }
+
+        @Override
+        void describe(EnrollmentDto dto, Map<String, Object> params) {
+            params.put(EventParams.PROGRAM, dto.getProgram());
+            params.put(EventParams.LOCATION, dto.getOrgUnit());
+            params.put(EventParams.DATE, dto.getDateOfEnrollment());
+        }
+    };
+
+    private final TrackerSender<DhisEventDto> eventSender = new TrackerSender<DhisEventDto>(
+            EventSubjects.EVENT_REJECTED) {
+        @Override
+        DhisImportSummariesResponse post(List<DhisEventDto> dtos) {
+            return dhisWebService.createEvents(dtos);
+        }
+
+        @Override
+        void setTrackedEntityInstance(DhisEventDto dto, String trackedEntityInstance) {
+            dto.setTrackedEntityInstance(trackedEntityInstance);
+        }
+
+        @Override
+        void describe(DhisEventDto dto, Map<String, Object> params) {
+            params.put(EventParams.PROGRAM, dto.getProgram());
+            params.put(EventParams.STAGE, dto.getProgramStage());
+            params.put(EventParams.LOCATION, dto.getOrgUnit());
+            params.put(EventParams.DATE, dto.getEventDate());
+        }
+    };
+
+    @Autowired
+    public TrackerImportBatcherImpl(DhisWebService dhisWebService,
+                                    TrackedEntityInstanceMappingService trackedEntityInstanceMappingService,
+                                    EventRelay eventRelay, @Qualifier("dhisSettings") SettingsFacade settingsFacade) {
+        this.dhisWebService = dhisWebService;
+        this.trackedEntityInstanceMappingService = trackedEntityInstanceMappingService;
+        this.eventRelay = eventRelay;
+        this.settingsFacade = settingsFacade;
+    }
+
+    /**
+     * Starts the flusher thread. If the batcher is disabled in the settings, tracker objects are sent one by one.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        enabled = Boolean.parseBoolean(getProperty(settingsFacade, ENABLED_KEY, "false"));
+
+        if (!enabled) {
+            LOGGER.info("DHIS2 tracker batching disabled, tracker objects will be sent one by one");
+            return;
+        }
+
+        maxBatchSize = getIntProperty(settingsFacade, MAX_BATCH_SIZE_KEY, DEFAULT_MAX_BATCH_SIZE);
+        int flushInterval = getIntProperty(settingsFacade, FLUSH_INTERVAL_KEY, DEFAULT_FLUSH_INTERVAL);
+
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dhis2-tracker-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new FlushTask(), flushInterval, flushInterval, TimeUnit.SECONDS);
+
+        LOGGER.info("DHIS2 tracker batching started, sending up to {} objects per request", maxBatchSize);
+    }
+
+    /**
+     * Stops the flusher thread and sends the pending objects.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (!enabled) {
+            return;
+        }
+
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                flusher.shutdownNow();
+            }
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to send the pending DHIS2 tracker objects", e);
+        }
+        enabled = false;
+
+        int pending = getPendingCount();
+        if (pending > 0) {
+            LOGGER.warn("{} DHIS2 tracker objects added while the batcher was stopping were not sent", pending);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void addTrackedEntityInstance(String externalId, TrackedEntityInstanceDto trackedEntityInstance) {
+        boolean batchFull;
+        synchronized (buffer) {
+            instances.add(new PendingItem<>(externalId, trackedEntityInstance));
+            batchFull = instances.size() >= maxBatchSize;
+        }
+        scheduleFlushIf(batchFull);
+    }
+
+    @Override
+    public void addEnrollment(String externalId, EnrollmentDto enrollment) {
+        boolean batchFull;
+        synchronized (buffer) {
+            enrollments.add(new PendingItem<>(externalId, enrollment));
+            batchFull = enrollments.size() >= maxBatchSize;
+        }
+        scheduleFlushIf(batchFull);
+    }
+
+    @Override
+    public void addEvent(String externalId, DhisEventDto event) {
+        boolean batchFull;
+        synchronized (buffer) {
+            events.add(new PendingItem<>(externalId, event));
+            batchFull = events.size() >= maxBatchSize;
+        }
+        scheduleFlushIf(batchFull);
+    }
+
+    @Override
+    public void flush() {
+        synchronized (flushLock) {
+            flushScheduled.set(false);
+
+            List<PendingItem<TrackedEntityInstanceDto>> pendingInstances;
+            List<PendingItem<EnrollmentDto>> pendingEnrollments;
+            List<PendingItem<DhisEventDto>> pendingEvents;
+            synchronized (buffer) {
+                pendingInstances = new ArrayList<>(instances);
+                pendingEnrollments = new ArrayList<>(enrollments);
+                pendingEvents = new ArrayList<>(events);
+                instances.clear();
+                enrollments.clear();
+                events.clear();
+            }
+
+            Map<String, String> created = send(pendingInstances, instanceSender);
+            saveMappings(created);
+
+            send(resolve(pendingEnrollments, created, enrollments, enrollmentSender), enrollmentSender);
+            send(resolve(pendingEvents, created, events, eventSender), eventSender);
+        }
+    }
+
+    @Override
+    public int getPendingCount() {
+        synchronized (buffer) {
+            return instances.size() + enrollments.size() + events.size();
+        }
+    }
+
+    private void scheduleFlushIf(boolean batchFull) {
+        if (batchFull && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(new FlushTask());
+        }
+    }
+
+    /*Sends the items in batches, returns the references DHIS2 assigned to the imported items, keyed by external ID*/
+    private <T> Map<String, String> send(List<PendingItem<T>> items, TrackerSender<T> sender) {
+        Map<String, String> references = new HashMap<>();
+
+        for (int from = 0; from < items.size(); from += maxBatchSize) {
+            List<PendingItem<T>> batch = items.subList(from, Math.min(from + maxBatchSize, items.size()));
+
+            List<T> dtos = new ArrayList<>(batch.size());
+            for (PendingItem<T> item : batch) {
+                dtos.add(item.getDto());
+            }
+
+            List<ImportSummaryDto> summaries;
+            try {
+                summaries = getSummaries(sender.post(dtos), batch.size());
+            } catch (DhisWebException e) {
+                LOGGER.warn("Unable to send {} tracker objects to DHIS2: {}", batch.size(), e.getMessage());
+                for (PendingItem<T> item : batch) {
+                    reject(item, sender, e.getMessage());
+                }
+                continue;
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                PendingItem<T> item = batch.get(i);
+                ImportSummaryDto summary = summaries.get(i);
+
+                if (summary.getStatus() == DhisStatus.ERROR) {
+                    reject(item, sender, getErrorMessage(summary));
+                } else if (item.getExternalId() != null && summary.getReference() != null) {
+                    references.put(item.getExternalId(), summary.getReference());
+                }
+            }
+        }
+
+        return references;
+    }
+
+    /*Matches the import summaries with the objects in the request, which DHIS2 lists in the same order*/
+    private List<ImportSummaryDto> getSummaries(DhisImportSummariesResponse response, int count) {
+        List<ImportSummaryDto> summaries = response == null ? null : response.getImportSummaries();
+        int received = summaries == null ? 0 : summaries.size();
+
+        if (received != count) {
+            throw new DhisWebException(String.format("DHIS2 reported %d import summaries for %d objects",
+                    received, count));
+        }
+
+        return summaries;
+    }
+
+    /*Sets the tracked entity instance on the items, returns the items whose external ID could be mapped. Items of an
+    instance added to the buffer after this flush started are put back in the buffer for the next flush*/
+    private <T> List<PendingItem<T>> resolve(List<PendingItem<T>> items, Map<String, String> created,
+                                             List<PendingItem<T>> buffered, TrackerSender<T> sender) {
+        Set<String> unknown = new HashSet<>();
+        for (PendingItem<T> item : items) {
+            if (item.getExternalId() != null && !created.containsKey(item.getExternalId())) {
+                unknown.add(item.getExternalId());
+            }
+        }
+
+        Map<String, String> mappings = new HashMap<>(created);
+        if (!unknown.isEmpty()) {
+            mappings.putAll(trackedEntityInstanceMappingService.mapFromExternalIds(unknown));
+        }
+
+        List<PendingItem<T>> resolved = new ArrayList<>(items.size());
+        List<PendingItem<T>> deferred = new ArrayList<>();
+        Set<String> bufferedInstances = null;
+
+        for (PendingItem<T> item : items) {
+            if (item.getExternalId() == null) {
+                resolved.add(item);
+            } else if (mappings.containsKey(item.getExternalId())) {
+                sender.setTrackedEntityInstance(item.getDto(), mappings.get(item.getExternalId()));
+                resolved.add(item);
+            } else {
+                if (bufferedInstances == null) {
+                    bufferedInstances = getBufferedInstances();
+                }
+
+                if (bufferedInstances.contains(item.getExternalId())) {
+                    deferred.add(item);
+                } else {
+                    reject(item, sender, "Failed to map for externalId: " + item.getExternalId());
+                }
+            }
+        }
+
+        if (!deferred.isEmpty()) {
+            synchronized (buffer) {
+                buffered.addAll(0, deferred);
+            }
+        }
+
+        return resolved;
+    }
+
+    private Set<String> getBufferedInstances() {
+        Set<String> externalIds = new HashSet<>();
+        synchronized (buffer) {
+            for (PendingItem<TrackedEntityInstanceDto> instance : instances) {
+                externalIds.add(instance.getExternalId());
+            }
+        }
+        return externalIds;
+    }
+
+    private void saveMappings(Map<String, String> created) {
+        Map<String, String> failures = trackedEntityInstanceMappingService.createAll(created);
+
+        for (Map.Entry<String, String> failure : failures.entrySet()) {
+            LOGGER.error("Tracked entity instance {} was created in DHIS2 as {}, but its mapping could not be saved: {}",
+                    failure.getKey(), created.get(failure.getKey()), failure.getValue());
+        }
+    }
+
+    private String getErrorMessage(ImportSummaryDto summary) {
+        if (StringUtils.isNotBlank(summary.getDescription())) {
+            return summary.getDescription();
+        }
+
+        List<String> conflicts = new ArrayList<>();
+        if (summary.getConflicts() != null) {
+            for (ImportConflictDto conflict : summary.getConflicts()) {
+                conflicts.add(conflict.getObject() + ": " + conflict.getValue());
+            }
+        }
+
+        return conflicts.isEmpty() ? "Rejected by DHIS2" : StringUtils.join(conflicts, "; ");
+    }
+
+    private <T> void reject(PendingItem<T> item, TrackerSender<T> sender, String message) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(EventParams.EXTERNAL_ID, item.getExternalId());
+        sender.describe(item.getDto(), params);
+        params.put(EventParams.ERROR_MESSAGE, message);
+
+        eventRelay.sendEventMessage(new MotechEvent(sender.getRejectedSubject(), params));
+    }
+
+    private class FlushTask implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                LOGGER.error("Error while sending buffered tracker objects to DHIS2", e);
+            }
+        }
+    }
+
+    /*Sends one kind of tracker object and describes it in rejection events*/
+    private abstract static class TrackerSender<T> {
+        private final String rejectedSubject;
+
+        TrackerSender(String rejectedSubject) {
+            this.rejectedSubject = rejectedSubject;
+        }
+
+        String getRejectedSubject() {
+            return rejectedSubject;
+        }
+
+        abstract DhisImportSummariesResponse post(List<T> dtos);
+
+        abstract void setTrackedEntityInstance(T dto, String trackedEntityInstance);
+
+        abstract void describe(T dto, Map<String, Object> params);
+    }
+
+    private static class PendingItem<T> {
+        private final String externalId;
+        private final T dto;
+
+        PendingItem(String externalId, T dto) {
+            this.externalId = externalId;
+            this.dto = dto;
+        }
+
+        String getExternalId() {
+            return externalId;
+        }
+
+        T getDto() {
+            return dto;
+        }
+    }
+}
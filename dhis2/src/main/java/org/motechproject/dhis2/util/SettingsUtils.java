@@ -0,0 +1,57 @@
+package org.motechproject.dhis2.util;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.server.config.SettingsFacade;
+
+/**
+ * Utility class for reading the DHIS2 module settings.
+ */
+public final class SettingsUtils {
+
+    /**
+     * Utility class, should not be instantiated.
+     */
+    private SettingsUtils() {
+    }
+
+    /**
+     * Returns the trimmed value of the given property.
+     *
+     * @param settingsFacade  the settings of the module
+     * @param key  the name of the property
+     * @param defaultValue  the value returned when the property is not set
+     * @return the value of the property, or the default value if the property is blank
+     */
+    public static String getProperty(SettingsFacade settingsFacade, String key, String defaultValue) {
+        String value = settingsFacade.getProperty(key);
+        return StringUtils.isBlank(value) ? defaultValue : value.trim();
+    }
+
+    /**
+     * Returns the value of the given property as an integer.
+     *
+     * @param settingsFacade  the settings of the module
+     * @param key  the name of the property
+     * @param defaultValue  the value returned when the property is not set
+     * @return the value of the property, or the default value if the property is blank
+     * @throws NumberFormatException if the property is not a valid integer
+     */
+    public static int getIntProperty(SettingsFacade settingsFacade, String key, int defaultValue) {
+        String value = settingsFacade.getProperty(key);
+        return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Returns the value of the given property as a long.
+     *
+     * @param settingsFacade  the settings of the module
+     * @param key  the name of the property
+     * @param defaultValue  the value returned when the property is not set
+     * @return the value of the property, or the default value if the property is blank
+     * @throws NumberFormatException if the property is not a valid long
+     */
+    public static long getLongProperty(SettingsFacade settingsFacade, String key, long defaultValue) {
+        String value = settingsFacade.getProperty(key);
+        return StringUtils.isBlank(value) ? defaultValue : Long.parseLong(value.trim());
+    }
+}
@@ -3,6 +3,7 @@ package org.motechproject.dhis2.event;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Matchers;
 import org.mockito.Mock;
@@ -20,8 +21,10 @@ import org.motechproject.dhis2.rest.domain.ImportCountDto;
 import org.motechproject.dhis2.rest.domain.TrackedEntityInstanceDto;
 import org.motechproject.dhis2.rest.service.DhisWebService;
 import org.motechproject.dhis2.service.DataElementService;
+import org.motechproject.dhis2.service.DataValueAggregator;
 import org.motechproject.dhis2.service.SettingsService;
 import org.motechproject.dhis2.service.TrackedEntityInstanceMappingService;
+import org.motechproject.dhis2.service.TrackerImportBatcher;
 import org.motechproject.event.MotechEvent;
 
 import java.util.ArrayList;
@@ -29,6 +32,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -61,6 +67,10 @@ public class EventHandlerTest {
     private DataElementService dataElementService;
     @Mock
     private DhisWebService dhisWebservice;
+    @Mock
+    private DataValueAggregator dataValueAggregator;
+    @Mock
+    private TrackerImportBatcher trackerImportBatcher;
     private DhisStatusResponse response;
     @InjectMocks
     private EventHandler handler = new EventHandler();
@@ -254,6 +264,58 @@ public class EventHandlerTest {
         verify(dhisWebservice).sendDataValueSet(Matchers.refEq(dataValueSetDto));
     }
 
+    @Test
+    public void shouldBufferDataValueWhenAggregatorIsEnabled() {
+        Map<String, Object> params = new HashMap<>();
+        params.put(EventParams.DATA_ELEMENT, DATA_ELEMENT_ID);
+        params.put(EventParams.LOCATION, ORGUNIT_ID);
+        params.put(EventParams.PERIOD, PERIOD);
+        params.put(EventParams.VALUE, DATA_ELEMENT_VALUE);
+
+        DataElement dataElement = new DataElement(DATA_ELEMENT_VALUE, DATA_ELEMENT_ID);
+
+        when(dataElementService.findByName(DATA_ELEMENT_ID)).thenReturn(dataElement);
+        when(dataValueAggregator.isEnabled()).thenReturn(true);
+
+        handler.handleDataValue(new MotechEvent(EventSubjects.SEND_DATA_VALUE, params));
+
+        ArgumentCaptor<DataValueDto> captor = ArgumentCaptor.forClass(DataValueDto.class);
+        verify(dataValueAggregator).add(captor.capture(), (String) Matchers.isNull(), Matchers.eq(DATA_ELEMENT_VALUE));
+        verify(dhisWebservice, never()).sendDataValueSet(any(DataValueSetDto.class));
+
+        assertEquals(ORGUNIT_ID, captor.getValue().getOrgUnit());
+        assertEquals(PERIOD, captor.getValue().getPeriod());
+        assertEquals(DATA_ELEMENT_VALUE, captor.getValue().getValue());
+    }
+
+    @Test
+    public void shouldBufferCreateAndEnrollWhenBatcherIsEnabled() {
+        Map<String, Object> params = new HashMap<>();
+        params.put(EventParams.EXTERNAL_ID, ENTITY_INSTANCE_ID);
+        params.put(EventParams.ENTITY_TYPE, ENTITY_TYPE_PERSON);
+        params.put(EventParams.LOCATION, ORGUNIT_ID);
+        params.put(EventParams.PROGRAM, PROGRAM_ID);
+        params.put(EventParams.DATE, DATE);
+        params.put(ATTRIBUTE_ID, ATTRIBUTE_VALUE);
+
+        when(trackerImportBatcher.isEnabled()).thenReturn(true);
+
+        handler.handleCreateAndEnroll(new MotechEvent(EventSubjects.CREATE_AND_ENROLL, params));
+
+        ArgumentCaptor<TrackedEntityInstanceDto> instanceCaptor = ArgumentCaptor.forClass(TrackedEntityInstanceDto.class);
+        verify(trackerImportBatcher).addTrackedEntityInstance(Matchers.eq(ENTITY_INSTANCE_ID), instanceCaptor.capture());
+        ArgumentCaptor<EnrollmentDto> enrollmentCaptor = ArgumentCaptor.forClass(EnrollmentDto.class);
+        verify(trackerImportBatcher).addEnrollment(Matchers.eq(ENTITY_INSTANCE_ID), enrollmentCaptor.capture());
+
+        verify(dhisWebservice, never()).createTrackedEntityInstance(any(TrackedEntityInstanceDto.class));
+        verify(dhisWebservice, never()).createEnrollment(any(EnrollmentDto.class));
+        verify(trackedEntityInstanceMappingService, never()).mapFromExternalId(ENTITY_INSTANCE_ID);
+
+        assertEquals(ORGUNIT_ID, instanceCaptor.getValue().getOrgUnit());
+        assertEquals(PROGRAM_ID, enrollmentCaptor.getValue().getProgram());
+        assertEquals(ORGUNIT_ID, enrollmentCaptor.getValue().getOrgUnit());
+    }
+
     @Test(expected = DataElementNotFoundException.class)
     public void shouldThrowExceptionForNonExistingDataValue() {
 
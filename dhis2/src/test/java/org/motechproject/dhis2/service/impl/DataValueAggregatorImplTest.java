@@ -0,0 +1,252 @@
+package org.motechproject.dhis2.service.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.dhis2.event.EventParams;
+import org.motechproject.dhis2.event.EventSubjects;
+import org.motechproject.dhis2.rest.domain.DataValueDto;
+import org.motechproject.dhis2.rest.domain.DataValueSetDto;
+import org.motechproject.dhis2.rest.domain.DhisDataValueStatusResponse;
+import org.motechproject.dhis2.rest.domain.DhisStatus;
+import org.motechproject.dhis2.rest.domain.ImportConflictDto;
+import org.motechproject.dhis2.rest.service.DhisWebException;
+import org.motechproject.dhis2.rest.service.DhisWebService;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventRelay;
+import org.motechproject.server.config.SettingsFacade;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class DataValueAggregatorImplTest {
+
+    @Mock
+    private DhisWebService dhisWebService;
+
+    @Mock
+    private EventRelay eventRelay;
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private File spillDirectory;
+
+    private DataValueAggregatorImpl aggregator;
+
+    @Before
+    public void setUp() throws IOException {
+        initMocks(this);
+
+        spillDirectory = Files.createTempDirectory("dhis2-spill").toFile();
+
+        when(settingsFacade.getProperty("dataValues.aggregation.enabled")).thenReturn("true");
+        when(settingsFacade.getProperty("dataValues.aggregation.maxBatchSize")).thenReturn("100");
+        when(settingsFacade.getProperty("dataValues.aggregation.flushIntervalSeconds")).thenReturn("3600");
+        when(settingsFacade.getProperty("dataValues.aggregation.maxAttempts")).thenReturn("2");
+        when(settingsFacade.getProperty("dataValues.aggregation.spillDirectory")).thenReturn(spillDirectory.getAbsolutePath());
+        when(settingsFacade.getProperty("dataValues.aggregation.syncWrites")).thenReturn("false");
+
+        when(dhisWebService.sendDataValueSet(any(DataValueSetDto.class))).thenReturn(response(DhisStatus.SUCCESS));
+
+        aggregator = new DataValueAggregatorImpl(dhisWebService, eventRelay, settingsFacade);
+        aggregator.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        aggregator.stop();
+        FileUtils.deleteDirectory(spillDirectory);
+    }
+
+    @Test
+    public void shouldGroupValuesByOrgUnitAndPeriod() {
+        aggregator.add(dataValue("element1", "orgUnit1", "201601"), null, "Element 1");
+        aggregator.add(dataValue("element2", "orgUnit1", "201601"), null, "Element 2");
+        aggregator.add(dataValue("element1", "orgUnit2", "201601"), null, "Element 1");
+
+        assertEquals(3, aggregator.getPendingCount());
+
+        aggregator.flush();
+
+        ArgumentCaptor<DataValueSetDto> captor = ArgumentCaptor.forClass(DataValueSetDto.class);
+        verify(dhisWebService, times(2)).sendDataValueSet(captor.capture());
+
+        List<DataValueSetDto> sets = captor.getAllValues();
+        assertEquals("orgUnit1", sets.get(0).getOrgUnit());
+        assertEquals(2, sets.get(0).getDataValues().size());
+        assertEquals("orgUnit2", sets.get(1).getOrgUnit());
+        assertEquals(1, sets.get(1).getDataValues().size());
+        assertEquals(0, aggregator.getPendingCount());
+    }
+
+    @Test
+    public void shouldReportRejectedValues() {
+        rejectDataElement("element2");
+
+        aggregator.add(dataValue("element1", "orgUnit1", "201601"), null, "Element 1");
+        aggregator.add(dataValue("element2", "orgUnit1", "201601"), null, "Element 2");
+        aggregator.flush();
+
+        // the batch and then each of its halves, the conflict names the organisation unit shared by both values
+        verify(dhisWebService, times(3)).sendDataValueSet(any(DataValueSetDto.class));
+
+        ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay).sendEventMessage(captor.capture());
+
+        MotechEvent event = captor.getValue();
+        assertEquals(EventSubjects.DATA_VALUE_REJECTED, event.getSubject());
+        assertEquals("Element 2", event.getParameters().get(EventParams.DATA_ELEMENT));
+        assertEquals("Data element not found", event.getParameters().get(EventParams.ERROR_MESSAGE));
+    }
+
+    @Test
+    public void shouldOnlyRejectValuesInConflictWhenConflictConcernsSharedElement() {
+        // a conflict naming the organisation unit would match every value of the batch
+        rejectDataElement("element3");
+
+        aggregator.add(dataValue("element1", "orgUnit1", "201601"), null, "Element 1");
+        aggregator.add(dataValue("element2", "orgUnit1", "201601"), null, "Element 2");
+        aggregator.add(dataValue("element3", "orgUnit1", "201601"), null, "Element 3");
+        aggregator.flush();
+
+        ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay, times(1)).sendEventMessage(captor.capture());
+        assertEquals("Element 3", captor.getValue().getParameters().get(EventParams.DATA_ELEMENT));
+        assertEquals(0, aggregator.getPendingCount());
+    }
+
+    @Test
+    public void shouldOnlySendValuesInConflictAgain() {
+        rejectDataElement("element3", false);
+
+        aggregator.add(dataValue("element1", "orgUnit1", "201601"), null, "Element 1");
+        aggregator.add(dataValue("element2", "orgUnit1", "201601"), null, "Element 2");
+        aggregator.add(dataValue("element3", "orgUnit1", "201601"), null, "Element 3");
+        aggregator.flush();
+
+        ArgumentCaptor<DataValueSetDto> captor = ArgumentCaptor.forClass(DataValueSetDto.class);
+        verify(dhisWebService, times(2)).sendDataValueSet(captor.capture());
+        assertEquals(3, captor.getAllValues().get(0).getDataValues().size());
+        assertEquals(1, captor.getAllValues().get(1).getDataValues().size());
+        assertEquals("element3", captor.getAllValues().get(1).getDataValues().get(0).getDataElement());
+
+        verify(eventRelay, times(1)).sendEventMessage(any(MotechEvent.class));
+        assertEquals(0, aggregator.getPendingCount());
+    }
+
+    @Test
+    public void shouldKeepValuesWhenSendingFailsUnexpectedly() {
+        when(dhisWebService.sendDataValueSet(any(DataValueSetDto.class))).thenThrow(new IllegalStateException("error"));
+
+        aggregator.add(dataValue("element1", "orgUnit1", "201601"), null, "Element 1");
+        aggregator.add(dataValue("element1", "orgUnit2", "201601"), null, "Element 1");
+        aggregator.flush();
+
+        verify(dhisWebService, times(2)).sendDataValueSet(any(DataValueSetDto.class));
+        assertEquals(2, aggregator.getPendingCount());
+    }
+
+    @Test
+    public void shouldSendValueStraightAwayWhenStopped() {
+        aggregator.stop();
+
+        aggregator.add(dataValue("element1", "orgUnit1", "201601"), null, "Element 1");
+
+        ArgumentCaptor<DataValueSetDto> captor = ArgumentCaptor.forClass(DataValueSetDto.class);
+        verify(dhisWebService).sendDataValueSet(captor.capture());
+        assertEquals("element1", captor.getValue().getDataValues().get(0).getDataElement());
+        assertEquals(0, aggregator.getPendingCount());
+    }
+
+    @Test
+    public void shouldRetryValuesUntilTheyRunOutOfAttempts() {
+        when(dhisWebService.sendDataValueSet(any(DataValueSetDto.class))).thenThrow(new DhisWebException("error"));
+
+        aggregator.add(dataValue("element1", "orgUnit1", "201601"), null, "Element 1");
+
+        aggregator.flush();
+        assertEquals(1, aggregator.getPendingCount());
+        verify(eventRelay, never()).sendEventMessage(any(MotechEvent.class));
+
+        aggregator.flush();
+        assertEquals(0, aggregator.getPendingCount());
+        verify(eventRelay).sendEventMessage(any(MotechEvent.class));
+    }
+
+    @Test
+    public void shouldReplayValuesFromSpillLog() {
+        when(dhisWebService.sendDataValueSet(any(DataValueSetDto.class))).thenThrow(new DhisWebException("error"));
+
+        aggregator.add(dataValue("element1", "orgUnit1", "201601"), "dataSet", "Element 1");
+        aggregator.add(dataValue("element2", "orgUnit1", "201601"), "dataSet", "Element 2");
+        aggregator.stop();
+
+        DataValueAggregatorImpl restarted = new DataValueAggregatorImpl(dhisWebService, eventRelay, settingsFacade);
+        restarted.start();
+
+        try {
+            assertTrue(restarted.isEnabled());
+            assertEquals(2, restarted.getPendingCount());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    private void rejectDataElement(String dataElement) {
+        rejectDataElement(dataElement, true);
+    }
+
+    private void rejectDataElement(final String dataElement, final boolean conflictNamesOrgUnit) {
+        when(dhisWebService.sendDataValueSet(any(DataValueSetDto.class))).thenAnswer(
+                new Answer<DhisDataValueStatusResponse>() {
+                    @Override
+                    public DhisDataValueStatusResponse answer(InvocationOnMock invocation) {
+                        DataValueSetDto dataValueSet = (DataValueSetDto) invocation.getArguments()[0];
+                        for (DataValueDto dataValue : dataValueSet.getDataValues()) {
+                            if (dataElement.equals(dataValue.getDataElement())) {
+                                DhisDataValueStatusResponse response = response(DhisStatus.WARNING);
+                                ImportConflictDto conflict = new ImportConflictDto();
+                                conflict.setObject(conflictNamesOrgUnit ? dataValue.getOrgUnit() : dataElement);
+                                conflict.setValue("Data element not found");
+                                response.setConflicts(Collections.singletonList(conflict));
+                                return response;
+                            }
+                        }
+                        return response(DhisStatus.SUCCESS);
+                    }
+                });
+    }
+
+    private DataValueDto dataValue(String dataElement, String orgUnit, String period) {
+        DataValueDto dataValue = new DataValueDto();
+        dataValue.setDataElement(dataElement);
+        dataValue.setOrgUnit(orgUnit);
+        dataValue.setPeriod(period);
+        dataValue.setValue("1");
+        return dataValue;
+    }
+
+    private DhisDataValueStatusResponse response(DhisStatus status) {
+        DhisDataValueStatusResponse response = new DhisDataValueStatusResponse();
+        response.setStatus(status);
+        return response;
+    }
+}
@@ -0,0 +1,220 @@
+package org.motechproject.dhis2.service.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.motechproject.dhis2.domain.OrgUnit;
+import org.motechproject.dhis2.rest.domain.DhisServerInfo;
+import org.motechproject.dhis2.rest.domain.OrganisationUnitDto;
+import org.motechproject.dhis2.rest.service.DhisWebException;
+import org.motechproject.dhis2.rest.service.DhisWebService;
+import org.motechproject.dhis2.rest.service.ResourceCallback;
+import org.motechproject.dhis2.service.DataElementService;
+import org.motechproject.dhis2.service.OrgUnitService;
+import org.motechproject.dhis2.service.ProgramService;
+import org.motechproject.dhis2.service.Settings;
+import org.motechproject.dhis2.service.SettingsService;
+import org.motechproject.dhis2.service.StageService;
+import org.motechproject.dhis2.service.TrackedEntityAttributeService;
+import org.motechproject.dhis2.service.TrackedEntityService;
+import org.motechproject.server.config.SettingsFacade;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SyncServiceImplTest {
+
+    private static final String SERVER_URI = "http://localhost:8080";
+    private static final String LAST_UPDATED = "2016-01-01T10:00:00.000";
+    private static final String SERVER_DATE = "2016-02-01T10:00:00.000";
+
+    @Mock
+    private DhisWebService dhisWebService;
+
+    @Mock
+    private DataElementService dataElementService;
+
+    @Mock
+    private TrackedEntityAttributeService trackedEntityAttributeService;
+
+    @Mock
+    private TrackedEntityService trackedEntityService;
+
+    @Mock
+    private ProgramService programService;
+
+    @Mock
+    private StageService stageService;
+
+    @Mock
+    private OrgUnitService orgUnitService;
+
+    @Mock
+    private SettingsService settingsService;
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private SyncServiceImpl syncService = new SyncServiceImpl();
+
+    @Before
+    public void setUp() {
+        when(settingsService.getSettings()).thenReturn(new Settings(SERVER_URI, "admin", "district"));
+
+        DhisServerInfo serverInfo = new DhisServerInfo();
+        serverInfo.setServerDate(SERVER_DATE);
+        when(dhisWebService.getDhisServerInfo()).thenReturn(serverInfo);
+
+        when(orgUnitService.createFromDetails(any(OrganisationUnitDto.class))).thenAnswer(new Answer<OrgUnit>() {
+            @Override
+            public OrgUnit answer(InvocationOnMock invocation) {
+                OrganisationUnitDto dto = (OrganisationUnitDto) invocation.getArguments()[0];
+                return new OrgUnit(dto.getName(), dto.getId());
+            }
+        });
+    }
+
+    @Test
+    public void shouldRequestOnlyResourcesUpdatedSinceLastSync() throws Exception {
+        syncState(SERVER_URI);
+
+        assertTrue(syncService.sync());
+
+        verify(dhisWebService).getOrganisationUnits(eq(LAST_UPDATED), any(ResourceCallback.class));
+        verify(dhisWebService).getDataElements(LAST_UPDATED);
+        verify(dhisWebService).getPrograms(LAST_UPDATED);
+
+        ArgumentCaptor<ByteArrayResource> captor = ArgumentCaptor.forClass(ByteArrayResource.class);
+        verify(settingsFacade).saveRawConfig(eq("dhis2-sync-state.json"), captor.capture());
+        String state = new String(captor.getValue().getByteArray(), StandardCharsets.UTF_8);
+        assertTrue(state.contains(SERVER_DATE));
+    }
+
+    @Test
+    public void shouldRequestAllResourcesWhenServerChanged() throws Exception {
+        syncState("http://other-server:8080");
+
+        assertTrue(syncService.sync());
+
+        verify(dhisWebService).getOrganisationUnits((String) isNull(), any(ResourceCallback.class));
+    }
+
+    @Test
+    public void shouldOnlyWriteChangedOrgUnits() throws Exception {
+        syncState(SERVER_URI);
+
+        OrgUnit renamed = new OrgUnit("Old name", "ou1");
+        OrgUnit unchanged = new OrgUnit("Unchanged", "ou2");
+        OrgUnit removed = new OrgUnit("Removed", "ou3");
+        when(orgUnitService.findAll()).thenReturn(Arrays.asList(renamed, unchanged, removed));
+
+        orgUnitPages(Arrays.asList(orgUnitDto("ou1", "New name")), Arrays.asList(orgUnitDto("ou4", "Added")));
+        when(dhisWebService.getOrganisationUnitIds()).thenReturn(new HashSet<>(Arrays.asList("ou1", "ou2", "ou4")));
+
+        assertTrue(syncService.sync());
+
+        assertEquals("New name", renamed.getName());
+        verify(orgUnitService).update(renamed);
+        verify(orgUnitService, never()).update(unchanged);
+        ArgumentCaptor<OrganisationUnitDto> captor = ArgumentCaptor.forClass(OrganisationUnitDto.class);
+        verify(orgUnitService).createFromDetails(captor.capture());
+        assertEquals("ou4", captor.getValue().getId());
+        assertEquals("Added", captor.getValue().getName());
+        verify(orgUnitService).delete(removed);
+        verify(orgUnitService, never()).deleteAll();
+    }
+
+    @Test
+    public void shouldApplyChangesInChunks() throws Exception {
+        syncState(SERVER_URI);
+
+        List<OrganisationUnitDto> page = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 450; i++) {
+            page.add(orgUnitDto("ou" + i, "Org unit " + i));
+            ids.add("ou" + i);
+        }
+        orgUnitPages(page);
+        when(dhisWebService.getOrganisationUnitIds()).thenReturn(ids);
+
+        assertTrue(syncService.sync());
+
+        verify(orgUnitService, times(450)).createFromDetails(any(OrganisationUnitDto.class));
+        verify(transactionManager, times(3)).commit(any(TransactionStatus.class));
+    }
+
+    @Test
+    public void shouldLeaveRecordsUnchangedWhenRequestFails() throws Exception {
+        syncState(SERVER_URI);
+
+        when(orgUnitService.findAll()).thenReturn(Arrays.asList(new OrgUnit("Name", "ou1")));
+        doThrow(new DhisWebException("error")).when(dhisWebService)
+                .getOrganisationUnits(eq(LAST_UPDATED), any(ResourceCallback.class));
+
+        assertFalse(syncService.sync());
+
+        verify(orgUnitService, never()).delete(any(OrgUnit.class));
+        verify(orgUnitService, never()).deleteAll();
+        verify(settingsFacade, never()).saveRawConfig(anyString(), any(ByteArrayResource.class));
+    }
+
+    private void syncState(String serverURI) {
+        String json = "{\"serverURI\": \"" + serverURI + "\", \"lastUpdated\": \"" + LAST_UPDATED + "\"}";
+        when(settingsFacade.getRawConfig("dhis2-sync-state.json"))
+                .thenReturn(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void orgUnitPages(final List<OrganisationUnitDto>... pages) {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ResourceCallback<OrganisationUnitDto> callback =
+                        (ResourceCallback<OrganisationUnitDto>) invocation.getArguments()[1];
+                for (List<OrganisationUnitDto> page : pages) {
+                    callback.handle(page);
+                }
+                return null;
+            }
+        }).when(dhisWebService).getOrganisationUnits(eq(LAST_UPDATED), any(ResourceCallback.class));
+    }
+
+    private OrganisationUnitDto orgUnitDto(String id, String name) {
+        OrganisationUnitDto dto = new OrganisationUnitDto();
+        dto.setId(id);
+        dto.setName(name);
+        return dto;
+    }
+}
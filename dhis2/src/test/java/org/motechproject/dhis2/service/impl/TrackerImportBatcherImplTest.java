@@ -0,0 +1,229 @@
+package org.motechproject.dhis2.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.dhis2.event.EventParams;
+import org.motechproject.dhis2.event.EventSubjects;
+import org.motechproject.dhis2.rest.domain.DhisEventDto;
+import org.motechproject.dhis2.rest.domain.DhisImportSummariesResponse;
+import org.motechproject.dhis2.rest.domain.DhisStatus;
+import org.motechproject.dhis2.rest.domain.EnrollmentDto;
+import org.motechproject.dhis2.rest.domain.ImportSummaryDto;
+import org.motechproject.dhis2.rest.domain.TrackedEntityInstanceDto;
+import org.motechproject.dhis2.rest.service.DhisWebException;
+import org.motechproject.dhis2.rest.service.DhisWebService;
+import org.motechproject.dhis2.service.TrackedEntityInstanceMappingService;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventRelay;
+import org.motechproject.server.config.SettingsFacade;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class TrackerImportBatcherImplTest {
+
+    @Mock
+    private DhisWebService dhisWebService;
+
+    @Mock
+    private TrackedEntityInstanceMappingService trackedEntityInstanceMappingService;
+
+    @Mock
+    private EventRelay eventRelay;
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private TrackerImportBatcherImpl batcher;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        when(settingsFacade.getProperty("tracker.batching.enabled")).thenReturn("true");
+        when(settingsFacade.getProperty("tracker.batching.maxBatchSize")).thenReturn("2");
+        when(settingsFacade.getProperty("tracker.batching.flushIntervalSeconds")).thenReturn("3600");
+
+        when(trackedEntityInstanceMappingService.createAll(any(Map.class))).thenReturn(new HashMap<String, String>());
+        when(trackedEntityInstanceMappingService.mapFromExternalIds(any(Collection.class)))
+                .thenReturn(new HashMap<String, String>());
+
+        batcher = new TrackerImportBatcherImpl(dhisWebService, trackedEntityInstanceMappingService, eventRelay,
+                settingsFacade);
+        batcher.start();
+    }
+
+    @After
+    public void tearDown() {
+        batcher.stop();
+    }
+
+    @Test
+    public void shouldEnrollInstancesCreatedInTheSameFlush() {
+        when(dhisWebService.createTrackedEntityInstances(any(List.class)))
+                .thenReturn(response(summary(DhisStatus.SUCCESS, "dhisId1")));
+        when(dhisWebService.createEnrollments(any(List.class)))
+                .thenReturn(response(summary(DhisStatus.SUCCESS, "enrollment1")));
+        when(dhisWebService.createEvents(any(List.class)))
+                .thenReturn(response(summary(DhisStatus.SUCCESS, "event1")));
+        when(trackedEntityInstanceMappingService.mapFromExternalIds(any(Collection.class)))
+                .thenReturn(Collections.singletonMap("external2", "dhisId2"));
+
+        batcher.addTrackedEntityInstance("external1", new TrackedEntityInstanceDto());
+        batcher.addEnrollment("external1", new EnrollmentDto());
+        batcher.addEvent("external2", new DhisEventDto());
+        assertEquals(3, batcher.getPendingCount());
+
+        batcher.flush();
+
+        verify(trackedEntityInstanceMappingService).createAll(Collections.singletonMap("external1", "dhisId1"));
+
+        ArgumentCaptor<List> enrollments = ArgumentCaptor.forClass(List.class);
+        verify(dhisWebService).createEnrollments(enrollments.capture());
+        assertEquals("dhisId1", ((EnrollmentDto) enrollments.getValue().get(0)).getTrackedEntityInstance());
+
+        ArgumentCaptor<Collection> lookup = ArgumentCaptor.forClass(Collection.class);
+        verify(trackedEntityInstanceMappingService).mapFromExternalIds(lookup.capture());
+        assertEquals(1, lookup.getValue().size());
+        assertEquals("external2", lookup.getValue().iterator().next());
+
+        ArgumentCaptor<List> events = ArgumentCaptor.forClass(List.class);
+        verify(dhisWebService).createEvents(events.capture());
+        assertEquals("dhisId2", ((DhisEventDto) events.getValue().get(0)).getTrackedEntityInstance());
+
+        verify(eventRelay, never()).sendEventMessage(any(MotechEvent.class));
+        assertEquals(0, batcher.getPendingCount());
+    }
+
+    @Test
+    public void shouldReportRejectedInstancesAndTheirEnrollments() {
+        ImportSummaryDto rejected = summary(DhisStatus.ERROR, null);
+        rejected.setDescription("Attribute is mandatory");
+
+        when(dhisWebService.createTrackedEntityInstances(any(List.class)))
+                .thenReturn(response(summary(DhisStatus.SUCCESS, "dhisId1"), rejected));
+        when(dhisWebService.createEnrollments(any(List.class)))
+                .thenReturn(response(summary(DhisStatus.SUCCESS, "enrollment1")));
+
+        batcher.addTrackedEntityInstance("external1", new TrackedEntityInstanceDto());
+        batcher.addTrackedEntityInstance("external2", new TrackedEntityInstanceDto());
+        batcher.addEnrollment("external1", new EnrollmentDto());
+        batcher.addEnrollment("external2", new EnrollmentDto());
+        batcher.flush();
+
+        ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay, times(2)).sendEventMessage(captor.capture());
+
+        MotechEvent instanceRejected = captor.getAllValues().get(0);
+        assertEquals(EventSubjects.TRACKED_ENTITY_INSTANCE_REJECTED, instanceRejected.getSubject());
+        assertEquals("external2", instanceRejected.getParameters().get(EventParams.EXTERNAL_ID));
+        assertEquals("Attribute is mandatory", instanceRejected.getParameters().get(EventParams.ERROR_MESSAGE));
+
+        MotechEvent enrollmentRejected = captor.getAllValues().get(1);
+        assertEquals(EventSubjects.ENROLLMENT_REJECTED, enrollmentRejected.getSubject());
+        assertEquals("external2", enrollmentRejected.getParameters().get(EventParams.EXTERNAL_ID));
+
+        ArgumentCaptor<List> enrollments = ArgumentCaptor.forClass(List.class);
+        verify(dhisWebService).createEnrollments(enrollments.capture());
+        assertEquals(1, enrollments.getValue().size());
+    }
+
+    @Test
+    public void shouldKeepEnrollmentsOfBufferedInstancesUntilNextFlush() {
+        when(dhisWebService.createTrackedEntityInstances(any(List.class)))
+                .thenReturn(response(summary(DhisStatus.SUCCESS, "dhisId1")));
+        when(dhisWebService.createEnrollments(any(List.class)))
+                .thenReturn(response(summary(DhisStatus.SUCCESS, "enrollment1")));
+        when(trackedEntityInstanceMappingService.mapFromExternalIds(any(Collection.class))).thenAnswer(
+                new Answer<Map<String, String>>() {
+                    @Override
+                    public Map<String, String> answer(InvocationOnMock invocation) {
+                        // the instance is added by another handler while the enrollment is being flushed
+                        batcher.addTrackedEntityInstance("external1", new TrackedEntityInstanceDto());
+                        return new HashMap<>();
+                    }
+                }).thenReturn(new HashMap<String, String>());
+
+        batcher.addEnrollment("external1", new EnrollmentDto());
+        batcher.flush();
+
+        verify(dhisWebService, never()).createEnrollments(any(List.class));
+        verify(eventRelay, never()).sendEventMessage(any(MotechEvent.class));
+        assertEquals(2, batcher.getPendingCount());
+
+        batcher.flush();
+
+        ArgumentCaptor<List> enrollments = ArgumentCaptor.forClass(List.class);
+        verify(dhisWebService).createEnrollments(enrollments.capture());
+        assertEquals("dhisId1", ((EnrollmentDto) enrollments.getValue().get(0)).getTrackedEntityInstance());
+        verify(eventRelay, never()).sendEventMessage(any(MotechEvent.class));
+        assertEquals(0, batcher.getPendingCount());
+    }
+
+    @Test
+    public void shouldSplitObjectsIntoBatches() {
+        when(dhisWebService.createEvents(any(List.class)))
+                .thenReturn(response(summary(DhisStatus.SUCCESS, "event1"), summary(DhisStatus.SUCCESS, "event2")))
+                .thenReturn(response(summary(DhisStatus.SUCCESS, "event3")));
+
+        batcher.addEvent(null, new DhisEventDto());
+        batcher.addEvent(null, new DhisEventDto());
+        batcher.addEvent(null, new DhisEventDto());
+        batcher.flush();
+
+        verify(dhisWebService, times(2)).createEvents(any(List.class));
+        verify(trackedEntityInstanceMappingService, never()).mapFromExternalIds(any(Collection.class));
+        verify(eventRelay, never()).sendEventMessage(any(MotechEvent.class));
+    }
+
+    @Test
+    public void shouldRejectBatchWhenRequestFails() {
+        when(dhisWebService.createEvents(any(List.class))).thenThrow(new DhisWebException("error"));
+
+        DhisEventDto event = new DhisEventDto();
+        event.setProgramStage("stage");
+        batcher.addEvent(null, event);
+        batcher.flush();
+
+        ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay).sendEventMessage(captor.capture());
+        assertEquals(EventSubjects.EVENT_REJECTED, captor.getValue().getSubject());
+        assertEquals("stage", captor.getValue().getParameters().get(EventParams.STAGE));
+        assertEquals("error", captor.getValue().getParameters().get(EventParams.ERROR_MESSAGE));
+        assertEquals(0, batcher.getPendingCount());
+    }
+
+    private DhisImportSummariesResponse response(ImportSummaryDto... summaries) {
+        List<ImportSummaryDto> list = new ArrayList<>();
+        Collections.addAll(list, summaries);
+
+        DhisImportSummariesResponse response = new DhisImportSummariesResponse();
+        response.setStatus(DhisStatus.SUCCESS);
+        response.setImportSummaries(list);
+        return response;
+    }
+
+    private ImportSummaryDto summary(DhisStatus status, String reference) {
+        ImportSummaryDto summary = new ImportSummaryDto();
+        summary.setStatus(status);
+        summary.setReference(reference);
+        return summary;
+    }
+}
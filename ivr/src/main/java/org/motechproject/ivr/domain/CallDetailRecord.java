@@ -2,6 +2,7 @@ package org.motechproject.ivr.domain;
 
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang.StringUtils;
+import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.motechproject.commons.date.util.DateUtil;
@@ -17,6 +18,8 @@ import org.motechproject.mds.util.SecurityMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jdo.annotations.Index;
+import javax.jdo.annotations.Indices;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.HashMap;
@@ -27,10 +30,15 @@ import java.util.Objects;
 /**
  * The call detail record is the object persisted for every call from and to MOTECH by the IVR module.
  * It represents the details of the call, and is stored in the database for auditing purposes.
+ * The indexes back the reporting queries, which filter the records of a configuration by call status or time range.
  */
 @Entity(nonEditable = true)
 @CrudEvents(CrudEventType.NONE)
 @Access(value = SecurityMode.PERMISSIONS, members = {Constants.VIEW_IVR_LOGS_PERMISSION})
+@Indices({
+        @Index(name = "CONFIG_NAME_CALL_STATUS", members = {"configName", "callStatus"}),
+        @Index(name = "CONFIG_NAME_MOTECH_TIMESTAMP", members = {"configName", "motechTimestamp"})
+})
 public class CallDetailRecord {
 
     private static final int COL1 = 0;
@@ -169,6 +177,18 @@ public class CallDetailRecord {
         return DT_FORMATTER.print(DateUtil.now());
     }
 
+    /**
+     * Formats the given datetime using the datetime formatter used for timestamps in call detail records, after
+     * converting it to the MOTECH time zone. The format is <code>yyyy-MM-dd HH:mm:ss.SSSS</code>. Since the format
+     * sorts lexicographically, the result can be used for comparing timestamps in queries.
+     * @param dateTime the datetime to format
+     * @return the datetime in the call detail record timestamp format
+     */
+    @Ignore
+    public static String formatTimestamp(DateTime dateTime) {
+        return DT_FORMATTER.print(DateUtil.setTimeZone(dateTime));
+    }
+
     /**
      * @return the name of the IVR configuration used for the call this record corresponds to
      */
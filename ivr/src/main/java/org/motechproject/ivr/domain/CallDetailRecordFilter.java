@@ -0,0 +1,100 @@
+package org.motechproject.ivr.domain;
+
+import org.joda.time.DateTime;
+
+/**
+ * The criteria used when querying call detail records for reporting. All criteria are optional, the ones which are
+ * null are not applied.
+ */
+public class CallDetailRecordFilter {
+
+    /**
+     * The name of the IVR configuration used for the calls.
+     */
+    private String configName;
+
+    /**
+     * The id of the call generated by MOTECH.
+     */
+    private String motechCallId;
+
+    /**
+     * The id of the call generated by the IVR provider.
+     */
+    private String providerCallId;
+
+    /**
+     * The status of the call.
+     */
+    private String callStatus;
+
+    /**
+     * The start of the time range, inclusive.
+     */
+    private DateTime from;
+
+    /**
+     * The end of the time range, exclusive.
+     */
+    private DateTime to;
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    public void setConfigName(String configName) {
+        this.configName = configName;
+    }
+
+    public String getMotechCallId() {
+        return motechCallId;
+    }
+
+    public void setMotechCallId(String motechCallId) {
+        this.motechCallId = motechCallId;
+    }
+
+    public String getProviderCallId() {
+        return providerCallId;
+    }
+
+    public void setProviderCallId(String providerCallId) {
+        this.providerCallId = providerCallId;
+    }
+
+    public String getCallStatus() {
+        return callStatus;
+    }
+
+    public void setCallStatus(String callStatus) {
+        this.callStatus = callStatus;
+    }
+
+    public DateTime getFrom() {
+        return from;
+    }
+
+    public void setFrom(DateTime from) {
+        this.from = from;
+    }
+
+    public DateTime getTo() {
+        return to;
+    }
+
+    public void setTo(DateTime to) {
+        this.to = to;
+    }
+
+    @Override
+    public String toString() {
+        return "CallDetailRecordFilter{" +
+                "configName='" + configName + '\'' +
+                ", motechCallId='" + motechCallId + '\'' +
+                ", providerCallId='" + providerCallId + '\'' +
+                ", callStatus='" + callStatus + '\'' +
+                ", from=" + from +
+                ", to=" + to +
+                '}';
+    }
+}
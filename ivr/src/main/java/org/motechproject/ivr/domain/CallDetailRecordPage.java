@@ -0,0 +1,39 @@
+package org.motechproject.ivr.domain;
+
+import java.util.List;
+
+/**
+ * A page of call detail records, ordered by their ids. The next page is retrieved by passing {@link #getNextId()}
+ * as the id to continue after, so that the database doesn't have to skip the records of the previous pages.
+ */
+public class CallDetailRecordPage {
+
+    private final List<CallDetailRecord> records;
+    private final Long nextId;
+
+    public CallDetailRecordPage(List<CallDetailRecord> records, Long nextId) {
+        this.records = records;
+        this.nextId = nextId;
+    }
+
+    /**
+     * @return the records on this page
+     */
+    public List<CallDetailRecord> getRecords() {
+        return records;
+    }
+
+    /**
+     * @return the id to continue after when retrieving the next page, null if this is the last page
+     */
+    public Long getNextId() {
+        return nextId;
+    }
+
+    /**
+     * @return true if there are more records after this page
+     */
+    public boolean hasNext() {
+        return nextId != null;
+    }
+}
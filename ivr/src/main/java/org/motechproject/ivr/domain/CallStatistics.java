@@ -0,0 +1,111 @@
+package org.motechproject.ivr.domain;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregated statistics of the calls with a given status that took place within an hour. Durations are counted in
+ * whole units, as reported by the IVR provider, so the percentiles are exact up to that precision. Records without a
+ * parsable duration are counted, but not included in the duration statistics.
+ */
+public class CallStatistics {
+
+    private final String hour;
+    private final String callStatus;
+
+    private long count;
+    private long durationCount;
+    private long totalDuration;
+    private final TreeMap<Long, Long> durations = new TreeMap<>();
+
+    /**
+     * @param hour the hour, in the <code>yyyy-MM-dd HH</code> format
+     * @param callStatus the status of the calls
+     */
+    public CallStatistics(String hour, String callStatus) {
+        this.hour = hour;
+        this.callStatus = callStatus;
+    }
+
+    /**
+     * Adds a call to the statistics.
+     * @param duration the duration of the call, null if unknown
+     */
+    public void add(Long duration) {
+        count++;
+        if (duration != null) {
+            durationCount++;
+            totalDuration += duration;
+            Long current = durations.get(duration);
+            durations.put(duration, current == null ? 1 : current + 1);
+        }
+    }
+
+    /**
+     * @return the hour, in the <code>yyyy-MM-dd HH</code> format
+     */
+    public String getHour() {
+        return hour;
+    }
+
+    public String getCallStatus() {
+        return callStatus;
+    }
+
+    /**
+     * @return the number of calls
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the average duration of the calls with a known duration, zero if there are none
+     */
+    public double getAverageDuration() {
+        return durationCount == 0 ? 0 : (double) totalDuration / durationCount;
+    }
+
+    public long getMedianDuration() {
+        return getDurationPercentile(50);
+    }
+
+    public long getP90Duration() {
+        return getDurationPercentile(90);
+    }
+
+    public long getP99Duration() {
+        return getDurationPercentile(99);
+    }
+
+    /**
+     * Returns the duration below or at which the given percentage of the calls with a known duration fall.
+     * @param percentile the percentile, between 0 and 100
+     * @return the duration percentile, zero if there are no calls with a known duration
+     */
+    public long getDurationPercentile(double percentile) {
+        if (durationCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * durationCount));
+        long seen = 0;
+        for (Map.Entry<Long, Long> entry : durations.entrySet()) {
+            seen += entry.getValue();
+            if (seen >= rank) {
+                return entry.getKey();
+            }
+        }
+        return durations.lastKey();
+    }
+
+    @Override
+    public String toString() {
+        return "CallStatistics{" +
+                "hour='" + hour + '\'' +
+                ", callStatus='" + callStatus + '\'' +
+                ", count=" + count +
+                ", averageDuration=" + getAverageDuration() +
+                '}';
+    }
+}
@@ -97,6 +97,17 @@ public class Config {
     @JsonIgnore
     private Map<String, String> callStatusMapping;
 
+    /**
+     * The maximum number of outgoing calls per second the IVR provider accepts, zero means no limit
+     */
+    private int maxCallsPerSecond;
+
+    /**
+     * The maximum number of outgoing call requests sent concurrently to the IVR provider, for file:// configs the
+     * maximum number of call files waiting in the spool directory, zero means no limit
+     */
+    private int maxConcurrentCalls;
+
     public Config() {
 
     }
@@ -271,6 +282,22 @@ public class Config {
         return callStatusMapping;
     }
 
+    public int getMaxCallsPerSecond() {
+        return maxCallsPerSecond;
+    }
+
+    public void setMaxCallsPerSecond(int maxCallsPerSecond) {
+        this.maxCallsPerSecond = maxCallsPerSecond;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
     /**
      * When pinging Motech back to provide call status, IVR providers sometimes send fields with different names than
      * those that are used by the system. For example the originating number is sometimes provided as 'callerid' whereas
@@ -302,6 +329,8 @@ public class Config {
 
         if (authRequired != config.authRequired) { return false; }
         if (jsonResponse != config.jsonResponse) { return false; }
+        if (maxCallsPerSecond != config.maxCallsPerSecond) { return false; }
+        if (maxConcurrentCalls != config.maxConcurrentCalls) { return false; }
         if (ignoredStatusFields != null ? !ignoredStatusFields.equals(config.ignoredStatusFields) : config.ignoredStatusFields != null)
             { return false; }
         if (jsonExtraParamsList != null ? !jsonExtraParamsList.equals(config.jsonExtraParamsList) : config.jsonExtraParamsList != null)
@@ -344,6 +373,8 @@ public class Config {
         result = 31 * result + (servicesMapString != null ? servicesMapString.hashCode() : 0);
         result = 31 * result + (callStatusMapping != null ? callStatusMapping.hashCode() : 0);
         result = 31 * result + (callStatusMappingString != null ? callStatusMappingString.hashCode() : 0);
+        result = 31 * result + maxCallsPerSecond;
+        result = 31 * result + maxConcurrentCalls;
         return result;
     }
 
@@ -365,6 +396,8 @@ public class Config {
                 ", servicesMapString='" + servicesMapString + '\'' +
                 ", callStatusMapping='" + callStatusMapping + '\'' +
                 ", callStatusMappingString='" + callStatusMappingString + '\'' +
+                ", maxCallsPerSecond=" + maxCallsPerSecond +
+                ", maxConcurrentCalls=" + maxConcurrentCalls +
                 '}';
     }
 }
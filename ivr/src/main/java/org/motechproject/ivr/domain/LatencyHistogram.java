@@ -0,0 +1,85 @@
+package org.motechproject.ivr.domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of the time it takes to render a template, with fixed millisecond buckets. The counters are updated
+ * concurrently by the threads handling the IVR provider requests.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets, in milliseconds. Renders slower than the last bound fall into an extra bucket.
+     */
+    private static final long[] BUCKET_BOUNDS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500};
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong maxTime = new AtomicLong();
+
+    /**
+     * Records a single render.
+     *
+     * @param duration the time it took to render the template, in milliseconds
+     */
+    public void record(long duration) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && duration > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+
+        bucketCounts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalTime.addAndGet(duration);
+
+        long max = maxTime.get();
+        while (duration > max && !maxTime.compareAndSet(max, duration)) {
+            max = maxTime.get();
+        }
+    }
+
+    /**
+     * Returns the number of renders in each bucket, keyed by the bucket label, for example "<=10ms" or ">2500ms".
+     *
+     * @return the bucket counts, in the ascending order of the buckets
+     */
+    public Map<String, Long> getBuckets() {
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            buckets.put("<=" + BUCKET_BOUNDS[i] + "ms", bucketCounts.get(i));
+        }
+        buckets.put(">" + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] + "ms", bucketCounts.get(BUCKET_BOUNDS.length));
+        return buckets;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalTime() {
+        return totalTime.get();
+    }
+
+    public long getAverageTime() {
+        long renders = count.get();
+        return renders == 0 ? 0 : totalTime.get() / renders;
+    }
+
+    public long getMaxTime() {
+        return maxTime.get();
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "count=" + getCount() +
+                ", averageTime=" + getAverageTime() +
+                ", maxTime=" + getMaxTime() +
+                ", buckets=" + getBuckets() +
+                '}';
+    }
+}
@@ -0,0 +1,33 @@
+package org.motechproject.ivr.repository.query;
+
+import org.motechproject.ivr.domain.CallDetailRecordFilter;
+import org.motechproject.mds.query.QueryExecution;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+
+import javax.jdo.Query;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The <code>CallDetailRecordCountQueryExecution</code> class prepares a custom MDS query counting the call detail
+ * records matching the given criteria in the database.
+ */
+public class CallDetailRecordCountQueryExecution implements QueryExecution<Long> {
+
+    private final CallDetailRecordFilter filter;
+
+    public CallDetailRecordCountQueryExecution(CallDetailRecordFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public Long execute(Query query, InstanceSecurityRestriction restriction) {
+        Map<String, Object> params = new HashMap<>();
+        CallDetailRecordQueryFilter.apply(query, filter, params);
+
+        query.setResult("count(this)");
+        query.setUnique(true);
+
+        return (Long) query.executeWithMap(params);
+    }
+}
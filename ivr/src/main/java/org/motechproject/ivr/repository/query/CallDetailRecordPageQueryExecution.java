@@ -0,0 +1,52 @@
+package org.motechproject.ivr.repository.query;
+
+import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallDetailRecordFilter;
+import org.motechproject.mds.query.QueryExecution;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+
+import javax.jdo.Query;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The <code>CallDetailRecordPageQueryExecution</code> class prepares a custom MDS query returning the call detail
+ * records matching the given criteria with an id greater than the given one, ordered by id. Continuing after the last
+ * id of the previous page, instead of using an offset, lets the database seek directly to the page.
+ */
+public class CallDetailRecordPageQueryExecution implements QueryExecution<List<CallDetailRecord>> {
+
+    private final CallDetailRecordFilter filter;
+    private final Long afterId;
+    private final int limit;
+
+    /**
+     * @param filter the criteria the records must match
+     * @param afterId the id after which to continue, null to start from the first record
+     * @param limit the maximum number of records to return
+     */
+    public CallDetailRecordPageQueryExecution(CallDetailRecordFilter filter, Long afterId, int limit) {
+        this.filter = filter;
+        this.afterId = afterId;
+        this.limit = limit;
+    }
+
+    @Override
+    public List<CallDetailRecord> execute(Query query, InstanceSecurityRestriction restriction) {
+        Map<String, Object> params = new HashMap<>();
+        List<String> conditions = CallDetailRecordQueryFilter.buildConditions(filter, params);
+
+        if (afterId != null) {
+            conditions.add("id > :afterId");
+            params.put("afterId", afterId);
+        }
+        CallDetailRecordQueryFilter.applyConditions(query, conditions);
+
+        query.setOrdering("id ascending");
+        query.setRange(0, limit);
+
+        return new ArrayList<>((List<CallDetailRecord>) query.executeWithMap(params));
+    }
+}
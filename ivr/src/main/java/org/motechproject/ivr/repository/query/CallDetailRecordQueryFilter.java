@@ -0,0 +1,59 @@
+package org.motechproject.ivr.repository.query;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallDetailRecordFilter;
+
+import javax.jdo.Query;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the JDOQL filter for the given call detail record criteria. Time ranges are compared on the motechTimestamp
+ * field, which sorts lexicographically in the same order as the timestamps it holds.
+ */
+final class CallDetailRecordQueryFilter {
+
+    private static final String AND = " && ";
+
+    static List<String> buildConditions(CallDetailRecordFilter filter, Map<String, Object> params) {
+        List<String> conditions = new ArrayList<>();
+
+        addEquals(conditions, params, "configName", filter.getConfigName());
+        addEquals(conditions, params, "motechCallId", filter.getMotechCallId());
+        addEquals(conditions, params, "providerCallId", filter.getProviderCallId());
+        addEquals(conditions, params, "callStatus", filter.getCallStatus());
+
+        if (filter.getFrom() != null) {
+            conditions.add("motechTimestamp >= :fromTimestamp");
+            params.put("fromTimestamp", CallDetailRecord.formatTimestamp(filter.getFrom()));
+        }
+        if (filter.getTo() != null) {
+            conditions.add("motechTimestamp < :toTimestamp");
+            params.put("toTimestamp", CallDetailRecord.formatTimestamp(filter.getTo()));
+        }
+
+        return conditions;
+    }
+
+    static void apply(Query query, CallDetailRecordFilter filter, Map<String, Object> params) {
+        applyConditions(query, buildConditions(filter, params));
+    }
+
+    static void applyConditions(Query query, List<String> conditions) {
+        if (!conditions.isEmpty()) {
+            query.setFilter(StringUtils.join(conditions, AND));
+        }
+    }
+
+    private static void addEquals(List<String> conditions, Map<String, Object> params, String field, String value) {
+        if (value != null) {
+            conditions.add(String.format("%s == :%s", field, field));
+            params.put(field, value);
+        }
+    }
+
+    private CallDetailRecordQueryFilter() {
+    }
+}
@@ -0,0 +1,75 @@
+package org.motechproject.ivr.repository.query;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.ivr.domain.CallDetailRecordFilter;
+import org.motechproject.ivr.domain.CallStatistics;
+import org.motechproject.mds.query.QueryExecution;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+
+import javax.jdo.Query;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The <code>CallStatisticsQueryExecution</code> class prepares a custom MDS query aggregating the call detail records
+ * matching the given criteria into statistics per hour and call status. Only the timestamp, status and duration
+ * columns are selected and the rows are folded into the statistics as they are read, without creating the records or
+ * keeping the rows in memory. The durations are stored as text, which is why they can't be aggregated by the database
+ * itself.
+ */
+public class CallStatisticsQueryExecution implements QueryExecution<List<CallStatistics>> {
+
+    private static final int HOUR_LENGTH = "yyyy-MM-dd HH".length();
+    private static final int FETCH_SIZE = 1000;
+
+    private final CallDetailRecordFilter filter;
+
+    public CallStatisticsQueryExecution(CallDetailRecordFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public List<CallStatistics> execute(Query query, InstanceSecurityRestriction restriction) {
+        Map<String, Object> params = new HashMap<>();
+        CallDetailRecordQueryFilter.apply(query, filter, params);
+
+        query.setResult("motechTimestamp, callStatus, callDuration");
+        query.getFetchPlan().setFetchSize(FETCH_SIZE);
+        query.addExtension("datanucleus.query.resultCacheType", "none");
+
+        Map<String, CallStatistics> statistics = new TreeMap<>();
+        try {
+            for (Object[] row : (Collection<Object[]>) query.executeWithMap(params)) {
+                String hour = StringUtils.left((String) row[0], HOUR_LENGTH);
+                String callStatus = (String) row[1];
+
+                String key = hour + ' ' + callStatus;
+                CallStatistics hourStatistics = statistics.get(key);
+                if (hourStatistics == null) {
+                    hourStatistics = new CallStatistics(hour, callStatus);
+                    statistics.put(key, hourStatistics);
+                }
+                hourStatistics.add(parseDuration((String) row[2]));
+            }
+        } finally {
+            query.closeAll();
+        }
+
+        return new ArrayList<>(statistics.values());
+    }
+
+    private Long parseDuration(String duration) {
+        if (StringUtils.isBlank(duration)) {
+            return null;
+        }
+        try {
+            return Math.round(Double.parseDouble(duration.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
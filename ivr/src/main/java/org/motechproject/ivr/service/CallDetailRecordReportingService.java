@@ -0,0 +1,42 @@
+package org.motechproject.ivr.service;
+
+import org.motechproject.ivr.domain.CallDetailRecordFilter;
+import org.motechproject.ivr.domain.CallDetailRecordPage;
+import org.motechproject.ivr.domain.CallStatistics;
+
+import java.util.List;
+
+/**
+ * Service used for reporting on IVR calls. The call detail records are filtered, counted and aggregated by the
+ * database, so that monitoring a running campaign doesn't require retrieving all of its records.
+ */
+public interface CallDetailRecordReportingService {
+
+    /**
+     * Retrieves a page of the call detail records matching the given criteria, ordered by their ids.
+     *
+     * @param filter the criteria the records must match
+     * @param afterId the id of the last record of the previous page, null to retrieve the first page
+     * @param pageSize the maximum number of records on the page
+     * @return the page of records
+     * @throws IllegalArgumentException if the page size is not positive or exceeds the maximum page size
+     */
+    CallDetailRecordPage findRecords(CallDetailRecordFilter filter, Long afterId, int pageSize);
+
+    /**
+     * Counts the call detail records matching the given criteria.
+     *
+     * @param filter the criteria the records must match
+     * @return the number of matching records
+     */
+    long countRecords(CallDetailRecordFilter filter);
+
+    /**
+     * Aggregates the call detail records matching the given criteria into statistics per hour and call status,
+     * ordered by hour and status.
+     *
+     * @param filter the criteria the records must match
+     * @return the statistics of each hour and call status
+     */
+    List<CallStatistics> getHourlyStatistics(CallDetailRecordFilter filter);
+}
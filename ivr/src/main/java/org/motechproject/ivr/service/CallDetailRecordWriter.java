@@ -0,0 +1,24 @@
+package org.motechproject.ivr.service;
+
+import org.motechproject.ivr.domain.CallDetailRecord;
+
+/**
+ * Asynchronous sink for {@link org.motechproject.ivr.domain.CallDetailRecord}s. Records are queued and saved in
+ * batches by a background thread, so that the callers, usually serving IVR provider requests, don't wait for the
+ * database unless the queue is full.
+ */
+public interface CallDetailRecordWriter {
+
+    /**
+     * Queues the given record for saving. If the queue is full, waits at most for the configured offer timeout and then
+     * saves the record on the calling thread.
+     * @param callDetailRecord the record to save
+     */
+    void write(CallDetailRecord callDetailRecord);
+
+    /**
+     * Waits until all records queued before this call are saved, at most for the configured drain timeout.
+     * @return true if all records were saved, false if the timeout elapsed first
+     */
+    boolean flush();
+}
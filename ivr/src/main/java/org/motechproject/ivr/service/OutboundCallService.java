@@ -23,4 +23,33 @@ public interface OutboundCallService {
      * @throws ConfigNotFoundException when there is no default configuration.
      */
     void initiateCall(Map<String, String> params);
+
+    /**
+     * Queues an outgoing call, which will be initiated in the background as soon as the calls per second and concurrent
+     * calls limits of the configuration allow it. Calls rejected by a busy provider are retried later. Blocks while the
+     * queue of the configuration is full.
+     *
+     * @param configName the name of the configuration to use when initiating the call
+     * @param params the parameters that will be used for building the url, the ones that don't match the placeholders will be sent as params of the request
+     * @param priority the priority of the call, calls with a higher priority are initiated first
+     */
+    void queueCall(String configName, Map<String, String> params, int priority);
+
+    /**
+     * Queues an outgoing call for each of the given recipients, see {@link #queueCall(String, Map, int)}. The recipients
+     * are iterated lazily, so large campaigns don't have to be loaded into memory at once.
+     *
+     * @param configName the name of the configuration to use when initiating the calls
+     * @param recipients the parameters of each call
+     * @param priority the priority of the calls, calls with a higher priority are initiated first
+     */
+    void queueCalls(String configName, Iterable<Map<String, String>> recipients, int priority);
+
+    /**
+     * Returns the number of call files of file:// configurations staged and waiting for a free channel before being
+     * released into the outgoing spool directory.
+     *
+     * @return the number of staged call files, keyed by the configuration name
+     */
+    Map<String, Integer> getCallFileBacklog();
 }
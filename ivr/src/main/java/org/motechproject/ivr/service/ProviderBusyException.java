@@ -0,0 +1,14 @@
+package org.motechproject.ivr.service;
+
+/**
+ * Thrown when the IVR provider refuses to initiate an outgoing call because it is busy, for example when the calls
+ * per second limit of the account was exceeded. Such calls can be retried later.
+ */
+public class ProviderBusyException extends CallInitiationException {
+
+    private static final long serialVersionUID = 2318853196548520471L;
+
+    public ProviderBusyException(String message) {
+        super(message);
+    }
+}
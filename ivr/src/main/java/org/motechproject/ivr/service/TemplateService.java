@@ -20,6 +20,16 @@ public interface TemplateService {
      */
     Template getTemplate(String name);
 
+    /**
+     * Retrieves the template with the given name, parsed by Velocity. Templates are parsed once and reused until the
+     * templates are reloaded.
+     * @param name the name of the template to retrieve
+     * @return the parsed template with the given name, never null
+     * @throws org.motechproject.ivr.exception.TemplateNotFoundException if the template with the given name does not exist
+     * @throws org.apache.velocity.exception.ParseErrorException if the template is not a valid Velocity template
+     */
+    org.apache.velocity.Template getCompiledTemplate(String name);
+
     /**
      * Retrieves all templates stored in the configuration system.
      * @return the list of all templates
@@ -0,0 +1,67 @@
+package org.motechproject.ivr.service.impl;
+
+import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallDetailRecordFilter;
+import org.motechproject.ivr.domain.CallDetailRecordPage;
+import org.motechproject.ivr.domain.CallStatistics;
+import org.motechproject.ivr.repository.CallDetailRecordDataService;
+import org.motechproject.ivr.repository.query.CallDetailRecordCountQueryExecution;
+import org.motechproject.ivr.repository.query.CallDetailRecordPageQueryExecution;
+import org.motechproject.ivr.repository.query.CallStatisticsQueryExecution;
+import org.motechproject.ivr.service.CallDetailRecordReportingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * See {@link org.motechproject.ivr.service.CallDetailRecordReportingService}
+ */
+@Service("callDetailRecordReportingService")
+public class CallDetailRecordReportingServiceImpl implements CallDetailRecordReportingService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallDetailRecordReportingServiceImpl.class);
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private CallDetailRecordDataService callDetailRecordDataService;
+
+    @Autowired
+    public CallDetailRecordReportingServiceImpl(CallDetailRecordDataService callDetailRecordDataService) {
+        this.callDetailRecordDataService = callDetailRecordDataService;
+    }
+
+    @Override
+    public CallDetailRecordPage findRecords(CallDetailRecordFilter filter, Long afterId, int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException(String.format("The page size must be between 1 and %d, was %d",
+                    MAX_PAGE_SIZE, pageSize));
+        }
+        LOGGER.debug("findRecords(filter = {}, afterId = {}, pageSize = {})", filter, afterId, pageSize);
+
+        // Retrieve one more record, to know whether there is a next page
+        List<CallDetailRecord> records = callDetailRecordDataService.executeQuery(
+                new CallDetailRecordPageQueryExecution(filter, afterId, pageSize + 1));
+
+        if (records.size() <= pageSize) {
+            return new CallDetailRecordPage(records, null);
+        }
+
+        List<CallDetailRecord> page = records.subList(0, pageSize);
+        return new CallDetailRecordPage(page, page.get(pageSize - 1).getId());
+    }
+
+    @Override
+    public long countRecords(CallDetailRecordFilter filter) {
+        LOGGER.debug("countRecords(filter = {})", filter);
+        return callDetailRecordDataService.executeQuery(new CallDetailRecordCountQueryExecution(filter));
+    }
+
+    @Override
+    public List<CallStatistics> getHourlyStatistics(CallDetailRecordFilter filter) {
+        LOGGER.debug("getHourlyStatistics(filter = {})", filter);
+        return callDetailRecordDataService.executeQuery(new CallStatisticsQueryExecution(filter));
+    }
+}
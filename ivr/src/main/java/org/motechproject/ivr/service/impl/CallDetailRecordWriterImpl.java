@@ -0,0 +1,218 @@
+package org.motechproject.ivr.service.impl;
+
+import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.repository.CallDetailRecordDataService;
+import org.motechproject.ivr.service.CallDetailRecordWriter;
+import org.motechproject.server.config.SettingsFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.motechproject.ivr.util.SettingsUtils.getIntProperty;
+
+/**
+ * See {@link org.motechproject.ivr.service.CallDetailRecordWriter}. A single background thread takes the queued
+ * records and saves each batch in one transaction. If a batch fails, its records are saved one by one, so that a single
+ * invalid record doesn't take the rest of the batch down with it. When the queue is full, the caller waits a short while
+ * for space in the queue and then saves the record on its own thread, so that records are never dropped. On shutdown
+ * the thread stops taking new records and saves the queued ones, waiting at most for the drain timeout.
+ */
+@Service("callDetailRecordWriter")
+public class CallDetailRecordWriterImpl implements CallDetailRecordWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallDetailRecordWriterImpl.class);
+
+    private static final String QUEUE_CAPACITY_PROPERTY = "ivr.cdr.queueCapacity";
+    private static final String BATCH_SIZE_PROPERTY = "ivr.cdr.batchSize";
+    private static final String FLUSH_INTERVAL_PROPERTY = "ivr.cdr.flushIntervalMillis";
+    private static final String DRAIN_TIMEOUT_PROPERTY = "ivr.cdr.drainTimeoutSeconds";
+    private static final String OFFER_TIMEOUT_PROPERTY = "ivr.cdr.offerTimeoutMillis";
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_FLUSH_INTERVAL = 200;
+    private static final int DEFAULT_DRAIN_TIMEOUT = 30;
+    private static final int DEFAULT_OFFER_TIMEOUT = 50;
+
+    private final CallDetailRecordDataService callDetailRecordDataService;
+    private final SettingsFacade settingsFacade;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong savedByCaller = new AtomicLong();
+    private final Object flushLock = new Object();
+
+    private BlockingQueue<CallDetailRecord> queue;
+    private int batchSize;
+    private long flushInterval;
+    private long drainTimeout;
+    private long offerTimeout;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    @Autowired
+    public CallDetailRecordWriterImpl(CallDetailRecordDataService callDetailRecordDataService,
+                                      @Qualifier("ivrSettings") SettingsFacade settingsFacade) {
+        this.callDetailRecordDataService = callDetailRecordDataService;
+        this.settingsFacade = settingsFacade;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(getIntProperty(settingsFacade, QUEUE_CAPACITY_PROPERTY,
+                DEFAULT_QUEUE_CAPACITY));
+        batchSize = getIntProperty(settingsFacade, BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE);
+        flushInterval = getIntProperty(settingsFacade, FLUSH_INTERVAL_PROPERTY, DEFAULT_FLUSH_INTERVAL);
+        drainTimeout = TimeUnit.SECONDS.toMillis(getIntProperty(settingsFacade, DRAIN_TIMEOUT_PROPERTY,
+                DEFAULT_DRAIN_TIMEOUT));
+        offerTimeout = getIntProperty(settingsFacade, OFFER_TIMEOUT_PROPERTY, DEFAULT_OFFER_TIMEOUT);
+
+        running = true;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeQueuedRecords();
+            }
+        }, "ivr-cdr-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        try {
+            writerThread.join(drainTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (writerThread.isAlive()) {
+            writerThread.interrupt();
+            LOGGER.error("Timed out saving the queued call detail records, {} records were not saved", queue.size());
+        }
+    }
+
+    @Override
+    public void write(CallDetailRecord callDetailRecord) {
+        pending.incrementAndGet();
+
+        boolean queued = false;
+        try {
+            queued = running && queue.offer(callDetailRecord, offerTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!queued) {
+            LOGGER.debug("Call detail record queue is full or closed, {} records saved by the callers so far",
+                    savedByCaller.incrementAndGet());
+            try {
+                saveOne(callDetailRecord);
+            } finally {
+                saved(1);
+            }
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        long deadline = System.currentTimeMillis() + drainTimeout;
+
+        synchronized (flushLock) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    flushLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of records saved on the threads of the callers since the start, because the queue was full.
+     * @return the number of records saved by the callers
+     */
+    public long getSavedByCallerCount() {
+        return savedByCaller.get();
+    }
+
+    private void writeQueuedRecords() {
+        List<CallDetailRecord> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                CallDetailRecord first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                save(batch);
+            } catch (InterruptedException e) {
+                LOGGER.warn("Call detail record writer interrupted, {} records were not saved", queue.size());
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                saved(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void save(final List<CallDetailRecord> batch) {
+        try {
+            callDetailRecordDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (CallDetailRecord callDetailRecord : batch) {
+                        callDetailRecordDataService.create(callDetailRecord);
+                    }
+                }
+            });
+            LOGGER.debug("Saved {} call detail records", batch.size());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to save a batch of {} call detail records, saving them one by one", batch.size(), e);
+            for (CallDetailRecord callDetailRecord : batch) {
+                saveOne(callDetailRecord);
+            }
+        }
+    }
+
+    private void saveOne(CallDetailRecord callDetailRecord) {
+        try {
+            callDetailRecordDataService.create(callDetailRecord);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to save {}", callDetailRecord, e);
+        }
+    }
+
+    private void saved(int count) {
+        pending.addAndGet(-count);
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.motechproject.ivr.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spools the call files of a single file:// IVR provider configuration, for example Asterisk call files. A call file
+ * is written in one go into a fixed staging directory inside the outgoing spool directory, so that it is on the same
+ * filesystem, and then atomically renamed into the spool directory. The number of released call files still present
+ * in the spool directory, which the provider removes once it is done with the call, is limited to the configured
+ * number of concurrent calls. Files which can't be released yet stay in the staging directory until
+ * {@link #releaseStaged(int)} finds a free channel. A staged file is named after the call id followed by the name of
+ * its target, so that the files left in the staging directory by a previous run can be put back on the backlog.
+ */
+class CallFileSpooler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallFileSpooler.class);
+
+    private static final int BUFFER_SIZE = 512;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(BUFFER_SIZE);
+        }
+    };
+
+    private final String configName;
+    private final String stagingDirName;
+
+    private final ConcurrentMap<Path, Path> stagingDirs = new ConcurrentHashMap<>();
+    private final Queue<StagedCallFile> backlog = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger backlogSize = new AtomicInteger();
+    private final Set<Path> released = new LinkedHashSet<>();
+
+    CallFileSpooler(String configName, String stagingDirName) {
+        this.configName = configName;
+        this.stagingDirName = stagingDirName;
+    }
+
+    /**
+     * Writes a call file into the staging directory and releases it into the spool directory, if the given channel
+     * limit allows it.
+     *
+     * @param target the path of the call file in the spool directory
+     * @param callId the unique id of the call, used for naming the staged file, must not contain dots
+     * @param entries the entries of the call file
+     * @param maxConcurrentCalls the maximum number of call files in the spool directory, zero or less means no limit
+     * @return true if the call file was released immediately, false if it was left in the backlog
+     * @throws IOException if the call file couldn't be written or released
+     */
+    boolean spool(Path target, String callId, Map<String, String> entries, int maxConcurrentCalls) throws IOException {
+        Path staged = getStagingDir(target.getParent()).resolve(callId + '.' + target.getFileName());
+        Files.write(staged, render(entries), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        StagedCallFile callFile = new StagedCallFile(staged, target);
+
+        synchronized (released) {
+            if (backlog.isEmpty() && hasFreeChannel(maxConcurrentCalls)) {
+                release(callFile);
+                return true;
+            }
+
+            backlog.add(callFile);
+            backlogSize.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Releases the staged call files, oldest first, for which the given channel limit leaves room.
+     *
+     * @param maxConcurrentCalls the maximum number of call files in the spool directory, zero or less means no limit
+     * @return the number of released call files
+     */
+    int releaseStaged(int maxConcurrentCalls) {
+        int count = 0;
+
+        synchronized (released) {
+            while (!backlog.isEmpty() && hasFreeChannel(maxConcurrentCalls)) {
+                StagedCallFile callFile = backlog.poll();
+                backlogSize.decrementAndGet();
+                try {
+                    release(callFile);
+                    count++;
+                } catch (IOException e) {
+                    LOGGER.error("Unable to release call file {} for config {}, it was left in {}",
+                            callFile.getTarget(), configName, callFile.getStaged(), e);
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Puts the call files left in the staging directory of the given spool directory by a previous run back on the
+     * backlog, oldest first. Nothing is created if there is no staging directory yet.
+     *
+     * @param spoolDir the spool directory of the call files
+     * @throws IOException if the staging directory couldn't be read
+     */
+    void recover(Path spoolDir) throws IOException {
+        if (Files.isDirectory(spoolDir.resolve(stagingDirName))) {
+            getStagingDir(spoolDir);
+        }
+    }
+
+    /**
+     * Returns the number of staged call files waiting for a free channel.
+     * @return the number of call files in the backlog
+     */
+    int getBacklog() {
+        return backlogSize.get();
+    }
+
+    /**
+     * Returns the number of released call files not yet picked up by the provider.
+     * @return the number of call files in the spool directory
+     */
+    int getSpooled() {
+        synchronized (released) {
+            pruneReleased();
+            return released.size();
+        }
+    }
+
+    private byte[] render(Map<String, String> entries) {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            buffer.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+
+        return buffer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private boolean hasFreeChannel(int maxConcurrentCalls) {
+        if (maxConcurrentCalls <= 0) {
+            return true;
+        }
+        if (released.size() >= maxConcurrentCalls) {
+            pruneReleased();
+        }
+        return released.size() < maxConcurrentCalls;
+    }
+
+    private void release(StagedCallFile callFile) throws IOException {
+        Files.move(callFile.getStaged(), callFile.getTarget(), StandardCopyOption.ATOMIC_MOVE);
+        released.add(callFile.getTarget());
+    }
+
+    private void pruneReleased() {
+        Iterator<Path> it = released.iterator();
+        while (it.hasNext()) {
+            if (!Files.exists(it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    private Path getStagingDir(Path spoolDir) throws IOException {
+        Path stagingDir = stagingDirs.get(spoolDir);
+        if (stagingDir != null) {
+            return stagingDir;
+        }
+
+        synchronized (stagingDirs) {
+            stagingDir = stagingDirs.get(spoolDir);
+            if (stagingDir == null) {
+                stagingDir = Files.createDirectories(spoolDir.resolve(stagingDirName));
+                requeueLeftovers(stagingDir, spoolDir);
+                stagingDirs.put(spoolDir, stagingDir);
+            }
+        }
+
+        return stagingDir;
+    }
+
+    private void requeueLeftovers(Path stagingDir, Path spoolDir) throws IOException {
+        List<Path> leftovers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingDir)) {
+            for (Path file : files) {
+                leftovers.add(file);
+            }
+        }
+        if (leftovers.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(leftovers, new Comparator<Path>() {
+            @Override
+            public int compare(Path first, Path second) {
+                int result = Long.compare(first.toFile().lastModified(), second.toFile().lastModified());
+                return result != 0 ? result : first.compareTo(second);
+            }
+        });
+
+        int requeued = 0;
+        synchronized (released) {
+            for (Path staged : leftovers) {
+                String name = staged.getFileName().toString();
+                int separator = name.indexOf('.');
+                if (separator <= 0 || separator == name.length() - 1) {
+                    LOGGER.warn("Unable to tell the target of call file {} left over from a previous run, "
+                            + "it will not be spooled", staged);
+                    continue;
+                }
+
+                backlog.add(new StagedCallFile(staged, spoolDir.resolve(name.substring(separator + 1))));
+                backlogSize.incrementAndGet();
+                requeued++;
+            }
+        }
+
+        LOGGER.info("Found {} call files in {} left over from a previous run for config {}, they were put back "
+                + "on the backlog", requeued, stagingDir, configName);
+    }
+
+    private static class StagedCallFile {
+        private final Path staged;
+        private final Path target;
+
+        StagedCallFile(Path staged, Path target) {
+            this.staged = staged;
+            this.target = target;
+        }
+
+        Path getStaged() {
+            return staged;
+        }
+
+        Path getTarget() {
+            return target;
+        }
+    }
+}
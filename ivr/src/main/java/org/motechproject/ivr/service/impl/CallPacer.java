@@ -0,0 +1,66 @@
+package org.motechproject.ivr.service.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the outgoing calls sent to a single IVR provider configuration. A call may only be initiated after
+ * {@link #acquire(int, int)} returns and every successful acquire must be followed by a {@link #release()} once the
+ * provider responded. The limits are passed on every acquire, so that changes to the configuration take effect
+ * immediately.
+ */
+class CallPacer {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private int inFlight;
+    private long nextSlot;
+
+    /**
+     * Waits until a call can be initiated without exceeding the given limits.
+     *
+     * @param maxCallsPerSecond the maximum number of calls per second, zero or less means no limit
+     * @param maxConcurrentCalls the maximum number of calls in progress, zero or less means no limit
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    void acquire(int maxCallsPerSecond, int maxConcurrentCalls) throws InterruptedException {
+        long delay = reserve(maxCallsPerSecond, maxConcurrentCalls);
+
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Marks a call acquired with {@link #acquire(int, int)} as finished.
+     */
+    synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private synchronized long reserve(int maxCallsPerSecond, int maxConcurrentCalls) throws InterruptedException {
+        while (maxConcurrentCalls > 0 && inFlight >= maxConcurrentCalls) {
+            wait();
+        }
+        inFlight++;
+
+        if (maxCallsPerSecond <= 0) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        long slot = Math.max(now, nextSlot);
+        nextSlot = slot + NANOS_PER_SECOND / maxCallsPerSecond;
+
+        return slot - now;
+    }
+}
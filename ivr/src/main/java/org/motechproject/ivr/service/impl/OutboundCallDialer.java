@@ -0,0 +1,214 @@
+package org.motechproject.ivr.service.impl;
+
+import org.motechproject.ivr.domain.Config;
+import org.motechproject.ivr.service.CallInitiationException;
+import org.motechproject.ivr.service.ProviderBusyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dials the queued outgoing calls of a single IVR provider configuration. Calls with a higher priority are dialed
+ * first, calls with the same priority in the order they were queued. A dispatcher thread takes the calls from the
+ * queue, waits until the {@link CallPacer} of the configuration allows another call and hands the call over to the
+ * shared dialing threads. Calls rejected by a busy provider are queued again after a delay, up to the configured
+ * number of retries, only the last rejected attempt is recorded as a failed call.
+ */
+class OutboundCallDialer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboundCallDialer.class);
+
+    private static final long POLL_TIMEOUT = 1;
+
+    private final String configName;
+    private final OutboundCallServiceImpl outboundCallService;
+    private final CallPacer pacer;
+    private final ExecutorService dialExecutor;
+    private final ScheduledExecutorService retryScheduler;
+    private final int maxRetries;
+    private final long retryDelay;
+
+    private final PriorityBlockingQueue<QueuedCall> queue = new PriorityBlockingQueue<>(11, new Comparator<QueuedCall>() {
+        @Override
+        public int compare(QueuedCall call, QueuedCall other) {
+            if (call.getPriority() != other.getPriority()) {
+                return call.getPriority() > other.getPriority() ? -1 : 1;
+            }
+            return Long.compare(call.getSequence(), other.getSequence());
+        }
+    });
+    private final Semaphore capacity;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread dispatcherThread;
+
+    OutboundCallDialer(String configName, OutboundCallServiceImpl outboundCallService, CallPacer pacer, //NO CHECKSTYLE ArgumentCount
+                       ExecutorService dialExecutor, ScheduledExecutorService retryScheduler, int queueCapacity,
+                       int maxRetries, long retryDelay) {
+        this.configName = configName;
+        this.outboundCallService = outboundCallService;
+        this.pacer = pacer;
+        this.dialExecutor = dialExecutor;
+        this.retryScheduler = retryScheduler;
+        this.capacity = new Semaphore(queueCapacity);
+        this.maxRetries = maxRetries;
+        this.retryDelay = retryDelay;
+    }
+
+    void start() {
+        running = true;
+        dispatcherThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "ivr-dialer-" + configName);
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    /**
+     * Stops dialing. The calls still in the queue are not dialed.
+     */
+    void stop() {
+        running = false;
+        dispatcherThread.interrupt();
+
+        if (!queue.isEmpty()) {
+            LOGGER.warn("Stopped dialing calls for config {}, {} queued calls were not dialed", configName, queue.size());
+        }
+    }
+
+    /**
+     * Queues a call, blocking while the queue is full.
+     *
+     * @param params the parameters of the call
+     * @param priority the priority of the call, higher priorities are dialed first
+     */
+    void enqueue(Map<String, String> params, int priority) {
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CallInitiationException(String.format("Interrupted while queueing a call for config %s",
+                    configName), e);
+        }
+        queue.add(new QueuedCall(params, priority, sequence.incrementAndGet(), 0));
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    private void dispatch() {
+        while (running) {
+            final QueuedCall call;
+            try {
+                call = queue.poll(POLL_TIMEOUT, TimeUnit.SECONDS);
+                if (call == null) {
+                    continue;
+                }
+                if (call.getAttempt() == 0) {
+                    capacity.release();
+                }
+
+                final Config config = outboundCallService.getDialerConfig(configName);
+                if (config == null) {
+                    LOGGER.error("Config {} no longer exists, dropping queued call {}", configName, call.getParams());
+                    continue;
+                }
+
+                pacer.acquire(config.getMaxCallsPerSecond(), config.getMaxConcurrentCalls());
+                submit(config, call);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void submit(final Config config, final QueuedCall call) {
+        try {
+            dialExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        outboundCallService.dial(config, call.getParams(), call.getAttempt() >= maxRetries);
+                    } catch (ProviderBusyException e) {
+                        retry(call, e);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Unable to initiate call {} for config {}", call.getParams(), configName, e);
+                    } finally {
+                        pacer.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pacer.release();
+            LOGGER.warn("Dialer is shutting down, call {} for config {} was not dialed", call.getParams(), configName);
+        }
+    }
+
+    private void retry(final QueuedCall call, ProviderBusyException cause) {
+        if (call.getAttempt() >= maxRetries) {
+            LOGGER.error("Provider busy, giving up on call {} for config {} after {} retries", call.getParams(),
+                    configName, maxRetries, cause);
+            return;
+        }
+
+        LOGGER.info("Provider busy, retrying call {} for config {} in {} ms", call.getParams(), configName,
+                retryDelay);
+        try {
+            retryScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    queue.add(new QueuedCall(call.getParams(), call.getPriority(), call.getSequence(),
+                            call.getAttempt() + 1));
+                }
+            }, retryDelay * (call.getAttempt() + 1), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Dialer is shutting down, call {} for config {} will not be retried", call.getParams(),
+                    configName);
+        }
+    }
+
+    private static class QueuedCall {
+        private final Map<String, String> params;
+        private final int priority;
+        private final long sequence;
+        private final int attempt;
+
+        QueuedCall(Map<String, String> params, int priority, long sequence, int attempt) {
+            this.params = params;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.attempt = attempt;
+        }
+
+        Map<String, String> getParams() {
+            return params;
+        }
+
+        int getPriority() {
+            return priority;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        int getAttempt() {
+            return attempt;
+        }
+    }
+}
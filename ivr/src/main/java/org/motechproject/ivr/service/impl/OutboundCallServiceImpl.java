@@ -14,6 +14,7 @@ import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.StatusLine;
 import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -23,7 +24,10 @@ import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.motechproject.admin.service.StatusMessageService;
@@ -36,17 +40,20 @@ import org.motechproject.ivr.domain.HttpMethod;
 import org.motechproject.ivr.event.EventParams;
 import org.motechproject.ivr.event.EventSubjects;
 import org.motechproject.ivr.exception.ConfigNotFoundException;
-import org.motechproject.ivr.repository.CallDetailRecordDataService;
+import org.motechproject.ivr.service.CallDetailRecordWriter;
 import org.motechproject.ivr.service.CallInitiationException;
 import org.motechproject.ivr.service.ConfigService;
 import org.motechproject.ivr.service.OutboundCallService;
+import org.motechproject.ivr.service.ProviderBusyException;
+import org.motechproject.server.config.SettingsFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedWriter;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -54,10 +61,8 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -65,32 +70,140 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.motechproject.ivr.util.SettingsUtils.getIntProperty;
+import static org.motechproject.ivr.util.SettingsUtils.getProperty;
 
 /**
- * Generates & sends an HTTP request to an IVR provider to trigger an outbound call
+ * Generates & sends an HTTP request to an IVR provider to trigger an outbound call. All requests share a pooled HTTP
+ * client and are paced according to the calls per second and concurrent calls limits of their configuration. Queued
+ * calls are dialed by an {@link OutboundCallDialer} created for each configuration.
  */
 @Service("outboundCallService")
 public class OutboundCallServiceImpl implements OutboundCallService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OutboundCallServiceImpl.class);
     private ConfigService configService;
-    private CallDetailRecordDataService callDetailRecordDataService;
+    private CallDetailRecordWriter callDetailRecordWriter;
     private EventRelay eventRelay;
     private StatusMessageService statusMessageService;
+    private SettingsFacade settingsFacade;
     private static final String FILE_PROTOCOL = "file";
     private static final String HTTP_PROTOCOL = "http";
     private static final String MODULE_NAME = "ivr";
     public static final List<Integer> ACCEPTABLE_IVR_RESPONSE_STATUSES = Arrays.asList(HttpStatus.SC_OK,
             HttpStatus.SC_ACCEPTED, HttpStatus.SC_CREATED);
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    public static final List<Integer> BUSY_IVR_RESPONSE_STATUSES = Arrays.asList(SC_TOO_MANY_REQUESTS,
+            HttpStatus.SC_SERVICE_UNAVAILABLE);
+
+    private static final String MAX_CONNECTIONS_PROPERTY = "ivr.http.maxConnections";
+    private static final String MAX_CONNECTIONS_PER_ROUTE_PROPERTY = "ivr.http.maxConnectionsPerRoute";
+    private static final String CONNECT_TIMEOUT_PROPERTY = "ivr.http.connectTimeoutMillis";
+    private static final String SOCKET_TIMEOUT_PROPERTY = "ivr.http.socketTimeoutMillis";
+    private static final String DIALER_THREADS_PROPERTY = "ivr.dialer.threads";
+    private static final String DIALER_QUEUE_CAPACITY_PROPERTY = "ivr.dialer.queueCapacity";
+    private static final String DIALER_MAX_RETRIES_PROPERTY = "ivr.dialer.maxRetries";
+    private static final String DIALER_RETRY_DELAY_PROPERTY = "ivr.dialer.retryDelaySeconds";
+    private static final String CALL_FILE_STAGING_DIR_PROPERTY = "ivr.callFile.stagingDirName";
+    private static final String CALL_FILE_RELEASE_INTERVAL_PROPERTY = "ivr.callFile.releaseIntervalMillis";
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 100;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    private static final int DEFAULT_SOCKET_TIMEOUT = 30000;
+    private static final int DEFAULT_DIALER_THREADS = 20;
+    private static final int DEFAULT_DIALER_QUEUE_CAPACITY = 10000;
+    private static final int DEFAULT_DIALER_MAX_RETRIES = 3;
+    private static final int DEFAULT_DIALER_RETRY_DELAY = 30;
+    private static final String DEFAULT_CALL_FILE_STAGING_DIR = ".motech-ivr-staging";
+    private static final int DEFAULT_CALL_FILE_RELEASE_INTERVAL = 100;
+
+    private final ConcurrentMap<String, CallPacer> pacers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, OutboundCallDialer> dialers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CallFileSpooler> spoolers = new ConcurrentHashMap<>();
+
+    private PoolingClientConnectionManager connectionManager;
+    private HttpClient httpClient;
+    private ExecutorService dialExecutor;
+    private ScheduledExecutorService scheduler;
 
     @Autowired
     public OutboundCallServiceImpl(@Qualifier("configService") ConfigService configService,
                                    StatusMessageService statusMessageService,
-                                   CallDetailRecordDataService callDetailRecordDataService, EventRelay eventRelay) {
+                                   CallDetailRecordWriter callDetailRecordWriter, EventRelay eventRelay,
+                                   @Qualifier("ivrSettings") SettingsFacade settingsFacade) {
         this.configService = configService;
         this.statusMessageService = statusMessageService;
-        this.callDetailRecordDataService = callDetailRecordDataService;
+        this.callDetailRecordWriter = callDetailRecordWriter;
         this.eventRelay = eventRelay;
+        this.settingsFacade = settingsFacade;
+    }
+
+    /**
+     * Creates the pooled HTTP client and the threads dialing the queued calls, and puts the call files staged by a
+     * previous run back on the backlog.
+     */
+    @PostConstruct
+    public void start() {
+        connectionManager = new PoolingClientConnectionManager();
+        connectionManager.setMaxTotal(getIntProperty(settingsFacade, MAX_CONNECTIONS_PROPERTY,
+                DEFAULT_MAX_CONNECTIONS));
+        connectionManager.setDefaultMaxPerRoute(getIntProperty(settingsFacade, MAX_CONNECTIONS_PER_ROUTE_PROPERTY,
+                DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+
+        DefaultHttpClient client = new DefaultHttpClient(connectionManager);
+        HttpConnectionParams.setConnectionTimeout(client.getParams(),
+                getIntProperty(settingsFacade, CONNECT_TIMEOUT_PROPERTY, DEFAULT_CONNECT_TIMEOUT));
+        HttpConnectionParams.setSoTimeout(client.getParams(),
+                getIntProperty(settingsFacade, SOCKET_TIMEOUT_PROPERTY, DEFAULT_SOCKET_TIMEOUT));
+        httpClient = client;
+
+        dialExecutor = Executors.newFixedThreadPool(
+                getIntProperty(settingsFacade, DIALER_THREADS_PROPERTY, DEFAULT_DIALER_THREADS),
+                new DaemonThreadFactory("ivr-dialer-worker-"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("ivr-dialer-scheduler-"));
+
+        long releaseInterval = getIntProperty(settingsFacade, CALL_FILE_RELEASE_INTERVAL_PROPERTY,
+                DEFAULT_CALL_FILE_RELEASE_INTERVAL);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    releaseStagedCallFiles();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unable to release the staged call files", e);
+                }
+            }
+        }, releaseInterval, releaseInterval, TimeUnit.MILLISECONDS);
+
+        recoverStagedCallFiles();
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (OutboundCallDialer dialer : dialers.values()) {
+            dialer.stop();
+        }
+        dialers.clear();
+
+        scheduler.shutdownNow();
+        dialExecutor.shutdown();
+        try {
+            dialExecutor.awaitTermination(getIntProperty(settingsFacade, SOCKET_TIMEOUT_PROPERTY,
+                    DEFAULT_SOCKET_TIMEOUT), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connectionManager.shutdown();
     }
 
     private void addCallDetailRecord(String callStatus, Config config, Map<String, String> params,
@@ -110,7 +223,7 @@ public class OutboundCallServiceImpl implements OutboundCallService {
             }
         }
 
-        callDetailRecordDataService.create(callDetailRecord);
+        callDetailRecordWriter.write(callDetailRecord);
     }
 
     @Override
@@ -126,15 +239,78 @@ public class OutboundCallServiceImpl implements OutboundCallService {
     public void initiateCall(String configName, Map<String, String> parameters) {
         LOGGER.debug("initiateCall(configName = {}, params = {})", configName, parameters);
 
-        Map<String, String> params = new HashMap<>(parameters);
+        Config config = getValidConfig(configName);
+        CallPacer pacer = getPacer(configName);
 
-        if (!configService.hasConfig(configName)) {
-            String msg = String.format("Invalid config: '%s'", configName);
-            statusMessageService.warn(msg, MODULE_NAME);
-            throw new CallInitiationException(msg);
+        try {
+            pacer.acquire(config.getMaxCallsPerSecond(), config.getMaxConcurrentCalls());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CallInitiationException(String.format("Interrupted while waiting to initiate a call for config %s",
+                    configName), e);
+        }
+
+        try {
+            dial(config, parameters, true);
+        } finally {
+            pacer.release();
         }
+    }
 
-        Config config = configService.getConfig(configName);
+    @Override
+    public void queueCall(String configName, Map<String, String> params, int priority) {
+        LOGGER.debug("queueCall(configName = {}, params = {}, priority = {})", configName, params, priority);
+
+        getValidConfig(configName);
+        getDialer(configName).enqueue(new HashMap<>(params), priority);
+    }
+
+    @Override
+    public void queueCalls(String configName, Iterable<Map<String, String>> recipients, int priority) {
+        LOGGER.debug("queueCalls(configName = {}, priority = {})", configName, priority);
+
+        getValidConfig(configName);
+        OutboundCallDialer dialer = getDialer(configName);
+
+        int queued = 0;
+        for (Map<String, String> params : recipients) {
+            dialer.enqueue(new HashMap<>(params), priority);
+            queued++;
+        }
+        LOGGER.info("Queued {} calls for config {}", queued, configName);
+    }
+
+    @Override
+    public Map<String, Integer> getCallFileBacklog() {
+        Map<String, Integer> backlog = new HashMap<>();
+        for (Map.Entry<String, CallFileSpooler> entry : spoolers.entrySet()) {
+            backlog.put(entry.getKey(), entry.getValue().getBacklog());
+        }
+        return backlog;
+    }
+
+    /**
+     * Returns the config with the given name for a dialer, null if it doesn't exist anymore.
+     *
+     * @param configName the name of the config
+     * @return the config, or null if it doesn't exist
+     */
+    Config getDialerConfig(String configName) {
+        return configService.hasConfig(configName) ? configService.getConfig(configName) : null;
+    }
+
+    /**
+     * Initiates a call using the given config, without pacing it. A call refused by a busy provider is recorded as
+     * failed only if it is the last attempt, otherwise the caller is expected to dial it again later.
+     *
+     * @param config the config to use
+     * @param parameters the parameters of the call
+     * @param lastAttempt false if the call will be dialed again when the provider is busy
+     * @throws ProviderBusyException if the provider refused the call because it is busy
+     * @throws CallInitiationException if the call couldn't be initiated
+     */
+    void dial(Config config, Map<String, String> parameters, boolean lastAttempt) {
+        Map<String, String> params = new HashMap<>(parameters);
 
         String motechCallId = UUID.randomUUID().toString();
         Map<String, String> completeParams = new HashMap<>(params);
@@ -156,7 +332,7 @@ public class OutboundCallServiceImpl implements OutboundCallService {
             }
 
             case HTTP_PROTOCOL: {
-                executeHttpCall(config, params, completeParams, motechCallId);
+                executeHttpCall(config, params, completeParams, motechCallId, lastAttempt);
                 break;
             }
         }
@@ -167,18 +343,11 @@ public class OutboundCallServiceImpl implements OutboundCallService {
 
         try {
             Path path = Paths.get(new URI(myUri));
-            Path tempDirectory = Files.createTempDirectory(path.getParent(), "motech-ivr");
-            Path tempPath = Files.createTempFile(tempDirectory, "callfile", ".txt");
-
-            try (BufferedWriter bufferedWriter = Files.newBufferedWriter(tempPath)) {
-                for (Map.Entry<String, String> entry : completeParams.entrySet()) {
-                    bufferedWriter.write(String.format("%s: %s", entry.getKey(), entry.getValue()));
-                    bufferedWriter.newLine();
-                }
+            boolean released = getSpooler(config.getName()).spool(path, motechCallId, completeParams,
+                    config.getMaxConcurrentCalls());
+            if (!released) {
+                LOGGER.debug("No free channel for config {}, call file {} was staged", config.getName(), path);
             }
-
-            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
-            tempDirectory.toFile().delete();
         } catch (URISyntaxException | IOException e) {
             String message = String.format("Could not initiate call, unexpected exception: %s", e.toString());
             statusMessageService.warn(message, MODULE_NAME);
@@ -190,11 +359,12 @@ public class OutboundCallServiceImpl implements OutboundCallService {
         addCallDetailRecord(CallDetailRecord.CALL_INITIATED, config, params, motechCallId);
     }
 
-    private void executeHttpCall(Config config, Map<String, String> params, Map<String, String > completeParams, String motechCallId) {
+    private void executeHttpCall(Config config, Map<String, String> params, Map<String, String > completeParams,
+                                 String motechCallId, boolean lastAttempt) {
         HttpUriRequest request = generateHttpRequest(config, completeParams);
         HttpResponse response;
         try {
-            response = new DefaultHttpClient().execute(request);
+            response = httpClient.execute(request);
         } catch (Exception e) {
             String message = String.format("Could not initiate call, could not create or write to file: %s", e.toString());
             statusMessageService.warn(message, MODULE_NAME);
@@ -203,8 +373,27 @@ public class OutboundCallServiceImpl implements OutboundCallService {
             throw new CallInitiationException(message, e);
         }
 
+        try {
+            handleHttpResponse(config, params, motechCallId, response, lastAttempt);
+        } finally {
+            // Always consume the response, so that the connection is returned to the pool
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    private void handleHttpResponse(Config config, Map<String, String> params, String motechCallId,
+                                    HttpResponse response, boolean lastAttempt) {
         StatusLine statusLine = response.getStatusLine();
 
+        if (BUSY_IVR_RESPONSE_STATUSES.contains(statusLine.getStatusCode())) {
+            String message = String.format("Could not initiate call, provider busy: %s", statusLine.toString());
+            if (lastAttempt) {
+                params.put("ErrorMessage", message);
+                addCallDetailRecord(CallDetailRecord.CALL_FAILED, config, params, motechCallId);
+            }
+            throw new ProviderBusyException(message);
+        }
+
         //todo: it's possible that some IVR providers return an HTTP 200 and an error code in the response body.
         //todo: If we encounter such a provider, we'll have to beef up the response processing here
         if (!ACCEPTABLE_IVR_RESPONSE_STATUSES.contains(statusLine.getStatusCode())) {
@@ -243,6 +432,95 @@ public class OutboundCallServiceImpl implements OutboundCallService {
         eventRelay.sendEventMessage(event);
     }
 
+    private Config getValidConfig(String configName) {
+        if (!configService.hasConfig(configName)) {
+            String msg = String.format("Invalid config: '%s'", configName);
+            statusMessageService.warn(msg, MODULE_NAME);
+            throw new CallInitiationException(msg);
+        }
+        return configService.getConfig(configName);
+    }
+
+    private CallPacer getPacer(String configName) {
+        CallPacer pacer = pacers.get(configName);
+        if (pacer == null) {
+            CallPacer created = new CallPacer();
+            pacer = pacers.putIfAbsent(configName, created);
+            if (pacer == null) {
+                pacer = created;
+            }
+        }
+        return pacer;
+    }
+
+    private OutboundCallDialer getDialer(String configName) {
+        OutboundCallDialer dialer = dialers.get(configName);
+        if (dialer == null) {
+            OutboundCallDialer created = new OutboundCallDialer(configName, this, getPacer(configName), dialExecutor,
+                    scheduler,
+                    getIntProperty(settingsFacade, DIALER_QUEUE_CAPACITY_PROPERTY, DEFAULT_DIALER_QUEUE_CAPACITY),
+                    getIntProperty(settingsFacade, DIALER_MAX_RETRIES_PROPERTY, DEFAULT_DIALER_MAX_RETRIES),
+                    TimeUnit.SECONDS.toMillis(getIntProperty(settingsFacade, DIALER_RETRY_DELAY_PROPERTY,
+                            DEFAULT_DIALER_RETRY_DELAY)));
+            dialer = dialers.putIfAbsent(configName, created);
+            if (dialer == null) {
+                created.start();
+                dialer = created;
+            }
+        }
+        return dialer;
+    }
+
+    private CallFileSpooler getSpooler(String configName) {
+        CallFileSpooler spooler = spoolers.get(configName);
+        if (spooler == null) {
+            CallFileSpooler created = new CallFileSpooler(configName, getProperty(settingsFacade,
+                    CALL_FILE_STAGING_DIR_PROPERTY, DEFAULT_CALL_FILE_STAGING_DIR));
+            spooler = spoolers.putIfAbsent(configName, created);
+            if (spooler == null) {
+                spooler = created;
+            }
+        }
+        return spooler;
+    }
+
+    private void recoverStagedCallFiles() {
+        for (Config config : configService.allConfigs().getConfigList()) {
+            String template = config.getOutgoingCallUriTemplate();
+            if (template == null || !template.startsWith(FILE_PROTOCOL + ":")) {
+                continue;
+            }
+
+            String spoolDir = StringUtils.substringBeforeLast(template, "/");
+            if (spoolDir.contains("[")) {
+                // the spool directory depends on the call, its leftovers are recovered by the first call spooled there
+                continue;
+            }
+
+            try {
+                getSpooler(config.getName()).recover(Paths.get(new URI(spoolDir)));
+            } catch (URISyntaxException | IOException | RuntimeException e) {
+                LOGGER.error("Unable to recover the staged call files of config {}", config.getName(), e);
+            }
+        }
+    }
+
+    private void releaseStagedCallFiles() {
+        for (Map.Entry<String, CallFileSpooler> entry : spoolers.entrySet()) {
+            CallFileSpooler spooler = entry.getValue();
+            if (spooler.getBacklog() == 0) {
+                continue;
+            }
+
+            Config config = getDialerConfig(entry.getKey());
+            int released = spooler.releaseStaged(config == null ? 0 : config.getMaxConcurrentCalls());
+            if (released > 0) {
+                LOGGER.debug("Released {} staged call files for config {}, {} still staged", released, entry.getKey(),
+                        spooler.getBacklog());
+            }
+        }
+    }
+
     private String mergeUriAndRemoveParams(String uriTemplate, Map<String, String> params) {
         String mergedURI = uriTemplate;
 
@@ -375,4 +653,19 @@ public class OutboundCallServiceImpl implements OutboundCallService {
         return data;
     }
 
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
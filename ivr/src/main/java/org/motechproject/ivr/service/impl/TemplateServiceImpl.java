@@ -5,6 +5,10 @@ import com.google.gson.JsonIOException;
 import com.google.gson.reflect.TypeToken;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.velocity.exception.ParseErrorException;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
 import org.motechproject.config.core.constants.ConfigurationConstants;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.annotations.MotechListener;
@@ -20,14 +24,17 @@ import org.springframework.core.io.ByteArrayResource;
 import org.springframework.stereotype.Service;
 
 import java.io.InputStream;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * See {@link org.motechproject.ivr.service.TemplateService}. Templates are stored using
  * the {@link org.motechproject.server.config.SettingsFacade} as raw configuration files.
+ * Parsed templates are cached and dropped whenever the templates are reloaded.
  */
 @Service("templateService")
 public class TemplateServiceImpl implements TemplateService {
@@ -36,6 +43,7 @@ public class TemplateServiceImpl implements TemplateService {
     private static final Logger LOGGER = LoggerFactory.getLogger(TemplateServiceImpl.class);
     private SettingsFacade settingsFacade;
     private Map<String, Template> templates = new HashMap<>();
+    private Map<String, CompiledTemplate> compiledTemplates = new ConcurrentHashMap<>();
 
     private synchronized void loadTemplates() {
         List<Template> templateList;
@@ -54,6 +62,7 @@ public class TemplateServiceImpl implements TemplateService {
         for (Template template : templateList) {
             templates.put(template.getName(), template);
         }
+        compiledTemplates.clear();
     }
 
     @Autowired
@@ -79,6 +88,20 @@ public class TemplateServiceImpl implements TemplateService {
         throw new TemplateNotFoundException(String.format("Unknown template: '%s'.", name));
     }
 
+    @Override
+    public org.apache.velocity.Template getCompiledTemplate(String name) {
+        Template template = getTemplate(name);
+
+        // The templates might have been reloaded while another thread was parsing the old version of this one
+        CompiledTemplate compiled = compiledTemplates.get(name);
+        if (compiled == null || compiled.getSource() != template) {
+            compiled = new CompiledTemplate(template, compile(template));
+            compiledTemplates.put(name, compiled);
+        }
+
+        return compiled.getTemplate();
+    }
+
     @Override
     public List<Template> allTemplates() {
         return new ArrayList<Template>(templates.values());
@@ -97,4 +120,40 @@ public class TemplateServiceImpl implements TemplateService {
         settingsFacade.saveRawConfig(TEMPLATE_FILE_NAME, resource);
         loadTemplates();
     }
+
+    private org.apache.velocity.Template compile(Template template) {
+        LOGGER.debug("Parsing template {}", template.getName());
+
+        RuntimeServices runtimeServices = RuntimeSingleton.getRuntimeServices();
+        org.apache.velocity.Template compiled = new org.apache.velocity.Template();
+        compiled.setName(template.getName());
+        compiled.setRuntimeServices(runtimeServices);
+
+        try {
+            compiled.setData(runtimeServices.parse(new StringReader(template.getValue()), template.getName()));
+        } catch (ParseException e) {
+            throw new ParseErrorException(e);
+        }
+        compiled.initDocument();
+
+        return compiled;
+    }
+
+    private static class CompiledTemplate {
+        private final Template source;
+        private final org.apache.velocity.Template template;
+
+        CompiledTemplate(Template source, org.apache.velocity.Template template) {
+            this.source = source;
+            this.template = template;
+        }
+
+        Template getSource() {
+            return source;
+        }
+
+        org.apache.velocity.Template getTemplate() {
+            return template;
+        }
+    }
 }
@@ -3,6 +3,7 @@ package org.motechproject.ivr.web;
 
 import org.motechproject.ivr.domain.Configs;
 import org.motechproject.ivr.service.ConfigService;
+import org.motechproject.ivr.service.OutboundCallService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +18,8 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import java.util.Map;
+
 import static org.motechproject.ivr.util.Constants.HAS_MANAGE_IVR_ROLE;
 
 /**
@@ -28,6 +31,7 @@ public class ConfigController {
     private static final Logger LOGGER = LoggerFactory.getLogger(ConfigController.class);
 
     private ConfigService configService;
+    private OutboundCallService outboundCallService;
 
     /**
      * Retrieves all IVR configurations.
@@ -52,6 +56,17 @@ public class ConfigController {
         return configService.allConfigs();
     }
 
+    /**
+     * Retrieves the number of call files staged for each file:// configuration, waiting for a free channel.
+     * @return the number of staged call files, keyed by the configuration name
+     */
+    @RequestMapping(value = "/ivr-configs/spool-backlog", method = RequestMethod.GET)
+    @ResponseBody
+    @PreAuthorize(HAS_MANAGE_IVR_ROLE)
+    public Map<String, Integer> getCallFileBacklog() {
+        return outboundCallService.getCallFileBacklog();
+    }
+
     /**
      * Handles all exceptions. Returns error code 500 and the message of the exception as body.
      * @param e the exception to handle
@@ -70,4 +85,9 @@ public class ConfigController {
     public void setConfigService(ConfigService configService) {
         this.configService = configService;
     }
+
+    @Autowired
+    public void setOutboundCallService(OutboundCallService outboundCallService) {
+        this.outboundCallService = outboundCallService;
+    }
 }
@@ -7,7 +7,7 @@ import org.motechproject.ivr.domain.CallDetailRecord;
 import org.motechproject.ivr.domain.Config;
 import org.motechproject.ivr.event.EventParams;
 import org.motechproject.ivr.exception.ConfigNotFoundException;
-import org.motechproject.ivr.repository.CallDetailRecordDataService;
+import org.motechproject.ivr.service.CallDetailRecordWriter;
 import org.motechproject.ivr.service.ConfigService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,14 +29,14 @@ public final class LogAndEventHelper {
      * event and logging it, so this function is called by both to avoid code duplication.
      *
      * @param configService the service used for config retrieval
-     * @param cdrService the service used for logging call detail records
+     * @param cdrWriter the writer used for logging call detail records
      * @param messageService the admin messages service, used for posting admin messages
      * @param eventRelay the event relay used for publishing MOTECH events
      * @param configName name of the configuration used
      * @param params the parameters of the call to log
      */
     public static void sendAndLogEvent(String eventSubject, ConfigService configService, //NO CHECKSTYLE ArgumentCount
-                                       CallDetailRecordDataService cdrService, StatusMessageService messageService,
+                                       CallDetailRecordWriter cdrWriter, StatusMessageService messageService,
                                        EventRelay eventRelay, String configName, String templateName,
                                        Map<String, String> params) {
         if (!configService.hasConfig(configName)) {
@@ -71,9 +71,8 @@ public final class LogAndEventHelper {
         LOGGER.debug("Sending MotechEvent {}", event.toString());
         eventRelay.sendEventMessage(event);
 
-        // Save the CDR
+        // Queue the CDR for saving, so that the provider doesn't wait for the database
         LOGGER.debug("Saving CallDetailRecord {}", callDetailRecord);
-        cdrService.create(callDetailRecord);
-
+        cdrWriter.write(callDetailRecord);
     }
 }
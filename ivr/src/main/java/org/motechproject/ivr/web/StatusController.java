@@ -3,7 +3,7 @@ package org.motechproject.ivr.web;
 import org.motechproject.admin.service.StatusMessageService;
 import org.motechproject.event.listener.EventRelay;
 import org.motechproject.ivr.event.EventSubjects;
-import org.motechproject.ivr.repository.CallDetailRecordDataService;
+import org.motechproject.ivr.service.CallDetailRecordWriter;
 import org.motechproject.ivr.service.ConfigService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,16 +32,16 @@ public class StatusController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StatusController.class);
     public static final String XML_OK_RESPONSE = "<?xml version=\"1.0\"?><response>OK</response>";
-    private CallDetailRecordDataService callDetailRecordDataService;
+    private CallDetailRecordWriter callDetailRecordWriter;
     private ConfigService configService;
     private StatusMessageService statusMessageService;
     private EventRelay eventRelay;
 
     @Autowired
-    public StatusController(CallDetailRecordDataService callDetailRecordDataService, EventRelay eventRelay,
+    public StatusController(CallDetailRecordWriter callDetailRecordWriter, EventRelay eventRelay,
                             @Qualifier("configService") ConfigService configService,
                             StatusMessageService statusMessageService) {
-        this.callDetailRecordDataService = callDetailRecordDataService;
+        this.callDetailRecordWriter = callDetailRecordWriter;
         this.eventRelay = eventRelay;
         this.configService = configService;
         this.statusMessageService = statusMessageService;
@@ -64,7 +64,7 @@ public class StatusController {
         LOGGER.debug(String.format("handle(configName = %s, parameters = %s, headers = %s)", configName, params,
                 headers));
 
-        sendAndLogEvent(EventSubjects.CALL_STATUS, configService, callDetailRecordDataService, statusMessageService,
+        sendAndLogEvent(EventSubjects.CALL_STATUS, configService, callDetailRecordWriter, statusMessageService,
                 eventRelay, configName, null, params);
 
         return XML_OK_RESPONSE;
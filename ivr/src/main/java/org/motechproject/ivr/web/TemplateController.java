@@ -5,16 +5,16 @@ import org.apache.velocity.app.Velocity;
 import org.motechproject.admin.service.StatusMessageService;
 import org.motechproject.event.listener.EventRelay;
 import org.motechproject.ivr.domain.Config;
+import org.motechproject.ivr.domain.LatencyHistogram;
 import org.motechproject.ivr.domain.Template;
 import org.motechproject.ivr.event.EventSubjects;
 import org.motechproject.ivr.exception.ConfigNotFoundException;
 import org.motechproject.ivr.exception.IvrTemplateException;
 import org.motechproject.ivr.exception.TemplateNotFoundException;
-import org.motechproject.ivr.repository.CallDetailRecordDataService;
+import org.motechproject.ivr.service.CallDetailRecordWriter;
 import org.motechproject.ivr.service.ConfigService;
 import org.motechproject.ivr.service.TemplateService;
 import org.motechproject.mds.service.MDSLookupService;
-import org.motechproject.osgi.web.util.OSGiServiceUtils;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,11 +34,14 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletResponse;
-import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.motechproject.ivr.util.Constants.HAS_MANAGE_IVR_ROLE;
 import static org.motechproject.ivr.web.LogAndEventHelper.sendAndLogEvent;
@@ -47,7 +50,8 @@ import static org.motechproject.ivr.web.LogAndEventHelper.sendAndLogEvent;
  * Responds to HTTP queries to {motech-server}/module/ivr/template/{configName}/{templateName} by creating a
  * CallDetailRecord entry in the database, posting a corresponding MOTECH event on the queue and returning the text
  * corresponding to the given template name and where all variable are replaced by the values passed as query parameters
- * See https://velocity.apache.org/ for the template language rules.
+ * See https://velocity.apache.org/ for the template language rules. The time it takes to render each template is
+ * recorded in a {@link LatencyHistogram}.
  */
 @Controller
 public class TemplateController {
@@ -58,13 +62,14 @@ public class TemplateController {
     private static final String LOGSYSTEM_CLASS = "runtime.log.logsystem.class";
     private static final String LOGSYSTEM_LOGGER = "runtime.log.logsystem.log4j.logger";
 
-    private CallDetailRecordDataService callDetailRecordDataService;
+    private CallDetailRecordWriter callDetailRecordWriter;
     private TemplateService templateService;
     private ConfigService configService;
     private StatusMessageService statusMessageService;
     private EventRelay eventRelay;
     private MDSLookupService mdsLookupService;
-    private BundleContext bundleContext;
+    private TrackedServices trackedServices;
+    private final ConcurrentMap<String, LatencyHistogram> renderLatencies = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void setUpVelocityProperties() {
@@ -77,6 +82,13 @@ public class TemplateController {
         }
     }
 
+    @PreDestroy
+    public void closeServiceTrackers() {
+        if (trackedServices != null) {
+            trackedServices.close();
+        }
+    }
+
     /**
      * Listens to HTTP calls to http://{server}:{port}/module/ivr/template/{config}/{id}?key1=val1&key2=val2&... from
      * IVR providers. Creates a corresponding CDR entity in the database. Sends a MOTECH message with the CDR data in
@@ -94,10 +106,12 @@ public class TemplateController {
         LOGGER.debug(String.format("handle(configName = %s, templateName = %s, parameters = %s, headers = %s)",
                 configName, templateName, params, headers));
 
-        sendAndLogEvent(EventSubjects.TEMPLATE_REQUEST, configService, callDetailRecordDataService,
+        sendAndLogEvent(EventSubjects.TEMPLATE_REQUEST, configService, callDetailRecordWriter,
                 statusMessageService, eventRelay, configName, templateName, params);
 
-        Template template = templateService.getTemplate(templateName);
+        long start = System.currentTimeMillis();
+
+        org.apache.velocity.Template template = templateService.getCompiledTemplate(templateName);
 
         // No need to test for the existence of the config since it's already been done in the sendAndLogEvent() call
         Config config = configService.getConfig(configName);
@@ -117,7 +131,7 @@ public class TemplateController {
         StringBuilder notFoundServices = new StringBuilder();
 
         for (Map.Entry<String, String> entry : config.getServicesMap().entrySet()) {
-            Object service = OSGiServiceUtils.findService(bundleContext, entry.getValue());
+            Object service = trackedServices.getService(entry.getValue());
             if (service != null) {
                 context.put(entry.getKey(), service);
             } else {
@@ -131,11 +145,9 @@ public class TemplateController {
         }
         // Merge the template
         StringWriter writer = new StringWriter();
-        try {
-            Velocity.evaluate(context, writer, String.format("%s-%s", configName, templateName), template.getValue());
-        } catch (IOException e) {
-            throw new IllegalStateException(String.format("Error evaluating template: %s", e.toString()), e);
-        }
+        template.merge(context, writer);
+
+        getRenderLatency(templateName).record(System.currentTimeMillis() - start);
 
         LOGGER.debug("Merged {}:\n**********\n**********\n{}\n**********\n**********\n", templateName,
                 writer.toString());
@@ -155,6 +167,17 @@ public class TemplateController {
     }
 
 
+    /**
+     * Retrieves the render latency histograms of the templates rendered since the module was started.
+     * @return the histograms, keyed by the template name
+     */
+    @RequestMapping(value = "/ivr-templates/metrics", method = RequestMethod.GET)
+    @ResponseBody
+    @PreAuthorize(HAS_MANAGE_IVR_ROLE)
+    public Map<String, LatencyHistogram> getRenderLatencies() {
+        return Collections.unmodifiableMap(renderLatencies);
+    }
+
     /**
      * Updates the templates. The new templates collection will overwrite the old one.
      * @param templates the new collection of templates to persist
@@ -220,14 +243,26 @@ public class TemplateController {
         return e.getMessage();
     }
 
+    private LatencyHistogram getRenderLatency(String templateName) {
+        LatencyHistogram histogram = renderLatencies.get(templateName);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = renderLatencies.putIfAbsent(templateName, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
     @Autowired
-    public void setCallDetailRecordDataService(CallDetailRecordDataService callDetailRecordDataService) {
-        this.callDetailRecordDataService = callDetailRecordDataService;
+    public void setCallDetailRecordWriter(CallDetailRecordWriter callDetailRecordWriter) {
+        this.callDetailRecordWriter = callDetailRecordWriter;
     }
 
     @Autowired
     public void setBundleContext(BundleContext bundleContext) {
-        this.bundleContext = bundleContext;
+        this.trackedServices = new TrackedServices(bundleContext);
     }
 
     @Autowired
@@ -0,0 +1,55 @@
+package org.motechproject.ivr.web;
+
+import org.motechproject.osgi.web.util.OSGiServiceUtils;
+import org.osgi.framework.BundleContext;
+import org.osgi.util.tracker.ServiceTracker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the OSGi services exposed to the templates. Every service class gets a {@link ServiceTracker}, opened the
+ * first time the service is requested, so that the following requests get the tracked service without querying the
+ * service registry or waiting for the service.
+ */
+class TrackedServices {
+
+    private final BundleContext bundleContext;
+    private final ConcurrentMap<String, ServiceTracker> trackers = new ConcurrentHashMap<>();
+
+    TrackedServices(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
+    /**
+     * Returns the service with the given class name. If the tracker doesn't hold the service, the service is looked up
+     * in the registry, waiting for it like {@link OSGiServiceUtils#findService(BundleContext, String)} does.
+     *
+     * @param className the class name of the service
+     * @return the service, null if it isn't available
+     */
+    Object getService(String className) {
+        ServiceTracker tracker = trackers.get(className);
+        if (tracker == null) {
+            ServiceTracker created = new ServiceTracker(bundleContext, className, null);
+            tracker = trackers.putIfAbsent(className, created);
+            if (tracker == null) {
+                created.open();
+                tracker = created;
+            }
+        }
+
+        Object service = tracker.getService();
+        return service != null ? service : OSGiServiceUtils.findService(bundleContext, className);
+    }
+
+    /**
+     * Closes all trackers.
+     */
+    void close() {
+        for (ServiceTracker tracker : trackers.values()) {
+            tracker.close();
+        }
+        trackers.clear();
+    }
+}
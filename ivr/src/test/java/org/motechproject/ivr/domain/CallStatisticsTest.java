@@ -0,0 +1,37 @@
+package org.motechproject.ivr.domain;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class CallStatisticsTest {
+
+    @Test
+    public void shouldAggregateDurations() {
+        CallStatistics statistics = new CallStatistics("2015-03-01 10", "ANSWERED");
+
+        for (long duration = 1; duration <= 100; duration++) {
+            statistics.add(duration);
+        }
+        statistics.add(null);
+
+        assertEquals(101, statistics.getCount());
+        assertEquals(50.5, statistics.getAverageDuration(), 0.001);
+        assertEquals(50, statistics.getMedianDuration());
+        assertEquals(90, statistics.getP90Duration());
+        assertEquals(99, statistics.getP99Duration());
+        assertEquals(100, statistics.getDurationPercentile(100));
+    }
+
+    @Test
+    public void shouldReturnZeroDurationsWithoutKnownDurations() {
+        CallStatistics statistics = new CallStatistics("2015-03-01 10", "FAILED");
+
+        statistics.add(null);
+        statistics.add(null);
+
+        assertEquals(2, statistics.getCount());
+        assertEquals(0.0, statistics.getAverageDuration(), 0.001);
+        assertEquals(0, statistics.getMedianDuration());
+    }
+}
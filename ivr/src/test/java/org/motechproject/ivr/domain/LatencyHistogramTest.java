@@ -0,0 +1,41 @@
+package org.motechproject.ivr.domain;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * LatencyHistogram Unit Tests
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldCountRendersPerBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(7);
+        histogram.record(10);
+        histogram.record(5000);
+
+        Map<String, Long> buckets = histogram.getBuckets();
+        assertEquals(11, buckets.size());
+        assertEquals(Long.valueOf(2), buckets.get("<=1ms"));
+        assertEquals(Long.valueOf(0), buckets.get("<=5ms"));
+        assertEquals(Long.valueOf(2), buckets.get("<=10ms"));
+        assertEquals(Long.valueOf(1), buckets.get(">2500ms"));
+
+        assertEquals(5, histogram.getCount());
+        assertEquals(5018, histogram.getTotalTime());
+        assertEquals(1003, histogram.getAverageTime());
+        assertEquals(5000, histogram.getMaxTime());
+    }
+
+    @Test
+    public void shouldReportZeroAverageWithoutRenders() {
+        assertEquals(0, new LatencyHistogram().getAverageTime());
+    }
+}
@@ -11,6 +11,7 @@ import org.motechproject.ivr.domain.Configs;
 import org.motechproject.ivr.domain.HttpMethod;
 import org.motechproject.ivr.exception.ConfigNotFoundException;
 import org.motechproject.ivr.repository.CallDetailRecordDataService;
+import org.motechproject.ivr.service.CallDetailRecordWriter;
 import org.motechproject.ivr.service.ConfigService;
 import org.motechproject.ivr.service.OutboundCallService;
 import org.motechproject.testing.osgi.BasePaxIT;
@@ -50,6 +51,8 @@ public class OutboundCallServiceBundleIT extends BasePaxIT {
     @Inject
     private CallDetailRecordDataService callDetailRecordDataService;
     @Inject
+    private CallDetailRecordWriter callDetailRecordWriter;
+    @Inject
     private ConfigService configService;
 
     private Configs backupConfigs;
@@ -88,6 +91,7 @@ public class OutboundCallServiceBundleIT extends BasePaxIT {
         Map<String, String> params = new HashMap<>();
         outboundCallService.initiateCall(config.getName(), params);
 
+        assertTrue(callDetailRecordWriter.flush());
         List<CallDetailRecord> callDetailRecords = callDetailRecordDataService.retrieveAll();
         assertEquals(1, callDetailRecords.size());
         assertEquals("conf123", callDetailRecords.get(0).getConfigName());
@@ -118,6 +122,7 @@ public class OutboundCallServiceBundleIT extends BasePaxIT {
         assertTrue(exceptionThrown);
 
         //And we're expecting to see one FAILED CDR in the database
+        assertTrue(callDetailRecordWriter.flush());
         List<CallDetailRecord> callDetailRecords = callDetailRecordDataService.retrieveAll();
         assertEquals(1, callDetailRecords.size());
         assertEquals(CallDetailRecord.CALL_FAILED, callDetailRecords.get(0).getCallStatus());
@@ -144,6 +149,7 @@ public class OutboundCallServiceBundleIT extends BasePaxIT {
 
         outboundCallService.initiateCall(config.getName(), params);
 
+        assertTrue(callDetailRecordWriter.flush());
         List<CallDetailRecord> callDetailRecords = callDetailRecordDataService.retrieveAll();
         assertEquals(1, callDetailRecords.size());
         assertEquals("conf789", callDetailRecords.get(0).getConfigName());
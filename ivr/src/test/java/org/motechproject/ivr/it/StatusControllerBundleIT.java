@@ -13,6 +13,7 @@ import org.motechproject.ivr.domain.Config;
 import org.motechproject.ivr.domain.Configs;
 import org.motechproject.ivr.domain.Template;
 import org.motechproject.ivr.repository.CallDetailRecordDataService;
+import org.motechproject.ivr.service.CallDetailRecordWriter;
 import org.motechproject.ivr.service.ConfigService;
 import org.motechproject.testing.osgi.BasePaxIT;
 import org.motechproject.testing.osgi.container.MotechNativeTestContainerFactory;
@@ -32,6 +33,7 @@ import java.util.UUID;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Verify StatusController present & functional.
@@ -44,6 +46,9 @@ public class StatusControllerBundleIT extends BasePaxIT {
     @Inject
     private CallDetailRecordDataService callDetailRecordDataService;
 
+    @Inject
+    private CallDetailRecordWriter callDetailRecordWriter;
+
     @Inject
     private ConfigService configService;
 
@@ -88,6 +93,7 @@ public class StatusControllerBundleIT extends BasePaxIT {
         assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, response.getStatusLine().getStatusCode());
 
         //Verify we did not log this CDR because service contains an invalid config
+        assertTrue(callDetailRecordWriter.flush());
         List<CallDetailRecord> callDetailRecords = callDetailRecordDataService.retrieveAll();
         assertEquals(0, callDetailRecords.size());
     }
@@ -119,6 +125,7 @@ public class StatusControllerBundleIT extends BasePaxIT {
         assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
 
         //Verify we logged this CDR - by querying on its motechId - which is a GUID
+        assertTrue(callDetailRecordWriter.flush());
         List<CallDetailRecord> callDetailRecords = callDetailRecordDataService.findByMotechCallId(motechCallId);
         assertEquals(1, callDetailRecords.size());
         CallDetailRecord callDetailRecord = callDetailRecords.get(0);
@@ -12,6 +12,7 @@ import org.motechproject.ivr.domain.Config;
 import org.motechproject.ivr.domain.Configs;
 import org.motechproject.ivr.domain.Template;
 import org.motechproject.ivr.repository.CallDetailRecordDataService;
+import org.motechproject.ivr.service.CallDetailRecordWriter;
 import org.motechproject.ivr.service.ConfigService;
 import org.motechproject.ivr.service.TemplateService;
 import org.motechproject.testing.osgi.BasePaxIT;
@@ -47,6 +48,9 @@ public class TemplateControllerBundleIT extends BasePaxIT {
     @Inject
     private CallDetailRecordDataService callDetailRecordDataService;
 
+    @Inject
+    private CallDetailRecordWriter callDetailRecordWriter;
+
     @Inject
     private TemplateService templateService;
 
@@ -90,6 +94,7 @@ public class TemplateControllerBundleIT extends BasePaxIT {
         assertTrue(SimpleHttpClient.execHttpRequest(httpGet, HttpStatus.SC_INTERNAL_SERVER_ERROR));
 
         //Verify we did not log this CDR because service contains an invalid config
+        assertTrue(callDetailRecordWriter.flush());
         List<CallDetailRecord> callDetailRecords = callDetailRecordDataService.retrieveAll();
         assertEquals(0, callDetailRecords.size());
     }
@@ -134,6 +139,7 @@ public class TemplateControllerBundleIT extends BasePaxIT {
         assertTrue(SimpleHttpClient.execHttpRequest(httpGet, "Hello, world"));
 
         // Verify we logged this CDR - by querying on its motechId - which is a GUID
+        assertTrue(callDetailRecordWriter.flush());
         List<CallDetailRecord> callDetailRecords = callDetailRecordDataService.findByMotechCallId(motechCallId);
         assertEquals(1, callDetailRecords.size());
         CallDetailRecord callDetailRecord = callDetailRecords.get(0);
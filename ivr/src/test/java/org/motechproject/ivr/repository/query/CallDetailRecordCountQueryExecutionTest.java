@@ -0,0 +1,52 @@
+package org.motechproject.ivr.repository.query;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.motechproject.ivr.domain.CallDetailRecordFilter;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+
+import javax.jdo.Query;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CallDetailRecordCountQueryExecutionTest {
+
+    @Mock
+    private Query query;
+
+    @Mock
+    private InstanceSecurityRestriction restriction;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+    }
+
+    @Test
+    public void shouldCountMatchingRecordsInDatabase() {
+        when(query.executeWithMap(anyMap())).thenReturn(42L);
+
+        CallDetailRecordFilter filter = new CallDetailRecordFilter();
+        filter.setConfigName("conf");
+        filter.setMotechCallId("call-1");
+
+        Long count = new CallDetailRecordCountQueryExecution(filter).execute(query, restriction);
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(query).setFilter("configName == :configName && motechCallId == :motechCallId");
+        verify(query).setResult("count(this)");
+        verify(query).setUnique(true);
+        verify(query).executeWithMap(params.capture());
+
+        assertEquals(42L, (long) count);
+        assertEquals("conf", params.getValue().get("configName"));
+        assertEquals("call-1", params.getValue().get("motechCallId"));
+    }
+}
@@ -0,0 +1,95 @@
+package org.motechproject.ivr.repository.query;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallDetailRecordFilter;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+
+import javax.jdo.Query;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CallDetailRecordPageQueryExecutionTest {
+
+    @Mock
+    private Query query;
+
+    @Mock
+    private InstanceSecurityRestriction restriction;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(query.executeWithMap(anyMap())).thenReturn(new ArrayList<CallDetailRecord>());
+    }
+
+    @Test
+    public void shouldFilterByGivenCriteria() {
+        DateTime from = new DateTime(2015, 3, 1, 10, 0, DateTimeZone.UTC);
+        DateTime to = from.plusHours(1);
+
+        CallDetailRecordFilter filter = new CallDetailRecordFilter();
+        filter.setConfigName("conf");
+        filter.setCallStatus("ANSWERED");
+        filter.setFrom(from);
+        filter.setTo(to);
+
+        new CallDetailRecordPageQueryExecution(filter, null, 50).execute(query, restriction);
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(query).setFilter("configName == :configName && callStatus == :callStatus"
+                + " && motechTimestamp >= :fromTimestamp && motechTimestamp < :toTimestamp");
+        verify(query).executeWithMap(params.capture());
+
+        assertEquals(4, params.getValue().size());
+        assertEquals("conf", params.getValue().get("configName"));
+        assertEquals("ANSWERED", params.getValue().get("callStatus"));
+        assertEquals(CallDetailRecord.formatTimestamp(from), params.getValue().get("fromTimestamp"));
+        assertEquals(CallDetailRecord.formatTimestamp(to), params.getValue().get("toTimestamp"));
+    }
+
+    @Test
+    public void shouldContinueAfterLastIdOfPreviousPage() {
+        CallDetailRecordFilter filter = new CallDetailRecordFilter();
+        filter.setConfigName("conf");
+
+        new CallDetailRecordPageQueryExecution(filter, 120L, 50).execute(query, restriction);
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(query).setFilter("configName == :configName && id > :afterId");
+        verify(query).setOrdering("id ascending");
+        verify(query).setRange(0, 50);
+        verify(query).executeWithMap(params.capture());
+
+        assertEquals(120L, params.getValue().get("afterId"));
+    }
+
+    @Test
+    public void shouldStartFromFirstRecordWithoutCriteria() {
+        CallDetailRecord record = new CallDetailRecord();
+        when(query.executeWithMap(anyMap())).thenReturn(Arrays.asList(record));
+
+        List<CallDetailRecord> page = new CallDetailRecordPageQueryExecution(new CallDetailRecordFilter(), null, 10)
+                .execute(query, restriction);
+
+        verify(query, never()).setFilter(anyString());
+        verify(query).setOrdering("id ascending");
+        verify(query).setRange(0, 10);
+        assertEquals(Arrays.asList(record), page);
+    }
+}
@@ -0,0 +1,119 @@
+package org.motechproject.ivr.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.repository.CallDetailRecordDataService;
+import org.motechproject.server.config.SettingsFacade;
+import org.springframework.transaction.support.TransactionCallback;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CallDetailRecordWriterImplTest {
+
+    @Mock
+    private CallDetailRecordDataService callDetailRecordDataService;
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private CallDetailRecordWriterImpl writer;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(settingsFacade.getProperty("ivr.cdr.batchSize")).thenReturn("10");
+
+        writer = new CallDetailRecordWriterImpl(callDetailRecordDataService, settingsFacade);
+        writer.start();
+    }
+
+    @After
+    public void tearDown() {
+        writer.stop();
+    }
+
+    @Test
+    public void shouldSaveQueuedRecordsInBatches() {
+        when(callDetailRecordDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return ((TransactionCallback) invocation.getArguments()[0]).doInTransaction(null);
+            }
+        });
+
+        for (int i = 0; i < 25; i++) {
+            writer.write(new CallDetailRecord());
+        }
+
+        assertTrue(writer.flush());
+        verify(callDetailRecordDataService, times(25)).create(any(CallDetailRecord.class));
+    }
+
+    @Test
+    public void shouldSaveRecordsOneByOneWhenBatchFails() {
+        when(callDetailRecordDataService.doInTransaction(any(TransactionCallback.class)))
+                .thenThrow(new IllegalStateException("Transaction failed"));
+
+        writer.write(new CallDetailRecord());
+        writer.write(new CallDetailRecord());
+
+        assertTrue(writer.flush());
+        verify(callDetailRecordDataService, times(2)).create(any(CallDetailRecord.class));
+    }
+
+    @Test
+    public void shouldSaveRecordOnCallerThreadWhenQueueIsFull() throws InterruptedException {
+        final CountDownLatch saving = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(callDetailRecordDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws InterruptedException {
+                saving.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return ((TransactionCallback) invocation.getArguments()[0]).doInTransaction(null);
+            }
+        });
+        when(settingsFacade.getProperty("ivr.cdr.queueCapacity")).thenReturn("1");
+        when(settingsFacade.getProperty("ivr.cdr.offerTimeoutMillis")).thenReturn("10");
+
+        writer.stop();
+        writer = new CallDetailRecordWriterImpl(callDetailRecordDataService, settingsFacade);
+        writer.start();
+
+        CallDetailRecord third = record("3");
+
+        // the writer thread takes the first record and blocks saving it, the second one fills the queue
+        writer.write(record("1"));
+        assertTrue(saving.await(5, TimeUnit.SECONDS));
+        writer.write(record("2"));
+        writer.write(third);
+
+        verify(callDetailRecordDataService).create(third);
+        assertEquals(1, writer.getSavedByCallerCount());
+
+        release.countDown();
+        assertTrue(writer.flush());
+        verify(callDetailRecordDataService, times(3)).create(any(CallDetailRecord.class));
+    }
+
+    private CallDetailRecord record(String from) {
+        CallDetailRecord callDetailRecord = new CallDetailRecord();
+        callDetailRecord.setConfigName("config");
+        callDetailRecord.setFrom(from);
+        return callDetailRecord;
+    }
+}
@@ -0,0 +1,112 @@
+package org.motechproject.ivr.service.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class CallFileSpoolerTest {
+
+    private Path spoolDir;
+    private CallFileSpooler spooler;
+
+    @Before
+    public void setUp() throws IOException {
+        spoolDir = Files.createTempDirectory("outgoing");
+        spooler = new CallFileSpooler("config", ".staging");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(spoolDir.toFile());
+    }
+
+    @Test
+    public void shouldWriteAndReleaseCallFile() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("Channel", "SIP/1234");
+        entries.put("Context", "motech");
+
+        Path target = spoolDir.resolve("call1.call");
+
+        assertTrue(spooler.spool(target, "1", entries, 0));
+        assertEquals("Channel: SIP/1234\nContext: motech\n",
+                new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(spoolDir.resolve(".staging").resolve("1.call")));
+        assertEquals(0, spooler.getBacklog());
+    }
+
+    @Test
+    public void shouldStageCallFilesUntilChannelIsFree() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("Channel", "SIP/1234");
+
+        Path first = spoolDir.resolve("call1.call");
+        Path second = spoolDir.resolve("call2.call");
+
+        assertTrue(spooler.spool(first, "1", entries, 1));
+        assertFalse(spooler.spool(second, "2", entries, 1));
+        assertEquals(1, spooler.getBacklog());
+        assertEquals(0, spooler.releaseStaged(1));
+        assertFalse(Files.exists(second));
+
+        // The provider removes the call file once it is done with the call
+        Files.delete(first);
+
+        assertEquals(1, spooler.releaseStaged(1));
+        assertTrue(Files.exists(second));
+        assertEquals(0, spooler.getBacklog());
+        assertEquals(1, spooler.getSpooled());
+    }
+
+    @Test
+    public void shouldRequeueCallFilesStagedByPreviousRun() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("Channel", "SIP/1234");
+
+        Path first = spoolDir.resolve("call1.call");
+        Path second = spoolDir.resolve("call2.call");
+        Path third = spoolDir.resolve("call3.call");
+
+        assertTrue(spooler.spool(first, "1", entries, 1));
+        assertFalse(spooler.spool(second, "2", entries, 1));
+        assertFalse(spooler.spool(third, "3", entries, 1));
+        spoolDir.resolve(".staging").resolve("3.call3.call").toFile().setLastModified(System.currentTimeMillis());
+        spoolDir.resolve(".staging").resolve("2.call2.call").toFile().setLastModified(System.currentTimeMillis() - 60000);
+
+        // Restart, the provider picked up the released call file in the meantime
+        Files.delete(first);
+        CallFileSpooler restarted = new CallFileSpooler("config", ".staging");
+        restarted.recover(spoolDir);
+
+        assertEquals(2, restarted.getBacklog());
+        assertEquals(1, restarted.releaseStaged(1));
+        assertTrue(Files.exists(second));
+        assertFalse(Files.exists(third));
+
+        Files.delete(second);
+
+        assertEquals(1, restarted.releaseStaged(1));
+        assertTrue(Files.exists(third));
+        assertEquals(0, restarted.getBacklog());
+    }
+
+    @Test
+    public void shouldNotCreateStagingDirectoryWhenRecoveringNothing() throws IOException {
+        spooler.recover(spoolDir);
+
+        assertFalse(Files.exists(spoolDir.resolve(".staging")));
+        assertEquals(0, spooler.getBacklog());
+    }
+}
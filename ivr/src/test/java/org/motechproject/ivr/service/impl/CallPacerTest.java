@@ -0,0 +1,56 @@
+package org.motechproject.ivr.service.impl;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class CallPacerTest {
+
+    @Test
+    public void shouldSpaceCallsAccordingToCallsPerSecond() throws InterruptedException {
+        CallPacer pacer = new CallPacer();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            pacer.acquire(20, 0);
+            pacer.release();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The first call goes out immediately, the other four are spaced 50 ms apart
+        assertTrue(elapsed >= 190);
+    }
+
+    @Test
+    public void shouldWaitForConcurrentCallsToFinish() throws InterruptedException {
+        final CallPacer pacer = new CallPacer();
+        final CountDownLatch acquired = new CountDownLatch(1);
+
+        pacer.acquire(0, 1);
+
+        Thread waiting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pacer.acquire(0, 1);
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        waiting.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        pacer.release();
+
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        assertEquals(1, pacer.getInFlight());
+    }
+}
@@ -0,0 +1,108 @@
+package org.motechproject.ivr.service.impl;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.velocity.VelocityContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.config.core.constants.ConfigurationConstants;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.ivr.domain.Template;
+import org.motechproject.server.config.SettingsFacade;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class TemplateServiceImplTest {
+
+    private static final String TEMPLATE_FILE_NAME = "ivr-templates.json";
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private String templatesJson = "[{\"name\": \"greeting\", \"value\": \"Hello $name\"}]";
+
+    private TemplateServiceImpl templateService;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        when(settingsFacade.getRawConfig(TEMPLATE_FILE_NAME)).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) {
+                return new ByteArrayInputStream(templatesJson.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws IOException {
+                Resource resource = (Resource) invocation.getArguments()[1];
+                templatesJson = IOUtils.toString(resource.getInputStream(), StandardCharsets.UTF_8);
+                return null;
+            }
+        }).when(settingsFacade).saveRawConfig(eq(TEMPLATE_FILE_NAME), any(Resource.class));
+
+        templateService = new TemplateServiceImpl(settingsFacade);
+    }
+
+    @Test
+    public void shouldReuseCompiledTemplate() {
+        org.apache.velocity.Template compiled = templateService.getCompiledTemplate("greeting");
+
+        assertSame(compiled, templateService.getCompiledTemplate("greeting"));
+        assertEquals("Hello Bob", render(compiled));
+    }
+
+    @Test
+    public void shouldEvictCompiledTemplateWhenTemplatesAreUpdated() {
+        org.apache.velocity.Template compiled = templateService.getCompiledTemplate("greeting");
+
+        templateService.updateTemplates(Arrays.asList(new Template("greeting", "Goodbye $name")));
+
+        org.apache.velocity.Template updated = templateService.getCompiledTemplate("greeting");
+        assertNotSame(compiled, updated);
+        assertEquals("Goodbye Bob", render(updated));
+    }
+
+    @Test
+    public void shouldEvictCompiledTemplateWhenTemplateFileChanges() {
+        org.apache.velocity.Template compiled = templateService.getCompiledTemplate("greeting");
+
+        templatesJson = "[{\"name\": \"greeting\", \"value\": \"Welcome $name\"}]";
+        Map<String, Object> params = new HashMap<>();
+        params.put(ConfigurationConstants.FILE_PATH, "/config/org.motechproject.ivr/raw/" + TEMPLATE_FILE_NAME);
+        templateService.handleFileChanged(new MotechEvent(ConfigurationConstants.FILE_CHANGED_EVENT_SUBJECT, params));
+
+        org.apache.velocity.Template updated = templateService.getCompiledTemplate("greeting");
+        assertNotSame(compiled, updated);
+        assertEquals("Welcome Bob", render(updated));
+    }
+
+    private String render(org.apache.velocity.Template template) {
+        VelocityContext context = new VelocityContext();
+        context.put("name", "Bob");
+
+        StringWriter writer = new StringWriter();
+        template.merge(context, writer);
+        return writer.toString();
+    }
+}
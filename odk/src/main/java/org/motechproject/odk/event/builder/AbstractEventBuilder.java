@@ -1,23 +1,57 @@
 package org.motechproject.odk.event.builder;
 
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.odk.constant.EventParameters;
 import org.motechproject.odk.constant.EventSubjects;
 import org.motechproject.odk.domain.Configuration;
 import org.motechproject.odk.domain.FormDefinition;
 import org.motechproject.odk.domain.FormElement;
+import org.motechproject.odk.event.builder.FormEventMapping.Field;
+import org.motechproject.odk.event.builder.FormEventMapping.RepeatGroup;
 import org.motechproject.odk.exception.EventBuilderException;
+import org.motechproject.odk.util.EventBuilderUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Parent class for all {@link org.motechproject.odk.event.builder.EventBuilder} implementations.
  */
 public abstract class AbstractEventBuilder implements EventBuilder {
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Passes the value through unchanged.
+     */
+    protected static final ValueFormatter AS_IS = new ValueFormatter() {
+        @Override
+        public Object format(Object value, Map<String, Object> submission) {
+            return value;
+        }
+    };
+
+    /**
+     * Formats the value, usually a repeat group, as JSON.
+     */
+    protected static final ValueFormatter AS_JSON = new ValueFormatter() {
+        @Override
+        public Object format(Object value, Map<String, Object> submission) throws EventBuilderException {
+            return EventBuilderUtils.formatAsJson(value);
+        }
+    };
+
     /**
      * Builds a list of {@link MotechEvent} from the JSON payload. It will create
      * one persist form instance event and one event for each repeat group, including nested repeat
@@ -30,101 +64,182 @@ public abstract class AbstractEventBuilder implements EventBuilder {
      */
     @Override
     public List<MotechEvent> createEvents(String json, FormDefinition formDefinition, Configuration configuration) throws EventBuilderException {
-        Map<String, Object> data = getData(json);
-        List<MotechEvent> events = createRepeatGroupEvents(data, formDefinition, configuration);
-        events.add(createFormEvent(data, formDefinition, configuration));
-        return events;
+        return createEvents(json, compile(formDefinition, configuration));
     }
 
-    private MotechEvent createFormEvent(Map<String, Object> data, FormDefinition formDefinition, Configuration configuration) throws EventBuilderException {
-        Map<String, Object> params = new HashMap<>();
-        for (FormElement formElement : formDefinition.getFormElements()) {
-            Object value = data.get(formElement.getName());
-            Object formattedValue = formatValue(formElement.getType(), value);
-            if (formattedValue != null) {
-                params.put(formElement.getName(), formattedValue);
+    /**
+     * Builds a list of {@link MotechEvent} from the JSON payload, using a compiled form definition. The repeat group
+     * events come first, followed by the form event.
+     * @param json JSON representation of the form instance data
+     * @param mapping The compiled form definition
+     * @return A List of {@link MotechEvent}
+     * @throws EventBuilderException If an error is encountered while building the event list.
+     */
+    @Override
+    public List<MotechEvent> createEvents(String json, FormEventMapping mapping) throws EventBuilderException {
+        return createEvents(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), mapping);
+    }
+
+    /**
+     * Builds a list of {@link MotechEvent} from a stream of the JSON payload, using a compiled form definition. Only
+     * the values of the fields of the form are read into memory.
+     * @param json Stream of the JSON representation of the form instance data, not closed by this method
+     * @param mapping The compiled form definition
+     * @return A List of {@link MotechEvent}
+     * @throws EventBuilderException If an error is encountered while building the event list.
+     */
+    @Override
+    public List<MotechEvent> createEvents(InputStream json, FormEventMapping mapping) throws EventBuilderException {
+        Map<String, Object> data;
+        try {
+            JsonParser parser = MAPPER.getJsonFactory().createJsonParser(json);
+            try {
+                data = getData(parser, mapping);
+            } finally {
+                parser.close();
             }
+        } catch (IOException e) {
+            throw new EventBuilderException(e);
         }
 
-        params.put(EventParameters.FORM_TITLE, formDefinition.getTitle());
-        params.put(EventParameters.CONFIGURATION_NAME, configuration.getName());
-        String subject = EventSubjects.RECEIVED_FORM + "." + configuration.getName() + "." + formDefinition.getTitle();
-        return new MotechEvent(subject, params);
-    }
+        Map<String, Object> params = new HashMap<>();
+        Map<String, Object> rootScope = new HashMap<>();
 
+        for (Field field : mapping.getFields()) {
+            Object value = format(field, data.get(field.getName()), data);
+            if (field.isRootScope()) {
+                rootScope.put(field.getName(), value);
+            }
+            if (value != null) {
+                params.put(field.getName(), value);
+            }
+        }
 
-    private List<MotechEvent> createRepeatGroupEvents(Map<String, Object> data, FormDefinition formDefinition, Configuration configuration) throws EventBuilderException {
         List<MotechEvent> events = new ArrayList<>();
-        Map<String, Object> rootScopeValues = getRootScope(data, formDefinition);
-        List<FormElement> repeatGroups = getNonNestedRepeatGroups(formDefinition);
-
-        for (FormElement repeatGroup : repeatGroups) {
+        for (RepeatGroup repeatGroup : mapping.getRepeatGroups()) {
             List<Map<String, Object>> repeatGroupInstances = (List<Map<String, Object>>) data.get(repeatGroup.getName());
             for (Map<String, Object> repeatGroupInstance : repeatGroupInstances) {
-                createRepeatGroupEvent(repeatGroup, events, formDefinition, repeatGroupInstance, rootScopeValues, configuration.getName());
+                createRepeatGroupEvent(repeatGroup, events, repeatGroupInstance, rootScope, data);
             }
         }
+
+        params.put(EventParameters.FORM_TITLE, mapping.getFormTitle());
+        params.put(EventParameters.CONFIGURATION_NAME, mapping.getConfigurationName());
+        events.add(new MotechEvent(mapping.getFormSubject(), params));
         return events;
     }
 
-    private Map<String, Object> getRootScope(Map<String, Object> data, FormDefinition formDefinition) throws EventBuilderException {
-        Map<String, Object> values = new HashMap<>();
+    /**
+     * Compiles a form definition into a {@link FormEventMapping} for this builder. The mapping doesn't reference the
+     * form definition, so it can be cached and shared by concurrent submissions.
+     * @param formDefinition The internal representation of the XML form.
+     * @param configuration {@link Configuration}
+     * @return The compiled form definition
+     */
+    @Override
+    public FormEventMapping compile(FormDefinition formDefinition, Configuration configuration) {
+        String configName = configuration.getName();
+        String title = formDefinition.getTitle();
+
+        List<Field> fields = new ArrayList<>();
+        List<RepeatGroup> repeatGroups = new ArrayList<>();
 
         for (FormElement formElement : formDefinition.getFormElements()) {
-            if (!formElement.isRepeatGroup() && !formElement.isPartOfRepeatGroup()) {
-
-                Object value = data.get(formElement.getName());
-                if (value != null) {
-                    values.put(formElement.getName(), formatValue(formElement.getType(), value));
-                } else {
-                    values.put(formElement.getName(), null);
-                }
+            boolean rootScope = !formElement.isRepeatGroup() && !formElement.isPartOfRepeatGroup();
+            fields.add(new Field(formElement.getName(), getFormatter(formElement.getType()), rootScope));
+
+            if (formElement.isRepeatGroup() && !formElement.isPartOfRepeatGroup()) {
+                repeatGroups.add(compileRepeatGroup(formElement, configName, title));
             }
         }
-        return values;
+
+        String formSubject = EventSubjects.RECEIVED_FORM + "." + configName + "." + title;
+        return new FormEventMapping(configuration.getType(), configName, title, formSubject, fields, repeatGroups);
     }
 
-    private List<FormElement> getNonNestedRepeatGroups(FormDefinition formDefinition) {
-        List<FormElement> formElements = new ArrayList<>();
+    private RepeatGroup compileRepeatGroup(FormElement repeatGroup, String configName, String title) {
+        List<Field> fields = new ArrayList<>();
+        List<RepeatGroup> children = new ArrayList<>();
 
-        for (FormElement formElement : formDefinition.getFormElements()) {
-            if (!formElement.isPartOfRepeatGroup() && formElement.isRepeatGroup()) {
-                formElements.add(formElement);
+        for (FormElement child : repeatGroup.getChildren()) {
+            if (child.isRepeatGroup()) {
+                children.add(compileRepeatGroup(child, configName, title));
+            } else {
+                fields.add(new Field(child.getName(), getFormatter(child.getType()), false));
             }
         }
-        return formElements;
+
+        String subject = EventSubjects.REPEAT_GROUP + "." + configName + "." + title + "." + repeatGroup.getName();
+        return new RepeatGroup(repeatGroup.getName(), subject, fields, children);
     }
 
-    private void createRepeatGroupEvent(FormElement repeatGroup, List<MotechEvent> events, FormDefinition formDefinition, Map<String, Object> data,
-                                        Map<String, Object> scope, String configName) throws EventBuilderException {
-        List<FormElement> childRepeatGroups = new ArrayList<>();
+    private void createRepeatGroupEvent(RepeatGroup repeatGroup, List<MotechEvent> events, Map<String, Object> data,
+                                        Map<String, Object> scope, Map<String, Object> submission) throws EventBuilderException {
         Map<String, Object> localScope = new HashMap<>();
         localScope.putAll(scope);
 
-        for (FormElement child : repeatGroup.getChildren()) {
-            if (child.isRepeatGroup()) {
-                childRepeatGroups.add(child);
-            } else {
-                Object value = data.get(child.getName());
-                localScope.put(child.getName(), formatValue(child.getType(), value));
-            }
+        for (Field field : repeatGroup.getFields()) {
+            localScope.put(field.getName(), format(field, data.get(field.getName()), submission));
         }
 
-        String subject = EventSubjects.REPEAT_GROUP + "." + configName + "." + formDefinition.getTitle() + "." + repeatGroup.getName();
-        events.add(new MotechEvent(subject, localScope));
+        events.add(new MotechEvent(repeatGroup.getSubject(), localScope));
 
-        for (FormElement childRepeatGroup : childRepeatGroups) {
+        for (RepeatGroup childRepeatGroup : repeatGroup.getChildren()) {
             List<Map<String, Object>> childRepeatGroupInstances = (List<Map<String, Object>>) data.get(childRepeatGroup.getName());
 
             for (Map<String, Object> childInstance : childRepeatGroupInstances) {
-                createRepeatGroupEvent(childRepeatGroup, events, formDefinition, childInstance, localScope, configName);
+                createRepeatGroupEvent(childRepeatGroup, events, childInstance, localScope, submission);
             }
         }
     }
 
-    protected abstract Object formatValue(String type, Object value) throws EventBuilderException;
+    private Object format(Field field, Object value, Map<String, Object> submission) throws EventBuilderException {
+        return value == null ? null : field.getFormatter().format(value, submission);
+    }
 
-    protected abstract Map<String, Object> getData(String json) throws EventBuilderException;
+    /**
+     * Resolves the formatter for the values of a field type. Called once for every field when a form definition is
+     * compiled.
+     * @param type The type of the field
+     * @return The formatter for the type
+     */
+    protected abstract ValueFormatter getFormatter(String type);
+
+    /**
+     * Reads the values of the form instance from the submission.
+     * @param parser The parser of the submission, not yet advanced to its first token
+     * @param mapping The compiled form definition
+     * @return The values of the form fields, keyed by their names
+     * @throws IOException If the submission can't be parsed
+     * @throws EventBuilderException If the submission doesn't contain form instance data
+     */
+    protected abstract Map<String, Object> getData(JsonParser parser, FormEventMapping mapping) throws IOException, EventBuilderException;
+
+    /**
+     * Reads the given fields of the JSON object the parser is positioned at, skipping the other fields. The parser
+     * is left at the end of the object.
+     * @param parser The parser, positioned at the start of an object
+     * @param names The names of the fields to read
+     * @return The values of the fields present in the object
+     * @throws IOException If the object can't be parsed
+     */
+    protected Map<String, Object> readFields(JsonParser parser, Set<String> names) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Expected a JSON object", parser.getCurrentLocation());
+        }
+
+        Map<String, Object> values = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (names.contains(name)) {
+                values.put(name, MAPPER.readValue(parser, Object.class));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
 
 
 }
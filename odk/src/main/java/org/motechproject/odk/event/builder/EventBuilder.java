@@ -5,6 +5,7 @@ import org.motechproject.odk.domain.Configuration;
 import org.motechproject.odk.domain.FormDefinition;
 import org.motechproject.odk.exception.EventBuilderException;
 
+import java.io.InputStream;
 import java.util.List;
 
 
@@ -30,4 +31,33 @@ public interface EventBuilder {
      */
     List<MotechEvent> createEvents(String json, FormDefinition formDefinition, Configuration configuration) throws EventBuilderException;
 
+    /**
+     * Creates the same list of events as {@link #createEvents(String, FormDefinition, Configuration)}, using a form
+     * definition compiled by this builder.
+     * @param json JSON representation of the form instance data
+     * @param mapping The compiled form definition
+     * @return A list of {@link MotechEvent}
+     * @throws EventBuilderException If an error is encountered while building the list of events.
+     */
+    List<MotechEvent> createEvents(String json, FormEventMapping mapping) throws EventBuilderException;
+
+    /**
+     * Creates the same list of events as {@link #createEvents(String, FormEventMapping)}, parsing the JSON as a
+     * stream. Values which are not fields of the form are skipped without being read into memory.
+     * @param json Stream of the JSON representation of the form instance data
+     * @param mapping The compiled form definition
+     * @return A list of {@link MotechEvent}
+     * @throws EventBuilderException If an error is encountered while building the list of events.
+     */
+    List<MotechEvent> createEvents(InputStream json, FormEventMapping mapping) throws EventBuilderException;
+
+    /**
+     * Compiles a form definition into an immutable {@link FormEventMapping}, which can be cached and reused for all
+     * submissions of the form.
+     * @param formDefinition The internal representation of the XML form.
+     * @param configuration {@link Configuration}
+     * @return The compiled form definition
+     */
+    FormEventMapping compile(FormDefinition formDefinition, Configuration configuration);
+
 }
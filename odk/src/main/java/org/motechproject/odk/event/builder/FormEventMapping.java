@@ -0,0 +1,147 @@
+package org.motechproject.odk.event.builder;
+
+import org.motechproject.odk.domain.ConfigurationType;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable plan for turning submissions of a form into events, compiled from a
+ * {@link org.motechproject.odk.domain.FormDefinition} by {@link EventBuilder#compile}. The form elements are flattened
+ * into the fields read from each scope, with their formatters resolved and the event subjects computed up front, so a
+ * submission is mapped in a single pass over its data. Values of the submission which are not fields of the form are
+ * skipped while parsing, without being read into memory.
+ */
+public final class FormEventMapping {
+
+    private final ConfigurationType configurationType;
+    private final String configurationName;
+    private final String formTitle;
+    private final String formSubject;
+    private final List<Field> fields;
+    private final Set<String> fieldNames;
+    private final List<RepeatGroup> repeatGroups;
+
+    FormEventMapping(ConfigurationType configurationType, String configurationName, String formTitle,
+                     String formSubject, List<Field> fields, List<RepeatGroup> repeatGroups) {
+        this.configurationType = configurationType;
+        this.configurationName = configurationName;
+        this.formTitle = formTitle;
+        this.formSubject = formSubject;
+        this.fields = Collections.unmodifiableList(fields);
+        this.repeatGroups = Collections.unmodifiableList(repeatGroups);
+
+        Set<String> names = new HashSet<>();
+        for (Field field : fields) {
+            names.add(field.getName());
+        }
+        this.fieldNames = Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * @return The type of the configuration the formatters were resolved for
+     */
+    public ConfigurationType getConfigurationType() {
+        return configurationType;
+    }
+
+    public String getConfigurationName() {
+        return configurationName;
+    }
+
+    public String getFormTitle() {
+        return formTitle;
+    }
+
+    String getFormSubject() {
+        return formSubject;
+    }
+
+    /**
+     * @return All fields of the form, read from the top level of the submission
+     */
+    List<Field> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return The names of all fields of the form, the only top level values of a submission which are read
+     */
+    public Set<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    /**
+     * @return The repeat groups which are not nested in other repeat groups
+     */
+    List<RepeatGroup> getRepeatGroups() {
+        return repeatGroups;
+    }
+
+    /**
+     * A field read from a scope of the submission.
+     */
+    static final class Field {
+
+        private final String name;
+        private final ValueFormatter formatter;
+        private final boolean rootScope;
+
+        Field(String name, ValueFormatter formatter, boolean rootScope) {
+            this.name = name;
+            this.formatter = formatter;
+            this.rootScope = rootScope;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        ValueFormatter getFormatter() {
+            return formatter;
+        }
+
+        /**
+         * @return true if the field is visible in the scope of every repeat group event
+         */
+        boolean isRootScope() {
+            return rootScope;
+        }
+    }
+
+    /**
+     * A repeat group, with the fields of its instances and its nested repeat groups.
+     */
+    static final class RepeatGroup {
+
+        private final String name;
+        private final String subject;
+        private final List<Field> fields;
+        private final List<RepeatGroup> children;
+
+        RepeatGroup(String name, String subject, List<Field> fields, List<RepeatGroup> children) {
+            this.name = name;
+            this.subject = subject;
+            this.fields = Collections.unmodifiableList(fields);
+            this.children = Collections.unmodifiableList(children);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getSubject() {
+            return subject;
+        }
+
+        List<Field> getFields() {
+            return fields;
+        }
+
+        List<RepeatGroup> getChildren() {
+            return children;
+        }
+    }
+}
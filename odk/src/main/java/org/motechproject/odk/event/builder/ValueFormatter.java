@@ -0,0 +1,22 @@
+package org.motechproject.odk.event.builder;
+
+import org.motechproject.odk.exception.EventBuilderException;
+
+import java.util.Map;
+
+/**
+ * Formats the value of a form field into an event parameter. Formatters are resolved once for each field, when the
+ * form definition is compiled into a {@link FormEventMapping}, and are shared by all submissions of the form, so they
+ * must not keep any state.
+ */
+public interface ValueFormatter {
+
+    /**
+     * Formats a value.
+     * @param value The value of the field, never null
+     * @param submission The data of the whole form instance, for formatters which depend on other parts of it
+     * @return The formatted value
+     * @throws EventBuilderException If the value can't be formatted
+     */
+    Object format(Object value, Map<String, Object> submission) throws EventBuilderException;
+}
@@ -1,12 +1,13 @@
 package org.motechproject.odk.event.builder.impl;
 
-import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.motechproject.odk.constant.FieldTypeConstants;
-import org.motechproject.odk.domain.OdkJsonFormPublication;
+import org.motechproject.odk.event.builder.FormEventMapping;
+import org.motechproject.odk.event.builder.ValueFormatter;
 import org.motechproject.odk.exception.EventBuilderException;
 import org.motechproject.odk.event.builder.AbstractEventBuilder;
 import org.motechproject.odk.event.builder.EventBuilder;
-import org.motechproject.odk.util.EventBuilderUtils;
 
 import java.io.IOException;
 import java.util.Map;
@@ -14,48 +15,62 @@ import java.util.Map;
 public class EventBuilderODK extends AbstractEventBuilder implements EventBuilder {
 
     private static final String URL = "url";
+    private static final String DATA = "data";
     private static final int TIME_STRING_SIZE = 5;
 
+    private static final ValueFormatter URL_FORMATTER = new ValueFormatter() {
+        @Override
+        public Object format(Object value, Map<String, Object> submission) {
+            return ((Map<String, String>) value).get(URL);
+        }
+    };
+
+    private static final ValueFormatter TIME_FORMATTER = new ValueFormatter() {
+        @Override
+        public Object format(Object value, Map<String, Object> submission) {
+            return ((String) value).substring(0, TIME_STRING_SIZE);
+        }
+    };
 
-    protected Object formatValue(String type, Object value) throws EventBuilderException {
+
+    @Override
+    protected ValueFormatter getFormatter(String type) {
 
         switch (type) {
 
             case FieldTypeConstants.BINARY:
-                return formatUrl((Map<String, String>) value);
+                return URL_FORMATTER;
 
             case FieldTypeConstants.REPEAT_GROUP:
-                return EventBuilderUtils.formatAsJson(value);
+                return AS_JSON;
 
             case FieldTypeConstants.TIME:
-                return formatDate((String) value);
+                return TIME_FORMATTER;
 
             default:
-                return value;
-        }
-    }
-
-    private String formatDate(String value) {
-        return value.substring(0, TIME_STRING_SIZE);
-    }
-
-
-    private String formatUrl(Map<String, String> value) {
-        if (value == null) {
-            return null;
+                return AS_IS;
         }
-        return value.get(URL);
     }
 
     @Override
-    protected Map<String, Object> getData(String json) throws EventBuilderException {
-        try {
-            OdkJsonFormPublication publication = new ObjectMapper().readValue(json, OdkJsonFormPublication.class);
-            return publication.getData()[0];
-        } catch (IOException e) {
-            throw new EventBuilderException(e);
+    protected Map<String, Object> getData(JsonParser parser, FormEventMapping mapping) throws IOException, EventBuilderException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new EventBuilderException("Expected a JSON form publication");
         }
 
+        // only the first form instance of the publication is used
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (DATA.equals(name) && value == JsonToken.START_ARRAY) {
+                if (parser.nextToken() == JsonToken.START_OBJECT) {
+                    return readFields(parser, mapping.getFieldNames());
+                }
+                break;
+            }
+            parser.skipChildren();
+        }
+        throw new EventBuilderException("The form publication doesn't contain form instance data");
     }
 }
 
@@ -1,6 +1,9 @@
 package org.motechproject.odk.service;
 
+import org.motechproject.odk.domain.Configuration;
 import org.motechproject.odk.domain.FormDefinition;
+import org.motechproject.odk.event.builder.FormEventMapping;
+import org.motechproject.odk.exception.ConfigurationTypeException;
 
 import java.util.List;
 
@@ -53,4 +56,15 @@ public interface FormDefinitionService {
      * @return {@link FormDefinition}
      */
     FormDefinition findById(long id);
+
+    /**
+     * Returns the form definition with a particular title, compiled for the event builder of the configuration. The
+     * compiled form definitions are cached until the form definitions of the configuration are imported again or
+     * deleted.
+     * @param configuration The configuration
+     * @param title The title of the form.
+     * @return {@link FormEventMapping}, or null if there is no such form definition
+     * @throws ConfigurationTypeException If there is no event builder for the type of the configuration
+     */
+    FormEventMapping getEventMapping(Configuration configuration, String title) throws ConfigurationTypeException;
 }
@@ -0,0 +1,32 @@
+package org.motechproject.odk.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Service for the local intake queue of form submissions. Submissions are stored on disk and acknowledged right away,
+ * the events are built and published from the queue by a pool of workers. Submissions still in the queue when the
+ * module stops are published once it starts again.
+ */
+public interface FormIntakeService {
+
+    /**
+     * Stores a submission in the intake queue.
+     *
+     * @param configName The name of the configuration
+     * @param formTitle The title of the form
+     * @param body The JSON representation of the form instance data
+     * @param charset The character encoding of the body, the submission is stored in UTF-8
+     * @return true if the submission was queued, false if the queue is full and the submission should be retried later
+     * @throws IOException If the submission couldn't be stored
+     */
+    boolean submit(String configName, String formTitle, InputStream body, Charset charset) throws IOException;
+
+    /**
+     * Returns the number of submissions which are waiting to be published.
+     *
+     * @return The number of submissions in the queue
+     */
+    int getPendingCount();
+}
@@ -1,12 +1,20 @@
 package org.motechproject.odk.service.impl;
 
+import org.motechproject.odk.domain.Configuration;
 import org.motechproject.odk.domain.FormDefinition;
+import org.motechproject.odk.event.builder.FormEventMapping;
+import org.motechproject.odk.event.factory.FormEventBuilderFactory;
+import org.motechproject.odk.exception.ConfigurationTypeException;
 import org.motechproject.odk.repository.FormDefinitionDataService;
 import org.motechproject.odk.service.FormDefinitionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Implementation of {@link FormDefinitionService}.
@@ -17,15 +25,18 @@ public class FormDefinitionServiceImpl implements FormDefinitionService {
     @Autowired
     private FormDefinitionDataService formDefinitionDataService;
 
+    private final ConcurrentMap<List<String>, FormEventMapping> eventMappings = new ConcurrentHashMap<>();
 
     @Override
     public void create(FormDefinition formDefinition) {
         formDefinitionDataService.create(formDefinition);
+        evictEventMappings(formDefinition.getConfigurationName());
     }
 
     @Override
     public void deleteAll() {
         formDefinitionDataService.deleteAll();
+        eventMappings.clear();
     }
 
     @Override
@@ -34,6 +45,7 @@ public class FormDefinitionServiceImpl implements FormDefinitionService {
         for (FormDefinition formDefinition : formDefinitions) {
             formDefinitionDataService.delete(formDefinition);
         }
+        evictEventMappings(configName);
     }
 
     @Override
@@ -55,4 +67,31 @@ public class FormDefinitionServiceImpl implements FormDefinitionService {
     public FormDefinition findById(long id) {
         return formDefinitionDataService.findById(id);
     }
+
+    @Override
+    public FormEventMapping getEventMapping(Configuration configuration, String title) throws ConfigurationTypeException {
+        List<String> key = Arrays.asList(configuration.getName(), title);
+        FormEventMapping mapping = eventMappings.get(key);
+
+        // the formatters depend on the configuration type, which can change without a new import
+        if (mapping == null || mapping.getConfigurationType() != configuration.getType()) {
+            FormDefinition formDefinition = findByConfigurationNameAndTitle(configuration.getName(), title);
+            if (formDefinition == null) {
+                return null;
+            }
+            mapping = new FormEventBuilderFactory().getBuilder(configuration.getType()).compile(formDefinition, configuration);
+            eventMappings.put(key, mapping);
+        }
+
+        return mapping;
+    }
+
+    private void evictEventMappings(String configName) {
+        Iterator<List<String>> it = eventMappings.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().get(0).equals(configName)) {
+                it.remove();
+            }
+        }
+    }
 }
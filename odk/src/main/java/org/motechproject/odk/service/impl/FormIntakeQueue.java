@@ -0,0 +1,167 @@
+package org.motechproject.odk.service.impl;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The on-disk store of the form intake queue. Every submission is a file in a directory named after its configuration
+ * and form. A submission is first written to a temporary file, which is synced to disk and then atomically renamed,
+ * so only complete submissions are ever seen in the queue. The file names start with the time of receipt, so the
+ * submissions can be published in the order they were received. Submissions are stored in UTF-8, whatever the
+ * encoding they were received in.
+ */
+class FormIntakeQueue {
+
+    private static final String SUBMISSION_SUFFIX = ".json";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String ENCODING = "UTF-8";
+
+    private static final Comparator<Path> BY_FILE_NAME = new Comparator<Path>() {
+        @Override
+        public int compare(Path first, Path second) {
+            return first.getFileName().toString().compareTo(second.getFileName().toString());
+        }
+    };
+
+    private final Path dir;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Opens the queue in the given directory, removing the temporary files of submissions which were not received
+     * completely.
+     *
+     * @param dir The directory of the queue, created if it doesn't exist
+     * @throws IOException If the directory can't be read or created
+     */
+    FormIntakeQueue(Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+
+        for (Path configDir : list(this.dir, "*", true)) {
+            for (Path formDir : list(configDir, "*", true)) {
+                for (Path temporary : list(formDir, "*" + TEMPORARY_SUFFIX, false)) {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores a submission.
+     *
+     * @param configName The name of the configuration
+     * @param formTitle The title of the form
+     * @param body The submission, read until its end
+     * @param charset The character encoding of the submission, it is converted to UTF-8 if it differs
+     * @return The path of the stored submission
+     * @throws IOException If the submission couldn't be stored
+     */
+    Path store(String configName, String formTitle, InputStream body, Charset charset) throws IOException {
+        Path formDir = Files.createDirectories(dir.resolve(encode(configName)).resolve(encode(formTitle)));
+        String name = String.format("%013d-%09d-%s", System.currentTimeMillis(), sequence.incrementAndGet(),
+                UUID.randomUUID());
+
+        Path temporary = formDir.resolve(name + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            copy(body, charset, Channels.newOutputStream(channel));
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        return Files.move(temporary, formDir.resolve(name + SUBMISSION_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the stored submissions, oldest first.
+     *
+     * @return The paths of the stored submissions
+     * @throws IOException If the queue directory can't be read
+     */
+    List<Path> getSubmissions() throws IOException {
+        List<Path> submissions = new ArrayList<>();
+
+        for (Path configDir : list(dir, "*", true)) {
+            for (Path formDir : list(configDir, "*", true)) {
+                submissions.addAll(list(formDir, "*" + SUBMISSION_SUFFIX, false));
+            }
+        }
+
+        Collections.sort(submissions, BY_FILE_NAME);
+        return submissions;
+    }
+
+    String getConfigName(Path submission) {
+        return decode(submission.getParent().getParent().getFileName().toString());
+    }
+
+    String getFormTitle(Path submission) {
+        return decode(submission.getParent().getFileName().toString());
+    }
+
+    void remove(Path submission) throws IOException {
+        Files.deleteIfExists(submission);
+    }
+
+    private static void copy(InputStream body, Charset charset, OutputStream out) throws IOException {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            IOUtils.copy(body, out);
+        } else {
+            OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            IOUtils.copy(new InputStreamReader(body, charset), writer);
+            writer.flush();
+        }
+    }
+
+    private List<Path> list(Path parent, String glob, boolean directories) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(parent, glob)) {
+            for (Path path : stream) {
+                if (Files.isDirectory(path) == directories) {
+                    paths.add(path);
+                }
+            }
+        }
+        return paths;
+    }
+
+    // names are encoded so that they are always a single, valid path element
+    private static String encode(String name) {
+        try {
+            return URLEncoder.encode(name, ENCODING).replace(".", "%2E").replace("*", "%2A");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String name) {
+        try {
+            return URLDecoder.decode(name, ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package org.motechproject.odk.service.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventRelay;
+import org.motechproject.odk.domain.Configuration;
+import org.motechproject.odk.event.builder.EventBuilder;
+import org.motechproject.odk.event.builder.FormEventMapping;
+import org.motechproject.odk.event.builder.impl.FailureEventBuilder;
+import org.motechproject.odk.event.factory.FormEventBuilderFactory;
+import org.motechproject.odk.exception.ConfigurationTypeException;
+import org.motechproject.odk.exception.EventBuilderException;
+import org.motechproject.odk.service.ConfigurationService;
+import org.motechproject.odk.service.FormDefinitionService;
+import org.motechproject.odk.service.FormIntakeService;
+import org.motechproject.server.config.SettingsFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.motechproject.odk.util.SettingsUtils.getIntProperty;
+
+/**
+ * Implementation of {@link FormIntakeService}. The submissions are stored in a {@link FormIntakeQueue} and published
+ * by a fixed pool of workers, each submission parsed as a stream using the compiled form definition. The number of
+ * stored submissions is limited, so that the aggregators are asked to retry when publishing falls behind. A submission
+ * which can't be published because of an error other than invalid data is retried after a delay, a periodic sweep of
+ * the queue picks up these submissions as well as the ones left from a previous run. Publishing is at least once, if a
+ * submission is retried after some of its events were published, these events are published again.
+ */
+@Service("odkFormIntakeService")
+public class FormIntakeServiceImpl implements FormIntakeService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FormIntakeServiceImpl.class);
+
+    private static final String INTAKE_DIR_PROPERTY = "odk.intake.dir";
+    private static final String INTAKE_THREADS_PROPERTY = "odk.intake.threads";
+    private static final String MAX_PENDING_PROPERTY = "odk.intake.maxPending";
+    private static final String MAX_RETRIES_PROPERTY = "odk.intake.maxRetries";
+    private static final String RETRY_DELAY_PROPERTY = "odk.intake.retryDelaySeconds";
+    private static final String REPLAY_INTERVAL_PROPERTY = "odk.intake.replayIntervalSeconds";
+
+    private static final int DEFAULT_INTAKE_THREADS = 4;
+    private static final int DEFAULT_MAX_PENDING = 10000;
+    private static final int DEFAULT_MAX_RETRIES = 5;
+    private static final int DEFAULT_RETRY_DELAY = 30;
+    private static final int DEFAULT_REPLAY_INTERVAL = 10;
+    private static final int SHUTDOWN_TIMEOUT = 30;
+
+    private static final String ERROR_JSON = "Error parsing JSON form data";
+    private static final String ERROR_PUBLISHING = "Unable to publish form events";
+
+    private ConfigurationService configurationService;
+    private FormDefinitionService formDefinitionService;
+    private EventRelay eventRelay;
+    private SettingsFacade settingsFacade;
+
+    private FormIntakeQueue queue;
+    private ExecutorService workers;
+    private ScheduledExecutorService scheduler;
+    private int maxPending;
+    private int maxRetries;
+    private long retryDelay;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Set<Path> queued = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<Path, Integer> attempts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, Long> retryTimes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FormIntakeServiceImpl(ConfigurationService configurationService, FormDefinitionService formDefinitionService,
+                                 EventRelay eventRelay, @Qualifier("odkSettings") SettingsFacade settingsFacade) {
+        this.configurationService = configurationService;
+        this.formDefinitionService = formDefinitionService;
+        this.eventRelay = eventRelay;
+        this.settingsFacade = settingsFacade;
+    }
+
+    /**
+     * Opens the intake queue and starts the workers. Submissions left in the queue are published by the first sweep.
+     *
+     * @throws IOException if the intake directory can't be read or created
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        String dir = settingsFacade.getProperty(INTAKE_DIR_PROPERTY);
+        if (StringUtils.isBlank(dir)) {
+            dir = Paths.get(System.getProperty("user.home"), ".motech", "odk", "intake").toString();
+        }
+
+        queue = new FormIntakeQueue(Paths.get(dir.trim()));
+        pending.set(queue.getSubmissions().size());
+        if (pending.get() > 0) {
+            LOGGER.info("Found {} form submissions in {} left from a previous run", pending.get(), dir);
+        }
+
+        maxPending = getIntProperty(settingsFacade, MAX_PENDING_PROPERTY, DEFAULT_MAX_PENDING);
+        maxRetries = getIntProperty(settingsFacade, MAX_RETRIES_PROPERTY, DEFAULT_MAX_RETRIES);
+        retryDelay = TimeUnit.SECONDS.toMillis(getIntProperty(settingsFacade, RETRY_DELAY_PROPERTY,
+                DEFAULT_RETRY_DELAY));
+
+        workers = Executors.newFixedThreadPool(
+                getIntProperty(settingsFacade, INTAKE_THREADS_PROPERTY, DEFAULT_INTAKE_THREADS),
+                new DaemonThreadFactory("odk-intake-worker-"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("odk-intake-sweeper-"));
+
+        long replayInterval = getIntProperty(settingsFacade, REPLAY_INTERVAL_PROPERTY, DEFAULT_REPLAY_INTERVAL);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Unable to read the form intake queue", e);
+                }
+            }
+        }, 0, replayInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean submit(String configName, String formTitle, InputStream body, Charset charset) throws IOException {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return false;
+        }
+
+        Path submission;
+        try {
+            submission = queue.store(configName, formTitle, body, charset);
+        } catch (IOException | RuntimeException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+
+        enqueue(submission);
+        return true;
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    private void sweep() throws IOException {
+        long now = System.currentTimeMillis();
+
+        for (Path submission : queue.getSubmissions()) {
+            Long retryTime = retryTimes.get(submission);
+            if (retryTime == null || retryTime <= now) {
+                enqueue(submission);
+            }
+        }
+    }
+
+    private void enqueue(final Path submission) {
+        if (!queued.add(submission)) {
+            return;
+        }
+
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    process(submission);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down, the submission will be published after the next start
+            queued.remove(submission);
+        }
+    }
+
+    private void process(Path submission) {
+        try {
+            if (!Files.exists(submission)) {
+                // already published, listed by a sweep before it was removed
+                forget(submission);
+                return;
+            }
+
+            try {
+                publishEvents(submission);
+            } catch (EventBuilderException | ConfigurationTypeException e) {
+                LOGGER.error("Unable to build the events of form submission {}", submission, e);
+                publishFailureEvent(submission, ERROR_JSON, e);
+            }
+            complete(submission);
+
+        } catch (IOException | RuntimeException e) {
+            retryOrFail(submission, e);
+        } finally {
+            queued.remove(submission);
+        }
+    }
+
+    private void publishEvents(Path submission) throws IOException, EventBuilderException, ConfigurationTypeException {
+        String configName = queue.getConfigName(submission);
+        String formTitle = queue.getFormTitle(submission);
+
+        Configuration configuration = configurationService.getConfigByName(configName);
+        if (configuration == null) {
+            throw new EventBuilderException("Configuration: " + configName + " does not exist");
+        }
+
+        FormEventMapping mapping = formDefinitionService.getEventMapping(configuration, formTitle);
+        if (mapping == null) {
+            throw new EventBuilderException("Form: " + formTitle + " does not exist");
+        }
+
+        EventBuilder builder = new FormEventBuilderFactory().getBuilder(configuration.getType());
+        List<MotechEvent> events;
+        try (InputStream in = Files.newInputStream(submission)) {
+            events = builder.createEvents(in, mapping);
+        } catch (RuntimeException e) {
+            // the data doesn't match the form definition, retrying would fail the same way
+            throw new EventBuilderException(e);
+        }
+
+        for (MotechEvent event : events) {
+            LOGGER.debug("Publishing event with subject: " + event.getSubject());
+            eventRelay.sendEventMessage(event);
+        }
+    }
+
+    private void retryOrFail(Path submission, Exception e) {
+        Integer previous = attempts.get(submission);
+        int attempt = previous == null ? 1 : previous + 1;
+        attempts.put(submission, attempt);
+
+        if (attempt <= maxRetries) {
+            LOGGER.warn("Unable to publish form submission {}, attempt {} of {}, retrying in {} ms", submission,
+                    attempt, maxRetries + 1, retryDelay, e);
+            retryTimes.put(submission, System.currentTimeMillis() + retryDelay);
+            return;
+        }
+
+        LOGGER.error("Unable to publish form submission {} after {} attempts", submission, attempt, e);
+        try {
+            publishFailureEvent(submission, ERROR_PUBLISHING, e);
+            complete(submission);
+        } catch (IOException | RuntimeException failure) {
+            LOGGER.error("Unable to publish the failure event of form submission {}", submission, failure);
+            retryTimes.put(submission, System.currentTimeMillis() + retryDelay);
+        }
+    }
+
+    private void publishFailureEvent(Path submission, String message, Exception e) throws IOException {
+        String body = new String(Files.readAllBytes(submission), StandardCharsets.UTF_8);
+
+        FailureEventBuilder builder = new FailureEventBuilder();
+        builder.setMessage(message)
+                .setError(e.toString())
+                .setConfigName(queue.getConfigName(submission))
+                .setFormTitle(queue.getFormTitle(submission))
+                .setBody(body);
+        eventRelay.sendEventMessage(builder.createFailureEvent());
+    }
+
+    private void complete(Path submission) throws IOException {
+        queue.remove(submission);
+        forget(submission);
+        pending.decrementAndGet();
+    }
+
+    private void forget(Path submission) {
+        attempts.remove(submission);
+        retryTimes.remove(submission);
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,27 +1,31 @@
 package org.motechproject.odk.web;
 
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
 import org.motechproject.odk.domain.Configuration;
-import org.motechproject.odk.domain.FormDefinition;
-import org.motechproject.odk.event.builder.EventBuilder;
+import org.motechproject.odk.event.builder.FormEventMapping;
 import org.motechproject.odk.event.builder.impl.FailureEventBuilder;
-import org.motechproject.odk.event.factory.FormEventBuilderFactory;
+import org.motechproject.odk.exception.ConfigurationTypeException;
 import org.motechproject.odk.service.FormDefinitionService;
 import org.motechproject.odk.service.ConfigurationService;
+import org.motechproject.odk.service.FormIntakeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
-import org.springframework.web.bind.annotation.ResponseStatus;
 
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Controller that maps to /forms. Receives forms from external applications and publishes the appropriate events
@@ -36,9 +40,13 @@ public class FormController {
     private static final String CONFIGURATION = "Configuration: ";
     private static final String DOES_NOT_EXIST = " does not exist";
     private static final String FORM = "Form: ";
-    private static final String PUBLISHING_EVENT = "Publishing event with subject: ";
+    private static final String QUEUE_FULL = "The form intake queue is full, rejected form: ";
+    private static final String QUEUE_ERROR = "Unable to queue form: ";
+    private static final String UNSUPPORTED_ENCODING = "Unsupported character encoding of form: ";
     private static final String PUBLISHING_FAILURE = "Publishing form receipt failure event:\n";
     private static final String ERROR_JSON = "Error parsing JSON form data";
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final String RETRY_AFTER_SECONDS = "30";
 
     @Autowired
     private ConfigurationService configurationService;
@@ -49,50 +57,76 @@ public class FormController {
     @Autowired
     private EventRelay eventRelay;
 
+    @Autowired
+    private FormIntakeService formIntakeService;
+
 
     /**
-     * Recieves the form data from the external application and publishes the appropriate events.
+     * Recieves the form data from the external application and stores it in the intake queue, the events are
+     * published asynchronously. Responds with 503 and a Retry-After header when the queue is full and with 415 when
+     * the character encoding of the request is not supported.
      * @param config The name of the {@link Configuration}
      * @param form The title of the form.
      * @param body The JSON representation of the form instance data.
+     * @param request The HTTP request, its character encoding is used to read the form data, UTF-8 if not specified
+     * @param response The HTTP response
+     * @throws IOException If the form data can't be read
      */
     @RequestMapping(value = "/{config}/{form}", method = RequestMethod.POST)
-    @ResponseStatus(HttpStatus.OK)
-    public void receiveForm(@PathVariable("config") String config, @PathVariable("form") String form, @RequestBody String body) {
+    public void receiveForm(@PathVariable("config") String config, @PathVariable("form") String form, InputStream body,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
         LOGGER.debug(RECEIVED_FORM + form + " " + CONFIGURATION + config);
+        String encoding = StringUtils.defaultIfBlank(request.getCharacterEncoding(), StandardCharsets.UTF_8.name());
+
+        Charset charset;
+        try {
+            charset = Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error(UNSUPPORTED_ENCODING + form + " " + CONFIGURATION + config + ": " + encoding);
+            response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+            return;
+        }
 
         Configuration configuration = configurationService.getConfigByName(config);
-        FormDefinition formDefinition = formDefinitionService.findByConfigurationNameAndTitle(config, form);
 
         if (configuration == null) {
             LOGGER.error(CONFIGURATION + config + DOES_NOT_EXIST);
-            publishFailureEvent(CONFIGURATION + " " + config + DOES_NOT_EXIST, null, config, form, body);
+            publishFailureEvent(CONFIGURATION + " " + config + DOES_NOT_EXIST, null, config, form,
+                    IOUtils.toString(body, charset.name()));
+            return;
+        }
 
-        } else if (formDefinition == null) {
-            LOGGER.error(FORM + form + FORM);
-            publishFailureEvent(FORM + form + FORM, null, config, form, body);
+        FormEventMapping mapping;
+        try {
+            mapping = formDefinitionService.getEventMapping(configuration, form);
+        } catch (ConfigurationTypeException e) {
+            LOGGER.error(PUBLISHING_FAILURE + e.toString());
+            publishFailureEvent(ERROR_JSON, e.toString(), config, form, IOUtils.toString(body, charset.name()));
+            return;
+        }
 
-        } else {
-            publishEvents(body, configuration, formDefinition);
+        if (mapping == null) {
+            LOGGER.error(FORM + form + FORM);
+            publishFailureEvent(FORM + form + FORM, null, config, form, IOUtils.toString(body, charset.name()));
+            return;
         }
-    }
 
-    private void publishEvents(String body, Configuration configuration, FormDefinition formDefinition) {
         try {
-            EventBuilder builder = new FormEventBuilderFactory().getBuilder(configuration.getType());
-            List<MotechEvent> events = builder.createEvents(body, formDefinition, configuration);
-
-            for (MotechEvent event : events) {
-                LOGGER.debug(PUBLISHING_EVENT + event.getSubject());
-                eventRelay.sendEventMessage(event);
+            if (!formIntakeService.submit(config, form, body, charset)) {
+                LOGGER.warn(QUEUE_FULL + form + " " + CONFIGURATION + config);
+                rejectForRetry(response);
             }
-
-        } catch (Exception e) {
-            LOGGER.error(PUBLISHING_FAILURE + e.toString());
-            publishFailureEvent(ERROR_JSON, e.toString(), configuration.getName(), formDefinition.getTitle(), body);
+        } catch (IOException e) {
+            LOGGER.error(QUEUE_ERROR + form + " " + CONFIGURATION + config, e);
+            rejectForRetry(response);
         }
     }
 
+    private void rejectForRetry(HttpServletResponse response) {
+        response.setHeader(RETRY_AFTER, RETRY_AFTER_SECONDS);
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
     private void publishFailureEvent(String message, String error, String configName, String formTitle, String body) {
         FailureEventBuilder builder = new FailureEventBuilder();
         builder.setMessage(message)
@@ -9,6 +9,7 @@ import org.motechproject.odk.domain.Configuration;
 import org.motechproject.odk.domain.FormDefinition;
 import org.motechproject.odk.domain.FormElement;
 import org.motechproject.odk.event.builder.EventBuilder;
+import org.motechproject.odk.event.builder.FormEventMapping;
 import org.motechproject.odk.parser.impl.XformParserODK;
 
 import java.io.File;
@@ -113,6 +114,28 @@ public class EventBuilderOdkTest {
 
     }
 
+    @Test
+    public void testCompiledMappingIsReusable() throws Exception {
+
+        EventBuilder builder = new EventBuilderOna();
+        FormEventMapping mapping = builder.compile(formDefinition, configuration);
+
+        // the mapping no longer depends on the form definition
+        formDefinition.setTitle("changed");
+
+        List<MotechEvent> first = builder.createEvents(json, mapping);
+        List<MotechEvent> second = new EventBuilderOna().createEvents(json, mapping);
+
+        assertEquals(7, first.size());
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getSubject(), second.get(i).getSubject());
+            assertEquals(first.get(i).getParameters(), second.get(i).getParameters());
+        }
+        assertEquals("org.motechproject.odk.recieved_form.configName.ona_nested_repeats", first.get(6).getSubject());
+        assertEquals("ona_nested_repeats", first.get(6).getParameters().get(EventParameters.FORM_TITLE));
+    }
+
 
     private void alterFormDef(FormDefinition formDefinition) {
         List<FormElement> formElements = formDefinition.getFormElements();
@@ -0,0 +1,108 @@
+package org.motechproject.odk.service.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.motechproject.odk.domain.Configuration;
+import org.motechproject.odk.domain.ConfigurationType;
+import org.motechproject.odk.domain.FormDefinition;
+import org.motechproject.odk.event.builder.FormEventMapping;
+import org.motechproject.odk.repository.FormDefinitionDataService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class FormDefinitionServiceImplTest {
+
+    private static final String CONFIG_NAME = "config";
+    private static final String TITLE = "form";
+
+    @Mock
+    private FormDefinitionDataService formDefinitionDataService;
+
+    @InjectMocks
+    private FormDefinitionServiceImpl formDefinitionService = new FormDefinitionServiceImpl();
+
+    private Configuration configuration;
+    private FormDefinition formDefinition;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        configuration = new Configuration();
+        configuration.setName(CONFIG_NAME);
+        configuration.setType(ConfigurationType.ODK);
+
+        formDefinition = new FormDefinition(CONFIG_NAME);
+        formDefinition.setTitle(TITLE);
+        formDefinition.setFormElements(new ArrayList<>());
+
+        when(formDefinitionDataService.byConfigurationNameAndTitle(CONFIG_NAME, TITLE)).thenReturn(formDefinition);
+    }
+
+    @Test
+    public void shouldReuseCompiledMapping() throws Exception {
+        FormEventMapping mapping = formDefinitionService.getEventMapping(configuration, TITLE);
+
+        assertSame(mapping, formDefinitionService.getEventMapping(configuration, TITLE));
+        verify(formDefinitionDataService, times(1)).byConfigurationNameAndTitle(CONFIG_NAME, TITLE);
+    }
+
+    @Test
+    public void shouldEvictMappingsWhenFormDefinitionIsCreated() throws Exception {
+        FormEventMapping mapping = formDefinitionService.getEventMapping(configuration, TITLE);
+
+        FormDefinition created = new FormDefinition(CONFIG_NAME);
+        created.setTitle("other form");
+        formDefinitionService.create(created);
+
+        assertNotSame(mapping, formDefinitionService.getEventMapping(configuration, TITLE));
+        verify(formDefinitionDataService, times(2)).byConfigurationNameAndTitle(CONFIG_NAME, TITLE);
+    }
+
+    @Test
+    public void shouldOnlyEvictMappingsOfCreatedFormDefinitionConfiguration() throws Exception {
+        FormEventMapping mapping = formDefinitionService.getEventMapping(configuration, TITLE);
+
+        formDefinitionService.create(new FormDefinition("other config"));
+
+        assertSame(mapping, formDefinitionService.getEventMapping(configuration, TITLE));
+    }
+
+    @Test
+    public void shouldEvictMappingsWhenFormDefinitionsAreDeleted() throws Exception {
+        assertNotNull(formDefinitionService.getEventMapping(configuration, TITLE));
+
+        when(formDefinitionDataService.byConfigurationName(CONFIG_NAME)).thenReturn(Arrays.asList(formDefinition));
+        formDefinitionService.deleteFormDefinitionsByConfigurationName(CONFIG_NAME);
+        verify(formDefinitionDataService).delete(formDefinition);
+
+        when(formDefinitionDataService.byConfigurationNameAndTitle(CONFIG_NAME, TITLE)).thenReturn(null);
+        assertNull(formDefinitionService.getEventMapping(configuration, TITLE));
+    }
+
+    @Test
+    public void shouldRecompileMappingWhenConfigurationTypeChanges() throws Exception {
+        FormEventMapping mapping = formDefinitionService.getEventMapping(configuration, TITLE);
+        assertEquals(ConfigurationType.ODK, mapping.getConfigurationType());
+
+        configuration.setType(ConfigurationType.ONA);
+        FormEventMapping recompiled = formDefinitionService.getEventMapping(configuration, TITLE);
+
+        assertNotSame(mapping, recompiled);
+        assertEquals(ConfigurationType.ONA, recompiled.getConfigurationType());
+        assertSame(recompiled, formDefinitionService.getEventMapping(configuration, TITLE));
+    }
+}
@@ -0,0 +1,92 @@
+package org.motechproject.odk.service.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FormIntakeQueueTest {
+
+    private Path dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("odk-intake");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testStoredSubmissionsAreListedInOrder() throws Exception {
+        FormIntakeQueue queue = new FormIntakeQueue(dir);
+
+        Path first = queue.store("config", "form", stream("{\"first\":1}"), StandardCharsets.UTF_8);
+        Path second = queue.store("other", "form", stream("{\"second\":2}"), StandardCharsets.UTF_8);
+        Path third = queue.store("config", "form", stream("{\"third\":3}"), StandardCharsets.UTF_8);
+
+        List<Path> submissions = new FormIntakeQueue(dir).getSubmissions();
+        assertEquals(3, submissions.size());
+        assertEquals(first, submissions.get(0));
+        assertEquals(second, submissions.get(1));
+        assertEquals(third, submissions.get(2));
+        assertEquals("{\"second\":2}", new String(Files.readAllBytes(second), StandardCharsets.UTF_8));
+
+        queue.remove(second);
+        submissions = queue.getSubmissions();
+        assertEquals(2, submissions.size());
+        assertFalse(submissions.contains(second));
+    }
+
+    @Test
+    public void testNamesAreDecoded() throws Exception {
+        FormIntakeQueue queue = new FormIntakeQueue(dir);
+        String configName = "../config name";
+        String formTitle = "form/title *.v2";
+
+        Path submission = queue.store(configName, formTitle, stream("{}"), StandardCharsets.UTF_8);
+
+        assertTrue(submission.startsWith(dir));
+        assertEquals(configName, queue.getConfigName(submission));
+        assertEquals(formTitle, queue.getFormTitle(submission));
+    }
+
+    @Test
+    public void testIncompleteSubmissionsAreRemoved() throws Exception {
+        Path submission = new FormIntakeQueue(dir).store("config", "form", stream("{}"), StandardCharsets.UTF_8);
+        Path temporary = submission.resolveSibling("0000000000000-000000001-incomplete.tmp");
+        Files.write(temporary, "{\"incomp".getBytes(StandardCharsets.UTF_8));
+
+        FormIntakeQueue queue = new FormIntakeQueue(dir);
+
+        assertFalse(Files.exists(temporary));
+        assertEquals(1, queue.getSubmissions().size());
+        assertEquals(submission, queue.getSubmissions().get(0));
+    }
+
+    @Test
+    public void testSubmissionsAreStoredInUtf8() throws Exception {
+        String json = "{\"name\":\"Jos\u00e9 M\u00fcller\"}";
+        Path submission = new FormIntakeQueue(dir).store("config", "form",
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.ISO_8859_1)), StandardCharsets.ISO_8859_1);
+
+        assertEquals(json, new String(Files.readAllBytes(submission), StandardCharsets.UTF_8));
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,204 @@
+package org.motechproject.odk.service.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventRelay;
+import org.motechproject.odk.constant.EventParameters;
+import org.motechproject.odk.constant.EventSubjects;
+import org.motechproject.odk.constant.FieldTypeConstants;
+import org.motechproject.odk.domain.Configuration;
+import org.motechproject.odk.domain.ConfigurationType;
+import org.motechproject.odk.domain.FormDefinition;
+import org.motechproject.odk.domain.FormElement;
+import org.motechproject.odk.event.builder.impl.EventBuilderODK;
+import org.motechproject.odk.service.ConfigurationService;
+import org.motechproject.odk.service.FormDefinitionService;
+import org.motechproject.server.config.SettingsFacade;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class FormIntakeServiceImplTest {
+
+    private static final String CONFIG_NAME = "config";
+    private static final String TITLE = "form";
+    private static final String REPEAT_GROUP_TITLE = "repeat group form";
+    private static final String BODY = "{\"data\":[{\"name\":\"value\"}]}";
+    private static final long WAIT_TIMEOUT = 10000;
+
+    @Mock
+    private ConfigurationService configurationService;
+
+    @Mock
+    private FormDefinitionService formDefinitionService;
+
+    @Mock
+    private EventRelay eventRelay;
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private FormIntakeServiceImpl formIntakeService;
+    private Path dir;
+
+    private final AtomicInteger formEventFailures = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        dir = Files.createTempDirectory("odk-intake");
+
+        Configuration configuration = new Configuration();
+        configuration.setName(CONFIG_NAME);
+        configuration.setType(ConfigurationType.ODK);
+
+        FormDefinition formDefinition = new FormDefinition(CONFIG_NAME);
+        formDefinition.setTitle(TITLE);
+        formDefinition.setFormElements(new ArrayList<>());
+
+        when(configurationService.getConfigByName(CONFIG_NAME)).thenReturn(configuration);
+        when(formDefinitionService.getEventMapping(configuration, TITLE))
+                .thenReturn(new EventBuilderODK().compile(formDefinition, configuration));
+
+        FormDefinition repeatGroupDefinition = new FormDefinition(CONFIG_NAME);
+        repeatGroupDefinition.setTitle(REPEAT_GROUP_TITLE);
+        repeatGroupDefinition.setFormElements(Arrays.asList(new FormElement("/data/group", "group",
+                FieldTypeConstants.REPEAT_GROUP, Collections.<FormElement>emptyList(), false)));
+
+        when(formDefinitionService.getEventMapping(configuration, REPEAT_GROUP_TITLE))
+                .thenReturn(new EventBuilderODK().compile(repeatGroupDefinition, configuration));
+
+        when(settingsFacade.getProperty("odk.intake.dir")).thenReturn(dir.toString());
+        when(settingsFacade.getProperty("odk.intake.threads")).thenReturn("1");
+        when(settingsFacade.getProperty("odk.intake.retryDelaySeconds")).thenReturn("0");
+        when(settingsFacade.getProperty("odk.intake.replayIntervalSeconds")).thenReturn("1");
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                MotechEvent event = (MotechEvent) invocation.getArguments()[0];
+                if (!EventSubjects.FORM_FAIL.equals(event.getSubject()) && formEventFailures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Event relay unavailable");
+                }
+                return null;
+            }
+        }).when(eventRelay).sendEventMessage(any(MotechEvent.class));
+
+        formIntakeService = new FormIntakeServiceImpl(configurationService, formDefinitionService, eventRelay,
+                settingsFacade);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        formIntakeService.stop();
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void shouldRejectSubmissionsWhenQueueIsFull() throws Exception {
+        when(settingsFacade.getProperty("odk.intake.maxPending")).thenReturn("1");
+        when(settingsFacade.getProperty("odk.intake.retryDelaySeconds")).thenReturn("60");
+        formEventFailures.set(Integer.MAX_VALUE);
+        formIntakeService.start();
+
+        assertTrue(formIntakeService.submit(CONFIG_NAME, TITLE, stream(BODY), StandardCharsets.UTF_8));
+        assertFalse(formIntakeService.submit(CONFIG_NAME, TITLE, stream(BODY), StandardCharsets.UTF_8));
+
+        assertEquals(1, formIntakeService.getPendingCount());
+        assertEquals(1, new FormIntakeQueue(dir).getSubmissions().size());
+    }
+
+    @Test
+    public void shouldPublishFailedSubmissionOnRetry() throws Exception {
+        when(settingsFacade.getProperty("odk.intake.maxRetries")).thenReturn("3");
+        formEventFailures.set(1);
+        formIntakeService.start();
+
+        assertTrue(formIntakeService.submit(CONFIG_NAME, TITLE, stream(BODY), StandardCharsets.UTF_8));
+        waitUntilPublished();
+
+        List<MotechEvent> events = publishedEvents(2);
+        assertEquals(EventSubjects.RECEIVED_FORM + "." + CONFIG_NAME + "." + TITLE, events.get(0).getSubject());
+        assertEquals(events.get(0).getSubject(), events.get(1).getSubject());
+        assertEquals(TITLE, events.get(1).getParameters().get(EventParameters.FORM_TITLE));
+        assertTrue(new FormIntakeQueue(dir).getSubmissions().isEmpty());
+    }
+
+    @Test
+    public void shouldPublishFailureEventAfterMaxRetries() throws Exception {
+        when(settingsFacade.getProperty("odk.intake.maxRetries")).thenReturn("1");
+        formEventFailures.set(Integer.MAX_VALUE);
+        formIntakeService.start();
+
+        assertTrue(formIntakeService.submit(CONFIG_NAME, TITLE, stream(BODY), StandardCharsets.UTF_8));
+        waitUntilPublished();
+
+        List<MotechEvent> events = publishedEvents(3);
+        assertFalse(EventSubjects.FORM_FAIL.equals(events.get(0).getSubject()));
+        assertFalse(EventSubjects.FORM_FAIL.equals(events.get(1).getSubject()));
+        assertEquals(EventSubjects.FORM_FAIL, events.get(2).getSubject());
+        assertTrue(new FormIntakeQueue(dir).getSubmissions().isEmpty());
+    }
+
+    @Test
+    public void shouldPublishFailureEventRightAwayWhenDataDoesNotMatchForm() throws Exception {
+        when(settingsFacade.getProperty("odk.intake.maxRetries")).thenReturn("3");
+        formIntakeService.start();
+
+        assertTrue(formIntakeService.submit(CONFIG_NAME, REPEAT_GROUP_TITLE, stream(BODY), StandardCharsets.UTF_8));
+        waitUntilPublished();
+
+        List<MotechEvent> events = publishedEvents(1);
+        assertEquals(EventSubjects.FORM_FAIL, events.get(0).getSubject());
+        assertEquals("Error parsing JSON form data", events.get(0).getParameters().get(EventParameters.MESSAGE));
+        assertEquals(BODY, events.get(0).getParameters().get(EventParameters.JSON_CONTENT));
+        assertTrue(new FormIntakeQueue(dir).getSubmissions().isEmpty());
+    }
+
+    private List<MotechEvent> publishedEvents(int count) {
+        ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay, times(count)).sendEventMessage(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private void waitUntilPublished() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (formIntakeService.getPendingCount() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("The form submission was not published in time");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,56 @@
+package org.motechproject.openmrs19.domain;
+
+/**
+ * Class representing the outcome of creating a single encounter as part of a bulk request. It holds either the created
+ * encounter or the reason why the encounter couldn't be created.
+ */
+public class OpenMRSEncounterResult {
+
+    private final OpenMRSEncounter encounter;
+    private final OpenMRSEncounter createdEncounter;
+    private final String errorMessage;
+
+    private OpenMRSEncounterResult(OpenMRSEncounter encounter, OpenMRSEncounter createdEncounter, String errorMessage) {
+        this.encounter = encounter;
+        this.createdEncounter = createdEncounter;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Creates the result of an encounter that was created successfully.
+     *
+     * @param encounter  the encounter passed to the bulk request
+     * @param createdEncounter  the encounter created on the OpenMRS server
+     * @return the successful result
+     */
+    public static OpenMRSEncounterResult success(OpenMRSEncounter encounter, OpenMRSEncounter createdEncounter) {
+        return new OpenMRSEncounterResult(encounter, createdEncounter, null);
+    }
+
+    /**
+     * Creates the result of an encounter that couldn't be created.
+     *
+     * @param encounter  the encounter passed to the bulk request
+     * @param errorMessage  the reason of the failure
+     * @return the failed result
+     */
+    public static OpenMRSEncounterResult failure(OpenMRSEncounter encounter, String errorMessage) {
+        return new OpenMRSEncounterResult(encounter, null, errorMessage);
+    }
+
+    public OpenMRSEncounter getEncounter() {
+        return encounter;
+    }
+
+    public OpenMRSEncounter getCreatedEncounter() {
+        return createdEncounter;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public boolean isSuccessful() {
+        return createdEncounter != null;
+    }
+}
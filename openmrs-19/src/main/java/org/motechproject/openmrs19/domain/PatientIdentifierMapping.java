@@ -0,0 +1,62 @@
+package org.motechproject.openmrs19.domain;
+
+import org.joda.time.DateTime;
+import org.motechproject.mds.annotations.Entity;
+import org.motechproject.mds.annotations.Field;
+
+import javax.jdo.annotations.Unique;
+
+/**
+ * Maps the MOTECH ID of a patient to the UUID of that patient on the OpenMRS server. The mappings are stored locally,
+ * so that patients can be found by their MOTECH ID without searching the OpenMRS server. The time the mapping was last
+ * verified against the server is kept, so that the periodic refresh only has to fetch the mappings verified long ago.
+ */
+@Entity
+public class PatientIdentifierMapping {
+
+    @Field(required = true)
+    @Unique
+    private String motechId;
+
+    @Field(required = true)
+    private String patientUuid;
+
+    @Field
+    private DateTime verifiedAt;
+
+    public PatientIdentifierMapping() { }
+
+    public PatientIdentifierMapping(String motechId, String patientUuid) {
+        this(motechId, patientUuid, null);
+    }
+
+    public PatientIdentifierMapping(String motechId, String patientUuid, DateTime verifiedAt) {
+        this.motechId = motechId;
+        this.patientUuid = patientUuid;
+        this.verifiedAt = verifiedAt;
+    }
+
+    public String getMotechId() {
+        return motechId;
+    }
+
+    public void setMotechId(String motechId) {
+        this.motechId = motechId;
+    }
+
+    public String getPatientUuid() {
+        return patientUuid;
+    }
+
+    public void setPatientUuid(String patientUuid) {
+        this.patientUuid = patientUuid;
+    }
+
+    public DateTime getVerifiedAt() {
+        return verifiedAt;
+    }
+
+    public void setVerifiedAt(DateTime verifiedAt) {
+        this.verifiedAt = verifiedAt;
+    }
+}
@@ -9,7 +9,9 @@ import org.motechproject.openmrs19.domain.OpenMRSPatient;
 import org.motechproject.openmrs19.domain.OpenMRSPerson;
 import org.motechproject.openmrs19.domain.OpenMRSProvider;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -115,6 +117,25 @@ public final class EventHelper {
         return encounterParameters;
     }
 
+    /**
+     * Parses the given encounters to a map with a single parameter holding the list of parameters of each encounter,
+     * which can then be attached to a {@link org.motechproject.event.MotechEvent} and sent via the
+     * {@link org.motechproject.event.listener.EventRelay}.
+     *
+     * @param encounters  the encounters to be parsed
+     * @return the map with the list of encounter parameters
+     */
+    public static Map<String, Object> encountersParameters(List<OpenMRSEncounter> encounters) {
+        List<Map<String, Object>> parameters = new ArrayList<>();
+        for (OpenMRSEncounter encounter : encounters) {
+            parameters.add(encounterParameters(encounter));
+        }
+
+        Map<String, Object> encountersParameters = new HashMap<>();
+        encountersParameters.put(EventKeys.ENCOUNTERS, parameters);
+        return encountersParameters;
+    }
+
     /**
      * Parses the given ID of the encounter to a map with a single parameter, which can then be attached to a
      * {@link org.motechproject.event.MotechEvent} and sent via the {@link org.motechproject.event.listener.EventRelay}.
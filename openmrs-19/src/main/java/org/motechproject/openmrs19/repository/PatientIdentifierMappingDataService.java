@@ -0,0 +1,20 @@
+package org.motechproject.openmrs19.repository;
+
+import org.motechproject.mds.annotations.Lookup;
+import org.motechproject.mds.annotations.LookupField;
+import org.motechproject.mds.service.MotechDataService;
+import org.motechproject.openmrs19.domain.PatientIdentifierMapping;
+
+import java.util.List;
+
+/**
+ * MDS data service for {@link PatientIdentifierMapping}.
+ */
+public interface PatientIdentifierMappingDataService extends MotechDataService<PatientIdentifierMapping> {
+
+    @Lookup
+    PatientIdentifierMapping findByMotechId(@LookupField(name = "motechId") String motechId);
+
+    @Lookup
+    List<PatientIdentifierMapping> findByPatientUuid(@LookupField(name = "patientUuid") String patientUuid);
+}
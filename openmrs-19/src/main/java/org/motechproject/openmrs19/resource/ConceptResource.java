@@ -79,4 +79,15 @@ public interface ConceptResource {
      * @throws HttpException  when there was problem while fetching information
      */
     ConceptListResult getConcepts(int page, int pageSize) throws HttpException;
+
+    /**
+     * Fetches page with given number with size defined in {@code pageSize}, using the reference representation. The
+     * concepts on the page contain only their UUIDs and display names. Page numeration starts with 1.
+     *
+     * @param page  the number of the page
+     * @param pageSize  the size of the page
+     * @return  the list of concept references on the given page
+     * @throws HttpException  when there was problem while fetching information
+     */
+    ConceptListResult getConceptReferences(int page, int pageSize) throws HttpException;
 }
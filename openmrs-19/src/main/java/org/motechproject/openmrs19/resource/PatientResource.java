@@ -27,6 +27,17 @@ public interface PatientResource {
      */
     PatientListResult queryForPatient(String term) throws HttpException;
 
+    /**
+     * Returns {@code PatientListResult} of all patients matching given term. Unlike
+     * {@link #queryForPatient(String)}, the patients are returned in the full representation, so there is no need to
+     * fetch them one by one.
+     *
+     * @param term  the term to be matched
+     * @return  the list of matching patients, in the full representation
+     * @throws HttpException  when there were problems while fetching patients
+     */
+    PatientListResult queryForFullPatients(String term) throws HttpException;
+
     /**
      * Gets patient by its UUID.
      *
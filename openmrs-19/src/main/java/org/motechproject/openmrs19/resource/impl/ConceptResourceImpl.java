@@ -104,4 +104,16 @@ public class ConceptResourceImpl implements ConceptResource {
         return (ConceptListResult) JsonUtils.readJson(json, ConceptListResult.class);
     }
 
+    @Override
+    public ConceptListResult getConceptReferences(int page, int pageSize) throws HttpException {
+
+        Validate.isTrue(page > 0, "Page number must be a positive value!");
+        Validate.isTrue(pageSize > 0, "Page size must be a positive value!");
+
+        int startIndex = (page - 1) * pageSize;
+        String json = restClient.getJson(openmrsInstance
+                .toInstancePathWithParams("/concept?v=ref&limit={pageSize}&startIndex={startIndex}", pageSize, startIndex));
+        return (ConceptListResult) JsonUtils.readJson(json, ConceptListResult.class);
+    }
+
 }
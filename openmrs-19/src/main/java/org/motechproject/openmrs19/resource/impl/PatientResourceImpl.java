@@ -59,6 +59,14 @@ public class PatientResourceImpl implements PatientResource {
         return (PatientListResult) JsonUtils.readJson(responseJson, PatientListResult.class);
     }
 
+    @Override
+    public PatientListResult queryForFullPatients(String term) throws HttpException {
+        String responseJson = restfulClient.getJson(openmrsInstance.toInstancePathWithParams(
+                "/patient?q={term}&v=full", term));
+
+        return (PatientListResult) JsonUtils.readJson(responseJson, PatientListResult.class);
+    }
+
     @Override
     public Patient getPatientById(String patientId) throws HttpException {
         String responseJson = restfulClient.getJson(openmrsInstance.toInstancePathWithParams("/patient/{uuid}?v=full",
@@ -0,0 +1,76 @@
+package org.motechproject.openmrs19.rest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and error statistics of the requests sent to a single endpoint of the OpenMRS REST API. The counters are
+ * updated concurrently by the threads sending the requests.
+ */
+public class EndpointMetrics {
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong maxTime = new AtomicLong();
+
+    /**
+     * Records a finished request.
+     *
+     * @param duration  the time it took to handle the request, in milliseconds
+     * @param failed  true if the request failed
+     */
+    public void record(long duration, boolean failed) {
+        requestCount.incrementAndGet();
+        totalTime.addAndGet(duration);
+        if (failed) {
+            errorCount.incrementAndGet();
+        }
+
+        long max = maxTime.get();
+        while (duration > max && !maxTime.compareAndSet(max, duration)) {
+            max = maxTime.get();
+        }
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * Returns the total time spent on requests to this endpoint, in milliseconds.
+     *
+     * @return the total time of the requests
+     */
+    public long getTotalTime() {
+        return totalTime.get();
+    }
+
+    /**
+     * Returns the average time of a request to this endpoint, in milliseconds.
+     *
+     * @return the average time of a request, 0 if there were no requests
+     */
+    public long getAverageTime() {
+        long count = requestCount.get();
+        return count == 0 ? 0 : totalTime.get() / count;
+    }
+
+    /**
+     * Returns the time of the slowest request to this endpoint, in milliseconds.
+     *
+     * @return the time of the slowest request
+     */
+    public long getMaxTime() {
+        return maxTime.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EndpointMetrics{requests=%d, errors=%d, averageTime=%dms, maxTime=%dms}",
+                getRequestCount(), getErrorCount(), getAverageTime(), getMaxTime());
+    }
+}
@@ -4,20 +4,50 @@ import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
 import org.motechproject.server.config.SettingsFacade;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import static org.motechproject.openmrs19.util.SettingsUtils.getIntProperty;
+
 /**
- * Factory bean for creating a HTTP client with BASIC authentication.
+ * Factory bean for creating a HTTP client with BASIC authentication. The client uses a pool of connections whose size,
+ * timeouts, keep-alive time and retry policy are read from the OpenMRS settings.
  */
-public class HttpClientFactoryBean implements FactoryBean<HttpClient> {
+public class HttpClientFactoryBean implements FactoryBean<HttpClient>, DisposableBean {
 
     private static final String OPENMRS_PASSWORD = "openmrs.password";
     private static final String OPENMRS_USER = "openmrs.user";
+    private static final String MAX_CONNECTIONS_PER_HOST = "openmrs.http.maxConnectionsPerHost";
+    private static final String MAX_TOTAL_CONNECTIONS = "openmrs.http.maxTotalConnections";
+    private static final String CONNECT_TIMEOUT = "openmrs.http.connectTimeoutMillis";
+    private static final String SOCKET_TIMEOUT = "openmrs.http.socketTimeoutMillis";
+    private static final String KEEP_ALIVE = "openmrs.http.keepAliveSeconds";
+    private static final String RETRY_COUNT = "openmrs.http.retryCount";
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    private static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 40;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    private static final int DEFAULT_SOCKET_TIMEOUT = 30000;
+    private static final int DEFAULT_KEEP_ALIVE = 60;
+    private static final int DEFAULT_RETRY_COUNT = 2;
+
     private String user;
     private String password;
+    private int maxConnectionsPerHost;
+    private int maxTotalConnections;
+    private int connectTimeout;
+    private int socketTimeout;
+    private int keepAlive;
+    private int retryCount;
+
     private HttpClient httpClient;
+    private MultiThreadedHttpConnectionManager connectionManager;
+    private IdleConnectionTimeoutThread idleConnectionThread;
     private SettingsFacade settingsFacade;
 
     public HttpClientFactoryBean(@Qualifier("openMrs19Settings") SettingsFacade settingsFacade) {
@@ -26,11 +56,18 @@ public class HttpClientFactoryBean implements FactoryBean<HttpClient> {
 
     /**
      * Reads the OpenMRS username and password from the settings facade and uses that information for connecting to the
-     * OpenMRS server.
+     * OpenMRS server. Also reads the settings of the connection pool.
      */
     public void readSettings() {
         user = settingsFacade.getProperty(OPENMRS_USER);
         password = settingsFacade.getProperty(OPENMRS_PASSWORD);
+        maxConnectionsPerHost = getIntProperty(settingsFacade, MAX_CONNECTIONS_PER_HOST,
+                DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        maxTotalConnections = getIntProperty(settingsFacade, MAX_TOTAL_CONNECTIONS, DEFAULT_MAX_TOTAL_CONNECTIONS);
+        connectTimeout = getIntProperty(settingsFacade, CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT);
+        socketTimeout = getIntProperty(settingsFacade, SOCKET_TIMEOUT, DEFAULT_SOCKET_TIMEOUT);
+        keepAlive = getIntProperty(settingsFacade, KEEP_ALIVE, DEFAULT_KEEP_ALIVE);
+        retryCount = getIntProperty(settingsFacade, RETRY_COUNT, DEFAULT_RETRY_COUNT);
     }
 
     @Override
@@ -43,10 +80,45 @@ public class HttpClientFactoryBean implements FactoryBean<HttpClient> {
     }
 
     private void initializeHttpClient() {
-        httpClient = new HttpClient(new MultiThreadedHttpConnectionManager());
+        HttpConnectionManagerParams connectionParams = new HttpConnectionManagerParams();
+        connectionParams.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+        connectionParams.setMaxTotalConnections(Math.max(maxTotalConnections, maxConnectionsPerHost));
+        connectionParams.setConnectionTimeout(connectTimeout);
+        connectionParams.setSoTimeout(socketTimeout);
+        connectionParams.setStaleCheckingEnabled(true);
+
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        connectionManager.setParams(connectionParams);
+
+        httpClient = new HttpClient(connectionManager);
+        // wait for a free connection no longer than it takes to open a new one
+        httpClient.getParams().setConnectionManagerTimeout(connectTimeout);
+        httpClient.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
+                new IdempotentRequestRetryHandler(retryCount));
         httpClient.getState().setCredentials(
                 new AuthScope(AuthScope.ANY_HOST, AuthScope.ANY_PORT, AuthScope.ANY_REALM),
                 new UsernamePasswordCredentials(user, password));
+
+        if (keepAlive > 0) {
+            // connections idle for longer than the keep-alive time are closed, so that the pool doesn't hand out
+            // connections already dropped by the server
+            idleConnectionThread = new IdleConnectionTimeoutThread();
+            idleConnectionThread.setName("openmrs-idle-connection-closer");
+            idleConnectionThread.setConnectionTimeout(keepAlive * 1000L);
+            idleConnectionThread.setTimeoutInterval(Math.max(1000L, keepAlive * 1000L / 2));
+            idleConnectionThread.addConnectionManager(connectionManager);
+            idleConnectionThread.start();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (idleConnectionThread != null) {
+            idleConnectionThread.shutdown();
+        }
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+        }
     }
 
     @Override
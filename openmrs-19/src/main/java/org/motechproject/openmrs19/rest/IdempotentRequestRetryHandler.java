@@ -0,0 +1,45 @@
+package org.motechproject.openmrs19.rest;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodRetryHandler;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Retry handler that retries requests failed with an I/O error, up to the given number of times. Requests with
+ * idempotent methods are always retried, the other ones only if they haven't been sent to the server yet, so that
+ * entities are never created twice on the OpenMRS server.
+ */
+public class IdempotentRequestRetryHandler implements HttpMethodRetryHandler {
+
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS",
+            "PUT", "DELETE", "TRACE"));
+
+    private final int retryCount;
+
+    /**
+     * Creates a retry handler.
+     *
+     * @param retryCount  the maximum number of retries of a single request
+     */
+    public IdempotentRequestRetryHandler(int retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    @Override
+    public boolean retryMethod(HttpMethod method, IOException exception, int executionCount) {
+        if (executionCount > retryCount || exception instanceof UnknownHostException) {
+            return false;
+        }
+
+        return IDEMPOTENT_METHODS.contains(method.getName()) || !method.isRequestSent();
+    }
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+}
@@ -16,16 +16,24 @@ import org.springframework.web.client.RestOperations;
 
 import java.net.URI;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Implementation of {@link RestClient} based on Spring web client
+ * Implementation of {@link RestClient} based on Spring web client. It records the latency and errors of the requests
+ * sent to each endpoint of the OpenMRS REST API.
  */
 @Component
 public class SpringRestfulClientImpl implements RestClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SpringRestfulClientImpl.class);
 
+    private static final String WEB_SERVICE_PATH = "/ws/rest/v1/";
+
     private final RestOperations restOperations;
+    private final ConcurrentMap<String, EndpointMetrics> metrics = new ConcurrentHashMap<>();
 
     @Autowired
     public SpringRestfulClientImpl(RestOperations restOperations) {
@@ -73,10 +81,76 @@ public class SpringRestfulClientImpl implements RestClient {
     }
 
     public String getJson(URI uri) throws HttpException {
-        return executeCommand(new GetRestCommand(uri));
+        return executeCommand("GET", uri, new GetRestCommand(uri));
+    }
+
+    /**
+     * Returns the statistics of the requests sent by this client, keyed by the endpoint, e.g.
+     * {@code GET patient/{uuid}}.
+     *
+     * @return the statistics of the requests sent to each endpoint
+     */
+    public Map<String, EndpointMetrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    private <T> T executeCommand(String method, URI uri, RestCommand<T> command) throws HttpException {
+        long start = System.currentTimeMillis();
+        boolean failed = true;
+        try {
+            T result = doExecuteCommand(command);
+            failed = false;
+            return result;
+        } finally {
+            long duration = System.currentTimeMillis() - start;
+            String endpoint = toEndpoint(method, uri);
+            getEndpointMetrics(endpoint).record(duration, failed);
+            LOGGER.debug("{} took {} ms{}", endpoint, duration, failed ? " and failed" : "");
+        }
+    }
+
+    private EndpointMetrics getEndpointMetrics(String endpoint) {
+        EndpointMetrics endpointMetrics = metrics.get(endpoint);
+        if (endpointMetrics == null) {
+            EndpointMetrics created = new EndpointMetrics();
+            endpointMetrics = metrics.putIfAbsent(endpoint, created);
+            if (endpointMetrics == null) {
+                endpointMetrics = created;
+            }
+        }
+        return endpointMetrics;
+    }
+
+    /**
+     * Builds the endpoint key from the method and the path of the request. The paths of the OpenMRS REST API alternate
+     * between resource names and UUIDs, so every second segment of the path is replaced with a placeholder, which
+     * groups the requests for different entities of the same resource together.
+     */
+    static String toEndpoint(String method, URI uri) {
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        int index = path.indexOf(WEB_SERVICE_PATH);
+        if (index >= 0) {
+            path = path.substring(index + WEB_SERVICE_PATH.length());
+        }
+
+        StringBuilder endpoint = new StringBuilder(method).append(' ');
+        String[] segments = path.split("/");
+        int position = 0;
+        for (String segment : segments) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (position > 0) {
+                endpoint.append('/');
+            }
+            endpoint.append(position % 2 == 0 ? segment : "{uuid}");
+            position++;
+        }
+
+        return endpoint.toString();
     }
 
-    private <T> T executeCommand(RestCommand<T> command) throws HttpException {
+    private <T> T doExecuteCommand(RestCommand<T> command) throws HttpException {
         try {
             return command.execute();
         } catch (HttpClientErrorException e) {
@@ -93,12 +167,12 @@ public class SpringRestfulClientImpl implements RestClient {
     @Override
     public String postForJson(URI uri, String json) throws HttpException {
         PostRestCommand command = new PostRestCommand(uri, json);
-        return executeCommand(command);
+        return executeCommand("POST", uri, command);
     }
 
     @Override
     public void postWithEmptyResponseBody(URI url, String json) throws HttpException {
-        executeCommand(new PostCommand(url, json));
+        executeCommand("POST", url, new PostCommand(url, json));
     }
 
     private class PostCommand implements RestCommand<Void> {
@@ -123,7 +197,7 @@ public class SpringRestfulClientImpl implements RestClient {
 
     @Override
     public void delete(URI uri) throws HttpException {
-        executeCommand(new DeleteCommand(uri));
+        executeCommand("DELETE", uri, new DeleteCommand(uri));
     }
 
     private class DeleteCommand implements RestCommand<Void> {
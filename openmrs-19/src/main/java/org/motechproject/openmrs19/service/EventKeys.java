@@ -39,6 +39,7 @@ public final class EventKeys {
     public static final String ENCOUNTER_DATE = "EncounterDate";
     public static final String PROVIDER_ID = "ProviderId";
     public static final String USER_ID = "UserId";
+    public static final String ENCOUNTERS = "Encounters";
 
     public static final String BASE_SUBJECT = "org.motechproject.mrs.api.";
 
@@ -48,6 +49,7 @@ public final class EventKeys {
     public static final String DELETED_PATIENT_SUBJECT = BASE_SUBJECT + "Patient.Deleted";
     public static final String CREATED_NEW_OBSERVATION_SUBJECT = BASE_SUBJECT + "Observation.Created";
     public static final String CREATED_NEW_ENCOUNTER_SUBJECT = BASE_SUBJECT + "Encounter.Created";
+    public static final String CREATED_NEW_ENCOUNTERS_SUBJECT = BASE_SUBJECT + "Encounters.Created";
     public static final String UPDATED_ENCOUNTER_SUBJECT = BASE_SUBJECT + "Encounter.Updated";
     public static final String DELETED_ENCOUNTER_SUBJECT = BASE_SUBJECT + "Encounter.Deleted";
     public static final String CREATED_NEW_FACILITY_SUBJECT = BASE_SUBJECT + "Facility.Create";
@@ -1,6 +1,7 @@
 package org.motechproject.openmrs19.service;
 
 import org.motechproject.openmrs19.domain.OpenMRSEncounter;
+import org.motechproject.openmrs19.domain.OpenMRSEncounterResult;
 import org.motechproject.openmrs19.domain.OpenMRSEncounterType;
 
 import java.util.List;
@@ -18,6 +19,18 @@ public interface OpenMRSEncounterService {
      */
     OpenMRSEncounter createEncounter(OpenMRSEncounter encounter);
 
+    /**
+     * Creates the given {@code encounters} on the OpenMRS server. The concepts of all the observations are resolved
+     * once for the whole list and the encounters are sent with a limited number of parallel requests. A failure of one
+     * encounter doesn't stop the others from being created. Instead of a separate
+     * {@link EventKeys#CREATED_NEW_ENCOUNTER_SUBJECT} event for each encounter, the created encounters are published in
+     * {@link EventKeys#CREATED_NEW_ENCOUNTERS_SUBJECT} events, each holding a batch of them.
+     *
+     * @param encounters  the encounters to be created
+     * @return the results of creating the encounters, in the same order as the given encounters
+     */
+    List<OpenMRSEncounterResult> createEncounters(List<OpenMRSEncounter> encounters);
+
     /**
      * Returns the latest encounter of type {@code encounterType} for a patient with the given {@code motechId}.
      *
@@ -14,36 +14,136 @@ import org.motechproject.openmrs19.resource.model.ConceptListResult;
 import org.motechproject.openmrs19.service.EventKeys;
 import org.motechproject.openmrs19.service.OpenMRSConceptService;
 import org.motechproject.openmrs19.util.ConverterUtils;
+import org.motechproject.openmrs19.util.TtlCache;
+import org.motechproject.server.config.SettingsFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.motechproject.openmrs19.util.SettingsUtils.getIntProperty;
+import static org.motechproject.openmrs19.util.SettingsUtils.getProperty;
 
 
 @Service("conceptService")
 public class OpenMRSConceptServiceImpl implements OpenMRSConceptService {
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenMRSConceptServiceImpl.class);
 
-    private final Map<String, String> conceptCache = new HashMap<>();
+    private static final String CACHE_MAX_SIZE_PROPERTY = "openmrs.conceptCache.maxSize";
+    private static final String CACHE_TTL_PROPERTY = "openmrs.conceptCache.ttlMinutes";
+    private static final String CACHE_PRELOAD_PROPERTY = "openmrs.conceptCache.preload";
+    private static final String CACHE_PRELOAD_PAGE_SIZE_PROPERTY = "openmrs.conceptCache.preloadPageSize";
+
+    private static final int DEFAULT_CACHE_MAX_SIZE = 10000;
+    private static final int DEFAULT_CACHE_TTL = 60;
+    private static final int DEFAULT_PRELOAD_PAGE_SIZE = 500;
+
     private final ConceptResource conceptResource;
     private final EventRelay eventRelay;
+    private final SettingsFacade settingsFacade;
+
+    private TtlCache<String, String> conceptCache;
+    private Thread preloadThread;
 
     @Autowired
-    public OpenMRSConceptServiceImpl(ConceptResource conceptResource, EventRelay eventRelay) {
+    public OpenMRSConceptServiceImpl(ConceptResource conceptResource, EventRelay eventRelay,
+                                     @Qualifier("openMrs19Settings") SettingsFacade settingsFacade) {
         this.conceptResource = conceptResource;
         this.eventRelay = eventRelay;
+        this.settingsFacade = settingsFacade;
     }
 
-    public String resolveConceptUuidFromConceptName(String name) {
-        if (conceptCache.containsKey(name)) {
-            return conceptCache.get(name);
+    /**
+     * Creates the concept cache and, if enabled in the settings, starts filling it in the background with the concepts
+     * stored on the OpenMRS server.
+     */
+    @PostConstruct
+    public void initializeCache() {
+        int maxSize = getIntProperty(settingsFacade, CACHE_MAX_SIZE_PROPERTY, DEFAULT_CACHE_MAX_SIZE);
+        int timeToLive = getIntProperty(settingsFacade, CACHE_TTL_PROPERTY, DEFAULT_CACHE_TTL);
+
+        conceptCache = new TtlCache<>(maxSize, TimeUnit.MINUTES.toMillis(timeToLive));
+
+        if (Boolean.parseBoolean(getProperty(settingsFacade, CACHE_PRELOAD_PROPERTY, "false"))) {
+            final int pageSize = getIntProperty(settingsFacade, CACHE_PRELOAD_PAGE_SIZE_PROPERTY,
+                    DEFAULT_PRELOAD_PAGE_SIZE);
+
+            preloadThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    preloadCache(pageSize);
+                }
+            }, "openmrs-concept-cache-preload");
+            preloadThread.setDaemon(true);
+            preloadThread.start();
         }
+    }
+
+    @PreDestroy
+    public void stopPreloading() {
+        if (preloadThread != null) {
+            preloadThread.interrupt();
+        }
+    }
+
+    /**
+     * Fills the concept cache with the concepts stored on the OpenMRS server, one page at a time, until all concepts
+     * are cached or the cache is full.
+     *
+     * @param pageSize  the number of concepts fetched with a single request
+     */
+    public void preloadCache(int pageSize) {
+        int cached = 0;
+        int page = 1;
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Concept> concepts = conceptResource.getConceptReferences(page, pageSize).getResults();
+                if (concepts == null) {
+                    break;
+                }
+
+                for (Concept concept : concepts) {
+                    if (concept.getDisplay() == null || concept.getUuid() == null) {
+                        continue;
+                    }
+                    if (!conceptCache.putIfAbsent(concept.getDisplay(), concept.getUuid())) {
+                        LOGGER.info("The concept cache is full, stopped preloading after {} concepts", cached);
+                        return;
+                    }
+                    cached++;
+                }
+
+                if (concepts.size() < pageSize) {
+                    break;
+                }
+                page++;
+            }
+            LOGGER.info("Preloaded {} concepts into the concept cache", cached);
+        } catch (HttpException | RuntimeException e) {
+            LOGGER.warn("Failed to preload the concept cache after {} concepts, the rest will be fetched on demand",
+                    cached, e);
+        }
+    }
+
+    public String resolveConceptUuidFromConceptName(final String name) {
+        return conceptCache.get(name, new Callable<String>() {
+            @Override
+            public String call() {
+                return queryForConceptUuid(name);
+            }
+        });
+    }
 
+    private String queryForConceptUuid(String name) {
         ConceptListResult results;
         try {
             results = conceptResource.queryForConceptsByName(name);
@@ -57,7 +157,6 @@ public class OpenMRSConceptServiceImpl implements OpenMRSConceptService {
 
         for (Concept concept : results.getResults()) {
             if (concept.getDisplay().equals(name)) {
-                conceptCache.put(name, concept.getUuid());
                 return concept.getUuid();
             }
         }
@@ -6,12 +6,14 @@ import org.apache.commons.lang.Validate;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
 import org.motechproject.openmrs19.domain.OpenMRSEncounter;
+import org.motechproject.openmrs19.domain.OpenMRSEncounterResult;
 import org.motechproject.openmrs19.domain.OpenMRSEncounterType;
 import org.motechproject.openmrs19.domain.OpenMRSObservation;
 import org.motechproject.openmrs19.domain.OpenMRSPatient;
 import org.motechproject.openmrs19.domain.OpenMRSPerson;
 import org.motechproject.openmrs19.domain.OpenMRSProvider;
 import org.motechproject.openmrs19.exception.HttpException;
+import org.motechproject.openmrs19.exception.OpenMRSException;
 import org.motechproject.openmrs19.helper.EventHelper;
 import org.motechproject.openmrs19.resource.EncounterResource;
 import org.motechproject.openmrs19.resource.model.Concept;
@@ -27,11 +29,15 @@ import org.motechproject.openmrs19.service.EventKeys;
 import org.motechproject.openmrs19.service.OpenMRSEncounterService;
 import org.motechproject.openmrs19.service.OpenMRSPatientService;
 import org.motechproject.openmrs19.util.ConverterUtils;
+import org.motechproject.server.config.SettingsFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -40,25 +46,74 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.motechproject.openmrs19.util.SettingsUtils.getIntProperty;
 
 @Service("encounterService")
 public class OpenMRSEncounterServiceImpl implements OpenMRSEncounterService {
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenMRSEncounterServiceImpl.class);
 
+    private static final String BATCH_THREADS_PROPERTY = "openmrs.encounterBatch.maxConcurrentRequests";
+    private static final String EVENT_BATCH_SIZE_PROPERTY = "openmrs.encounterBatch.eventBatchSize";
+
+    private static final int DEFAULT_BATCH_THREADS = 4;
+    private static final int DEFAULT_EVENT_BATCH_SIZE = 100;
+
     private final OpenMRSPatientService patientAdapter;
     private final OpenMRSPersonServiceImpl personAdapter;
     private final OpenMRSConceptServiceImpl conceptAdapter;
     private final EncounterResource encounterResource;
     private final EventRelay eventRelay;
+    private final SettingsFacade settingsFacade;
+
+    private ExecutorService batchExecutor;
+    private int eventBatchSize;
 
     @Autowired
     public OpenMRSEncounterServiceImpl(EncounterResource encounterResource, OpenMRSPatientService patientAdapter,
-            OpenMRSPersonServiceImpl personAdapter, OpenMRSConceptServiceImpl conceptAdapter, EventRelay eventRelay) {
+            OpenMRSPersonServiceImpl personAdapter, OpenMRSConceptServiceImpl conceptAdapter, EventRelay eventRelay,
+            @Qualifier("openMrs19Settings") SettingsFacade settingsFacade) {
         this.encounterResource = encounterResource;
         this.patientAdapter = patientAdapter;
         this.personAdapter = personAdapter;
         this.conceptAdapter = conceptAdapter;
         this.eventRelay = eventRelay;
+        this.settingsFacade = settingsFacade;
+    }
+
+    /**
+     * Creates the pool of threads used for sending encounters in bulk.
+     */
+    @PostConstruct
+    public void initialize() {
+        int threads = Math.max(1, getIntProperty(settingsFacade, BATCH_THREADS_PROPERTY, DEFAULT_BATCH_THREADS));
+        eventBatchSize = Math.max(1, getIntProperty(settingsFacade, EVENT_BATCH_SIZE_PROPERTY,
+                DEFAULT_EVENT_BATCH_SIZE));
+
+        batchExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "openmrs-encounter-batch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (batchExecutor != null) {
+            batchExecutor.shutdownNow();
+        }
     }
 
     @Override
@@ -69,21 +124,10 @@ public class OpenMRSEncounterServiceImpl implements OpenMRSEncounterService {
         // than just a concept name. Attempt to map all concept names to concept
         // uuid's for each of the observations
         Set<? extends OpenMRSObservation> updatedObs = resolveConceptUuidForConceptNames(encounter.getObservations());
-        OpenMRSEncounter encounterCopy = new OpenMRSEncounter.OpenMRSEncounterBuilder().withId(encounter.getEncounterId())
-                .withProvider(encounter.getProvider()).withCreator(encounter.getCreator())
-                .withFacility(encounter.getFacility()).withDate(encounter.getDate().toDate())
-                .withPatient(encounter.getPatient()).withObservations(updatedObs)
-                .withEncounterType(encounter.getEncounterType()).build();
 
-        Encounter converted = toEncounter(encounterCopy);
-        Encounter saved;
         OpenMRSEncounter returnedEncounter;
         try {
-            saved = encounterResource.createEncounter(converted);
-            returnedEncounter = new OpenMRSEncounter.OpenMRSEncounterBuilder().withId(saved.getUuid()).withProvider(encounter.getProvider())
-                    .withCreator(encounter.getCreator()).withFacility(encounter.getFacility())
-                    .withDate(encounter.getDate().toDate()).withPatient(encounter.getPatient())
-                    .withObservations(encounter.getObservations()).withEncounterType(encounter.getEncounterType()).build();
+            returnedEncounter = postEncounter(encounter, updatedObs);
             eventRelay.sendEventMessage(new MotechEvent(EventKeys.CREATED_NEW_ENCOUNTER_SUBJECT, EventHelper.encounterParameters(returnedEncounter)));
         } catch (HttpException e) {
             LOGGER.error("Could not create encounter: " + e.getMessage());
@@ -93,6 +137,154 @@ public class OpenMRSEncounterServiceImpl implements OpenMRSEncounterService {
         return returnedEncounter;
     }
 
+    @Override
+    public List<OpenMRSEncounterResult> createEncounters(List<OpenMRSEncounter> encounters) {
+        Validate.notNull(encounters, "Encounters cannot be null");
+
+        // resolve every distinct concept name only once for the whole batch, encounters referring to concepts that
+        // couldn't be resolved will fail without being sent
+        Set<String> conceptNames = new HashSet<>();
+        for (OpenMRSEncounter encounter : encounters) {
+            if (encounter != null) {
+                collectConceptNames(encounter.getObservations(), conceptNames);
+            }
+        }
+
+        final Map<String, String> conceptUuids = new HashMap<>();
+        final Map<String, String> conceptErrors = new HashMap<>();
+        resolveConceptUuids(conceptNames, conceptUuids, conceptErrors);
+
+        List<Callable<OpenMRSEncounterResult>> tasks = new ArrayList<>();
+        for (final OpenMRSEncounter encounter : encounters) {
+            tasks.add(new Callable<OpenMRSEncounterResult>() {
+                @Override
+                public OpenMRSEncounterResult call() {
+                    return createEncounterFromBatch(encounter, conceptUuids, conceptErrors);
+                }
+            });
+        }
+
+        List<Future<OpenMRSEncounterResult>> futures = invokeAll(tasks);
+
+        List<OpenMRSEncounterResult> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            results.add(getResult(futures.get(i), encounters.get(i)));
+        }
+
+        publishCreatedEncounters(results);
+
+        return results;
+    }
+
+    /*
+     * Resolves the concept names in parallel, using the same pool of threads as the encounters. The UUIDs are put in
+     * the first map and the errors of the names that couldn't be resolved in the second one.
+     */
+    private void resolveConceptUuids(Set<String> conceptNames, Map<String, String> conceptUuids,
+                                     Map<String, String> conceptErrors) {
+        List<String> names = new ArrayList<>(conceptNames);
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (final String conceptName : names) {
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() {
+                    return conceptAdapter.resolveConceptUuidFromConceptName(conceptName);
+                }
+            });
+        }
+
+        List<Future<String>> futures = invokeAll(tasks);
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                conceptUuids.put(names.get(i), futures.get(i).get());
+            } catch (ExecutionException e) {
+                conceptErrors.put(names.get(i), String.valueOf(e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OpenMRSException("Interrupted while creating encounters", e);
+            }
+        }
+    }
+
+    private <T> List<Future<T>> invokeAll(List<Callable<T>> tasks) {
+        try {
+            return batchExecutor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OpenMRSException("Interrupted while creating encounters", e);
+        }
+    }
+
+    private OpenMRSEncounterResult createEncounterFromBatch(OpenMRSEncounter encounter, Map<String, String> conceptUuids,
+                                                            Map<String, String> conceptErrors) {
+        try {
+            validateEncounter(encounter);
+        } catch (IllegalArgumentException e) {
+            return OpenMRSEncounterResult.failure(encounter, e.getMessage());
+        }
+
+        Set<String> conceptNames = new HashSet<>();
+        collectConceptNames(encounter.getObservations(), conceptNames);
+        for (String conceptName : conceptNames) {
+            if (conceptErrors.containsKey(conceptName)) {
+                return OpenMRSEncounterResult.failure(encounter, conceptErrors.get(conceptName));
+            }
+        }
+
+        try {
+            OpenMRSEncounter created = postEncounter(encounter, withConceptUuids(encounter.getObservations(), conceptUuids));
+            return OpenMRSEncounterResult.success(encounter, created);
+        } catch (HttpException e) {
+            LOGGER.error("Could not create encounter: " + e.getMessage());
+            return OpenMRSEncounterResult.failure(encounter, e.getMessage());
+        }
+    }
+
+    private OpenMRSEncounterResult getResult(Future<OpenMRSEncounterResult> future, OpenMRSEncounter encounter) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            LOGGER.error("Could not create encounter", e.getCause());
+            return OpenMRSEncounterResult.failure(encounter, String.valueOf(e.getCause().getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OpenMRSException("Interrupted while creating encounters", e);
+        }
+    }
+
+    private void publishCreatedEncounters(List<OpenMRSEncounterResult> results) {
+        List<OpenMRSEncounter> batch = new ArrayList<>();
+        for (OpenMRSEncounterResult result : results) {
+            if (result.isSuccessful()) {
+                batch.add(result.getCreatedEncounter());
+            }
+            if (batch.size() == eventBatchSize) {
+                eventRelay.sendEventMessage(new MotechEvent(EventKeys.CREATED_NEW_ENCOUNTERS_SUBJECT, EventHelper.encountersParameters(batch)));
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            eventRelay.sendEventMessage(new MotechEvent(EventKeys.CREATED_NEW_ENCOUNTERS_SUBJECT, EventHelper.encountersParameters(batch)));
+        }
+    }
+
+    private OpenMRSEncounter postEncounter(OpenMRSEncounter encounter, Set<? extends OpenMRSObservation> updatedObs) throws HttpException {
+        OpenMRSEncounter encounterCopy = new OpenMRSEncounter.OpenMRSEncounterBuilder().withId(encounter.getEncounterId())
+                .withProvider(encounter.getProvider()).withCreator(encounter.getCreator())
+                .withFacility(encounter.getFacility()).withDate(encounter.getDate().toDate())
+                .withPatient(encounter.getPatient()).withObservations(updatedObs)
+                .withEncounterType(encounter.getEncounterType()).build();
+
+        Encounter converted = toEncounter(encounterCopy);
+        Encounter saved = encounterResource.createEncounter(converted);
+
+        return new OpenMRSEncounter.OpenMRSEncounterBuilder().withId(saved.getUuid()).withProvider(encounter.getProvider())
+                .withCreator(encounter.getCreator()).withFacility(encounter.getFacility())
+                .withDate(encounter.getDate().toDate()).withPatient(encounter.getPatient())
+                .withObservations(encounter.getObservations()).withEncounterType(encounter.getEncounterType()).build();
+    }
+
     private void validateEncounter(OpenMRSEncounter encounter) {
         Validate.notNull(encounter, "Encounter cannot be null");
         Validate.notNull(encounter.getPatient(), "Patient cannot be null");
@@ -155,15 +347,35 @@ public class OpenMRSEncounterServiceImpl implements OpenMRSEncounterService {
     }
 
     private Set<? extends OpenMRSObservation> resolveConceptUuidForConceptNames(Set<? extends OpenMRSObservation> originalObservations) {
+        Set<String> conceptNames = new HashSet<>();
+        collectConceptNames(originalObservations, conceptNames);
+
+        Map<String, String> conceptUuids = new HashMap<>();
+        for (String conceptName : conceptNames) {
+            conceptUuids.put(conceptName, conceptAdapter.resolveConceptUuidFromConceptName(conceptName));
+        }
+
+        return withConceptUuids(originalObservations, conceptUuids);
+    }
+
+    private void collectConceptNames(Set<? extends OpenMRSObservation> observations, Set<String> conceptNames) {
+        if (observations != null) {
+            for (OpenMRSObservation observation : observations) {
+                conceptNames.add(observation.getConceptName());
+                if (CollectionUtils.isNotEmpty(observation.getDependentObservations())) {
+                    collectConceptNames(observation.getDependentObservations(), conceptNames);
+                }
+            }
+        }
+    }
+
+    private Set<? extends OpenMRSObservation> withConceptUuids(Set<? extends OpenMRSObservation> originalObservations,
+                                                              Map<String, String> conceptUuids) {
         Set<OpenMRSObservation> updatedObs = new HashSet<>();
         if (originalObservations != null) {
             for (OpenMRSObservation observation : originalObservations) {
-                String conceptUuid = conceptAdapter.resolveConceptUuidFromConceptName(observation.getConceptName());
-                if (CollectionUtils.isNotEmpty(observation.getDependentObservations())) {
-                    resolveConceptUuidForConceptNames(observation.getDependentObservations());
-                }
-                updatedObs.add(new OpenMRSObservation(observation.getObservationId(), observation.getDate().toDate(), conceptUuid, observation
-                        .getValue()));
+                updatedObs.add(new OpenMRSObservation(observation.getObservationId(), observation.getDate().toDate(),
+                        conceptUuids.get(observation.getConceptName()), observation.getValue()));
             }
         }
 
@@ -216,32 +428,34 @@ public class OpenMRSEncounterServiceImpl implements OpenMRSEncounterService {
             return Collections.emptyList();
         }
 
-        // the response JSON from the OpenMRS does not contain full information
-        // for
-        // the provider. therefore, separate request(s) must be made to obtain
-        // full provider
-        // information. As an optimization, only make 1 request per unique
-        // provider
-        Map<String, OpenMRSPerson> providers = new HashMap<>();
+        // the response JSON from the OpenMRS does not contain full information for the provider, therefore separate
+        // requests must be made to obtain it. Only one request is made per unique provider, and these requests are
+        // sent in parallel
+        Set<String> providerUuids = new HashSet<>();
         for (Encounter encounter : result.getResults()) {
-            String providerUuid = encounter.getProvider().getUuid();
-            OpenMRSPerson provider = personAdapter.getPersonByUuid(providerUuid);
-            providers.put(providerUuid, provider);
+            providerUuids.add(encounter.getProvider().getUuid());
         }
+        Map<String, OpenMRSPerson> providers = personAdapter.getPersonsByUuids(providerUuids);
 
         List<OpenMRSEncounter> updatedEncounters = new ArrayList<>();
         for (Encounter encounter : result.getResults()) {
             OpenMRSPerson person = providers.get(encounter.getProvider().getUuid());
-            OpenMRSProvider provider = new OpenMRSProvider(person);
-            provider.setProviderId(person.getPersonId());
-            OpenMRSEncounter mrsEncounter = convertToMrsEncounter(encounter,
-                    provider, patient);
+            OpenMRSEncounter mrsEncounter = convertToMrsEncounter(encounter, toProvider(person), patient);
             updatedEncounters.add(mrsEncounter);
         }
 
         return updatedEncounters;
     }
 
+    private OpenMRSProvider toProvider(OpenMRSPerson person) {
+        if (person == null) {
+            return null;
+        }
+        OpenMRSProvider provider = new OpenMRSProvider(person);
+        provider.setProviderId(person.getPersonId());
+        return provider;
+    }
+
     private OpenMRSEncounter convertToMrsEncounter(Encounter encounter, OpenMRSProvider mrsPerson, OpenMRSPatient patient) {
 
         return new OpenMRSEncounter.OpenMRSEncounterBuilder().withId(encounter.getUuid())
@@ -268,9 +482,7 @@ public class OpenMRSEncounterServiceImpl implements OpenMRSEncounterService {
             Encounter encounter = encounterResource.getEncounterById(uuid);
             OpenMRSPatient patient = patientAdapter.getPatientByUuid(encounter.getPatient().getUuid());
             OpenMRSPerson person = personAdapter.getPersonByUuid(encounter.getProvider().getUuid());
-            OpenMRSProvider provider = new OpenMRSProvider(person);
-            provider.setProviderId(person.getPersonId());
-            return convertToMrsEncounter(encounter, provider, patient);
+            return convertToMrsEncounter(encounter, toProvider(person), patient);
         } catch (HttpException e) {
             return null;
         }
@@ -2,12 +2,14 @@ package org.motechproject.openmrs19.service.impl;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
+import org.joda.time.DateTime;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
 import org.motechproject.openmrs19.domain.OpenMRSConcept;
 import org.motechproject.openmrs19.domain.OpenMRSFacility;
 import org.motechproject.openmrs19.domain.OpenMRSPatient;
 import org.motechproject.openmrs19.domain.OpenMRSPerson;
+import org.motechproject.openmrs19.domain.PatientIdentifierMapping;
 import org.motechproject.openmrs19.exception.HttpException;
 import org.motechproject.openmrs19.exception.OpenMRSException;
 import org.motechproject.openmrs19.exception.PatientNotFoundException;
@@ -20,11 +22,17 @@ import org.motechproject.openmrs19.service.EventKeys;
 import org.motechproject.openmrs19.service.OpenMRSFacilityService;
 import org.motechproject.openmrs19.service.OpenMRSPatientService;
 import org.motechproject.openmrs19.util.ConverterUtils;
+import org.motechproject.server.config.SettingsFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -32,33 +40,181 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.motechproject.openmrs19.util.SettingsUtils.getIntProperty;
+import static org.motechproject.openmrs19.util.SettingsUtils.getLongProperty;
 
 @Service("patientService")
 public class OpenMRSPatientServiceImpl implements OpenMRSPatientService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenMRSPatientServiceImpl.class);
 
+    private static final String INDEX_REFRESH_INTERVAL_PROPERTY = "openmrs.patientIndex.refreshIntervalMinutes";
+    private static final String INDEX_VERIFY_AFTER_PROPERTY = "openmrs.patientIndex.verifyAfterMinutes";
+    private static final String INDEX_MAX_VERIFICATIONS_PROPERTY = "openmrs.patientIndex.maxVerificationsPerRun";
+    private static final long DEFAULT_INDEX_REFRESH_INTERVAL = 1440;
+    private static final int DEFAULT_INDEX_VERIFY_AFTER = 10080;
+    private static final int DEFAULT_INDEX_MAX_VERIFICATIONS = 1000;
+    private static final int INDEX_REFRESH_PAGE_SIZE = 500;
+
     private final PatientResource patientResource;
     private final OpenMRSPersonServiceImpl personAdapter;
     private final OpenMRSFacilityService facilityAdapter;
     private final EventRelay eventRelay;
+    private final PatientIdentifierIndex identifierIndex;
+    private final SettingsFacade settingsFacade;
+
+    private ScheduledExecutorService indexRefreshExecutor;
 
     @Autowired
     public OpenMRSPatientServiceImpl(PatientResource patientResource, OpenMRSPersonServiceImpl personAdapter,
-            OpenMRSFacilityService facilityAdapter, EventRelay eventRelay) {
+            OpenMRSFacilityService facilityAdapter, EventRelay eventRelay, PatientIdentifierIndex identifierIndex,
+            @Qualifier("openMrs19Settings") SettingsFacade settingsFacade) {
         this.patientResource = patientResource;
         this.personAdapter = personAdapter;
         this.facilityAdapter = facilityAdapter;
         this.eventRelay = eventRelay;
+        this.identifierIndex = identifierIndex;
+        this.settingsFacade = settingsFacade;
+    }
+
+    /**
+     * Schedules the periodic refresh of the local MOTECH ID index, unless it was disabled in the settings.
+     */
+    @PostConstruct
+    public void scheduleIndexRefresh() {
+        long interval = getLongProperty(settingsFacade, INDEX_REFRESH_INTERVAL_PROPERTY, DEFAULT_INDEX_REFRESH_INTERVAL);
+
+        if (interval > 0) {
+            indexRefreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "openmrs-patient-index-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            indexRefreshExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refreshIdentifierIndex();
+                }
+            }, interval, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void stopIndexRefresh() {
+        if (indexRefreshExecutor != null) {
+            indexRefreshExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies the stale mappings of the local MOTECH ID index against the OpenMRS server. A mapping is stale if it
+     * wasn't verified within the configured time, the ones verified longest ago are verified first and the number of
+     * mappings verified in a single run is limited. Mappings of patients whose MOTECH ID has changed are updated,
+     * mappings of patients that no longer exist or have no MOTECH ID are removed.
+     */
+    public void refreshIdentifierIndex() {
+        DateTime verifiedBefore = DateTime.now().minusMinutes(getIntProperty(settingsFacade,
+                INDEX_VERIFY_AFTER_PROPERTY, DEFAULT_INDEX_VERIFY_AFTER));
+        int maxVerifications = getIntProperty(settingsFacade, INDEX_MAX_VERIFICATIONS_PROPERTY,
+                DEFAULT_INDEX_MAX_VERIFICATIONS);
+
+        List<PatientIdentifierMapping> mappings = new ArrayList<>();
+        int page = 1;
+        List<PatientIdentifierMapping> mappingsPage;
+        do {
+            mappingsPage = identifierIndex.getMappings(page++, INDEX_REFRESH_PAGE_SIZE);
+            for (PatientIdentifierMapping mapping : mappingsPage) {
+                if (mapping.getVerifiedAt() == null || mapping.getVerifiedAt().isBefore(verifiedBefore)) {
+                    mappings.add(mapping);
+                }
+            }
+        } while (mappingsPage.size() == INDEX_REFRESH_PAGE_SIZE);
+
+        if (mappings.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(mappings, new Comparator<PatientIdentifierMapping>() {
+            @Override
+            public int compare(PatientIdentifierMapping first, PatientIdentifierMapping second) {
+                if (first.getVerifiedAt() == null || second.getVerifiedAt() == null) {
+                    return Boolean.compare(first.getVerifiedAt() != null, second.getVerifiedAt() != null);
+                }
+                return first.getVerifiedAt().compareTo(second.getVerifiedAt());
+            }
+        });
+        if (mappings.size() > maxVerifications) {
+            mappings = mappings.subList(0, Math.max(0, maxVerifications));
+        }
+
+        String motechIdentifierUuid = getMotechPatientIdentifierTypeUuid();
+        if (motechIdentifierUuid == null) {
+            return;
+        }
+
+        int changed = 0;
+        for (PatientIdentifierMapping mapping : mappings) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            Patient patient;
+            try {
+                patient = patientResource.getPatientById(mapping.getPatientUuid());
+            } catch (HttpException e) {
+                if (isNotFound(e)) {
+                    identifierIndex.removeByPatientUuid(mapping.getPatientUuid());
+                    changed++;
+                }
+                continue;
+            }
+
+            String motechId = getMotechId(patient, motechIdentifierUuid);
+            if (motechId == null) {
+                identifierIndex.removeByPatientUuid(mapping.getPatientUuid());
+                changed++;
+            } else if (!motechId.equals(mapping.getMotechId())) {
+                identifierIndex.put(motechId, mapping.getPatientUuid());
+                changed++;
+            } else {
+                identifierIndex.markVerified(mapping);
+            }
+        }
+
+        LOGGER.info("Verified {} stale entries of the MoTeCH Id index, {} of them were out of date", mappings.size(),
+                changed);
     }
 
     @Override
     public OpenMRSPatient getPatientByMotechId(String motechId) {
         Validate.notEmpty(motechId, "Motech Id cannot be empty");
 
+        // the local index avoids the search on the OpenMRS server, the patient fetched by the indexed UUID is still
+        // verified in case its MoTeCH Id was changed outside of MOTECH
+        String patientUuid = identifierIndex.getPatientUuid(motechId);
+        if (patientUuid != null) {
+            OpenMRSPatient patient = getPatientByUuid(patientUuid);
+            if (patient != null && motechId.equals(patient.getMotechId())) {
+                return patient;
+            }
+            identifierIndex.removeByMotechId(motechId);
+        }
+
+        return searchForPatientByMotechId(motechId);
+    }
+
+    private OpenMRSPatient searchForPatientByMotechId(String motechId) {
         PatientListResult patientList;
         try {
-            patientList = patientResource.queryForPatient(motechId);
+            patientList = patientResource.queryForFullPatients(motechId);
         } catch (HttpException e) {
             LOGGER.error("Failed search for patient by MoTeCH Id: " + motechId);
             return null;
@@ -70,7 +226,28 @@ public class OpenMRSPatientServiceImpl implements OpenMRSPatientService {
             LOGGER.warn("Search for patient by id returned more than 1 result");
         }
 
-        return getPatientByUuid(patientList.getResults().get(0).getUuid());
+        // the search is fuzzy, so prefer the patient whose MoTeCH Id matches exactly and only index that one
+        Patient found = patientList.getResults().get(0);
+        String motechIdentifierUuid = getMotechPatientIdentifierTypeUuid();
+        for (Patient patient : patientList.getResults()) {
+            if (motechIdentifierUuid != null && motechId.equals(getMotechId(patient, motechIdentifierUuid))) {
+                found = patient;
+                identifierIndex.put(motechId, patient.getUuid());
+                break;
+            }
+        }
+
+        return convertPatient(found, new HashMap<String, OpenMRSFacility>());
+    }
+
+    private String getMotechId(Patient patient, String motechIdentifierUuid) {
+        Identifier motechIdentifier = patient.getIdentifierByIdentifierType(motechIdentifierUuid);
+        return motechIdentifier == null ? null : motechIdentifier.getIdentifier();
+    }
+
+    private boolean isNotFound(HttpException e) {
+        return e.getCause() instanceof HttpClientErrorException
+                && ((HttpClientErrorException) e.getCause()).getStatusCode() == HttpStatus.NOT_FOUND;
     }
 
     @Override
@@ -85,6 +262,15 @@ public class OpenMRSPatientServiceImpl implements OpenMRSPatientService {
             return null;
         }
 
+        return convertPatient(patient, new HashMap<String, OpenMRSFacility>());
+    }
+
+    /**
+     * Converts the given patient, fetched in the full representation, to the MOTECH model. The facilities of the
+     * MOTECH identifiers are looked up in the given map first, and the ones fetched from the OpenMRS server are added
+     * to it, so that converting many patients fetches each facility only once.
+     */
+    private OpenMRSPatient convertPatient(Patient patient, Map<String, OpenMRSFacility> facilities) {
         String motechIdentifierUuid;
         try {
             motechIdentifierUuid = patientResource.getMotechPatientIdentifierUuid();
@@ -102,7 +288,13 @@ public class OpenMRSPatientServiceImpl implements OpenMRSPatientService {
         } else {
 
             if (motechIdentifier.getLocation() != null) {
-                facility = facilityAdapter.getFacilityByUuid(motechIdentifier.getLocation().getUuid());
+                String facilityUuid = motechIdentifier.getLocation().getUuid();
+                if (facilities.containsKey(facilityUuid)) {
+                    facility = facilities.get(facilityUuid);
+                } else {
+                    facility = facilityAdapter.getFacilityByUuid(facilityUuid);
+                    facilities.put(facilityUuid, facility);
+                }
             }
 
             motechId = motechIdentifier.getIdentifier();
@@ -134,6 +326,7 @@ public class OpenMRSPatientServiceImpl implements OpenMRSPatientService {
 
         try {
             OpenMRSPatient savedPatient = ConverterUtils.toOpenMRSPatient(patientResource.createPatient(converted));
+            identifierIndex.put(patient.getMotechId(), savedPatient.getPatientId());
             eventRelay.sendEventMessage(new MotechEvent(EventKeys.CREATED_NEW_PATIENT_SUBJECT, EventHelper.patientParameters(savedPatient)));
 
             return savedPatient;
@@ -159,16 +352,20 @@ public class OpenMRSPatientServiceImpl implements OpenMRSPatientService {
         PatientListResult result;
 
         try {
-            result = patientResource.queryForPatient(name);
+            result = patientResource.queryForFullPatients(name);
         } catch (HttpException e) {
             LOGGER.error("Failed search for patient name: " + name);
             return Collections.emptyList();
         }
 
         List<OpenMRSPatient> patients = new ArrayList<>();
+        Map<String, OpenMRSFacility> facilities = new HashMap<>();
 
-        for (Patient partialPatient : result.getResults()) {
-            OpenMRSPatient patient = getPatientByUuid(partialPatient.getUuid());
+        for (Patient fullPatient : result.getResults()) {
+            OpenMRSPatient patient = convertPatient(fullPatient, facilities);
+            if (patient == null) {
+                continue;
+            }
             if (id == null) {
                 patients.add(patient);
             } else {
@@ -210,6 +407,7 @@ public class OpenMRSPatientServiceImpl implements OpenMRSPatientService {
 
         try {
             patientResource.updatePatientMotechId(patient.getPatientId(), patient.getMotechId());
+            identifierIndex.put(patient.getMotechId(), patient.getPatientId());
         } catch (HttpException e) {
             throw new OpenMRSException("Failed to update OpenMRS patient with id: " + patient.getPatientId(), e);
         }
@@ -238,6 +436,7 @@ public class OpenMRSPatientServiceImpl implements OpenMRSPatientService {
 
         try {
             patientResource.deletePatient(uuid);
+            identifierIndex.removeByPatientUuid(uuid);
             eventRelay.sendEventMessage(new MotechEvent(EventKeys.DELETED_PATIENT_SUBJECT, EventHelper.patientParameters(new OpenMRSPatient(uuid))));
         } catch (HttpException e) {
             throw new PatientNotFoundException(e);
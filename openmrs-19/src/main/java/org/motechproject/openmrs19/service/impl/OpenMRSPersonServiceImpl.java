@@ -18,42 +18,190 @@ import org.motechproject.openmrs19.resource.model.Person;
 import org.motechproject.openmrs19.service.EventKeys;
 import org.motechproject.openmrs19.service.OpenMRSPersonService;
 import org.motechproject.openmrs19.util.ConverterUtils;
+import org.motechproject.openmrs19.util.TtlCache;
+import org.motechproject.server.config.SettingsFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.motechproject.openmrs19.util.SettingsUtils.getIntProperty;
 
 @Service("personService")
 public class OpenMRSPersonServiceImpl implements OpenMRSPersonService {
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenMRSPersonServiceImpl.class);
 
+    private static final String CACHE_MAX_SIZE_PROPERTY = "openmrs.personCache.maxSize";
+    private static final String CACHE_TTL_PROPERTY = "openmrs.personCache.ttlSeconds";
+    private static final String FETCH_THREADS_PROPERTY = "openmrs.fetch.maxConcurrentRequests";
+
+    private static final int DEFAULT_CACHE_MAX_SIZE = 1000;
+    private static final int DEFAULT_CACHE_TTL = 60;
+    private static final int DEFAULT_FETCH_THREADS = 4;
+
     private final Map<String, String> attributeTypeUuidCache = new HashMap<>();
 
     private final PersonResource personResource;
     private final EventRelay eventRelay;
+    private final SettingsFacade settingsFacade;
+
+    private TtlCache<String, Person> personCache;
+    private ExecutorService fetchExecutor;
 
     @Autowired
-    public OpenMRSPersonServiceImpl(PersonResource personResource, EventRelay eventRelay) {
+    public OpenMRSPersonServiceImpl(PersonResource personResource, EventRelay eventRelay,
+                                    @Qualifier("openMrs19Settings") SettingsFacade settingsFacade) {
         this.personResource = personResource;
         this.eventRelay = eventRelay;
+        this.settingsFacade = settingsFacade;
+    }
+
+    /**
+     * Creates the person cache and the pool of threads used for fetching many persons at once.
+     */
+    @PostConstruct
+    public void initialize() {
+        int maxSize = getIntProperty(settingsFacade, CACHE_MAX_SIZE_PROPERTY, DEFAULT_CACHE_MAX_SIZE);
+        int timeToLive = getIntProperty(settingsFacade, CACHE_TTL_PROPERTY, DEFAULT_CACHE_TTL);
+        int threads = Math.max(1, getIntProperty(settingsFacade, FETCH_THREADS_PROPERTY, DEFAULT_FETCH_THREADS));
+
+        personCache = new TtlCache<>(maxSize, TimeUnit.SECONDS.toMillis(timeToLive));
+        fetchExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "openmrs-person-fetch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (fetchExecutor != null) {
+            fetchExecutor.shutdownNow();
+        }
     }
 
     @Override
     public OpenMRSPerson getPersonByUuid(String uuid) {
 
         try {
-            return ConverterUtils.toOpenMRSPerson(personResource.getPersonById(uuid));
+            return ConverterUtils.toOpenMRSPerson(fetchPerson(uuid));
         } catch (HttpException e) {
             LOGGER.error("Failed to retrieve person with uuid: " + uuid);
             return null;
         }
     }
 
+    /**
+     * Returns the persons with the given UUIDs. Each person is requested at most once, persons fetched recently are
+     * taken from the cache and the remaining ones are fetched in parallel, with the number of concurrent requests
+     * limited by the {@code openmrs.fetch.maxConcurrentRequests} setting.
+     *
+     * @param uuids  the UUIDs of the persons, may contain duplicates
+     * @return the persons mapped by their UUIDs, persons that couldn't be retrieved are not included
+     */
+    public Map<String, OpenMRSPerson> getPersonsByUuids(Collection<String> uuids) {
+        Map<String, OpenMRSPerson> persons = new HashMap<>();
+        Set<String> toFetch = new LinkedHashSet<>();
+
+        for (String uuid : uuids) {
+            Person cached = personCache.get(uuid);
+            if (cached != null) {
+                persons.put(uuid, ConverterUtils.toOpenMRSPerson(cached));
+            } else if (uuid != null) {
+                toFetch.add(uuid);
+            }
+        }
+
+        if (toFetch.size() == 1) {
+            String uuid = toFetch.iterator().next();
+            OpenMRSPerson person = getPersonByUuid(uuid);
+            if (person != null) {
+                persons.put(uuid, person);
+            }
+        } else if (!toFetch.isEmpty()) {
+            persons.putAll(fetchPersonsInParallel(toFetch));
+        }
+
+        return persons;
+    }
+
+    private Map<String, OpenMRSPerson> fetchPersonsInParallel(Set<String> uuids) {
+        List<Callable<Person>> tasks = new ArrayList<>();
+        for (final String uuid : uuids) {
+            tasks.add(new Callable<Person>() {
+                @Override
+                public Person call() throws HttpException {
+                    return fetchPerson(uuid);
+                }
+            });
+        }
+
+        List<Future<Person>> futures;
+        try {
+            futures = fetchExecutor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OpenMRSException("Interrupted while retrieving persons", e);
+        }
+
+        Map<String, OpenMRSPerson> persons = new HashMap<>();
+        int i = 0;
+        for (String uuid : uuids) {
+            try {
+                persons.put(uuid, ConverterUtils.toOpenMRSPerson(futures.get(i).get()));
+            } catch (ExecutionException e) {
+                LOGGER.error("Failed to retrieve person with uuid: " + uuid);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OpenMRSException("Interrupted while retrieving persons", e);
+            }
+            i++;
+        }
+
+        return persons;
+    }
+
+    private Person fetchPerson(final String uuid) throws HttpException {
+        try {
+            return personCache.get(uuid, new Callable<Person>() {
+                @Override
+                public Person call() throws HttpException {
+                    return personResource.getPersonById(uuid);
+                }
+            });
+        } catch (OpenMRSException e) {
+            if (e.getCause() instanceof HttpException) {
+                throw (HttpException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     @Override
     public OpenMRSPerson createPerson(OpenMRSPerson openMRSPerson) {
 
@@ -97,6 +245,7 @@ public class OpenMRSPersonServiceImpl implements OpenMRSPersonService {
 
         try {
             OpenMRSPerson updated = ConverterUtils.toOpenMRSPerson(personResource.updatePerson(converted));
+            personCache.remove(openMRSPerson.getPersonId());
             eventRelay.sendEventMessage(new MotechEvent(EventKeys.UPDATED_PERSON_SUBJECT, EventHelper.personParameters(updated)));
 
             return updated;
@@ -115,6 +264,7 @@ public class OpenMRSPersonServiceImpl implements OpenMRSPersonService {
 
         try {
             personResource.updatePerson(person);
+            personCache.remove(patientId);
         } catch (HttpException e) {
             throw new OpenMRSException("Failed to save cause of death observation for patient id: " + patientId, e);
         }
@@ -125,6 +275,7 @@ public class OpenMRSPersonServiceImpl implements OpenMRSPersonService {
 
         try {
             personResource.deletePerson(uuid);
+            personCache.remove(uuid);
             eventRelay.sendEventMessage(new MotechEvent(EventKeys.DELETED_PERSON_SUBJECT, EventHelper.personParameters(new OpenMRSPerson(uuid))));
         } catch (HttpException e) {
             throw new OpenMRSException("Failed to remove person with UUID: " + uuid, e);
@@ -132,6 +283,7 @@ public class OpenMRSPersonServiceImpl implements OpenMRSPersonService {
     }
 
     public void saveAttributesForPerson(OpenMRSPerson person) {
+        personCache.remove(person.getPersonId());
         for (OpenMRSAttribute attribute : person.getAttributes()) {
             Attribute attr = new Attribute();
             attr.setValue(attribute.getValue());
@@ -153,6 +305,8 @@ public class OpenMRSPersonServiceImpl implements OpenMRSPersonService {
             throw new OpenMRSException("Failed to retrieve person when deleting attributes with uuid: " + person.getPersonId(), e);
         }
 
+        personCache.remove(person.getPersonId());
+
         List<Attribute> attributes = saved.getAttributes();
         for (Attribute attr : attributes) {
             try {
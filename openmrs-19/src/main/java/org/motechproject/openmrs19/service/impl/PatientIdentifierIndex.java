@@ -0,0 +1,149 @@
+package org.motechproject.openmrs19.service.impl;
+
+import org.joda.time.DateTime;
+import org.motechproject.mds.query.QueryParams;
+import org.motechproject.mds.util.Order;
+import org.motechproject.openmrs19.domain.PatientIdentifierMapping;
+import org.motechproject.openmrs19.repository.PatientIdentifierMappingDataService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Local index of the MOTECH IDs of the patients stored on the OpenMRS server, backed by
+ * {@link PatientIdentifierMapping} entities. The index is only an optimization, so failures of the underlying data
+ * service are logged and treated as a miss rather than propagated to the callers.
+ */
+@Component
+public class PatientIdentifierIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PatientIdentifierIndex.class);
+
+    private final PatientIdentifierMappingDataService mappingDataService;
+
+    @Autowired
+    public PatientIdentifierIndex(PatientIdentifierMappingDataService mappingDataService) {
+        this.mappingDataService = mappingDataService;
+    }
+
+    /**
+     * Returns the UUID of the patient with the given MOTECH ID.
+     *
+     * @param motechId  the MOTECH ID of the patient
+     * @return the UUID of the patient, null if the MOTECH ID isn't indexed
+     */
+    public String getPatientUuid(String motechId) {
+        try {
+            PatientIdentifierMapping mapping = mappingDataService.findByMotechId(motechId);
+            return mapping == null ? null : mapping.getPatientUuid();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to look up the patient with MOTECH Id {} in the local index", motechId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Maps the given MOTECH ID to the given patient UUID and marks the mapping as verified. Any other MOTECH ID
+     * previously mapped to that patient is removed from the index.
+     *
+     * @param motechId  the MOTECH ID of the patient
+     * @param patientUuid  the UUID of the patient
+     */
+    public void put(final String motechId, final String patientUuid) {
+        if (motechId == null || patientUuid == null) {
+            return;
+        }
+
+        try {
+            mappingDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (PatientIdentifierMapping mapping : mappingDataService.findByPatientUuid(patientUuid)) {
+                        if (!motechId.equals(mapping.getMotechId())) {
+                            mappingDataService.delete(mapping);
+                        }
+                    }
+
+                    PatientIdentifierMapping mapping = mappingDataService.findByMotechId(motechId);
+                    if (mapping == null) {
+                        mappingDataService.create(new PatientIdentifierMapping(motechId, patientUuid, DateTime.now()));
+                    } else {
+                        mapping.setPatientUuid(patientUuid);
+                        mapping.setVerifiedAt(DateTime.now());
+                        mappingDataService.update(mapping);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to index the patient {} with MOTECH Id {}", patientUuid, motechId, e);
+        }
+    }
+
+    /**
+     * Marks the given mapping as verified against the OpenMRS server now.
+     *
+     * @param mapping  the mapping that was verified
+     */
+    public void markVerified(PatientIdentifierMapping mapping) {
+        try {
+            mapping.setVerifiedAt(DateTime.now());
+            mappingDataService.update(mapping);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to mark the MOTECH Id {} as verified in the local index", mapping.getMotechId(), e);
+        }
+    }
+
+    /**
+     * Removes the given MOTECH ID from the index.
+     *
+     * @param motechId  the MOTECH ID of the patient
+     */
+    public void removeByMotechId(String motechId) {
+        try {
+            PatientIdentifierMapping mapping = mappingDataService.findByMotechId(motechId);
+            if (mapping != null) {
+                mappingDataService.delete(mapping);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to remove the MOTECH Id {} from the local index", motechId, e);
+        }
+    }
+
+    /**
+     * Removes all MOTECH IDs of the patient with the given UUID from the index.
+     *
+     * @param patientUuid  the UUID of the patient
+     */
+    public void removeByPatientUuid(String patientUuid) {
+        try {
+            for (PatientIdentifierMapping mapping : mappingDataService.findByPatientUuid(patientUuid)) {
+                mappingDataService.delete(mapping);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to remove the patient {} from the local index", patientUuid, e);
+        }
+    }
+
+    /**
+     * Returns a page of the indexed mappings, ordered by the MOTECH ID.
+     *
+     * @param page  the number of the page, starting from 1
+     * @param pageSize  the number of mappings on a page
+     * @return the mappings on the given page
+     */
+    public List<PatientIdentifierMapping> getMappings(int page, int pageSize) {
+        try {
+            return mappingDataService.retrieveAll(new QueryParams(page, pageSize,
+                    new Order("motechId", Order.Direction.ASC)));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to read the local patient index", e);
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.motechproject.openmrs19.tasks;
+
+import org.apache.commons.collections.Predicate;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.annotations.MotechListener;
+import org.motechproject.openmrs19.domain.OpenMRSEncounter;
+import org.motechproject.openmrs19.domain.OpenMRSPatient;
+import org.motechproject.openmrs19.domain.OpenMRSPerson;
+import org.motechproject.openmrs19.domain.OpenMRSProvider;
+import org.motechproject.openmrs19.service.EventKeys;
+import org.motechproject.openmrs19.util.TtlCache;
+import org.motechproject.server.config.SettingsFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.motechproject.openmrs19.util.SettingsUtils.getIntProperty;
+import static org.motechproject.openmrs19.tasks.OpenMRSTasksConstants.ENCOUNTER;
+import static org.motechproject.openmrs19.tasks.OpenMRSTasksConstants.PATIENT;
+import static org.motechproject.openmrs19.tasks.OpenMRSTasksConstants.PROVIDER;
+
+/**
+ * Cache of the objects returned by the {@link OpenMRSTaskDataProvider} lookups, so that tasks executed for every
+ * incoming form don't fetch the same patients, encounters and providers from the OpenMRS server over and over. Every
+ * object type is kept in its own {@link TtlCache}, with its own time to live, and the entries are evicted whenever the
+ * module publishes an event about the cached object being changed or removed. Lookups that didn't find anything are
+ * never cached.
+ */
+@Component
+public class OpenMRSTaskDataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OpenMRSTaskDataCache.class);
+
+    private static final String MAX_SIZE_PROPERTY = "openmrs.taskDataCache.maxSize";
+    private static final String PATIENT_TTL_PROPERTY = "openmrs.taskDataCache.patient.ttlSeconds";
+    private static final String ENCOUNTER_TTL_PROPERTY = "openmrs.taskDataCache.encounter.ttlSeconds";
+    private static final String PROVIDER_TTL_PROPERTY = "openmrs.taskDataCache.provider.ttlSeconds";
+
+    private static final int DEFAULT_MAX_SIZE = 1000;
+    private static final int DEFAULT_PATIENT_TTL = 300;
+    private static final int DEFAULT_ENCOUNTER_TTL = 600;
+    private static final int DEFAULT_PROVIDER_TTL = 3600;
+
+    private final SettingsFacade settingsFacade;
+
+    private final Map<String, TtlCache<String, Object>> caches = new HashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    @Autowired
+    public OpenMRSTaskDataCache(@Qualifier("openMrs19Settings") SettingsFacade settingsFacade) {
+        this.settingsFacade = settingsFacade;
+    }
+
+    /**
+     * Creates the caches of the object types, using the size bound and the times to live from the settings. The size
+     * bound applies to each type separately. A time to live of zero disables caching of the given type.
+     */
+    @PostConstruct
+    public void initialize() {
+        int maxSize = getIntProperty(settingsFacade, MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+
+        createCache(PATIENT, maxSize, getIntProperty(settingsFacade, PATIENT_TTL_PROPERTY, DEFAULT_PATIENT_TTL));
+        createCache(ENCOUNTER, maxSize, getIntProperty(settingsFacade, ENCOUNTER_TTL_PROPERTY, DEFAULT_ENCOUNTER_TTL));
+        createCache(PROVIDER, maxSize, getIntProperty(settingsFacade, PROVIDER_TTL_PROPERTY, DEFAULT_PROVIDER_TTL));
+    }
+
+    /**
+     * Returns the cached result of the given lookup, unless it isn't cached or has expired.
+     *
+     * @param type  the type of the looked up object
+     * @param lookupName  the name of the lookup
+     * @param lookupFields  the values of the lookup fields
+     * @return the cached object, null if there is no valid entry for the lookup
+     */
+    public Object get(String type, String lookupName, Map<String, String> lookupFields) {
+        TtlCache<String, Object> cache = caches.get(type);
+        if (cache == null || lookupFields == null) {
+            return null;
+        }
+
+        Object cached = cache.get(toKey(lookupName, lookupFields));
+        if (cached == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return cached;
+    }
+
+    /**
+     * Caches the result of the given lookup. If the cache of the object type is full, its oldest entries are evicted.
+     *
+     * @param type  the type of the looked up object
+     * @param lookupName  the name of the lookup
+     * @param lookupFields  the values of the lookup fields
+     * @param object  the object found by the lookup
+     */
+    public void put(String type, String lookupName, Map<String, String> lookupFields, Object object) {
+        TtlCache<String, Object> cache = caches.get(type);
+        if (cache != null && lookupFields != null) {
+            cache.put(toKey(lookupName, lookupFields), object);
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clear() {
+        for (TtlCache<String, Object> cache : caches.values()) {
+            cache.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of cached objects, including the expired ones that weren't evicted yet.
+     *
+     * @return the number of cached objects
+     */
+    public int size() {
+        int size = 0;
+        for (TtlCache<String, Object> cache : caches.values()) {
+            size += cache.size();
+        }
+        return size;
+    }
+
+    @MotechListener(subjects = { EventKeys.CREATED_NEW_PATIENT_SUBJECT, EventKeys.UPDATED_PATIENT_SUBJECT,
+            EventKeys.PATIENT_DECEASED_SUBJECT, EventKeys.DELETED_PATIENT_SUBJECT })
+    public void handlePatientEvent(MotechEvent event) {
+        final String patientId = (String) event.getParameters().get(EventKeys.PATIENT_ID);
+        final String motechId = (String) event.getParameters().get(EventKeys.MOTECH_ID);
+
+        int removed = removeMatching(PATIENT, new Predicate() {
+            @Override
+            public boolean evaluate(Object object) {
+                OpenMRSPatient patient = (OpenMRSPatient) object;
+                return matches(patientId, patient.getPatientId()) || matches(motechId, patient.getMotechId());
+            }
+        });
+        logEviction(event, removed);
+    }
+
+    @MotechListener(subjects = { EventKeys.UPDATED_PERSON_SUBJECT, EventKeys.DELETED_PERSON_SUBJECT })
+    public void handlePersonEvent(MotechEvent event) {
+        final String personId = (String) event.getParameters().get(EventKeys.PERSON_ID);
+
+        int removed = removeMatching(PATIENT, new Predicate() {
+            @Override
+            public boolean evaluate(Object object) {
+                return matches(personId, ((OpenMRSPatient) object).getPerson());
+            }
+        });
+        removed += removeMatching(PROVIDER, new Predicate() {
+            @Override
+            public boolean evaluate(Object object) {
+                return matches(personId, ((OpenMRSProvider) object).getPerson());
+            }
+        });
+        logEviction(event, removed);
+    }
+
+    @MotechListener(subjects = { EventKeys.UPDATED_ENCOUNTER_SUBJECT, EventKeys.DELETED_ENCOUNTER_SUBJECT })
+    public void handleEncounterEvent(MotechEvent event) {
+        final String encounterId = (String) event.getParameters().get(EventKeys.ENCOUNTER_ID);
+
+        int removed = removeMatching(ENCOUNTER, new Predicate() {
+            @Override
+            public boolean evaluate(Object object) {
+                return matches(encounterId, ((OpenMRSEncounter) object).getEncounterId());
+            }
+        });
+        logEviction(event, removed);
+    }
+
+    @MotechListener(subjects = { EventKeys.UPDATED_PROVIDER_SUBJECT, EventKeys.DELETED_PROVIDER_SUBJECT })
+    public void handleProviderEvent(MotechEvent event) {
+        final String providerId = (String) event.getParameters().get(EventKeys.PROVIDER_ID);
+
+        int removed = removeMatching(PROVIDER, new Predicate() {
+            @Override
+            public boolean evaluate(Object object) {
+                return matches(providerId, ((OpenMRSProvider) object).getProviderId());
+            }
+        });
+        logEviction(event, removed);
+    }
+
+    private void createCache(String type, int maxSize, int timeToLive) {
+        if (maxSize > 0 && timeToLive > 0) {
+            caches.put(type, new TtlCache<String, Object>(maxSize, TimeUnit.SECONDS.toMillis(timeToLive)));
+        }
+    }
+
+    private int removeMatching(String type, Predicate predicate) {
+        TtlCache<String, Object> cache = caches.get(type);
+        return cache == null ? 0 : cache.removeMatching(predicate);
+    }
+
+    private String toKey(String lookupName, Map<String, String> lookupFields) {
+        return lookupName + ':' + new TreeMap<>(lookupFields);
+    }
+
+    private boolean matches(String eventValue, String cachedValue) {
+        return eventValue != null && eventValue.equals(cachedValue);
+    }
+
+    private boolean matches(String personId, OpenMRSPerson person) {
+        return person != null && matches(personId, person.getPersonId());
+    }
+
+    private void logEviction(MotechEvent event, int removed) {
+        if (removed > 0) {
+            LOGGER.debug("Evicted {} task data cache entries on {}, hits: {}, misses: {}", removed,
+                    event.getSubject(), hitCount.get(), missCount.get());
+        }
+    }
+}
@@ -40,10 +40,12 @@ public class OpenMRSTaskDataProvider extends AbstractDataProvider {
     private OpenMRSEncounterService encounterService;
     private OpenMRSPatientService patientService;
     private OpenMRSProviderService providerService;
+    private OpenMRSTaskDataCache cache;
 
     @Autowired
     public OpenMRSTaskDataProvider(ResourceLoader resourceLoader, OpenMRSEncounterService encounterService,
-                                   OpenMRSPatientService patientService, OpenMRSProviderService providerService) {
+                                   OpenMRSPatientService patientService, OpenMRSProviderService providerService,
+                                   OpenMRSTaskDataCache cache) {
         Resource resource = resourceLoader.getResource("task-data-provider.json");
         if (resource != null) {
             setBody(resource);
@@ -52,6 +54,7 @@ public class OpenMRSTaskDataProvider extends AbstractDataProvider {
         this.encounterService = encounterService;
         this.patientService = patientService;
         this.providerService = providerService;
+        this.cache = cache;
     }
 
     @Override
@@ -75,6 +78,11 @@ public class OpenMRSTaskDataProvider extends AbstractDataProvider {
 
         //In case of any trouble with the type, 'supports' method logs an error
         if (supports(type)) {
+            obj = cache.get(type, lookupName, lookupFields);
+            if (obj != null) {
+                return obj;
+            }
+
             switch (type) {
                 case ENCOUNTER: obj = getEncounter(lookupName, lookupFields);
                     break;
@@ -83,6 +91,7 @@ public class OpenMRSTaskDataProvider extends AbstractDataProvider {
                 case PROVIDER: obj = getProvider(lookupName, lookupFields);
                     break;
             }
+            cache.put(type, lookupName, lookupFields, obj);
         }
 
         return obj;
@@ -0,0 +1,285 @@
+package org.motechproject.openmrs19.util;
+
+import org.apache.commons.collections.Predicate;
+import org.motechproject.openmrs19.exception.OpenMRSException;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe cache of values fetched from the OpenMRS server, such as concept UUIDs keyed by concept name, persons
+ * keyed by their UUIDs or the results of task data lookups. Entries expire after the configured time to live and the oldest entries are evicted once the
+ * cache is full. Concurrent misses for the same key are coalesced, so that only one of the threads queries the OpenMRS
+ * server while the others wait for its result. The entries are also kept in a queue in the order they were cached, so
+ * that the oldest ones are evicted without scanning the cache, by one thread at a time.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class TtlCache<K, V> {
+
+    /**
+     * The fraction of the entries evicted at once when the cache is full, so that eviction doesn't run on every put.
+     */
+    private static final int EVICTION_DIVISOR = 10;
+
+    private final ConcurrentMap<K, CachedValue> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<K, FutureTask<V>> loading = new ConcurrentHashMap<>();
+    private final Queue<CachedValue> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Lock evictionLock = new ReentrantLock();
+    private final int maxSize;
+    private final long timeToLive;
+
+    /**
+     * Creates a cache with the given bounds.
+     *
+     * @param maxSize  the maximum number of cached values, zero or less disables the cache
+     * @param timeToLive  the time after which entries expire, in milliseconds, zero or less to keep them forever
+     */
+    public TtlCache(int maxSize, long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns the value cached for the given key, unless it isn't cached or has expired.
+     *
+     * @param key  the key of the value
+     * @return the cached value, null if there is no valid entry for it
+     */
+    public V get(K key) {
+        CachedValue cached = key == null ? null : entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.isExpired()) {
+            entries.remove(key, cached);
+            return null;
+        }
+        return cached.getValue();
+    }
+
+    /**
+     * Returns the value cached for the given key. If it isn't cached, it is fetched with the given loader and cached,
+     * unless the loader returns null. If another thread is already loading the same key, this method waits for its
+     * result instead. A checked exception thrown by the loader is rethrown as the cause of an {@link OpenMRSException}.
+     *
+     * @param key  the key of the value
+     * @param loader  fetches the value from the OpenMRS server
+     * @return the value, null if the loader didn't find it
+     */
+    public V get(final K key, final Callable<V> loader) {
+        V cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        FutureTask<V> task = new FutureTask<>(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                V value = loader.call();
+                put(key, value);
+                return value;
+            }
+        });
+
+        // a null key is never cached, its loads aren't coalesced either
+        FutureTask<V> pending = key == null ? null : loading.putIfAbsent(key, task);
+        if (pending == null) {
+            pending = task;
+            try {
+                task.run();
+            } finally {
+                if (key != null) {
+                    loading.remove(key, task);
+                }
+            }
+        }
+
+        return waitFor(pending, key);
+    }
+
+    /**
+     * Caches the value for the given key, replacing the previous one. The oldest entries are evicted if the cache is
+     * full. While another thread is evicting, the cache may briefly hold more than the maximum number of entries.
+     *
+     * @param key  the key of the value
+     * @param value  the value to cache, null values are not cached
+     */
+    public void put(K key, V value) {
+        if (key == null || value == null || maxSize <= 0) {
+            return;
+        }
+        CachedValue cached = new CachedValue(key, value, System.currentTimeMillis());
+        entries.put(key, cached);
+        enqueue(cached);
+        evictIfFull();
+    }
+
+    /**
+     * Caches the value for the given key, unless a value is already cached for that key. Unlike
+     * {@link #put(Object, Object)}, this method never evicts entries.
+     *
+     * @param key  the key of the value
+     * @param value  the value to cache
+     * @return false if the cache is full and the value wasn't cached, true otherwise
+     */
+    public boolean putIfAbsent(K key, V value) {
+        if (entries.size() >= maxSize) {
+            return false;
+        }
+        if (key != null && value != null) {
+            CachedValue cached = new CachedValue(key, value, System.currentTimeMillis());
+            if (entries.putIfAbsent(key, cached) == null) {
+                enqueue(cached);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the value cached for the given key.
+     *
+     * @param key  the key of the value
+     */
+    public void remove(K key) {
+        if (key != null) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Removes the cached values matching the given predicate.
+     *
+     * @param predicate  evaluated for every cached value
+     * @return the number of removed values
+     */
+    public int removeMatching(Predicate predicate) {
+        int removed = 0;
+        for (Iterator<CachedValue> iterator = entries.values().iterator(); iterator.hasNext();) {
+            if (predicate.evaluate(iterator.next().getValue())) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all values from the cache.
+     */
+    public void clear() {
+        entries.clear();
+        insertionOrder.clear();
+        queued.set(0);
+    }
+
+    /**
+     * Returns the number of cached values, including the expired ones that weren't evicted yet.
+     *
+     * @return the number of cached values
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void enqueue(CachedValue cached) {
+        insertionOrder.add(cached);
+        queued.incrementAndGet();
+    }
+
+    /*
+     * Evicts the oldest entries once the cache is full, down to the eviction fraction below the maximum size, but
+     * keeping at least one entry. The queue also holds the entries which were replaced or removed since, these are
+     * skipped, and purged once they make up most of the queue. Only one thread evicts at a time, the others carry on
+     * without waiting for it.
+     */
+    private void evictIfFull() {
+        boolean full = entries.size() > maxSize;
+        if (!full && queued.get() <= 2 * maxSize) {
+            return;
+        }
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            if (full) {
+                int target = Math.max(1, maxSize - Math.max(1, maxSize / EVICTION_DIVISOR));
+                while (entries.size() > target) {
+                    CachedValue oldest = insertionOrder.poll();
+                    if (oldest == null) {
+                        break;
+                    }
+                    queued.decrementAndGet();
+                    entries.remove(oldest.getKey(), oldest);
+                }
+            }
+
+            if (queued.get() > 2 * maxSize) {
+                purgeQueue();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void purgeQueue() {
+        Iterator<CachedValue> iterator = insertionOrder.iterator();
+        while (iterator.hasNext()) {
+            CachedValue cached = iterator.next();
+            if (entries.get(cached.getKey()) != cached) {
+                iterator.remove();
+                queued.decrementAndGet();
+            }
+        }
+    }
+
+    private V waitFor(FutureTask<V> task, K key) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OpenMRSException("Interrupted while loading the value for: " + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new OpenMRSException("Failed to load the value for: " + key, e.getCause());
+        }
+    }
+
+    private class CachedValue {
+        private final K key;
+        private final V value;
+        private final long created;
+
+        CachedValue(K key, V value, long created) {
+            this.key = key;
+            this.value = value;
+            this.created = created;
+        }
+
+        K getKey() {
+            return key;
+        }
+
+        V getValue() {
+            return value;
+        }
+
+        boolean isExpired() {
+            return timeToLive > 0 && System.currentTimeMillis() - created > timeToLive;
+        }
+    }
+}
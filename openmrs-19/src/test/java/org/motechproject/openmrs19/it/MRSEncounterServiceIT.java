@@ -11,6 +11,7 @@ import org.motechproject.event.listener.EventListenerRegistryService;
 import org.motechproject.openmrs19.domain.OpenMRSConcept;
 import org.motechproject.openmrs19.domain.OpenMRSConceptName;
 import org.motechproject.openmrs19.domain.OpenMRSEncounter;
+import org.motechproject.openmrs19.domain.OpenMRSEncounterResult;
 import org.motechproject.openmrs19.domain.OpenMRSEncounterType;
 import org.motechproject.openmrs19.domain.OpenMRSFacility;
 import org.motechproject.openmrs19.domain.OpenMRSObservation;
@@ -44,6 +45,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -135,6 +137,30 @@ public class MRSEncounterServiceIT extends BasePaxIT {
         assertEquals(new LocalDate("2012-09-05"), encounter.getDate().toLocalDate());
     }
 
+    @Test
+    public void shouldCreateEncountersInBulk() throws ParseException {
+        Set<OpenMRSObservation> observations = new HashSet<>();
+        observations.add(observation);
+
+        OpenMRSEncounter valid = new OpenMRSEncounter.OpenMRSEncounterBuilder()
+                .withEncounterType(encounterType.getName()).withDate(format.parse(date)).withCreator(user)
+                .withFacility(facility).withObservations(observations).withPatient(patient).withProvider(provider)
+                .build();
+        OpenMRSEncounter withoutProvider = new OpenMRSEncounter.OpenMRSEncounterBuilder()
+                .withEncounterType(encounterType.getName()).withDate(format.parse(date)).withPatient(patient)
+                .build();
+
+        List<OpenMRSEncounterResult> results = encounterAdapter.createEncounters(Arrays.asList(valid, withoutProvider));
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isSuccessful());
+        assertNotNull(results.get(0).getCreatedEncounter().getEncounterId());
+        assertFalse(results.get(1).isSuccessful());
+        assertEquals("Provider cannot be null", results.get(1).getErrorMessage());
+
+        encounterAdapter.deleteEncounter(results.get(0).getCreatedEncounter().getEncounterId());
+    }
+
     @Test
     public void shouldDeleteEncounter() throws InterruptedException {
 
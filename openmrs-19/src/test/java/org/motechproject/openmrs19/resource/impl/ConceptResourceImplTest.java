@@ -103,6 +103,18 @@ public class ConceptResourceImplTest extends AbstractResourceImplTest {
         assertEquals(expectedObj.getDisplay(), sentObject.getDisplay());
     }
 
+    @Test
+    public void shouldFetchConceptReferencesPage() throws HttpException, IOException {
+        Mockito.when(getClient().getJson(Mockito.any(URI.class))).thenReturn(
+                readJsonFromFile("json/concept-list-response.json"));
+
+        ConceptListResult result = impl.getConceptReferences(3, 50);
+
+        Mockito.verify(getInstance()).toInstancePathWithParams("/concept?v=ref&limit={pageSize}&startIndex={startIndex}",
+                50, 100);
+        assertEquals(asList("Test Concept"), extract(result.getResults(), on(Concept.class).getDisplay()));
+    }
+
     @Test
     public void shouldParseSingleConcept() throws HttpException, IOException {
         Mockito.when(getClient().getJson(Mockito.any(URI.class))).thenReturn(
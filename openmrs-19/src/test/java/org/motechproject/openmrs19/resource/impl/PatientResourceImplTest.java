@@ -81,6 +81,17 @@ public class PatientResourceImplTest extends AbstractResourceImplTest {
 
 
 
+    @Test
+    public void shouldQueryForFullPatients() throws HttpException, IOException {
+        Mockito.when(getClient().getJson(Mockito.any(URI.class))).thenReturn(
+                readJsonFromFile("json/patient-list-response.json"));
+
+        PatientListResult result = impl.queryForFullPatients("558");
+
+        Mockito.verify(getInstance()).toInstancePathWithParams("/patient?q={term}&v=full", "558");
+        assertEquals(asList("PPP"), extract(result.getResults(), on(Patient.class).getUuid()));
+    }
+
     @Test
     public void shouldGetPatientById() throws HttpException, IOException {
         Mockito.when(getClient().getJson(Mockito.any(URI.class))).thenReturn(
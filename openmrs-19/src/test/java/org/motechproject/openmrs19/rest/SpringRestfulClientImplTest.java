@@ -0,0 +1,72 @@
+package org.motechproject.openmrs19.rest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.openmrs19.exception.HttpException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestOperations;
+
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SpringRestfulClientImplTest {
+
+    private static final String BASE_URL = "http://localhost:8080/openmrs/ws/rest/v1";
+
+    @Mock
+    private RestOperations restOperations;
+
+    private SpringRestfulClientImpl client;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        client = new SpringRestfulClientImpl(restOperations);
+    }
+
+    @Test
+    public void shouldGroupRequestsByEndpoint() {
+        assertEquals("GET patient", SpringRestfulClientImpl.toEndpoint("GET",
+                URI.create(BASE_URL + "/patient?q=558&v=full")));
+        assertEquals("GET patient/{uuid}", SpringRestfulClientImpl.toEndpoint("GET",
+                URI.create(BASE_URL + "/patient/aaa-bbb?v=full")));
+        assertEquals("DELETE person/{uuid}/attribute/{uuid}", SpringRestfulClientImpl.toEndpoint("DELETE",
+                URI.create(BASE_URL + "/person/aaa/attribute/bbb?purge")));
+    }
+
+    @Test
+    public void shouldRecordLatencyAndErrorsPerEndpoint() throws HttpException {
+        URI patient = URI.create(BASE_URL + "/patient/aaa?v=full");
+        URI otherPatient = URI.create(BASE_URL + "/patient/bbb?v=full");
+        URI encounter = URI.create(BASE_URL + "/encounter/ccc");
+
+        when(restOperations.getForEntity(any(URI.class), eq(String.class)))
+                .thenReturn(new ResponseEntity<>("{}", HttpStatus.OK));
+        doThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR)).when(restOperations).delete(encounter);
+
+        client.getJson(patient);
+        client.getJson(otherPatient);
+        try {
+            client.delete(encounter);
+            fail("Expected HttpException");
+        } catch (HttpException e) {
+            // expected
+        }
+
+        assertEquals(2, client.getMetrics().size());
+        assertEquals(2, client.getMetrics().get("GET patient/{uuid}").getRequestCount());
+        assertEquals(0, client.getMetrics().get("GET patient/{uuid}").getErrorCount());
+        assertEquals(1, client.getMetrics().get("DELETE encounter/{uuid}").getRequestCount());
+        assertEquals(1, client.getMetrics().get("DELETE encounter/{uuid}").getErrorCount());
+    }
+}
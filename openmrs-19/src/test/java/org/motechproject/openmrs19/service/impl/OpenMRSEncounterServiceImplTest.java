@@ -0,0 +1,192 @@
+package org.motechproject.openmrs19.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventRelay;
+import org.motechproject.openmrs19.domain.OpenMRSEncounter;
+import org.motechproject.openmrs19.domain.OpenMRSEncounterResult;
+import org.motechproject.openmrs19.domain.OpenMRSObservation;
+import org.motechproject.openmrs19.domain.OpenMRSPatient;
+import org.motechproject.openmrs19.domain.OpenMRSPerson;
+import org.motechproject.openmrs19.domain.OpenMRSProvider;
+import org.motechproject.openmrs19.exception.HttpException;
+import org.motechproject.openmrs19.exception.OpenMRSException;
+import org.motechproject.openmrs19.resource.EncounterResource;
+import org.motechproject.openmrs19.resource.model.Encounter;
+import org.motechproject.openmrs19.service.EventKeys;
+import org.motechproject.openmrs19.service.OpenMRSPatientService;
+import org.motechproject.server.config.SettingsFacade;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class OpenMRSEncounterServiceImplTest {
+
+    private static final String WEIGHT = "Weight";
+    private static final String HEIGHT = "Height";
+    private static final String UNKNOWN = "Unknown";
+
+    @Mock
+    private EncounterResource encounterResource;
+
+    @Mock
+    private OpenMRSPatientService patientAdapter;
+
+    @Mock
+    private OpenMRSPersonServiceImpl personAdapter;
+
+    @Mock
+    private OpenMRSConceptServiceImpl conceptAdapter;
+
+    @Mock
+    private EventRelay eventRelay;
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private OpenMRSEncounterServiceImpl encounterService;
+
+    @Before
+    public void setUp() throws HttpException {
+        initMocks(this);
+
+        when(settingsFacade.getProperty("openmrs.encounterBatch.maxConcurrentRequests")).thenReturn("2");
+        when(settingsFacade.getProperty("openmrs.encounterBatch.eventBatchSize")).thenReturn("2");
+
+        when(conceptAdapter.resolveConceptUuidFromConceptName(WEIGHT)).thenReturn("weightUuid");
+        when(conceptAdapter.resolveConceptUuidFromConceptName(HEIGHT)).thenReturn("heightUuid");
+        when(conceptAdapter.resolveConceptUuidFromConceptName(UNKNOWN))
+                .thenThrow(new OpenMRSException("Can't find concept: " + UNKNOWN));
+
+        doAnswer(new Answer<Encounter>() {
+            @Override
+            public Encounter answer(InvocationOnMock invocation) throws HttpException {
+                Encounter encounter = (Encounter) invocation.getArguments()[0];
+                String patientId = encounter.getPatient().getUuid();
+                if ("patient3".equals(patientId)) {
+                    throw new HttpException("Server error", new IllegalStateException());
+                }
+
+                Encounter saved = new Encounter();
+                saved.setUuid("encounter-" + patientId);
+                return saved;
+            }
+        }).when(encounterResource).createEncounter(any(Encounter.class));
+
+        encounterService = new OpenMRSEncounterServiceImpl(encounterResource, patientAdapter, personAdapter,
+                conceptAdapter, eventRelay, settingsFacade);
+        encounterService.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        encounterService.shutdown();
+    }
+
+    @Test
+    public void shouldReturnResultForEachEncounter() throws HttpException {
+        List<OpenMRSEncounterResult> results = encounterService.createEncounters(Arrays.asList(
+                encounter("patient1", WEIGHT), encounter("patient2", HEIGHT)));
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals("encounter-patient1", results.get(0).getCreatedEncounter().getEncounterId());
+        assertEquals("patient1", results.get(0).getEncounter().getPatient().getPatientId());
+        assertTrue(results.get(1).isSuccessful());
+        assertEquals("encounter-patient2", results.get(1).getCreatedEncounter().getEncounterId());
+
+        verify(encounterResource, times(2)).createEncounter(any(Encounter.class));
+    }
+
+    @Test
+    public void shouldCreateRemainingEncountersWhenSomeFail() throws HttpException {
+        List<OpenMRSEncounterResult> results = encounterService.createEncounters(Arrays.asList(
+                encounter("patient1", WEIGHT), encounter("patient2", WEIGHT), encounter("patient3", HEIGHT),
+                encounter("patient4", UNKNOWN), encounter("patient5", WEIGHT)));
+
+        assertEquals(5, results.size());
+        assertTrue(results.get(0).isSuccessful());
+        assertTrue(results.get(1).isSuccessful());
+        assertFalse(results.get(2).isSuccessful());
+        assertEquals("Server error", results.get(2).getErrorMessage());
+        assertFalse(results.get(3).isSuccessful());
+        assertEquals("Can't find concept: " + UNKNOWN, results.get(3).getErrorMessage());
+        assertTrue(results.get(4).isSuccessful());
+        assertEquals("encounter-patient5", results.get(4).getCreatedEncounter().getEncounterId());
+
+        // every concept is resolved once, the encounter with an unknown concept isn't sent
+        verify(conceptAdapter, times(1)).resolveConceptUuidFromConceptName(WEIGHT);
+        verify(conceptAdapter, times(1)).resolveConceptUuidFromConceptName(HEIGHT);
+        verify(conceptAdapter, times(1)).resolveConceptUuidFromConceptName(UNKNOWN);
+        verify(encounterResource, times(4)).createEncounter(any(Encounter.class));
+    }
+
+    @Test
+    public void shouldPublishCreatedEncountersInBatches() {
+        encounterService.createEncounters(Arrays.asList(
+                encounter("patient1", WEIGHT), encounter("patient2", WEIGHT), encounter("patient3", HEIGHT),
+                encounter("patient4", WEIGHT)));
+
+        ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay, times(2)).sendEventMessage(captor.capture());
+
+        List<MotechEvent> events = captor.getAllValues();
+        assertEquals(EventKeys.CREATED_NEW_ENCOUNTERS_SUBJECT, events.get(0).getSubject());
+        assertEquals(Arrays.asList("encounter-patient1", "encounter-patient2"), encounterIds(events.get(0)));
+        assertEquals(EventKeys.CREATED_NEW_ENCOUNTERS_SUBJECT, events.get(1).getSubject());
+        assertEquals(Collections.singletonList("encounter-patient4"), encounterIds(events.get(1)));
+    }
+
+    @Test
+    public void shouldNotPublishEventWhenNoEncounterWasCreated() {
+        List<OpenMRSEncounterResult> results = encounterService.createEncounters(
+                Collections.singletonList(encounter("patient3", HEIGHT)));
+
+        assertFalse(results.get(0).isSuccessful());
+        verify(eventRelay, never()).sendEventMessage(any(MotechEvent.class));
+    }
+
+    private List<Object> encounterIds(MotechEvent event) {
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> encounters = (List<Map<String, Object>>) event.getParameters()
+                .get(EventKeys.ENCOUNTERS);
+
+        Object[] ids = new Object[encounters.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = encounters.get(i).get(EventKeys.ENCOUNTER_ID);
+        }
+        return Arrays.asList(ids);
+    }
+
+    private OpenMRSEncounter encounter(String patientId, String conceptName) {
+        OpenMRSObservation<String> observation = new OpenMRSObservation<>(new Date(), conceptName, "value");
+
+        return new OpenMRSEncounter.OpenMRSEncounterBuilder()
+                .withPatient(new OpenMRSPatient(patientId))
+                .withProvider(new OpenMRSProvider(new OpenMRSPerson("provider")))
+                .withDate(new Date())
+                .withEncounterType("ADULTINITIAL")
+                .withObservations(Collections.singleton(observation))
+                .build();
+    }
+}
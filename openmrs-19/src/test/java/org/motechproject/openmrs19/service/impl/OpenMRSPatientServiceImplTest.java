@@ -0,0 +1,151 @@
+package org.motechproject.openmrs19.service.impl;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.event.listener.EventRelay;
+import org.motechproject.openmrs19.domain.PatientIdentifierMapping;
+import org.motechproject.openmrs19.exception.HttpException;
+import org.motechproject.openmrs19.resource.PatientResource;
+import org.motechproject.openmrs19.resource.model.Identifier;
+import org.motechproject.openmrs19.resource.model.IdentifierType;
+import org.motechproject.openmrs19.resource.model.Patient;
+import org.motechproject.openmrs19.service.OpenMRSFacilityService;
+import org.motechproject.server.config.SettingsFacade;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class OpenMRSPatientServiceImplTest {
+
+    private static final String MOTECH_ID_TYPE_UUID = "motechIdType";
+
+    @Mock
+    private PatientResource patientResource;
+
+    @Mock
+    private OpenMRSPersonServiceImpl personAdapter;
+
+    @Mock
+    private OpenMRSFacilityService facilityAdapter;
+
+    @Mock
+    private EventRelay eventRelay;
+
+    @Mock
+    private PatientIdentifierIndex identifierIndex;
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private OpenMRSPatientServiceImpl patientService;
+
+    @Before
+    public void setUp() throws HttpException {
+        initMocks(this);
+
+        when(settingsFacade.getProperty("openmrs.patientIndex.verifyAfterMinutes")).thenReturn("60");
+        when(patientResource.getMotechPatientIdentifierUuid()).thenReturn(MOTECH_ID_TYPE_UUID);
+
+        patientService = new OpenMRSPatientServiceImpl(patientResource, personAdapter, facilityAdapter, eventRelay,
+                identifierIndex, settingsFacade);
+    }
+
+    @Test
+    public void shouldOnlyVerifyStaleMappings() throws HttpException {
+        PatientIdentifierMapping recent = new PatientIdentifierMapping("111", "uuid1", DateTime.now().minusMinutes(5));
+        PatientIdentifierMapping unverified = new PatientIdentifierMapping("222", "uuid2");
+        PatientIdentifierMapping stale = new PatientIdentifierMapping("333", "uuid3", DateTime.now().minusHours(2));
+        when(identifierIndex.getMappings(1, 500)).thenReturn(Arrays.asList(recent, unverified, stale));
+
+        when(patientResource.getPatientById("uuid2")).thenReturn(patient("uuid2", "222"));
+        when(patientResource.getPatientById("uuid3")).thenReturn(patient("uuid3", "333"));
+
+        patientService.refreshIdentifierIndex();
+
+        verify(patientResource, never()).getPatientById("uuid1");
+        verify(identifierIndex).markVerified(unverified);
+        verify(identifierIndex).markVerified(stale);
+        verify(identifierIndex, never()).markVerified(recent);
+    }
+
+    @Test
+    public void shouldUpdateChangedAndRemoveMissingMappings() throws HttpException {
+        PatientIdentifierMapping changed = new PatientIdentifierMapping("111", "uuid1");
+        PatientIdentifierMapping deleted = new PatientIdentifierMapping("222", "uuid2");
+        PatientIdentifierMapping withoutMotechId = new PatientIdentifierMapping("333", "uuid3");
+        PatientIdentifierMapping unavailable = new PatientIdentifierMapping("444", "uuid4");
+        when(identifierIndex.getMappings(1, 500)).thenReturn(Arrays.asList(changed, deleted, withoutMotechId,
+                unavailable));
+
+        when(patientResource.getPatientById("uuid1")).thenReturn(patient("uuid1", "999"));
+        when(patientResource.getPatientById("uuid2")).thenThrow(new HttpException("Not found",
+                new HttpClientErrorException(HttpStatus.NOT_FOUND)));
+        when(patientResource.getPatientById("uuid3")).thenReturn(patient("uuid3", null));
+        when(patientResource.getPatientById("uuid4")).thenThrow(new HttpException("Server error",
+                new IllegalStateException()));
+
+        patientService.refreshIdentifierIndex();
+
+        verify(identifierIndex).put("999", "uuid1");
+        verify(identifierIndex).removeByPatientUuid("uuid2");
+        verify(identifierIndex).removeByPatientUuid("uuid3");
+        // the server couldn't be reached, so the mapping is kept and verified again by the next run
+        verify(identifierIndex, never()).removeByPatientUuid("uuid4");
+        verify(identifierIndex, never()).markVerified(any(PatientIdentifierMapping.class));
+    }
+
+    @Test
+    public void shouldVerifyMappingsVerifiedLongestAgoFirst() throws HttpException {
+        when(settingsFacade.getProperty("openmrs.patientIndex.maxVerificationsPerRun")).thenReturn("2");
+
+        PatientIdentifierMapping older = new PatientIdentifierMapping("111", "uuid1", DateTime.now().minusDays(3));
+        PatientIdentifierMapping newer = new PatientIdentifierMapping("222", "uuid2", DateTime.now().minusDays(1));
+        PatientIdentifierMapping unverified = new PatientIdentifierMapping("333", "uuid3");
+        when(identifierIndex.getMappings(1, 500)).thenReturn(Arrays.asList(older, newer, unverified));
+
+        when(patientResource.getPatientById("uuid1")).thenReturn(patient("uuid1", "111"));
+        when(patientResource.getPatientById("uuid3")).thenReturn(patient("uuid3", "333"));
+
+        patientService.refreshIdentifierIndex();
+
+        verify(identifierIndex).markVerified(unverified);
+        verify(identifierIndex).markVerified(older);
+        verify(patientResource, never()).getPatientById("uuid2");
+    }
+
+    @Test
+    public void shouldNotContactServerWhenNoMappingIsStale() throws HttpException {
+        when(identifierIndex.getMappings(1, 500)).thenReturn(Collections.singletonList(
+                new PatientIdentifierMapping("111", "uuid1", DateTime.now())));
+
+        patientService.refreshIdentifierIndex();
+
+        verify(patientResource, never()).getMotechPatientIdentifierUuid();
+        verify(patientResource, never()).getPatientById(anyString());
+    }
+
+    private Patient patient(String uuid, String motechId) {
+        IdentifierType identifierType = new IdentifierType();
+        identifierType.setUuid(MOTECH_ID_TYPE_UUID);
+
+        Identifier identifier = new Identifier();
+        identifier.setIdentifierType(identifierType);
+        identifier.setIdentifier(motechId);
+
+        Patient patient = new Patient();
+        patient.setUuid(uuid);
+        patient.setIdentifiers(motechId == null ? Collections.<Identifier>emptyList() : Arrays.asList(identifier));
+        return patient;
+    }
+}
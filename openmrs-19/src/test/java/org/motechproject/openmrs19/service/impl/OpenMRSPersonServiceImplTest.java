@@ -0,0 +1,111 @@
+package org.motechproject.openmrs19.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.event.listener.EventRelay;
+import org.motechproject.openmrs19.domain.OpenMRSPerson;
+import org.motechproject.openmrs19.exception.HttpException;
+import org.motechproject.openmrs19.resource.PersonResource;
+import org.motechproject.openmrs19.resource.model.Person;
+import org.motechproject.server.config.SettingsFacade;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class OpenMRSPersonServiceImplTest {
+
+    @Mock
+    private PersonResource personResource;
+
+    @Mock
+    private EventRelay eventRelay;
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private OpenMRSPersonServiceImpl personService;
+
+    @Before
+    public void setUp() throws HttpException {
+        initMocks(this);
+
+        when(settingsFacade.getProperty("openmrs.personCache.maxSize")).thenReturn("10");
+        when(settingsFacade.getProperty("openmrs.personCache.ttlSeconds")).thenReturn("60");
+        when(settingsFacade.getProperty("openmrs.fetch.maxConcurrentRequests")).thenReturn("2");
+
+        when(personResource.getPersonById("uuid1")).thenReturn(person("uuid1"));
+        when(personResource.getPersonById("uuid2")).thenReturn(person("uuid2"));
+        when(personResource.getPersonById("uuid3")).thenThrow(new HttpException("Not found", new IllegalStateException()));
+
+        personService = new OpenMRSPersonServiceImpl(personResource, eventRelay, settingsFacade);
+        personService.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        personService.shutdown();
+    }
+
+    @Test
+    public void shouldFetchEachPersonOnceAndSkipMissingOnes() throws HttpException {
+        Map<String, OpenMRSPerson> persons = personService.getPersonsByUuids(
+                Arrays.asList("uuid1", "uuid2", "uuid1", "uuid3", null));
+
+        assertEquals(2, persons.size());
+        assertEquals("uuid1", persons.get("uuid1").getPersonId());
+        assertEquals("uuid2", persons.get("uuid2").getPersonId());
+        assertFalse(persons.containsKey("uuid3"));
+
+        verify(personResource, times(1)).getPersonById("uuid1");
+        verify(personResource, times(1)).getPersonById("uuid2");
+        verify(personResource, times(1)).getPersonById("uuid3");
+    }
+
+    @Test
+    public void shouldTakeRecentlyFetchedPersonsFromCache() throws HttpException {
+        personService.getPersonsByUuids(Arrays.asList("uuid1", "uuid2"));
+        Map<String, OpenMRSPerson> persons = personService.getPersonsByUuids(Arrays.asList("uuid1", "uuid2"));
+
+        assertEquals(2, persons.size());
+        assertEquals("uuid1", personService.getPersonByUuid("uuid1").getPersonId());
+        verify(personResource, times(1)).getPersonById("uuid1");
+        verify(personResource, times(1)).getPersonById("uuid2");
+    }
+
+    @Test
+    public void shouldFetchPersonAgainAfterItWasDeleted() throws HttpException {
+        personService.getPersonByUuid("uuid1");
+        personService.deletePerson("uuid1");
+        personService.getPersonsByUuids(Arrays.asList("uuid1"));
+
+        verify(personResource, times(2)).getPersonById("uuid1");
+    }
+
+    @Test
+    public void shouldNotCacheWhenCacheIsDisabled() throws HttpException {
+        when(settingsFacade.getProperty("openmrs.personCache.maxSize")).thenReturn("0");
+        personService.shutdown();
+        personService = new OpenMRSPersonServiceImpl(personResource, eventRelay, settingsFacade);
+        personService.initialize();
+
+        personService.getPersonByUuid("uuid1");
+        personService.getPersonByUuid("uuid1");
+
+        verify(personResource, times(2)).getPersonById("uuid1");
+    }
+
+    private Person person(String uuid) {
+        Person person = new Person();
+        person.setUuid(uuid);
+        return person;
+    }
+}
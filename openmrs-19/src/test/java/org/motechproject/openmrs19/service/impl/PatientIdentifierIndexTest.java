@@ -0,0 +1,79 @@
+package org.motechproject.openmrs19.service.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.openmrs19.domain.PatientIdentifierMapping;
+import org.motechproject.openmrs19.repository.PatientIdentifierMappingDataService;
+import org.springframework.transaction.support.TransactionCallback;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class PatientIdentifierIndexTest {
+
+    @Mock
+    private PatientIdentifierMappingDataService mappingDataService;
+
+    private PatientIdentifierIndex index;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        index = new PatientIdentifierIndex(mappingDataService);
+
+        when(mappingDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return ((TransactionCallback) invocation.getArguments()[0]).doInTransaction(null);
+            }
+        });
+    }
+
+    @Test
+    public void shouldReplacePreviousMotechIdOfPatient() {
+        PatientIdentifierMapping previous = new PatientIdentifierMapping("111", "uuid");
+        when(mappingDataService.findByPatientUuid("uuid")).thenReturn(Arrays.asList(previous));
+
+        index.put("222", "uuid");
+
+        verify(mappingDataService).delete(previous);
+
+        ArgumentCaptor<PatientIdentifierMapping> captor = ArgumentCaptor.forClass(PatientIdentifierMapping.class);
+        verify(mappingDataService).create(captor.capture());
+        assertEquals("222", captor.getValue().getMotechId());
+        assertEquals("uuid", captor.getValue().getPatientUuid());
+    }
+
+    @Test
+    public void shouldRemapMotechIdToAnotherPatient() {
+        PatientIdentifierMapping mapping = new PatientIdentifierMapping("111", "oldUuid");
+        when(mappingDataService.findByPatientUuid("newUuid"))
+                .thenReturn(Collections.<PatientIdentifierMapping>emptyList());
+        when(mappingDataService.findByMotechId("111")).thenReturn(mapping);
+
+        index.put("111", "newUuid");
+
+        verify(mappingDataService).update(mapping);
+        verify(mappingDataService, never()).create(any(PatientIdentifierMapping.class));
+        assertEquals("newUuid", mapping.getPatientUuid());
+    }
+
+    @Test
+    public void shouldTreatDataServiceFailuresAsMiss() {
+        when(mappingDataService.findByMotechId("111")).thenThrow(new IllegalStateException("MDS is not available"));
+
+        assertNull(index.getPatientUuid("111"));
+    }
+}
@@ -5,12 +5,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.event.MotechEvent;
 import org.motechproject.openmrs19.domain.OpenMRSEncounter;
 import org.motechproject.openmrs19.domain.OpenMRSPatient;
 import org.motechproject.openmrs19.domain.OpenMRSProvider;
+import org.motechproject.openmrs19.service.EventKeys;
 import org.motechproject.openmrs19.service.OpenMRSEncounterService;
 import org.motechproject.openmrs19.service.OpenMRSPatientService;
 import org.motechproject.openmrs19.service.OpenMRSProviderService;
+import org.motechproject.server.config.SettingsFacade;
 import org.springframework.core.io.ResourceLoader;
 
 import java.util.HashMap;
@@ -18,6 +21,7 @@ import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNull;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -41,11 +45,19 @@ public class OpenMRSTaskDataProviderTest {
     @Mock
     private ResourceLoader resourceLoader;
 
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private OpenMRSTaskDataCache cache;
+
     private OpenMRSTaskDataProvider taskDataProvider;
 
     @Before
     public void setUp() {
-        taskDataProvider = new OpenMRSTaskDataProvider(resourceLoader, encounterService, patientService, providerService);
+        cache = new OpenMRSTaskDataCache(settingsFacade);
+        cache.initialize();
+        taskDataProvider = new OpenMRSTaskDataProvider(resourceLoader, encounterService, patientService, providerService,
+                cache);
     }
 
     @Test
@@ -263,4 +275,84 @@ public class OpenMRSTaskDataProviderTest {
         assertEquals(openMRSProvider, object);
         verify(providerService).getProviderByUuid("5");
     }
+
+    @Test
+    public void shouldServeRepeatedLookupsFromCache() {
+        String className = OpenMRSPatient.class.getSimpleName();
+        Map<String, String> lookupFields = new HashMap<>();
+        lookupFields.put(MOTECH_ID, "5");
+
+        OpenMRSPatient openMRSPatient = new OpenMRSPatient();
+        openMRSPatient.setPatientId("10");
+        openMRSPatient.setMotechId("5");
+
+        when(patientService.getPatientByMotechId("5")).thenReturn(openMRSPatient);
+
+        assertEquals(openMRSPatient, taskDataProvider.lookup(className, BY_MOTECH_ID, lookupFields));
+        assertEquals(openMRSPatient, taskDataProvider.lookup(className, BY_MOTECH_ID, lookupFields));
+
+        verify(patientService, times(1)).getPatientByMotechId("5");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void shouldLookupPatientAgainAfterUpdateEvent() {
+        String className = OpenMRSPatient.class.getSimpleName();
+        Map<String, String> lookupFields = new HashMap<>();
+        lookupFields.put(MOTECH_ID, "5");
+
+        OpenMRSPatient openMRSPatient = new OpenMRSPatient();
+        openMRSPatient.setPatientId("10");
+        openMRSPatient.setMotechId("5");
+
+        when(patientService.getPatientByMotechId("5")).thenReturn(openMRSPatient);
+
+        taskDataProvider.lookup(className, BY_MOTECH_ID, lookupFields);
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(EventKeys.PATIENT_ID, "10");
+        cache.handlePatientEvent(new MotechEvent(EventKeys.UPDATED_PATIENT_SUBJECT, parameters));
+
+        taskDataProvider.lookup(className, BY_MOTECH_ID, lookupFields);
+
+        verify(patientService, times(2)).getPatientByMotechId("5");
+    }
+
+    @Test
+    public void shouldCacheNewLookupsWhenCacheIsFull() {
+        when(settingsFacade.getProperty("openmrs.taskDataCache.maxSize")).thenReturn("1");
+        cache.initialize();
+
+        String className = OpenMRSPatient.class.getSimpleName();
+        Map<String, String> firstLookupFields = new HashMap<>();
+        firstLookupFields.put(MOTECH_ID, "5");
+        Map<String, String> secondLookupFields = new HashMap<>();
+        secondLookupFields.put(MOTECH_ID, "6");
+
+        when(patientService.getPatientByMotechId("5")).thenReturn(new OpenMRSPatient("10"));
+        when(patientService.getPatientByMotechId("6")).thenReturn(new OpenMRSPatient("11"));
+
+        taskDataProvider.lookup(className, BY_MOTECH_ID, firstLookupFields);
+        taskDataProvider.lookup(className, BY_MOTECH_ID, secondLookupFields);
+        taskDataProvider.lookup(className, BY_MOTECH_ID, secondLookupFields);
+
+        verify(patientService, times(1)).getPatientByMotechId("6");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void shouldNotCacheMissingProviders() {
+        String className = OpenMRSProvider.class.getSimpleName();
+        Map<String, String> lookupFields = new HashMap<>();
+        lookupFields.put(UUID, "4");
+
+        when(providerService.getProviderByUuid("4")).thenReturn(null);
+
+        taskDataProvider.lookup(className, BY_UUID, lookupFields);
+        taskDataProvider.lookup(className, BY_UUID, lookupFields);
+
+        verify(providerService, times(2)).getProviderByUuid("4");
+        assertEquals(0, cache.size());
+    }
 }
@@ -0,0 +1,183 @@
+package org.motechproject.openmrs19.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TtlCacheTest {
+
+    @Test
+    public void shouldCoalesceConcurrentMisses() throws Exception {
+        final TtlCache<String, String> cache = new TtlCache<>(100, 0);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Callable<String> loader = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                loads.incrementAndGet();
+                release.await(5, TimeUnit.SECONDS);
+                return "uuid";
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return cache.get("Weight", loader);
+                    }
+                }));
+            }
+
+            Thread.sleep(200);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("uuid", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void shouldReloadExpiredEntries() throws Exception {
+        TtlCache<String, String> cache = new TtlCache<>(100, 1);
+        cache.put("Weight", "old");
+
+        Thread.sleep(10);
+
+        assertEquals("new", cache.get("Weight", constant("new")));
+    }
+
+    @Test
+    public void shouldNotCacheMissingConcepts() {
+        TtlCache<String, String> cache = new TtlCache<>(100, 0);
+
+        assertEquals(null, cache.get("Weight", constant(null)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldEvictOldestEntriesWhenFull() {
+        TtlCache<String, String> cache = new TtlCache<>(10, 0);
+        for (int i = 0; i < 10; i++) {
+            cache.put("Concept " + i, "uuid" + i);
+        }
+
+        assertFalse(cache.putIfAbsent("Preloaded", "uuid"));
+
+        cache.put("Concept 10", "uuid10");
+
+        assertTrue(cache.size() <= 10);
+        assertEquals("uuid10", cache.get("Concept 10", constant("other")));
+    }
+
+    @Test
+    public void shouldKeepNewestEntryWhenCacheHoldsSingleValue() {
+        TtlCache<String, String> cache = new TtlCache<>(1, 0);
+        cache.put("uuid1", "person1");
+        cache.put("uuid2", "person2");
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get("uuid1"));
+        assertEquals("person2", cache.get("uuid2"));
+    }
+
+    @Test
+    public void shouldEvictEntriesInTheOrderTheirValuesWereCached() {
+        TtlCache<String, String> cache = new TtlCache<>(3, 0);
+        cache.put("uuid1", "person1");
+        cache.put("uuid2", "person2");
+        cache.put("uuid3", "person3");
+        cache.put("uuid1", "updated person1");
+
+        cache.put("uuid4", "person4");
+
+        assertEquals("updated person1", cache.get("uuid1"));
+        assertEquals("person4", cache.get("uuid4"));
+        assertNull(cache.get("uuid2"));
+        assertNull(cache.get("uuid3"));
+    }
+
+    @Test
+    public void shouldLoadValuesWithoutKey() {
+        TtlCache<String, String> cache = new TtlCache<>(100, 0);
+
+        assertEquals("uuid", cache.get(null, constant("uuid")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldExpireEntries() throws Exception {
+        TtlCache<String, String> cache = new TtlCache<>(100, 1);
+        cache.put("uuid", "person");
+
+        Thread.sleep(10);
+
+        assertNull(cache.get("uuid"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldEvictOldestEntryInsteadOfRejectingNewOneWhenFull() throws Exception {
+        TtlCache<String, String> cache = new TtlCache<>(2, TimeUnit.MINUTES.toMillis(1));
+        cache.put("uuid1", "person1");
+        Thread.sleep(2);
+        cache.put("uuid2", "person2");
+        Thread.sleep(2);
+        cache.put("uuid3", "person3");
+
+        assertNull(cache.get("uuid1"));
+        assertEquals("person3", cache.get("uuid3"));
+        assertTrue(cache.size() <= 2);
+    }
+
+    @Test
+    public void shouldNotCacheWhenDisabled() {
+        TtlCache<String, String> cache = new TtlCache<>(0, 0);
+        cache.put("uuid", "person");
+
+        assertNull(cache.get("uuid"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldRemoveEntries() {
+        TtlCache<String, String> cache = new TtlCache<>(100, 0);
+        cache.put("uuid", "person");
+        cache.remove("uuid");
+        cache.remove(null);
+
+        assertNull(cache.get("uuid"));
+        assertNull(cache.get(null));
+    }
+
+    private Callable<String> constant(final String uuid) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return uuid;
+            }
+        };
+    }
+}